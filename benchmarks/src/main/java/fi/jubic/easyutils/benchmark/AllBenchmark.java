@@ -0,0 +1,165 @@
+package fi.jubic.easyutils.benchmark;
+
+import fi.jubic.easyutils.transactional.TransactionProvider;
+import fi.jubic.easyutils.transactional.Transactional;
+import fi.jubic.easyutils.tuple.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures combining and performing {@code Transactional}s with {@code Transactional.all} at
+ * every arity from 2 to 10. Run with {@code -prof gc} to see the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AllBenchmark {
+    @Param({"contextPassing", "threadContext"})
+    public String provider;
+
+    private Fixture<?> fixture;
+
+    @Setup
+    public void setup() {
+        fixture = new Fixture<>(Providers.noop(provider));
+    }
+
+    @Benchmark
+    public Tuple all2() {
+        return fixture.all2();
+    }
+
+    @Benchmark
+    public Tuple all3() {
+        return fixture.all3();
+    }
+
+    @Benchmark
+    public Tuple all4() {
+        return fixture.all4();
+    }
+
+    @Benchmark
+    public Tuple all5() {
+        return fixture.all5();
+    }
+
+    @Benchmark
+    public Tuple all6() {
+        return fixture.all6();
+    }
+
+    @Benchmark
+    public Tuple all7() {
+        return fixture.all7();
+    }
+
+    @Benchmark
+    public Tuple all8() {
+        return fixture.all8();
+    }
+
+    @Benchmark
+    public Tuple all9() {
+        return fixture.all9();
+    }
+
+    @Benchmark
+    public Tuple all10() {
+        return fixture.all10();
+    }
+
+    private static final class Fixture<C> {
+        private final Transactional<Integer, C> source;
+
+        private Fixture(TransactionProvider<C> provider) {
+            this.source = Transactional.of(context -> 1, provider);
+        }
+
+        private Tuple all2() {
+            return Transactional.all(source, source).get();
+        }
+
+        private Tuple all3() {
+            return Transactional.all(source, source, source).get();
+        }
+
+        private Tuple all4() {
+            return Transactional.all(source, source, source, source).get();
+        }
+
+        private Tuple all5() {
+            return Transactional.all(source, source, source, source, source).get();
+        }
+
+        private Tuple all6() {
+            return Transactional.all(source, source, source, source, source, source).get();
+        }
+
+        private Tuple all7() {
+            return Transactional.all(source, source, source, source, source, source, source).get();
+        }
+
+        private Tuple all8() {
+            return Transactional
+                    .all(
+                            source,
+                            source,
+                            source,
+                            source,
+                            source,
+                            source,
+                            source,
+                            source
+                    )
+                    .get();
+        }
+
+        private Tuple all9() {
+            return Transactional
+                    .all(
+                            source,
+                            source,
+                            source,
+                            source,
+                            source,
+                            source,
+                            source,
+                            source,
+                            source
+                    )
+                    .get();
+        }
+
+        private Tuple all10() {
+            return Transactional
+                    .all(
+                            source,
+                            source,
+                            source,
+                            source,
+                            source,
+                            source,
+                            source,
+                            source,
+                            source,
+                            source
+                    )
+                    .get();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package fi.jubic.easyutils.benchmark;
+
+import fi.jubic.easyutils.transactional.Transactional;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the destructuring {@code map} and {@code peek} of the {@code TransactionalN} classes
+ * against mapping the tuple with its accessors. Run with {@code -prof gc} to see the allocation
+ * rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DestructuringBenchmark {
+    private Transactional<Integer, Providers.Context> map2;
+    private Transactional<Integer, Providers.Context> mapTuple2;
+    private Transactional<?, Providers.Context> peek2;
+
+    private Transactional<Integer, Providers.Context> map5;
+    private Transactional<Integer, Providers.Context> mapTuple5;
+    private Transactional<?, Providers.Context> peek5;
+
+    private Transactional<Integer, Providers.Context> map10;
+    private Transactional<Integer, Providers.Context> mapTuple10;
+    private Transactional<?, Providers.Context> peek10;
+
+    @Setup
+    public void setup() {
+        Transactional<Integer, Providers.Context> source = Transactional.of(
+                context -> 1,
+                new Providers.NoopContextPassingProvider()
+        );
+        map2 = Transactional.all(source, source)
+                .map((a, b) -> a + b);
+        mapTuple2 = Transactional.all(source, source)
+                .map(tuple -> tuple.get0() + tuple.get1());
+        peek2 = Transactional.all(source, source)
+                .peek((a, b) -> { });
+        map5 = Transactional.all(source, source, source, source, source)
+                .map((a, b, c, d, e) -> a + b + c + d + e);
+        mapTuple5 = Transactional.all(source, source, source, source, source)
+                .map(tuple -> tuple.get0() + tuple.get1() + tuple.get2() + tuple.get3()
+                        + tuple.get4());
+        peek5 = Transactional.all(source, source, source, source, source)
+                .peek((a, b, c, d, e) -> { });
+        map10 = Transactional
+                .all(
+                        source,
+                        source,
+                        source,
+                        source,
+                        source,
+                        source,
+                        source,
+                        source,
+                        source,
+                        source
+                )
+                .map((a, b, c, d, e, f, g, h, i, j) -> a + b + c + d + e + f + g + h + i + j);
+        mapTuple10 = Transactional
+                .all(
+                        source,
+                        source,
+                        source,
+                        source,
+                        source,
+                        source,
+                        source,
+                        source,
+                        source,
+                        source
+                )
+                .map(tuple -> tuple.get0() + tuple.get1() + tuple.get2() + tuple.get3()
+                        + tuple.get4() + tuple.get5() + tuple.get6() + tuple.get7()
+                        + tuple.get8() + tuple.get9());
+        peek10 = Transactional
+                .all(
+                        source,
+                        source,
+                        source,
+                        source,
+                        source,
+                        source,
+                        source,
+                        source,
+                        source,
+                        source
+                )
+                .peek((a, b, c, d, e, f, g, h, i, j) -> { });
+    }
+
+    @Benchmark
+    public Integer map2() {
+        return map2.get();
+    }
+
+    @Benchmark
+    public Integer mapTuple2() {
+        return mapTuple2.get();
+    }
+
+    @Benchmark
+    public Object peek2() {
+        return peek2.get();
+    }
+
+    @Benchmark
+    public Integer map5() {
+        return map5.get();
+    }
+
+    @Benchmark
+    public Integer mapTuple5() {
+        return mapTuple5.get();
+    }
+
+    @Benchmark
+    public Object peek5() {
+        return peek5.get();
+    }
+
+    @Benchmark
+    public Integer map10() {
+        return map10.get();
+    }
+
+    @Benchmark
+    public Integer mapTuple10() {
+        return mapTuple10.get();
+    }
+
+    @Benchmark
+    public Object peek10() {
+        return peek10.get();
+    }
+}
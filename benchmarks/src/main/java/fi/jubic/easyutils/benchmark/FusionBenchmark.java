@@ -0,0 +1,158 @@
+package fi.jubic.easyutils.benchmark;
+
+import fi.jubic.easyutils.transactional.Transactional;
+import fi.jubic.easyutils.transactional.Transactional2;
+import fi.jubic.easyutils.tuple.Tuple;
+import fi.jubic.easyutils.tuple.Tuple2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Compares chains of pure stages run by {@link Transactional} against the same chains composed
+ * into nested lambdas, the way {@code Transactional} used to build them. Run with {@code -prof gc}
+ * to compare the allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FusionBenchmark {
+    // Distinct lambda classes keep the call sites megamorphic as they are in real chains.
+    private static final List<Function<Integer, Integer>> MAPPERS = List.of(
+            value -> value + 1,
+            value -> value - 1,
+            value -> value ^ 1,
+            value -> value * 1
+    );
+    private static final List<Consumer<Integer>> ACTIONS = List.of(
+            value -> { },
+            value -> value.hashCode(),
+            value -> value.intValue(),
+            value -> value.toString()
+    );
+
+    @Param({"10", "25", "50", "100"})
+    public int stages;
+
+    private Providers.NoopContextPassingProvider provider;
+    private Transactional<Integer, Providers.Context> chain;
+    private Function<Providers.Context, Integer> composed;
+    private Transactional<Integer, Providers.Context> tupleChain;
+    private Function<Providers.Context, Integer> composedTuple;
+
+    @Setup
+    public void setup() {
+        provider = new Providers.NoopContextPassingProvider();
+        chain = buildChain();
+        composed = buildComposed();
+        tupleChain = buildTupleChain();
+        composedTuple = buildComposedTuple();
+    }
+
+    @Benchmark
+    public Integer fusedGet() {
+        return chain.get();
+    }
+
+    @Benchmark
+    public Integer composedGet() {
+        return provider.runWithTransaction(composed);
+    }
+
+    @Benchmark
+    public Integer fusedBuildAndGet() {
+        return buildChain().get();
+    }
+
+    @Benchmark
+    public Integer composedBuildAndGet() {
+        return provider.runWithTransaction(buildComposed());
+    }
+
+    @Benchmark
+    public Integer fusedTupleGet() {
+        return tupleChain.get();
+    }
+
+    @Benchmark
+    public Integer composedTupleGet() {
+        return provider.runWithTransaction(composedTuple);
+    }
+
+    private Transactional<Integer, Providers.Context> buildChain() {
+        Transactional<Integer, Providers.Context> transactional = Transactional.of(
+                context -> 0,
+                provider
+        );
+        for (int i = 0; i < stages; i++) {
+            transactional = i % 2 == 0
+                    ? transactional.map(MAPPERS.get(i / 2 % MAPPERS.size()))
+                    : transactional.peek(ACTIONS.get(i / 2 % ACTIONS.size()));
+        }
+        return transactional;
+    }
+
+    private Function<Providers.Context, Integer> buildComposed() {
+        Function<Providers.Context, Integer> procedure = context -> 0;
+        for (int i = 0; i < stages; i++) {
+            if (i % 2 == 0) {
+                procedure = MAPPERS.get(i / 2 % MAPPERS.size()).compose(procedure);
+            }
+            else {
+                Function<Providers.Context, Integer> previous = procedure;
+                Consumer<Integer> action = ACTIONS.get(i / 2 % ACTIONS.size());
+                procedure = context -> {
+                    Integer value = previous.apply(context);
+                    action.accept(value);
+                    return value;
+                };
+            }
+        }
+        return procedure;
+    }
+
+    private Transactional<Integer, Providers.Context> buildTupleChain() {
+        Transactional2<Integer, Integer, Providers.Context> transactional = Transactional.all(
+                Transactional.of(context -> 0, provider),
+                Transactional.of(context -> 1, provider)
+        );
+        for (int i = 0; i < stages - 1; i++) {
+            transactional = transactional.peek((t0, t1) -> { });
+        }
+        return transactional.map((BiFunction<Integer, Integer, Integer>) Integer::sum);
+    }
+
+    private Function<Providers.Context, Integer> buildComposedTuple() {
+        Function<Providers.Context, Tuple2<Integer, Integer>> procedure
+                = context -> Tuple.of(0, 1);
+        for (int i = 0; i < stages - 1; i++) {
+            Function<Providers.Context, Tuple2<Integer, Integer>> previous = procedure;
+            procedure = context -> {
+                Tuple2<Integer, Integer> tuple = previous.apply(context);
+                tuple.get0();
+                tuple.get1();
+                return tuple;
+            };
+        }
+        Function<Tuple2<Integer, Integer>, Integer> sum
+                = tuple -> Integer.sum(tuple.get0(), tuple.get1());
+        return sum.compose(procedure);
+    }
+}
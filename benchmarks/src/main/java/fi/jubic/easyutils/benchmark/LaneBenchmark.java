@@ -0,0 +1,94 @@
+package fi.jubic.easyutils.benchmark;
+
+import fi.jubic.easyutils.transactional.Lanes;
+import fi.jubic.easyutils.transactional.RetryPolicy;
+import fi.jubic.easyutils.transactional.Transactional;
+import fi.jubic.easyutils.transactional.mvcc.MvccTransactionProvider;
+import fi.jubic.easyutils.transactional.mvcc.WriteConflictException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares incrementing hot keys of a {@link MvccTransactionProvider} on the calling threads,
+ * retrying write conflicts, against routing the increments of each key to its own lane with
+ * {@code Transactional.onLane}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class LaneBenchmark {
+    private static final RetryPolicy RETRY = RetryPolicy
+            .of(e -> e instanceof WriteConflictException)
+            .withMaxAttempts(Integer.MAX_VALUE)
+            .withBackoff(Duration.ZERO, Duration.ofMillis(1));
+
+    @Param({"2", "16", "1024"})
+    public int keys;
+
+    @Param({"0", "100"})
+    public int statementLatencyMicros;
+
+    private MvccTransactionProvider<Integer, Long> store;
+    private Lanes lanes;
+
+    @Setup
+    public void setup() {
+        store = new MvccTransactionProvider<Integer, Long>()
+                .withStatementLatency(Duration.ofNanos(statementLatencyMicros * 1_000L));
+        for (int key = 0; key < keys; key++) {
+            int initialized = key;
+            store.runWithoutTransaction(ctx -> {
+                ctx.put(initialized, 0L);
+                return null;
+            });
+        }
+        lanes = new Lanes(Runtime.getRuntime().availableProcessors(), 1024);
+    }
+
+    @TearDown
+    public void tearDown() {
+        lanes.close();
+    }
+
+    @Benchmark
+    public Long retried() {
+        int key = ThreadLocalRandom.current().nextInt(keys);
+        return increment(key).retry(RETRY).get();
+    }
+
+    @Benchmark
+    public Long onLane() {
+        int key = ThreadLocalRandom.current().nextInt(keys);
+        return increment(key).onLane(key, lanes).join();
+    }
+
+    private Transactional<Long, ?> increment(int key) {
+        return Transactional.of(
+                ctx -> {
+                    long value = ctx.get(key) + 1;
+                    ctx.put(key, value);
+                    return value;
+                },
+                store
+        );
+    }
+}
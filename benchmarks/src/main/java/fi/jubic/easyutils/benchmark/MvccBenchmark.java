@@ -0,0 +1,85 @@
+package fi.jubic.easyutils.benchmark;
+
+import fi.jubic.easyutils.transactional.RetryPolicy;
+import fi.jubic.easyutils.transactional.Transactional;
+import fi.jubic.easyutils.transactional.mvcc.MvccTransactionProvider;
+import fi.jubic.easyutils.transactional.mvcc.WriteConflictException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@code Transactional} chains against a {@link MvccTransactionProvider} standing in for
+ * a database. Fewer keys mean more write conflicts retried with a {@link RetryPolicy}, and the
+ * statement latency simulates a round trip per read and write.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class MvccBenchmark {
+    private static final RetryPolicy RETRY = RetryPolicy
+            .of(e -> e instanceof WriteConflictException)
+            .withMaxAttempts(Integer.MAX_VALUE)
+            .withBackoff(Duration.ZERO, Duration.ofMillis(1));
+
+    @Param({"2", "16", "1024"})
+    public int keys;
+
+    @Param({"0", "100"})
+    public int statementLatencyMicros;
+
+    private MvccTransactionProvider<Integer, Long> store;
+
+    @Setup
+    public void setup() {
+        store = new MvccTransactionProvider<Integer, Long>()
+                .withStatementLatency(Duration.ofNanos(statementLatencyMicros * 1_000L));
+        for (int key = 0; key < keys; key++) {
+            int initialized = key;
+            store.runWithoutTransaction(ctx -> {
+                ctx.put(initialized, 0L);
+                return null;
+            });
+        }
+    }
+
+    @Benchmark
+    public Long increment() {
+        int key = ThreadLocalRandom.current().nextInt(keys);
+        return Transactional
+                .of(
+                        ctx -> {
+                            long value = ctx.get(key) + 1;
+                            ctx.put(key, value);
+                            return value;
+                        },
+                        store
+                )
+                .retry(RETRY)
+                .get();
+    }
+
+    @Benchmark
+    public long snapshotRead() {
+        int first = ThreadLocalRandom.current().nextInt(keys);
+        int second = ThreadLocalRandom.current().nextInt(keys);
+        return Transactional.of(ctx -> ctx.get(first) + ctx.get(second), store).get();
+    }
+}
@@ -0,0 +1,94 @@
+package fi.jubic.easyutils.benchmark;
+
+import fi.jubic.easyutils.transactional.ThreadContextTransactionProvider;
+import fi.jubic.easyutils.transactional.TransactionProvider;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * {@link TransactionProvider}s that do no work of their own so that the benchmarks measure only
+ * the overhead of the library.
+ */
+final class Providers {
+    private Providers() {
+
+    }
+
+    static final class Context {
+
+    }
+
+    /**
+     * Returns the no-op provider with the given name. Used with a {@code provider} parameter of
+     * the benchmarks measured against both flavors of providers.
+     */
+    static TransactionProvider<?> noop(String name) {
+        switch (name) {
+            case "contextPassing":
+                return new NoopContextPassingProvider();
+            case "threadContext":
+                return new NoopThreadContextProvider();
+            default:
+                throw new IllegalArgumentException("Unknown provider " + name);
+        }
+    }
+
+    static final class NoopContextPassingProvider implements TransactionProvider<Context> {
+        private final Context context = new Context();
+
+        @Override
+        public <T> T runWithTransaction(Function<Context, T> procedure) {
+            return procedure.apply(context);
+        }
+
+        @Override
+        public <T> T runWithoutTransaction(Function<Context, T> procedure) {
+            return procedure.apply(context);
+        }
+    }
+
+    static final class NoopThreadContextProvider implements ThreadContextTransactionProvider {
+        @Override
+        public void begin() {
+
+        }
+
+        @Override
+        public void commit() {
+
+        }
+
+        @Override
+        public void rollback() {
+
+        }
+    }
+
+    /**
+     * A context-passing provider blocking the calling thread for a fixed time on begin and on
+     * commit, like a transaction making round trips to a remote database.
+     */
+    static final class SimulatedLatencyProvider implements TransactionProvider<Context> {
+        private final Context context = new Context();
+        private final long latencyNanos;
+
+        SimulatedLatencyProvider(long latency, TimeUnit unit) {
+            this.latencyNanos = unit.toNanos(latency);
+        }
+
+        @Override
+        public <T> T runWithTransaction(Function<Context, T> procedure) {
+            LockSupport.parkNanos(latencyNanos);
+            T result = procedure.apply(context);
+            LockSupport.parkNanos(latencyNanos);
+            return result;
+        }
+
+        @Override
+        public <T> T runWithoutTransaction(Function<Context, T> procedure) {
+            return procedure.apply(context);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package fi.jubic.easyutils.benchmark;
+
+import fi.jubic.easyutils.transactional.Transactional;
+import fi.jubic.easyutils.transactional.stm.StmTransactionProvider;
+import fi.jubic.easyutils.transactional.stm.TRef;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares transfers between random accounts held in {@link TRef}s of a
+ * {@link StmTransactionProvider} against the same transfers on plain fields guarded by a single
+ * {@code synchronized} lock. Fewer accounts mean more contention. Run with {@code -t} to vary
+ * the number of threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class StmBenchmark {
+    @Param({"2", "16", "1024"})
+    public int accounts;
+
+    private StmTransactionProvider stm;
+    private List<TRef<Long>> refs;
+    private long[] balances;
+
+    @Setup
+    public void setup() {
+        stm = new StmTransactionProvider();
+        refs = new ArrayList<>(accounts);
+        balances = new long[accounts];
+        for (int i = 0; i < accounts; i++) {
+            refs.add(new TRef<>(1_000_000L));
+            balances[i] = 1_000_000L;
+        }
+    }
+
+    @Benchmark
+    public long stmTransfer() {
+        TRef<Long> from = refs.get(ThreadLocalRandom.current().nextInt(accounts));
+        TRef<Long> to = refs.get(ThreadLocalRandom.current().nextInt(accounts));
+        return Transactional
+                .of(
+                        ctx -> {
+                            ctx.update(from, balance -> balance - 1);
+                            return ctx.update(to, balance -> balance + 1);
+                        },
+                        stm
+                )
+                .get();
+    }
+
+    @Benchmark
+    public long stmRead() {
+        TRef<Long> first = refs.get(ThreadLocalRandom.current().nextInt(accounts));
+        TRef<Long> second = refs.get(ThreadLocalRandom.current().nextInt(accounts));
+        return Transactional.of(ctx -> ctx.get(first) + ctx.get(second), stm).get();
+    }
+
+    @Benchmark
+    public long synchronizedTransfer() {
+        int from = ThreadLocalRandom.current().nextInt(accounts);
+        int to = ThreadLocalRandom.current().nextInt(accounts);
+        synchronized (this) {
+            balances[from]--;
+            return ++balances[to];
+        }
+    }
+
+    @Benchmark
+    public long synchronizedRead() {
+        int first = ThreadLocalRandom.current().nextInt(accounts);
+        int second = ThreadLocalRandom.current().nextInt(accounts);
+        synchronized (this) {
+            return balances[first] + balances[second];
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package fi.jubic.easyutils.benchmark;
+
+import fi.jubic.easyutils.transactional.TransactionProvider;
+import fi.jubic.easyutils.transactional.Transactional;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Transactional#get()} and {@link Transactional#bypass()} for chains of
+ * {@code map} and {@code flatMap} stages of different depths. Run with {@code -prof gc} to see
+ * the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionalBenchmark {
+    @Param({"contextPassing", "threadContext"})
+    public String provider;
+
+    @Param({"1", "10", "100"})
+    public int depth;
+
+    private Transactional<Integer, ?> mapChain;
+    private Transactional<Integer, ?> flatMapChain;
+    private Builder<?> builder;
+
+    @Setup
+    public void setup() {
+        builder = new Builder<>(Providers.noop(provider), depth);
+        mapChain = builder.mapChain();
+        flatMapChain = builder.flatMapChain();
+    }
+
+    @Benchmark
+    public Integer get() {
+        return mapChain.get();
+    }
+
+    @Benchmark
+    public Integer bypass() {
+        return mapChain.bypass();
+    }
+
+    @Benchmark
+    public Integer flatMapGet() {
+        return flatMapChain.get();
+    }
+
+    @Benchmark
+    public Integer buildAndGet() {
+        return builder.mapChain().get();
+    }
+
+    private static final class Builder<C> {
+        private final TransactionProvider<C> provider;
+        private final int depth;
+
+        private Builder(TransactionProvider<C> provider, int depth) {
+            this.provider = provider;
+            this.depth = depth;
+        }
+
+        private Transactional<Integer, C> mapChain() {
+            Transactional<Integer, C> transactional = Transactional.of(context -> 0, provider);
+            for (int i = 1; i < depth; i++) {
+                transactional = transactional.map(value -> value + 1);
+            }
+            return transactional;
+        }
+
+        private Transactional<Integer, C> flatMapChain() {
+            Transactional<Integer, C> transactional = Transactional.of(context -> 0, provider);
+            for (int i = 1; i < depth; i++) {
+                transactional = transactional.flatMap(
+                        value -> Transactional.of(context -> value + 1, provider)
+                );
+            }
+            return transactional;
+        }
+    }
+}
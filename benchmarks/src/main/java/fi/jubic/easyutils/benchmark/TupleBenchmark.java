@@ -0,0 +1,74 @@
+package fi.jubic.easyutils.benchmark;
+
+import fi.jubic.easyutils.tuple.Tuple;
+import fi.jubic.easyutils.tuple.Tuple10;
+import fi.jubic.easyutils.tuple.Tuple2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures creating {@link Tuple}s and the costs of {@link Tuple#toList()} and
+ * {@link Tuple#toString()}. Run with {@code -prof gc} to see the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TupleBenchmark {
+    public Integer value = 42;
+    public String text = "text";
+
+    private Tuple2<Integer, String> tuple2;
+    private Tuple10<Integer, String, Integer, String, Integer, String, Integer, String, Integer,
+            String> tuple10;
+
+    @Setup
+    public void setup() {
+        tuple2 = of2();
+        tuple10 = of10();
+    }
+
+    @Benchmark
+    public Tuple2<Integer, String> of2() {
+        return Tuple.of(value, text);
+    }
+
+    @Benchmark
+    public Tuple10<Integer, String, Integer, String, Integer, String, Integer, String, Integer,
+            String> of10() {
+        return Tuple.of(value, text, value, text, value, text, value, text, value, text);
+    }
+
+    @Benchmark
+    public List<Object> toList2() {
+        return tuple2.toList();
+    }
+
+    @Benchmark
+    public List<Object> toList10() {
+        return tuple10.toList();
+    }
+
+    @Benchmark
+    public String toString2() {
+        return tuple2.toString();
+    }
+
+    @Benchmark
+    public String toString10() {
+        return tuple10.toString();
+    }
+}
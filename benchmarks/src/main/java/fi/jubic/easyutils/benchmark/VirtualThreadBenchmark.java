@@ -0,0 +1,93 @@
+package fi.jubic.easyutils.benchmark;
+
+import fi.jubic.easyutils.transactional.Transactional;
+import fi.jubic.easyutils.transactional.VirtualThreads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of {@link Transactional#getAsync(Executor)} on a fixed platform thread
+ * pool against running each transaction on its own virtual thread. The provider blocks for a
+ * simulated round trip on begin and on commit. The virtual thread benchmark requires Java 21.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VirtualThreadBenchmark {
+    private static final int TRANSACTIONS = 10_000;
+
+    @Param({"200"})
+    public int poolSize;
+
+    @Param({"1"})
+    public int latencyMillis;
+
+    private ExecutorService platformPool;
+    private Executor virtualThreads;
+    private Transactional<Integer, Providers.Context> transactional;
+
+    @Setup
+    public void setup() {
+        platformPool = Executors.newFixedThreadPool(poolSize);
+        virtualThreads = VirtualThreads.isSupported() ? VirtualThreads.executor() : null;
+        transactional = Transactional
+                .of(
+                        context -> 1,
+                        new Providers.SimulatedLatencyProvider(latencyMillis, TimeUnit.MILLISECONDS)
+                )
+                .map(value -> value + 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        platformPool.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRANSACTIONS)
+    public int platformThreadPool() {
+        return runAll(platformPool);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRANSACTIONS)
+    public int virtualThreadPerTransaction() {
+        if (virtualThreads == null) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer");
+        }
+        return runAll(virtualThreads);
+    }
+
+    private int runAll(Executor executor) {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        CompletableFuture<Integer>[] futures = new CompletableFuture[TRANSACTIONS];
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            futures[i] = transactional.getAsync(executor);
+        }
+        int sum = 0;
+        for (CompletableFuture<Integer> future : futures) {
+            sum += future.join();
+        }
+        return sum;
+    }
+}
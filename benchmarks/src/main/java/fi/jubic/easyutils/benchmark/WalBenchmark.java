@@ -0,0 +1,87 @@
+package fi.jubic.easyutils.benchmark;
+
+import fi.jubic.easyutils.transactional.Transactional;
+import fi.jubic.easyutils.transactional.wal.WalTransactionProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the commits per second of a {@link WalTransactionProvider} in a temporary directory.
+ * Every commit is flushed to storage, so the results depend on the file system more than on the
+ * library. Run with {@code -t 1} to see the cost of a flush per commit without group commit.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class WalBenchmark {
+    @Param({"64", "1024"})
+    public int valueSize;
+
+    private Path directory;
+    private WalTransactionProvider store;
+    private byte[] value;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("wal-benchmark");
+        store = WalTransactionProvider.open(directory);
+        value = new byte[valueSize];
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public Object commit() {
+        String key = "key-" + ThreadLocalRandom.current().nextInt(100_000);
+        return Transactional
+                .of(
+                        ctx -> {
+                            ctx.put(key, value);
+                            return key;
+                        },
+                        store
+                )
+                .get();
+    }
+
+    @Benchmark
+    public byte[] read() {
+        String key = "key-" + ThreadLocalRandom.current().nextInt(100_000);
+        return Transactional.of(ctx -> ctx.get(key), store).get();
+    }
+
+    static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package fi.jubic.easyutils.benchmark;
+
+import fi.jubic.easyutils.transactional.Transactional;
+import fi.jubic.easyutils.transactional.wal.WalPolicy;
+import fi.jubic.easyutils.transactional.wal.WalTransactionProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to open a {@link WalTransactionProvider} by replaying a log of the given
+ * size written without compaction, which gives the recovery time per GB of log when divided by
+ * the size. The log is likely in the page cache, so the results exclude reading it from storage.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WalRecoveryBenchmark {
+    private static final int VALUE_SIZE = 1024;
+    private static final int WRITES_PER_TRANSACTION = 64;
+
+    @Param({"256", "1024"})
+    public int logMegabytes;
+
+    private Path directory;
+    private WalPolicy policy;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("wal-recovery-benchmark");
+        policy = WalPolicy.defaults().withCompactionThreshold(Integer.MAX_VALUE);
+        byte[] value = new byte[VALUE_SIZE];
+        long transactions = ((long) logMegabytes << 20) / (WRITES_PER_TRANSACTION * VALUE_SIZE);
+        try (WalTransactionProvider store = WalTransactionProvider.open(directory, policy)) {
+            for (long i = 0; i < transactions; i++) {
+                long first = i * WRITES_PER_TRANSACTION;
+                Transactional
+                        .of(
+                                ctx -> {
+                                    for (int j = 0; j < WRITES_PER_TRANSACTION; j++) {
+                                        ctx.put("key-" + (first + j) % 100_000, value);
+                                    }
+                                    return null;
+                                },
+                                store
+                        )
+                        .get();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        WalBenchmark.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public long recover() {
+        try (WalTransactionProvider store = WalTransactionProvider.open(directory, policy)) {
+            return store.commits();
+        }
+    }
+}
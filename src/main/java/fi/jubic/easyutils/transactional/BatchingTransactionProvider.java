@@ -0,0 +1,317 @@
+package fi.jubic.easyutils.transactional;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A {@link TransactionProvider} decorator coalescing concurrent transactions into a single
+ * transaction of the underlying provider. Many small writes therefore share the cost of a single
+ * begin and commit, such as a single log flush of a database.
+ *
+ * <p>
+ *     The first thread arriving to an empty batch leads it. The leader waits for more procedures
+ *     until the batch is full or the maximum wait time has elapsed, and then performs all of the
+ *     procedures of the batch sequentially in one underlying transaction. The other threads
+ *     block until the batch has been committed or rolled back.
+ * </p>
+ *
+ * <p>
+ *     If a procedure throws, the underlying transaction is rolled back. The failed procedure is
+ *     then isolated into a transaction of its own and the rest of the batch is performed again
+ *     without it, so that a single failing write does not fail the others. The procedures of a
+ *     batch may therefore be performed more than once and should not have side effects outside
+ *     of the transaction. If the commit itself fails, the failure is rethrown to every member of
+ *     the batch.
+ * </p>
+ *
+ * <p>
+ *     The procedures are performed on the thread leading the batch. Thread context based
+ *     underlying providers thus begin and commit the shared transaction on the leader thread.
+ *     A transaction started by a procedure already being performed in a batch is passed to the
+ *     underlying provider directly.
+ * </p>
+ *
+ * @param <C> the type of the transaction context
+ */
+public class BatchingTransactionProvider<C> implements TransactionProvider<C> {
+    private final TransactionProvider<C> provider;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Member<C, ?>> queue = new ArrayDeque<>();
+    private final ThreadLocal<Boolean> performing = new ThreadLocal<>();
+    private boolean collecting;
+
+    /**
+     * Create a {@code BatchingTransactionProvider} for the given provider.
+     *
+     * @param provider the provider performing the coalesced transactions
+     * @param maxBatchSize the maximum number of procedures performed in a single transaction
+     * @param maxWait the maximum time the first procedure of a batch waits for the others
+     */
+    public BatchingTransactionProvider(
+            TransactionProvider<C> provider,
+            int maxBatchSize,
+            Duration maxWait
+    ) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        if (maxWait.isNegative()) {
+            throw new IllegalArgumentException("maxWait must not be negative");
+        }
+        this.provider = Objects.requireNonNull(provider);
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = maxWait.toNanos();
+    }
+
+    @Override
+    public <T> T runWithTransaction(Function<C, T> procedure) {
+        return batch(procedure, TransactionHints.DEFAULTS);
+    }
+
+    @Override
+    public <T> T runWithoutTransaction(Function<C, T> procedure) {
+        return provider.runWithoutTransaction(procedure);
+    }
+
+    /**
+     * Read-only procedures gain nothing from sharing a commit and are passed to the underlying
+     * provider directly. The other procedures are batched. The shared transaction is given the
+     * earliest deadline of the members of the batch, and their scheduling class if they all
+     * have the same one.
+     */
+    @Override
+    public <T> T runWithTransaction(Function<C, T> procedure, TransactionHints hints) {
+        if (hints.isReadOnly()) return provider.runWithTransaction(procedure, hints);
+
+        return batch(procedure, hints);
+    }
+
+    @Override
+    public <T> T runWithoutTransaction(Function<C, T> procedure, TransactionHints hints) {
+        return provider.runWithoutTransaction(procedure, hints);
+    }
+
+    /**
+     * Returns the listener of the underlying provider. Every member of a batch is reported as a
+     * transaction of its own, as the shared transaction is not visible to the
+     * {@code Transactional} of a member.
+     */
+    @Override
+    public TransactionListener transactionListener() {
+        return provider.transactionListener();
+    }
+
+    private <T> T batch(Function<C, T> procedure, TransactionHints hints) {
+        if (performing.get() != null) return provider.runWithTransaction(procedure, hints);
+
+        Member<C, T> member = new Member<>(procedure, hints);
+        synchronized (lock) {
+            queue.add(member);
+            if (queue.size() >= maxBatchSize) lock.notifyAll();
+        }
+
+        boolean interrupted = false;
+        while (true) {
+            List<Member<C, ?>> batch = new ArrayList<>();
+            interrupted |= collect(member, batch);
+            if (batch.isEmpty()) break;
+
+            performing.set(Boolean.TRUE);
+            try {
+                perform(batch);
+            }
+            finally {
+                performing.remove();
+            }
+        }
+        interrupted |= member.await();
+        if (interrupted) Thread.currentThread().interrupt();
+
+        return member.result();
+    }
+
+    /**
+     * Either waits until the given member has been taken into a batch led by another thread, or
+     * leads the next batch and adds its members to {@code batch}. The member leading a batch is
+     * not necessarily part of it, in which case it has to lead another one.
+     *
+     * @return whether the thread was interrupted while waiting
+     */
+    private boolean collect(Member<C, ?> member, List<Member<C, ?>> batch) {
+        boolean interrupted = false;
+        synchronized (lock) {
+            while (collecting && !member.taken) {
+                try {
+                    lock.wait();
+                }
+                catch (InterruptedException exception) {
+                    interrupted = true;
+                }
+            }
+            if (member.taken) return interrupted;
+
+            collecting = true;
+            long deadline = System.nanoTime() + maxWaitNanos;
+            while (!interrupted && queue.size() < maxBatchSize) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) break;
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                }
+                catch (InterruptedException exception) {
+                    interrupted = true;
+                }
+            }
+
+            while (!queue.isEmpty() && batch.size() < maxBatchSize) {
+                Member<C, ?> next = queue.poll();
+                next.taken = true;
+                batch.add(next);
+            }
+            collecting = false;
+            lock.notifyAll();
+        }
+        return interrupted;
+    }
+
+    private void perform(List<Member<C, ?>> batch) {
+        List<Member<C, ?>> remaining = batch;
+        while (remaining.size() > 1) {
+            Attempt<C> attempt = new Attempt<>(remaining);
+            try {
+                provider.runWithTransaction(attempt, attempt.hints());
+            }
+            catch (RuntimeException | Error exception) {
+                if (attempt.failed < 0) {
+                    remaining.forEach(member -> member.fail(exception));
+                    return;
+                }
+
+                remaining = new ArrayList<>(remaining);
+                remaining.remove(attempt.failed).performAlone(provider);
+                continue;
+            }
+
+            for (int i = 0; i < remaining.size(); i++) {
+                remaining.get(i).succeed(attempt.results[i]);
+            }
+            return;
+        }
+
+        if (remaining.size() == 1) remaining.get(0).performAlone(provider);
+    }
+
+    /**
+     * The procedure of a single underlying transaction performing all of the members of a batch.
+     */
+    private static final class Attempt<C> implements Function<C, Void> {
+        private final List<Member<C, ?>> members;
+        private final Object[] results;
+        private int failed = -1;
+
+        private Attempt(List<Member<C, ?>> members) {
+            this.members = members;
+            this.results = new Object[members.size()];
+        }
+
+        /**
+         * Returns the hints of the shared transaction: the earliest deadline of the members, and
+         * their scheduling class if all of them have the same one.
+         */
+        private TransactionHints hints() {
+            Deadline deadline = null;
+            Object schedulingClass = members.get(0).hints.schedulingClass().orElse(null);
+            for (Member<C, ?> member : members) {
+                Deadline memberDeadline = member.hints.deadline();
+                if (memberDeadline != null) {
+                    if (deadline == null || memberDeadline.nanoTime < deadline.nanoTime) {
+                        deadline = memberDeadline;
+                    }
+                }
+                if (!Objects.equals(schedulingClass, member.hints.schedulingClass().orElse(null))) {
+                    schedulingClass = null;
+                }
+            }
+            return TransactionHints.DEFAULTS
+                    .withDeadline(deadline)
+                    .withSchedulingClass(schedulingClass);
+        }
+
+        @Override
+        public Void apply(C context) {
+            for (int i = 0; i < results.length; i++) {
+                try {
+                    results[i] = members.get(i).procedure.apply(context);
+                }
+                catch (RuntimeException | Error exception) {
+                    failed = i;
+                    throw exception;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class Member<C, T> {
+        private final Function<C, T> procedure;
+        private final TransactionHints hints;
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private boolean taken;
+        private Object result;
+        private Throwable failure;
+
+        private Member(Function<C, T> procedure, TransactionHints hints) {
+            this.procedure = procedure;
+            this.hints = hints;
+        }
+
+        private void performAlone(TransactionProvider<C> provider) {
+            try {
+                succeed(provider.runWithTransaction(procedure, hints));
+            }
+            catch (RuntimeException | Error exception) {
+                fail(exception);
+            }
+        }
+
+        private void succeed(Object result) {
+            this.result = result;
+            done.countDown();
+        }
+
+        private void fail(Throwable failure) {
+            this.failure = failure;
+            done.countDown();
+        }
+
+        private boolean await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    return interrupted;
+                }
+                catch (InterruptedException exception) {
+                    interrupted = true;
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private T result() {
+            if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+            if (failure instanceof Error) throw (Error) failure;
+            return (T) result;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package fi.jubic.easyutils.transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Performs the procedures combined with {@code Transactional.allParallel}. Providers that are not
+ * {@link ParallelTransactionProvider}s perform the procedures sequentially in the context of the
+ * running transaction.
+ *
+ * @param <C> the type of the transaction context
+ */
+final class Branches<C> {
+    private final List<Branch> branches;
+    private final Object[] results;
+    private final CountDownLatch remaining;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final Callbacks callbacks = Callbacks.bound();
+    private final Deadline deadline = Deadline.bound();
+
+    private Branches(List<? extends Transactional<?, C>> transactionals, List<C> forks) {
+        this.branches = new ArrayList<>(transactionals.size());
+        this.results = new Object[transactionals.size()];
+        this.remaining = new CountDownLatch(transactionals.size());
+        for (int i = 0; i < transactionals.size(); i++) {
+            branches.add(new Branch(i, transactionals.get(i), forks.get(i)));
+        }
+    }
+
+    static <C> Object[] run(
+            TransactionProvider<C> provider,
+            C context,
+            List<? extends Transactional<?, C>> transactionals
+    ) {
+        if (!(provider instanceof ParallelTransactionProvider)) {
+            Object[] results = new Object[transactionals.size()];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = transactionals.get(i).run(context);
+            }
+            return results;
+        }
+
+        ParallelTransactionProvider<C> parallelProvider = (ParallelTransactionProvider<C>) provider;
+        List<C> forks = new ArrayList<>(transactionals.size());
+        try {
+            for (int i = 0; i < transactionals.size(); i++) {
+                forks.add(parallelProvider.fork(context));
+            }
+        }
+        catch (RuntimeException exception) {
+            rollback(parallelProvider, forks, 0, exception);
+            throw exception;
+        }
+
+        Branches<C> branches = new Branches<>(transactionals, forks);
+        Throwable failure = branches.await(parallelProvider.forkExecutor());
+        if (failure != null) {
+            rollback(parallelProvider, forks, 0, failure);
+            throw rethrow(failure);
+        }
+
+        for (int i = 0; i < forks.size(); i++) {
+            try {
+                parallelProvider.commitFork(forks.get(i));
+            }
+            catch (RuntimeException exception) {
+                rollback(parallelProvider, forks, i + 1, exception);
+                throw exception;
+            }
+        }
+        return branches.results;
+    }
+
+    private Throwable await(Executor executor) {
+        for (Branch branch : branches) {
+            try {
+                executor.execute(branch);
+            }
+            catch (RejectedExecutionException exception) {
+                fail(exception);
+                break;
+            }
+        }
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                remaining.await();
+                break;
+            }
+            catch (InterruptedException exception) {
+                interrupted = true;
+                fail(new CancellationException("Interrupted while waiting for parallel branches"));
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+
+        return failure.get();
+    }
+
+    private void fail(Throwable throwable) {
+        if (!failure.compareAndSet(null, throwable)) return;
+
+        for (Branch branch : branches) {
+            branch.cancel();
+        }
+    }
+
+    private static <C> void rollback(
+            ParallelTransactionProvider<C> provider,
+            List<C> forks,
+            int from,
+            Throwable failure
+    ) {
+        for (int i = from; i < forks.size(); i++) {
+            try {
+                provider.rollbackFork(forks.get(i));
+            }
+            catch (RuntimeException exception) {
+                failure.addSuppressed(exception);
+            }
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable throwable) {
+        if (throwable instanceof RuntimeException) return (RuntimeException) throwable;
+        if (throwable instanceof Error) throw (Error) throwable;
+        return new CompletionException(throwable);
+    }
+
+    private final class Branch implements Runnable {
+        private static final int NEW = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+
+        private final int index;
+        private final Transactional<?, C> transactional;
+        private final C fork;
+
+        private int state = NEW;
+        private Thread runner;
+        private boolean interrupted;
+
+        private Branch(int index, Transactional<?, C> transactional, C fork) {
+            this.index = index;
+            this.transactional = transactional;
+            this.fork = fork;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (state != NEW) return;
+                state = RUNNING;
+                runner = Thread.currentThread();
+            }
+
+            // The branch shares the callbacks and the deadline of the surrounding transaction.
+            Callbacks previousCallbacks = callbacks != null ? callbacks.enter() : null;
+            Deadline previousDeadline = deadline != null ? deadline.enter() : null;
+            try {
+                results[index] = transactional.run(fork);
+            }
+            catch (Throwable throwable) {
+                fail(throwable);
+            }
+            finally {
+                if (deadline != null) Deadline.exit(previousDeadline);
+                if (callbacks != null) Callbacks.exit(previousCallbacks);
+                synchronized (this) {
+                    state = DONE;
+                    runner = null;
+                    // Do not leak the cancellation to the next task of the worker thread.
+                    if (interrupted) Thread.interrupted();
+                }
+                remaining.countDown();
+            }
+        }
+
+        private synchronized void cancel() {
+            if (state == NEW) {
+                state = DONE;
+                remaining.countDown();
+            }
+            else if (state == RUNNING && runner != Thread.currentThread()) {
+                interrupted = true;
+                runner.interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package fi.jubic.easyutils.transactional;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.function.ToLongFunction;
+
+/**
+ * The bounds of a {@link ResultCache}. A cache holds results up to a maximum total weight,
+ * evicting the least recently used results first, and optionally expires results after a time to
+ * live.
+ *
+ * <pre>{@code
+ * ResultCache cache = new ResultCache(
+ *         CachePolicy.maximumSize(10_000).withTimeToLive(Duration.ofMinutes(5))
+ * );
+ * }</pre>
+ *
+ * <p>
+ *     {@code CachePolicy} instances are immutable. The {@code with} methods return modified
+ *     copies.
+ * </p>
+ */
+public final class CachePolicy {
+    private static final ToLongFunction<Object> UNIT_WEIGHT = value -> 1L;
+
+    private final long maximumWeight;
+    private final ToLongFunction<Object> weigher;
+    private final Duration timeToLive;
+
+    private CachePolicy(long maximumWeight, ToLongFunction<Object> weigher, Duration timeToLive) {
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Create a {@code CachePolicy} holding at most the given number of results. The results do
+     * not expire by default.
+     *
+     * @param maximumSize the maximum number of results
+     * @return the created policy
+     */
+    public static CachePolicy maximumSize(long maximumSize) {
+        return maximumWeight(maximumSize, UNIT_WEIGHT);
+    }
+
+    /**
+     * Create a {@code CachePolicy} holding results up to the given total weight. The weight of a
+     * result is calculated once when it is stored. Results heavier than the maximum weight of a
+     * segment of the cache are not stored. The results do not expire by default.
+     *
+     * @param maximumWeight the maximum total weight of the results
+     * @param weigher the function calculating the non-negative weight of a result
+     * @return the created policy
+     */
+    public static CachePolicy maximumWeight(long maximumWeight, ToLongFunction<Object> weigher) {
+        if (maximumWeight < 1) {
+            throw new IllegalArgumentException("maximumWeight must be positive");
+        }
+        return new CachePolicy(maximumWeight, Objects.requireNonNull(weigher), null);
+    }
+
+    /**
+     * Returns a copy of this policy expiring the results after the given time since they were
+     * stored.
+     *
+     * @param timeToLive the time to live of the results
+     * @return the modified policy
+     */
+    public CachePolicy withTimeToLive(Duration timeToLive) {
+        if (timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("timeToLive must be positive");
+        }
+        return new CachePolicy(maximumWeight, weigher, timeToLive);
+    }
+
+    long maximumWeight() {
+        return maximumWeight;
+    }
+
+    ToLongFunction<Object> weigher() {
+        return weigher;
+    }
+
+    /**
+     * Returns the time to live in nanoseconds, or zero if the results do not expire.
+     */
+    long timeToLiveNanos() {
+        return timeToLive == null ? 0L : timeToLive.toNanos();
+    }
+}
@@ -0,0 +1,259 @@
+package fi.jubic.easyutils.transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * The callbacks registered by the {@code onCommit} and {@code onRollback} stages reached while
+ * performing a single transaction. The callbacks are collected into the instance bound to the
+ * thread performing the procedure and run after the transaction has completed. A
+ * {@link Procedure} collecting callbacks is bound to the thread instead, and its instance is
+ * created and bound when first needed.
+ */
+final class Callbacks {
+    private static final ThreadLocal<Callbacks> CURRENT = new ThreadLocal<>();
+    private static final ThreadLocal<Procedure<?, ?>> COLLECTOR = new ThreadLocal<>();
+
+    private final List<Runnable> commitCallbacks = new ArrayList<>();
+    private final List<Consumer<RuntimeException>> rollbackCallbacks = new ArrayList<>();
+
+    /**
+     * The callbacks of the transaction joined by the procedure, or {@code null} if the procedure
+     * performs a transaction of its own.
+     */
+    private Callbacks joined;
+
+    /**
+     * Returns the callbacks bound to the current thread, or {@code null} if none are. The
+     * callbacks of a procedure bound to the thread are created if it has none yet.
+     */
+    static Callbacks bound() {
+        Callbacks callbacks = CURRENT.get();
+        if (callbacks != null) return callbacks;
+
+        Procedure<?, ?> collector = COLLECTOR.get();
+        if (collector == null) return null;
+        callbacks = collector.callbacks();
+        CURRENT.set(callbacks);
+        return callbacks;
+    }
+
+    static Callbacks current() {
+        Callbacks callbacks = bound();
+        if (callbacks == null) {
+            throw new IllegalStateException("No transaction collecting callbacks");
+        }
+        return callbacks;
+    }
+
+    /**
+     * Binds these callbacks to the current thread.
+     *
+     * @return the callbacks bound to the thread before, to be passed to {@link #exit(Callbacks)}
+     */
+    Callbacks enter() {
+        Callbacks previous = CURRENT.get();
+        CURRENT.set(this);
+        return previous;
+    }
+
+    static void exit(Callbacks previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        }
+        else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Unbinds the callbacks bound to the current thread, so that the callbacks registered
+     * meanwhile are collected by a procedure of another transaction.
+     *
+     * @return the callbacks bound to the thread, to be passed to
+     *         {@link #exit(Procedure, Callbacks)}
+     */
+    static Callbacks suspend() {
+        Callbacks previous = CURRENT.get();
+        if (previous != null) CURRENT.remove();
+        return previous;
+    }
+
+    /**
+     * Binds the given procedure to the current thread to collect the callbacks registered while
+     * it is performed. Its callbacks are created when first needed.
+     *
+     * @return the procedure bound to the thread before, to be passed to
+     *         {@link #exit(Procedure, Callbacks)}
+     */
+    static Procedure<?, ?> collect(Procedure<?, ?> collector) {
+        Procedure<?, ?> previous = COLLECTOR.get();
+        COLLECTOR.set(collector);
+        return previous;
+    }
+
+    static void exit(Procedure<?, ?> previousCollector, Callbacks previousCallbacks) {
+        if (previousCollector == null) {
+            COLLECTOR.remove();
+        }
+        else {
+            COLLECTOR.set(previousCollector);
+        }
+        exit(previousCallbacks);
+    }
+
+    /**
+     * Discards the collected callbacks, for example when a provider performs the same procedure
+     * again or when the callbacks of a failed attempt have been run before a retry.
+     */
+    synchronized void clear() {
+        commitCallbacks.clear();
+        rollbackCallbacks.clear();
+    }
+
+    /**
+     * Registers the following callbacks to the given callbacks of a joined transaction instead,
+     * so that they are run when the joined transaction completes.
+     */
+    synchronized void join(Callbacks joined) {
+        this.joined = joined;
+    }
+
+    synchronized <T> void onCommit(Consumer<T> action, T value, Executor executor) {
+        if (joined != null) {
+            joined.onCommit(action, value, executor);
+            return;
+        }
+        commitCallbacks.add(() -> {
+            if (executor == null) {
+                action.accept(value);
+            }
+            else {
+                executor.execute(() -> action.accept(value));
+            }
+        });
+    }
+
+    synchronized void onRollback(Consumer<Throwable> action, Executor executor) {
+        if (joined != null) {
+            joined.onRollback(action, executor);
+            return;
+        }
+        rollbackCallbacks.add(failure -> {
+            if (executor == null) {
+                action.accept(failure);
+            }
+            else {
+                executor.execute(() -> action.accept(failure));
+            }
+        });
+    }
+
+    /**
+     * Returns a savepoint marking the callbacks registered so far, to be passed to
+     * {@link #rollbackToSavepoint(Savepoint, RuntimeException)}. The savepoint marks the callbacks
+     * of the joined transaction if these callbacks are registered to it.
+     */
+    synchronized Savepoint savepoint() {
+        if (joined != null) return joined.savepoint();
+
+        return new Savepoint(commitCallbacks.size(), rollbackCallbacks.size());
+    }
+
+    /**
+     * Undoes the callbacks registered after the given savepoint, when the work performed after
+     * it has been rolled back. The commit callbacks are discarded and the rollback callbacks are
+     * run in the order they were registered. Exceptions thrown by the rollback callbacks are
+     * added as suppressed to the failure.
+     */
+    void rollbackToSavepoint(Savepoint savepoint, RuntimeException failure) {
+        List<Consumer<RuntimeException>> callbacks;
+        synchronized (this) {
+            if (joined != null) {
+                joined.rollbackToSavepoint(savepoint, failure);
+                return;
+            }
+            commitCallbacks.subList(savepoint.commits, commitCallbacks.size()).clear();
+            List<Consumer<RuntimeException>> added = rollbackCallbacks.subList(
+                    savepoint.rollbacks,
+                    rollbackCallbacks.size()
+            );
+            callbacks = new ArrayList<>(added);
+            added.clear();
+        }
+
+        for (Consumer<RuntimeException> callback : callbacks) {
+            try {
+                callback.accept(failure);
+            }
+            catch (RuntimeException exception) {
+                failure.addSuppressed(exception);
+            }
+        }
+    }
+
+    /**
+     * Runs the commit callbacks in the order they were registered. All of the callbacks are run
+     * even if some of them throw. The first exception is then rethrown with the others
+     * suppressed.
+     */
+    void committed() {
+        List<Runnable> callbacks;
+        synchronized (this) {
+            callbacks = new ArrayList<>(commitCallbacks);
+            clear();
+        }
+
+        RuntimeException failure = null;
+        for (Runnable callback : callbacks) {
+            try {
+                callback.run();
+            }
+            catch (RuntimeException exception) {
+                if (failure == null) {
+                    failure = exception;
+                }
+                else {
+                    failure.addSuppressed(exception);
+                }
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Runs the rollback callbacks in the order they were registered. Exceptions thrown by the
+     * callbacks are added as suppressed to the failure of the transaction.
+     */
+    void rolledBack(RuntimeException failure) {
+        List<Consumer<RuntimeException>> callbacks;
+        synchronized (this) {
+            callbacks = new ArrayList<>(rollbackCallbacks);
+            clear();
+        }
+
+        for (Consumer<RuntimeException> callback : callbacks) {
+            try {
+                callback.accept(failure);
+            }
+            catch (RuntimeException exception) {
+                failure.addSuppressed(exception);
+            }
+        }
+    }
+
+    /**
+     * The number of commit and rollback callbacks registered when a savepoint was set.
+     */
+    static final class Savepoint {
+        private final int commits;
+        private final int rollbacks;
+
+        private Savepoint(int commits, int rollbacks) {
+            this.commits = commits;
+            this.rollbacks = rollbacks;
+        }
+    }
+}
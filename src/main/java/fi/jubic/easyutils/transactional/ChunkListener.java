@@ -0,0 +1,30 @@
+package fi.jubic.easyutils.transactional;
+
+/**
+ * A listener notified of the chunks written by a {@link TransactionalSink}. The throughput of a
+ * chunk is its number of elements divided by its latency. All of the methods do nothing by
+ * default.
+ */
+public interface ChunkListener {
+    /**
+     * Called after a chunk has been committed.
+     *
+     * @param elements the number of elements in the chunk
+     * @param latencyNanos the time taken by the transaction in nanoseconds
+     */
+    default void onCommit(int elements, long latencyNanos) {
+
+    }
+
+    /**
+     * Called after a chunk has been rolled back. The sink does not accept more elements after a
+     * failed chunk.
+     *
+     * @param elements the number of elements in the chunk
+     * @param latencyNanos the time taken by the transaction in nanoseconds
+     * @param failure the exception thrown by the transaction
+     */
+    default void onRollback(int elements, long latencyNanos, RuntimeException failure) {
+
+    }
+}
@@ -0,0 +1,53 @@
+package fi.jubic.easyutils.transactional;
+
+import java.util.function.Consumer;
+
+/**
+ * The producer side of a {@link TransactionalSink} opened with
+ * {@link TransactionalSink#open(java.util.concurrent.Executor)}. Elements may be written from
+ * multiple threads concurrently.
+ *
+ * @param <E> the type of the elements
+ */
+public interface ChunkWriter<E> extends Consumer<E>, AutoCloseable {
+    /**
+     * Adds an element to the next chunk. Blocks while the buffer of the sink is full, so that
+     * producers are slowed down to the rate at which chunks are committed.
+     *
+     * @param element the element
+     * @throws IllegalStateException if the writer has been closed
+     * @throws RuntimeException the exception of a failed chunk, after which no more elements are
+     *                          accepted
+     */
+    @Override
+    void accept(E element);
+
+    /**
+     * Writes the buffered elements and waits for their chunks to be committed. Rethrows the
+     * exception of a failed chunk.
+     */
+    @Override
+    void close();
+
+    /**
+     * Returns the number of elements committed so far.
+     *
+     * @return the number of committed elements
+     */
+    long committedElements();
+
+    /**
+     * Returns the number of chunks committed so far.
+     *
+     * @return the number of committed chunks
+     */
+    long committedChunks();
+
+    /**
+     * Returns the number of elements the next chunk will contain at most. The size changes over
+     * time if the sink adapts it toward a target latency.
+     *
+     * @return the current chunk size
+     */
+    int chunkSize();
+}
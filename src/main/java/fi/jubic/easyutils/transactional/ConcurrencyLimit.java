@@ -0,0 +1,249 @@
+package fi.jubic.easyutils.transactional;
+
+import java.time.Duration;
+
+/**
+ * The policy of a {@link ConcurrencyLimitingTransactionProvider}, adapting the number of
+ * transactions allowed to run at once to the observed transaction latency.
+ *
+ * <pre>{@code
+ * ConcurrencyLimit limit = ConcurrencyLimit.gradient(20)
+ *         .withBounds(4, 200)
+ *         .withQueueTimeout(Duration.ofMillis(50));
+ * }</pre>
+ *
+ * <p>
+ *     The AIMD algorithm grows the limit by one after each transaction completing under the
+ *     latency threshold and shrinks it by ten percent after each one exceeding it. The gradient
+ *     algorithm needs no threshold. It compares each latency to a long-term average and shrinks
+ *     the limit in proportion when transactions slow down, growing it by the square root of the
+ *     limit otherwise. Neither algorithm grows the limit while less than half of it is in use.
+ * </p>
+ *
+ * <p>
+ *     By default, transactions exceeding the limit are rejected immediately. With a queue
+ *     timeout they wait in arrival order for up to the given time before being rejected.
+ * </p>
+ *
+ * <p>
+ *     {@code ConcurrencyLimit} instances are immutable. The {@code with} methods return modified
+ *     copies.
+ * </p>
+ */
+public final class ConcurrencyLimit {
+    private final boolean gradient;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final long queueTimeoutNanos;
+    private final int maxQueueSize;
+
+    private ConcurrencyLimit(
+            boolean gradient,
+            int initialLimit,
+            int minLimit,
+            int maxLimit,
+            long latencyThresholdNanos,
+            long queueTimeoutNanos,
+            int maxQueueSize
+    ) {
+        this.gradient = gradient;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThresholdNanos;
+        this.queueTimeoutNanos = queueTimeoutNanos;
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    /**
+     * Create a {@code ConcurrencyLimit} adapting the limit with additive increase and
+     * multiplicative decrease. The limit is bounded between 1 and 1000 by default.
+     *
+     * @param initialLimit the limit before any transaction has completed
+     * @param latencyThreshold the latency above which the limit is decreased
+     * @return the created policy
+     */
+    public static ConcurrencyLimit aimd(int initialLimit, Duration latencyThreshold) {
+        if (latencyThreshold.isNegative() || latencyThreshold.isZero()) {
+            throw new IllegalArgumentException("latencyThreshold must be positive");
+        }
+        return create(false, initialLimit, latencyThreshold.toNanos());
+    }
+
+    /**
+     * Create a {@code ConcurrencyLimit} adapting the limit to the gradient of the latency. The
+     * limit is bounded between 1 and 1000 by default.
+     *
+     * @param initialLimit the limit before any transaction has completed
+     * @return the created policy
+     */
+    public static ConcurrencyLimit gradient(int initialLimit) {
+        return create(true, initialLimit, 0L);
+    }
+
+    private static ConcurrencyLimit create(
+            boolean gradient,
+            int initialLimit,
+            long latencyThresholdNanos
+    ) {
+        if (initialLimit < 1) {
+            throw new IllegalArgumentException("initialLimit must be positive");
+        }
+        return new ConcurrencyLimit(
+                gradient,
+                initialLimit,
+                1,
+                Math.max(1000, initialLimit),
+                latencyThresholdNanos,
+                0L,
+                Integer.MAX_VALUE
+        );
+    }
+
+    /**
+     * Returns a copy of this policy keeping the limit within the given bounds.
+     *
+     * @param minLimit the lowest limit
+     * @param maxLimit the highest limit
+     * @return the modified policy
+     */
+    public ConcurrencyLimit withBounds(int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Bounds must satisfy 1 <= minLimit <= maxLimit");
+        }
+        return new ConcurrencyLimit(
+                gradient,
+                initialLimit,
+                minLimit,
+                maxLimit,
+                latencyThresholdNanos,
+                queueTimeoutNanos,
+                maxQueueSize
+        );
+    }
+
+    /**
+     * Returns a copy of this policy queueing the transactions exceeding the limit for up to the
+     * given time. A zero timeout rejects them immediately.
+     *
+     * @param queueTimeout the maximum time a transaction waits to be admitted
+     * @return the modified policy
+     */
+    public ConcurrencyLimit withQueueTimeout(Duration queueTimeout) {
+        if (queueTimeout.isNegative()) {
+            throw new IllegalArgumentException("queueTimeout must not be negative");
+        }
+        return new ConcurrencyLimit(
+                gradient,
+                initialLimit,
+                minLimit,
+                maxLimit,
+                latencyThresholdNanos,
+                queueTimeout.toNanos(),
+                maxQueueSize
+        );
+    }
+
+    /**
+     * Returns a copy of this policy rejecting the transactions exceeding the limit immediately
+     * when the given number of transactions are already queued.
+     *
+     * @param maxQueueSize the maximum number of queued transactions
+     * @return the modified policy
+     */
+    public ConcurrencyLimit withMaxQueueSize(int maxQueueSize) {
+        if (maxQueueSize < 0) {
+            throw new IllegalArgumentException("maxQueueSize must not be negative");
+        }
+        return new ConcurrencyLimit(
+                gradient,
+                initialLimit,
+                minLimit,
+                maxLimit,
+                latencyThresholdNanos,
+                queueTimeoutNanos,
+                maxQueueSize
+        );
+    }
+
+    long queueTimeoutNanos() {
+        return queueTimeoutNanos;
+    }
+
+    int maxQueueSize() {
+        return maxQueueSize;
+    }
+
+    Algorithm newAlgorithm() {
+        int initial = Math.min(maxLimit, Math.max(minLimit, initialLimit));
+        return gradient ? new Gradient(initial) : new Aimd(initial);
+    }
+
+    /**
+     * The mutable state of adapting the limit, updated while holding the lock of the provider.
+     */
+    abstract static class Algorithm {
+        int limit;
+
+        Algorithm(int initial) {
+            this.limit = initial;
+        }
+
+        /**
+         * Updates the limit after a transaction completed.
+         *
+         * @param latencyNanos the latency of the transaction
+         * @param inFlight the number of transactions running, including the completed one
+         */
+        abstract void update(long latencyNanos, int inFlight);
+    }
+
+    private final class Aimd extends Algorithm {
+        private Aimd(int initial) {
+            super(initial);
+        }
+
+        @Override
+        void update(long latencyNanos, int inFlight) {
+            if (latencyNanos > latencyThresholdNanos) {
+                limit = Math.max(minLimit, (int) (limit * 0.9));
+            }
+            else if (inFlight * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1);
+            }
+        }
+    }
+
+    private final class Gradient extends Algorithm {
+        private static final double TOLERANCE = 1.5;
+        private static final double SMOOTHING = 0.2;
+        private static final double LONG_TERM_WEIGHT = 2.0 / 101;
+
+        private double estimate;
+        private double longTermNanos;
+
+        private Gradient(int initial) {
+            super(initial);
+            this.estimate = initial;
+        }
+
+        @Override
+        void update(long latencyNanos, int inFlight) {
+            double latency = Math.max(1L, latencyNanos);
+            longTermNanos = longTermNanos == 0.0
+                    ? latency
+                    : longTermNanos + (latency - longTermNanos) * LONG_TERM_WEIGHT;
+            if (inFlight * 2 < estimate) return;
+
+            double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longTermNanos / latency));
+            double next = estimate * gradient + Math.sqrt(estimate);
+            estimate = Math.min(
+                    maxLimit,
+                    Math.max(minLimit, estimate * (1 - SMOOTHING) + next * SMOOTHING)
+            );
+            limit = (int) estimate;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package fi.jubic.easyutils.transactional;
+
+/**
+ * Thrown when a {@link ConcurrencyLimitingTransactionProvider} rejects a transaction because the
+ * concurrency limit has been reached and the transaction could not be queued or was not admitted
+ * within the queue timeout. The transaction is not begun.
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ConcurrencyLimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,383 @@
+package fi.jubic.easyutils.transactional;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A {@link TransactionProvider} decorator limiting the number of transactions running at once.
+ * When the database slows down, fewer transactions are let through instead of piling more of them
+ * onto the connection pool. The limit adapts to the latency of the transactions as set by the
+ * {@link ConcurrencyLimit}.
+ *
+ * <pre>{@code
+ * ConcurrencyLimitingTransactionProvider<DSLContext> limited =
+ *         new ConcurrencyLimitingTransactionProvider<>(
+ *                 provider,
+ *                 ConcurrencyLimit.gradient(20).withQueueTimeout(Duration.ofMillis(50))
+ *         );
+ *
+ * transactional.get();                                  // blocks while queued
+ * transactional.getAsync(limited.executor(executor));   // queues the task without a thread
+ * }</pre>
+ *
+ * <p>
+ *     A transaction exceeding the limit is queued or fails with a
+ *     {@link ConcurrencyLimitExceededException} without being begun. Synchronous callers block
+ *     while queued, until the queue timeout or the deadline of a transaction created with
+ *     {@link Transactional#withTimeout(java.time.Duration)}, whichever comes first. Tasks
+ *     submitted to an {@link Executor} returned from
+ *     {@link ConcurrencyLimitingTransactionProvider#executor(Executor)} are queued instead, and
+ *     submitted to the underlying executor holding a permit once admitted, so queued
+ *     asynchronous transactions do not occupy threads. A queued task that has waited for longer
+ *     than the queue timeout is submitted to fail with the exception when the next transaction
+ *     completes or another task is submitted.
+ * </p>
+ *
+ * <p>
+ *     The latency of a transaction is measured from beginning it to committing or rolling it
+ *     back, excluding the time spent queued. A transaction requested while the thread is already
+ *     performing a transaction of this provider is passed to the underlying provider directly.
+ *     Procedures performed without a transaction are not limited.
+ * </p>
+ *
+ * @param <C> the type of the transaction context
+ */
+public class ConcurrencyLimitingTransactionProvider<C> implements TransactionProvider<C> {
+    private final TransactionProvider<C> provider;
+    private final ConcurrencyLimit.Algorithm algorithm;
+    private final long queueTimeoutNanos;
+    private final int maxQueueSize;
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+    private final ThreadLocal<Admission> admission = new ThreadLocal<>();
+    private int inFlight;
+    private long rejected;
+
+    /**
+     * Create a {@code ConcurrencyLimitingTransactionProvider} for the given provider.
+     *
+     * @param provider the provider performing the admitted transactions
+     * @param limit the policy of the limit
+     */
+    public ConcurrencyLimitingTransactionProvider(
+            TransactionProvider<C> provider,
+            ConcurrencyLimit limit
+    ) {
+        this.provider = Objects.requireNonNull(provider);
+        this.algorithm = limit.newAlgorithm();
+        this.queueTimeoutNanos = limit.queueTimeoutNanos();
+        this.maxQueueSize = limit.maxQueueSize();
+    }
+
+    @Override
+    public <T> T runWithTransaction(Function<C, T> procedure) {
+        return limit(null, () -> provider.runWithTransaction(procedure));
+    }
+
+    @Override
+    public <T> T runWithTransaction(Function<C, T> procedure, TransactionHints hints) {
+        return limit(hints.deadline(), () -> provider.runWithTransaction(procedure, hints));
+    }
+
+    @Override
+    public <T> T runWithoutTransaction(Function<C, T> procedure) {
+        return provider.runWithoutTransaction(procedure);
+    }
+
+    @Override
+    public <T> T runWithoutTransaction(Function<C, T> procedure, TransactionHints hints) {
+        return provider.runWithoutTransaction(procedure, hints);
+    }
+
+    @Override
+    public TransactionListener transactionListener() {
+        return provider.transactionListener();
+    }
+
+    /**
+     * Returns an {@link Executor} admitting the tasks submitted to it before passing them to the
+     * given executor. A task is expected to perform one transaction of this provider, such as
+     * the task submitted by {@link Transactional#getAsync(Executor)}, and runs holding the permit
+     * of the transaction. A rejected task is still run, but its transaction fails with a
+     * {@link ConcurrencyLimitExceededException} without being begun.
+     *
+     * @param executor the executor running the admitted tasks
+     * @return the limiting executor
+     */
+    public Executor executor(Executor executor) {
+        Objects.requireNonNull(executor);
+        return task -> submit(Objects.requireNonNull(task), executor);
+    }
+
+    /**
+     * Returns the current limit of transactions running at once.
+     *
+     * @return the limit
+     */
+    public int limit() {
+        synchronized (lock) {
+            return algorithm.limit;
+        }
+    }
+
+    /**
+     * Returns the number of transactions currently running.
+     *
+     * @return the number of transactions holding a permit
+     */
+    public int inFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    /**
+     * Returns the number of transactions and tasks currently queued.
+     *
+     * @return the queue depth
+     */
+    public int queueDepth() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * Returns the number of transactions and tasks rejected so far.
+     *
+     * @return the number of rejections
+     */
+    public long rejected() {
+        synchronized (lock) {
+            return rejected;
+        }
+    }
+
+    private <T> T limit(Deadline deadline, Supplier<T> transaction) {
+        Admission current = admission.get();
+        if (current == Admission.HELD) return transaction.get();
+        if (current == Admission.REJECTED) {
+            admission.remove();
+            throw new ConcurrencyLimitExceededException("Transaction was not admitted in time");
+        }
+        if (current == null) acquire(deadline);
+
+        admission.set(Admission.HELD);
+        long start = System.nanoTime();
+        try {
+            return transaction.get();
+        }
+        finally {
+            admission.remove();
+            release(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Takes a permit, waiting in the queue if the limit has been reached. A transaction with a
+     * deadline waits until the queue timeout or the deadline, whichever comes first.
+     *
+     * @throws ConcurrencyLimitExceededException if the transaction cannot be queued or times out
+     * @throws CancellationException if the thread is interrupted while queued
+     */
+    private void acquire(Deadline deadline) {
+        List<Waiter> dispatched;
+        synchronized (lock) {
+            if (inFlight < algorithm.limit && queue.isEmpty()) {
+                inFlight++;
+                return;
+            }
+            long now = System.nanoTime();
+            long timeout = queueTimeoutNanos;
+            if (deadline != null) timeout = Math.min(timeout, deadline.nanoTime - now);
+            if (timeout <= 0L || queue.size() >= maxQueueSize) {
+                rejected++;
+                throw new ConcurrencyLimitExceededException(
+                        "Concurrency limit of " + algorithm.limit + " reached"
+                );
+            }
+
+            Waiter waiter = new Waiter(null, null, now + timeout);
+            queue.add(waiter);
+            try {
+                while (!waiter.admitted) {
+                    long remaining = waiter.deadline - System.nanoTime();
+                    if (remaining <= 0L) {
+                        queue.remove(waiter);
+                        rejected++;
+                        throw new ConcurrencyLimitExceededException(
+                                "Transaction was not admitted in time"
+                        );
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                }
+                return;
+            }
+            catch (InterruptedException exception) {
+                if (waiter.admitted) {
+                    inFlight--;
+                    dispatched = admitWaiting();
+                }
+                else {
+                    queue.remove(waiter);
+                    dispatched = null;
+                }
+            }
+        }
+        dispatch(dispatched);
+        Thread.currentThread().interrupt();
+        throw new CancellationException("Interrupted while waiting for admission");
+    }
+
+    /**
+     * Returns a permit, updating the limit with the latency of the transaction unless it is
+     * negative, and admits the waiting transactions the limit allows.
+     */
+    private void release(long latencyNanos) {
+        List<Waiter> dispatched;
+        synchronized (lock) {
+            if (latencyNanos >= 0L) algorithm.update(latencyNanos, inFlight);
+            inFlight--;
+            dispatched = admitWaiting();
+        }
+        dispatch(dispatched);
+    }
+
+    private void submit(Runnable task, Executor executor) {
+        Admission decision;
+        List<Waiter> dispatched;
+        synchronized (lock) {
+            dispatched = admitWaiting();
+            if (inFlight < algorithm.limit && queue.isEmpty()) {
+                inFlight++;
+                decision = Admission.ADMITTED;
+            }
+            else if (queueTimeoutNanos == 0L || queue.size() >= maxQueueSize) {
+                rejected++;
+                decision = Admission.REJECTED;
+            }
+            else {
+                queue.add(new Waiter(task, executor, System.nanoTime() + queueTimeoutNanos));
+                decision = null;
+            }
+        }
+        dispatch(dispatched);
+        if (decision == null) return;
+
+        try {
+            executor.execute(() -> run(task, decision));
+        }
+        catch (RejectedExecutionException exception) {
+            if (decision == Admission.ADMITTED) release(-1L);
+            throw exception;
+        }
+    }
+
+    /**
+     * Rejects the queued tasks past their deadline and admits the waiting transactions and
+     * tasks the limit allows in arrival order. Queued synchronous callers are woken up, and the
+     * tasks to submit are returned.
+     */
+    private List<Waiter> admitWaiting() {
+        List<Waiter> dispatched = null;
+        long now = System.nanoTime();
+        for (Iterator<Waiter> iterator = queue.iterator(); iterator.hasNext(); ) {
+            Waiter waiter = iterator.next();
+            if (waiter.task != null && now - waiter.deadline >= 0L) {
+                iterator.remove();
+                rejected++;
+                if (dispatched == null) dispatched = new ArrayList<>();
+                dispatched.add(waiter);
+            }
+        }
+
+        boolean wake = false;
+        while (inFlight < algorithm.limit && !queue.isEmpty()) {
+            Waiter waiter = queue.poll();
+            waiter.admitted = true;
+            inFlight++;
+            if (waiter.task == null) {
+                wake = true;
+                continue;
+            }
+            if (dispatched == null) dispatched = new ArrayList<>();
+            dispatched.add(waiter);
+        }
+        if (wake) lock.notifyAll();
+        return dispatched;
+    }
+
+    /**
+     * Submits the admitted and the rejected tasks. A task its executor refuses is run on the
+     * calling thread instead, so that the transaction is failed rather than lost.
+     */
+    private void dispatch(List<Waiter> dispatched) {
+        if (dispatched == null) return;
+
+        for (Waiter waiter : dispatched) {
+            Admission decision = waiter.admitted ? Admission.ADMITTED : Admission.REJECTED;
+            Runnable task = () -> run(waiter.task, decision);
+            try {
+                waiter.executor.execute(task);
+            }
+            catch (RejectedExecutionException exception) {
+                if (decision == Admission.ADMITTED) release(-1L);
+                run(waiter.task, Admission.REJECTED);
+            }
+        }
+    }
+
+    /**
+     * Runs a task with its admission decision. A permit the task did not use for a transaction
+     * is returned without updating the limit.
+     */
+    private void run(Runnable task, Admission decision) {
+        Admission previous = admission.get();
+        admission.set(decision);
+        try {
+            task.run();
+        }
+        finally {
+            Admission unused = admission.get();
+            if (previous != null) {
+                admission.set(previous);
+            }
+            else {
+                admission.remove();
+            }
+            if (unused == Admission.ADMITTED) release(-1L);
+        }
+    }
+
+    private enum Admission {
+        /** The thread is performing a transaction holding a permit. */
+        HELD,
+        /** The task has been admitted and holds a permit for its transaction. */
+        ADMITTED,
+        /** The task has been rejected and its transaction is to fail. */
+        REJECTED
+    }
+
+    private static final class Waiter {
+        private final Runnable task;
+        private final Executor executor;
+        private final long deadline;
+        private boolean admitted;
+
+        private Waiter(Runnable task, Executor executor, long deadline) {
+            this.task = task;
+            this.executor = executor;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package fi.jubic.easyutils.transactional;
+
+/**
+ * The point in time by which a transaction started from a {@link Transactional} created with
+ * {@link Transactional#withTimeout(java.time.Duration)} must be completed. The deadline is checked
+ * between the stages of the procedure. It is bound to the thread performing the procedure so that
+ * the procedures combined with {@code all} are checked as well.
+ */
+final class Deadline {
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    final long nanoTime;
+
+    Deadline(long nanoTime) {
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Returns the deadline bound to the current thread, or {@code null} if none is.
+     */
+    static Deadline bound() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Binds this deadline to the current thread.
+     *
+     * @return the deadline bound to the thread before, to be passed to {@link #exit(Deadline)}
+     */
+    Deadline enter() {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(this);
+        return previous;
+    }
+
+    static void exit(Deadline previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        }
+        else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Throws a {@link TransactionTimeoutException} if the deadline has passed.
+     */
+    void check() {
+        long overrun = System.nanoTime() - nanoTime;
+        if (overrun >= 0) {
+            throw new TransactionTimeoutException(
+                    "Transaction deadline exceeded by " + overrun + " ns"
+            );
+        }
+    }
+}
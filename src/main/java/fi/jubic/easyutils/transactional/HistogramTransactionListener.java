@@ -0,0 +1,107 @@
+package fi.jubic.easyutils.transactional;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A {@link TransactionListener} recording the durations of the phases of transactions into
+ * {@link LatencyHistogram}s that can be scraped by a metrics exporter.
+ *
+ * <pre>{@code
+ * HistogramTransactionListener metrics = new HistogramTransactionListener();
+ *
+ * updateInventory(order).listen(metrics).get();
+ *
+ * long p99 = metrics.commit().percentile(99.0);
+ * }</pre>
+ */
+public class HistogramTransactionListener implements TransactionListener {
+    private final LatencyHistogram begin = new LatencyHistogram();
+    private final LatencyHistogram commit = new LatencyHistogram();
+    private final LatencyHistogram rollback = new LatencyHistogram();
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final Map<StageKind, LatencyHistogram> stages = new EnumMap<>(StageKind.class);
+
+    public HistogramTransactionListener() {
+        for (StageKind kind : StageKind.values()) {
+            stages.put(kind, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Returns the durations from asking the provider to begin a transaction to the start of the
+     * procedure.
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram begin() {
+        return begin;
+    }
+
+    /**
+     * Returns the durations of the stages of the given kind.
+     *
+     * @param kind the kind of the stages
+     * @return the histogram
+     */
+    public LatencyHistogram stage(StageKind kind) {
+        return stages.get(kind);
+    }
+
+    /**
+     * Returns the durations from the end of the procedure to the completed commit.
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram commit() {
+        return commit;
+    }
+
+    /**
+     * Returns the durations from the end of the procedure to the completed rollback.
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram rollback() {
+        return rollback;
+    }
+
+    /**
+     * Returns the durations of whole transactions, both committed and rolled back.
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram total() {
+        return total;
+    }
+
+    @Override
+    public void onStageEnd(StageKind kind, int index, long startNanoTime, long nanoTime) {
+        stages.get(kind).record(nanoTime - startNanoTime);
+    }
+
+    @Override
+    public void onCommit(
+            long beginNanoTime,
+            long procedureStartNanoTime,
+            long procedureEndNanoTime,
+            long nanoTime
+    ) {
+        begin.record(procedureStartNanoTime - beginNanoTime);
+        commit.record(nanoTime - procedureEndNanoTime);
+        total.record(nanoTime - beginNanoTime);
+    }
+
+    @Override
+    public void onRollback(
+            RuntimeException failure,
+            long beginNanoTime,
+            long procedureStartNanoTime,
+            long procedureEndNanoTime,
+            long nanoTime
+    ) {
+        begin.record(procedureStartNanoTime - beginNanoTime);
+        rollback.record(nanoTime - procedureEndNanoTime);
+        total.record(nanoTime - beginNanoTime);
+    }
+}
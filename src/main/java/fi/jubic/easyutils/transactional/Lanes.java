@@ -0,0 +1,226 @@
+package fi.jubic.easyutils.transactional;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * A fixed set of single-threaded lanes for {@link Transactional#onLane(Object)}. A key is
+ * always routed to the same lane by its hash code, so the transactions of an entity are
+ * performed one at a time in submission order, while the transactions of different entities are
+ * spread over the lanes and performed in parallel.
+ *
+ * <p>
+ *     Each lane is a daemon thread consuming a bounded, lock-free ring buffer. Submitting a
+ *     transaction does not take a lock, and the thread of a lane parks only when its buffer is
+ *     empty. A submitter finding the buffer full waits for space, which slows down the callers
+ *     of a lane that cannot keep up. A transaction submitted from the thread of its own lane is
+ *     performed directly by the submitter.
+ * </p>
+ *
+ * <p>
+ *     Transactions of the same key are serialized within a {@code Lanes} only. Updates made
+ *     through another {@code Lanes}, without a lane, or by another process still contend in the
+ *     database.
+ * </p>
+ */
+public final class Lanes implements AutoCloseable {
+    private static final long FULL_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final Lane[] lanes;
+    private final LongAdder submitted = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * Create a {@code Lanes} starting the given number of lane threads.
+     *
+     * @param lanes the number of lanes
+     * @param capacity the number of transactions each lane can queue, rounded up to a power of
+     *                 two
+     */
+    public Lanes(int lanes, int capacity) {
+        if (lanes < 1) {
+            throw new IllegalArgumentException("lanes must be positive");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.lanes = new Lane[lanes];
+        for (int i = 0; i < lanes; i++) {
+            this.lanes[i] = new Lane(capacity);
+        }
+        for (int i = 0; i < lanes; i++) {
+            Thread thread = new Thread(this.lanes[i]::run, "transactional-lane-" + i);
+            thread.setDaemon(true);
+            this.lanes[i].thread = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * Returns the {@code Lanes} used by {@link Transactional#onLane(Object)}, with a lane for
+     * each available processor. The lanes are started when first used and never closed.
+     *
+     * @return the global lanes
+     */
+    public static Lanes global() {
+        return Global.LANES;
+    }
+
+    /**
+     * Returns the number of lanes.
+     *
+     * @return the number of lanes
+     */
+    public int lanes() {
+        return lanes.length;
+    }
+
+    /**
+     * Returns the number of transactions submitted to the lanes.
+     *
+     * @return the number of submitted transactions
+     */
+    public long submitted() {
+        return submitted.sum();
+    }
+
+    /**
+     * Returns the number of transactions queued on the lane of the given key, including the one
+     * being performed.
+     *
+     * @param key the key
+     * @return the backlog of the lane
+     */
+    public int backlog(Object key) {
+        return lane(key).buffer.size();
+    }
+
+    /**
+     * Stops accepting transactions and lets the lanes finish the ones already queued. The lane
+     * threads exit once their buffers are empty. Closing does not wait for them.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Lane lane : lanes) {
+            LockSupport.unpark(lane.thread);
+        }
+    }
+
+    <T> CompletableFuture<T> submit(Object key, Supplier<T> transaction) {
+        Lane lane = lane(key);
+        submitted.increment();
+        if (Thread.currentThread() == lane.thread) {
+            return run(transaction);
+        }
+
+        Task<T> task = new Task<>(transaction);
+        lane.submitting.incrementAndGet();
+        try {
+            if (closed) {
+                task.completeExceptionally(
+                        new RejectedExecutionException("Lanes have been closed")
+                );
+            }
+            else {
+                while (!lane.buffer.offer(task)) {
+                    LockSupport.unpark(lane.thread);
+                    LockSupport.parkNanos(FULL_BACKOFF_NANOS);
+                }
+            }
+        }
+        finally {
+            lane.submitting.decrementAndGet();
+        }
+        if (closed || lane.parked) LockSupport.unpark(lane.thread);
+        return task;
+    }
+
+    private Lane lane(Object key) {
+        int hash = key.hashCode();
+        return lanes[Math.floorMod(hash ^ (hash >>> 16), lanes.length)];
+    }
+
+    private static <T> CompletableFuture<T> run(Supplier<T> transaction) {
+        try {
+            return CompletableFuture.completedFuture(transaction.get());
+        }
+        catch (Throwable throwable) {
+            return CompletableFuture.failedFuture(throwable);
+        }
+    }
+
+    private final class Lane {
+        private final RingBuffer<Task<?>> buffer;
+        private final AtomicInteger submitting = new AtomicInteger();
+        private volatile boolean parked;
+        private Thread thread;
+
+        private Lane(int capacity) {
+            this.buffer = new RingBuffer<>(capacity);
+        }
+
+        /**
+         * Performs the queued transactions until the lanes are closed and the buffer is empty. A
+         * submitter announces itself before checking whether the lanes are closed, so the lane
+         * does not exit while a task accepted before closing is being added. Before parking, the
+         * lane announces it and polls once more, so that a submitter publishing a task
+         * concurrently either sees the announcement and unparks the lane or has its task polled.
+         */
+        private void run() {
+            while (true) {
+                Task<?> task = buffer.poll();
+                if (task != null) {
+                    task.perform();
+                    continue;
+                }
+                if (closed && submitting.get() == 0 && buffer.size() == 0) return;
+
+                parked = true;
+                task = buffer.poll();
+                if (task == null) {
+                    LockSupport.park(this);
+                    parked = false;
+                    continue;
+                }
+                parked = false;
+                task.perform();
+            }
+        }
+    }
+
+    private static final class Task<T> extends CompletableFuture<T> {
+        private final Supplier<T> transaction;
+
+        private Task(Supplier<T> transaction) {
+            this.transaction = transaction;
+        }
+
+        private void perform() {
+            T result;
+            try {
+                result = transaction.get();
+            }
+            catch (Throwable throwable) {
+                completeExceptionally(throwable);
+                return;
+            }
+            complete(result);
+        }
+    }
+
+    /**
+     * Holds the global lanes so that their threads are started only when first used.
+     */
+    private static final class Global {
+        private static final Lanes LANES = new Lanes(
+                Runtime.getRuntime().availableProcessors(),
+                1024
+        );
+    }
+}
@@ -0,0 +1,237 @@
+package fi.jubic.easyutils.transactional;
+
+/**
+ * Settings affecting how a {@link Transactional} chain is performed. The options are carried from
+ * a {@code Transactional} to the ones chained to it and apply when the chain is performed with
+ * {@link Transactional#get()}.
+ */
+final class Options {
+    static final Options DEFAULTS = new Options(
+            null,
+            false,
+            false,
+            null,
+            false,
+            0L,
+            null,
+            null,
+            null,
+            null
+    );
+
+    final RetryPolicy retryPolicy;
+    final boolean readOnly;
+
+    /**
+     * Whether the source of the chain combines other chains. A composite chain is never
+     * considered a single statement.
+     */
+    final boolean composite;
+
+    final TransactionListener listener;
+
+    /**
+     * Whether performing the chain may reach {@code onCommit} or {@code onRollback} stages. Only
+     * such chains collect callbacks, and the collection is allocated when the first callback is
+     * registered.
+     */
+    final boolean callbacks;
+
+    /**
+     * The timeout of the transaction in nanoseconds, or zero if the transaction has none.
+     */
+    final long timeoutNanos;
+
+    /**
+     * The table coalescing the concurrent transactions with an equal key, or {@code null} if the
+     * transaction is not coalesced.
+     */
+    final SingleFlight singleFlight;
+    final Object coalescingKey;
+
+    /**
+     * The cached lookup of the result of the transaction, or {@code null} if it is not cached.
+     */
+    final ResultCache.Binding cached;
+
+    /**
+     * The class the transaction is scheduled in by a {@link SchedulingTransactionProvider}, or
+     * {@code null} if the transaction is scheduled in the default class.
+     */
+    final Object schedulingClass;
+
+    private Options(
+            RetryPolicy retryPolicy,
+            boolean readOnly,
+            boolean composite,
+            TransactionListener listener,
+            boolean callbacks,
+            long timeoutNanos,
+            SingleFlight singleFlight,
+            Object coalescingKey,
+            ResultCache.Binding cached,
+            Object schedulingClass
+    ) {
+        this.retryPolicy = retryPolicy;
+        this.readOnly = readOnly;
+        this.composite = composite;
+        this.listener = listener;
+        this.callbacks = callbacks;
+        this.timeoutNanos = timeoutNanos;
+        this.singleFlight = singleFlight;
+        this.coalescingKey = coalescingKey;
+        this.cached = cached;
+        this.schedulingClass = schedulingClass;
+    }
+
+    Options withRetryPolicy(RetryPolicy retryPolicy) {
+        return new Options(
+                retryPolicy,
+                readOnly,
+                composite,
+                listener,
+                callbacks,
+                timeoutNanos,
+                singleFlight,
+                coalescingKey,
+                cached,
+                schedulingClass
+        );
+    }
+
+    Options withReadOnly() {
+        return new Options(
+                retryPolicy,
+                true,
+                composite,
+                listener,
+                callbacks,
+                timeoutNanos,
+                singleFlight,
+                coalescingKey,
+                cached,
+                schedulingClass
+        );
+    }
+
+    Options withComposite() {
+        return new Options(
+                retryPolicy,
+                readOnly,
+                true,
+                listener,
+                callbacks,
+                timeoutNanos,
+                singleFlight,
+                coalescingKey,
+                cached,
+                schedulingClass
+        );
+    }
+
+    Options withListener(TransactionListener listener) {
+        return new Options(
+                retryPolicy,
+                readOnly,
+                composite,
+                listener,
+                callbacks,
+                timeoutNanos,
+                singleFlight,
+                coalescingKey,
+                cached,
+                schedulingClass
+        );
+    }
+
+    Options withCallbacks() {
+        if (callbacks) return this;
+        return new Options(
+                retryPolicy,
+                readOnly,
+                composite,
+                listener,
+                true,
+                timeoutNanos,
+                singleFlight,
+                coalescingKey,
+                cached,
+                schedulingClass
+        );
+    }
+
+    Options withTimeout(long timeoutNanos) {
+        return new Options(
+                retryPolicy,
+                readOnly,
+                composite,
+                listener,
+                callbacks,
+                timeoutNanos,
+                singleFlight,
+                coalescingKey,
+                cached,
+                schedulingClass
+        );
+    }
+
+    Options withCoalescing(SingleFlight singleFlight, Object coalescingKey) {
+        return new Options(
+                retryPolicy,
+                readOnly,
+                composite,
+                listener,
+                callbacks,
+                timeoutNanos,
+                singleFlight,
+                coalescingKey,
+                cached,
+                schedulingClass
+        );
+    }
+
+    Options withCached(ResultCache.Binding cached) {
+        return new Options(
+                retryPolicy,
+                readOnly,
+                composite,
+                listener,
+                callbacks,
+                timeoutNanos,
+                singleFlight,
+                coalescingKey,
+                cached,
+                schedulingClass
+        );
+    }
+
+    Options withSchedulingClass(Object schedulingClass) {
+        return new Options(
+                retryPolicy,
+                readOnly,
+                composite,
+                listener,
+                callbacks,
+                timeoutNanos,
+                singleFlight,
+                coalescingKey,
+                cached,
+                schedulingClass
+        );
+    }
+
+    /**
+     * Returns the options of a chain combining the chains with the given options. The combined
+     * chain is read-only if all of the combined chains are, and collects callbacks if any of them
+     * does.
+     */
+    static Options composite(Options... options) {
+        boolean readOnly = true;
+        boolean callbacks = false;
+        for (Options option : options) {
+            readOnly &= option.readOnly;
+            callbacks |= option.callbacks;
+        }
+        return new Options(null, readOnly, true, null, callbacks, 0L, null, null, null, null);
+    }
+}
@@ -0,0 +1,48 @@
+package fi.jubic.easyutils.transactional;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link TransactionProvider} that opts in to performing the procedures combined with
+ * {@code Transactional.allParallel} concurrently. Each procedure is performed in its own context
+ * forked from the running transaction. The forked contexts are expected to read the same
+ * snapshot as the running transaction, for example by importing its exported snapshot.
+ *
+ * <p>
+ *     The contexts are forked and closed by the thread running the transaction. Only the
+ *     procedures are performed on the {@link ParallelTransactionProvider#forkExecutor()}.
+ * </p>
+ *
+ * @param <C> the type of the transaction context
+ */
+public interface ParallelTransactionProvider<C> extends TransactionProvider<C> {
+    /**
+     * Open a new context reading the same snapshot as the given context of the running
+     * transaction.
+     *
+     * @param context the context of the running transaction
+     * @return the forked context
+     */
+    C fork(C context);
+
+    /**
+     * Commit and close a forked context after all of the parallel procedures have succeeded.
+     *
+     * @param fork the forked context
+     */
+    void commitFork(C fork);
+
+    /**
+     * Roll back and close a forked context after any of the parallel procedures has failed.
+     *
+     * @param fork the forked context
+     */
+    void rollbackFork(C fork);
+
+    /**
+     * Returns the {@link Executor} performing the procedures in forked contexts.
+     *
+     * @return the executor
+     */
+    Executor forkExecutor();
+}
@@ -0,0 +1,327 @@
+package fi.jubic.easyutils.transactional;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The procedure contained by a {@link Transactional}. Instead of composing the chained operations
+ * into nested lambdas, each {@code Transactional} records a single step pointing to the previous
+ * step of the chain. When applied, the steps are flattened into a program that is run in a
+ * trampolined loop so that the stack depth stays constant regardless of the length of the chain
+ * or the depth of {@link Transactional#flatMap(Function)} recursion.
+ *
+ * <p>
+ *     Consecutive source, map and peek steps are fused into a single step of the program. A run
+ *     of pure stages is then performed in a tight loop without returning to the dispatch of the
+ *     interpreter between the stages.
+ * </p>
+ *
+ * <p>
+ *     A procedure created with a {@link TransactionListener} reports each stage to the listener
+ *     and records when it was started and ended. Such a procedure is created for a single
+ *     transaction. Without a listener the interpreter does not allocate anything for reporting.
+ * </p>
+ *
+ * <p>
+ *     A procedure collecting callbacks binds itself to the performing thread so that the
+ *     {@code onCommit} and {@code onRollback} stages can register their callbacks. The
+ *     {@link Callbacks} are created when the first one is registered, so a chain that only may
+ *     reach such a stage, for example through {@code flatMap}, does not allocate them otherwise.
+ *     The callbacks collected by a previous run are discarded when the procedure is performed
+ *     again.
+ * </p>
+ *
+ * <p>
+ *     A procedure created with a {@link Deadline} checks it before each stage and after the last
+ *     one. The deadline is bound to the performing thread for the procedures combined with
+ *     {@code all}, which are run without a reference to the surrounding procedure.
+ * </p>
+ *
+ * @param <C> the type of the transaction context
+ * @param <T> the type of the result
+ */
+final class Procedure<C, T> implements Function<C, T> {
+    static final int SOURCE = 0;
+    static final int MAP = 1;
+    static final int PEEK = 2;
+    static final int FLAT_MAP = 3;
+    static final int PEEK_MAP = 4;
+
+    private static final StageKind[] STAGE_KINDS = StageKind.values();
+
+    private final Transactional<T, C> chain;
+    private final TransactionListener listener;
+    private final boolean collecting;
+    private final Deadline deadline;
+    private Callbacks callbacks;
+
+    boolean started;
+    long start;
+    long end;
+
+    Procedure(Transactional<T, C> chain) {
+        this(chain, null, false, null);
+    }
+
+    Procedure(
+            Transactional<T, C> chain,
+            TransactionListener listener,
+            boolean collecting,
+            Deadline deadline
+    ) {
+        this.chain = chain;
+        this.listener = listener;
+        this.collecting = collecting;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Returns the callbacks of a procedure collecting them, creating them if none have been
+     * registered yet, or {@code null} if the procedure does not collect callbacks.
+     */
+    Callbacks callbacks() {
+        if (collecting && callbacks == null) callbacks = new Callbacks();
+        return callbacks;
+    }
+
+    /**
+     * Returns the callbacks registered by the last run, or {@code null} if none were.
+     */
+    Callbacks collected() {
+        return callbacks;
+    }
+
+    @Override
+    public T apply(C context) {
+        if (!collecting && deadline == null) return time(context);
+
+        Callbacks previousCallbacks = null;
+        Procedure<?, ?> previousCollector = null;
+        if (collecting) {
+            if (callbacks != null) callbacks.clear();
+            previousCallbacks = Callbacks.suspend();
+            previousCollector = Callbacks.collect(this);
+        }
+        Deadline previousDeadline = deadline != null ? deadline.enter() : null;
+        try {
+            return time(context);
+        }
+        finally {
+            if (deadline != null) Deadline.exit(previousDeadline);
+            if (collecting) Callbacks.exit(previousCollector, previousCallbacks);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T time(C context) {
+        if (listener == null) return (T) run(chain, context, null, deadline);
+
+        started = true;
+        start = System.nanoTime();
+        try {
+            return (T) run(chain, context, listener, deadline);
+        }
+        finally {
+            end = System.nanoTime();
+        }
+    }
+
+    static <C> Object run(Transactional<?, C> chain, C context) {
+        return run(chain, context, null, Deadline.bound());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <C> Object run(
+            Transactional<?, C> chain,
+            C context,
+            TransactionListener listener,
+            Deadline deadline
+    ) {
+        if (chain.previous == null) {
+            if (deadline == null) return applyPure(chain, context, null, listener);
+
+            deadline.check();
+            Object value = applyPure(chain, context, null, listener);
+            deadline.check();
+            return value;
+        }
+
+        Object[] program = program(chain);
+        int index = 0;
+        Object value = null;
+        Frame frame = null;
+
+        while (true) {
+            if (deadline != null) deadline.check();
+            if (index == program.length) {
+                if (frame == null) return value;
+
+                if (frame.restore) value = frame.value;
+                program = frame.program;
+                index = frame.index;
+                frame = frame.parent;
+                continue;
+            }
+
+            Object instruction = program[index++];
+            if (instruction instanceof Transactional[]) {
+                for (Transactional<?, C> step : (Transactional<?, C>[]) instruction) {
+                    if (deadline != null) deadline.check();
+                    value = applyPure(step, context, value, listener);
+                }
+                continue;
+            }
+
+            Transactional<?, C> step = (Transactional<?, C>) instruction;
+            switch (step.kind) {
+                case FLAT_MAP: {
+                    Transactional<?, C> next = next(step, value, listener);
+                    if (next.previous == null) {
+                        value = applyPure(next, context, null, listener);
+                        break;
+                    }
+                    // A trailing flatMap replaces the current program instead of nesting it.
+                    if (index < program.length) {
+                        frame = new Frame(program, index, null, false, frame);
+                    }
+                    program = program(next);
+                    index = 0;
+                    break;
+                }
+                case PEEK_MAP: {
+                    Transactional<?, C> next = next(step, value, listener);
+                    if (next.previous == null) {
+                        applyPure(next, context, null, listener);
+                        break;
+                    }
+                    frame = new Frame(program, index, value, true, frame);
+                    program = program(next);
+                    index = 0;
+                    break;
+                }
+                default:
+                    value = applyPure(step, context, value, listener);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <C> Transactional<?, C> next(
+            Transactional<?, C> step,
+            Object value,
+            TransactionListener listener
+    ) {
+        Function<Object, Transactional<?, C>> mapper
+                = (Function<Object, Transactional<?, C>>) step.function;
+        if (listener == null) return mapper.apply(value);
+
+        long start = System.nanoTime();
+        listener.onStageStart(STAGE_KINDS[step.kind], step.index, start);
+        Transactional<?, C> next = mapper.apply(value);
+        listener.onStageEnd(STAGE_KINDS[step.kind], step.index, start, System.nanoTime());
+        return next;
+    }
+
+    private static <C> Object applyPure(
+            Transactional<?, C> step,
+            C context,
+            Object value,
+            TransactionListener listener
+    ) {
+        if (listener == null) return applyPure(step, context, value);
+
+        long start = System.nanoTime();
+        listener.onStageStart(STAGE_KINDS[step.kind], step.index, start);
+        Object result = applyPure(step, context, value);
+        listener.onStageEnd(STAGE_KINDS[step.kind], step.index, start, System.nanoTime());
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <C> Object applyPure(Transactional<?, C> step, C context, Object value) {
+        switch (step.kind) {
+            case SOURCE:
+                return ((Function<C, Object>) step.function).apply(context);
+            case MAP:
+                return ((Function<Object, Object>) step.function).apply(value);
+            case PEEK:
+                ((Consumer<Object>) step.function).accept(value);
+                return value;
+            default:
+                throw new IllegalStateException("Unknown step " + step.kind);
+        }
+    }
+
+    /**
+     * Returns whether the chain consists only of pure steps, i.e. of a single source procedure
+     * that is not followed by other procedures.
+     */
+    static boolean isSingleStatement(Transactional<?, ?> chain) {
+        for (Transactional<?, ?> step = chain; step != null; step = step.previous) {
+            if (!isPure(step)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isPure(Transactional<?, ?> step) {
+        return step.kind == SOURCE || step.kind == MAP || step.kind == PEEK;
+    }
+
+    private static Object[] program(Transactional<?, ?> chain) {
+        Object[] program = chain.program;
+        if (program != null) return program;
+
+        int length = 0;
+        int instructions = 0;
+        boolean fusing = false;
+        for (Transactional<?, ?> step = chain; step != null; step = step.previous) {
+            length++;
+            if (!isPure(step) || !fusing) instructions++;
+            fusing = isPure(step);
+        }
+
+        Transactional<?, ?>[] steps = new Transactional<?, ?>[length];
+        Transactional<?, ?> step = chain;
+        for (int i = length - 1; i >= 0; i--) {
+            steps[i] = step;
+            step = step.previous;
+        }
+
+        program = new Object[instructions];
+        int instruction = 0;
+        int start = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i < length && isPure(steps[i])) continue;
+
+            if (i - start > 1) {
+                Transactional<?, ?>[] fused = new Transactional<?, ?>[i - start];
+                System.arraycopy(steps, start, fused, 0, fused.length);
+                program[instruction++] = fused;
+            }
+            else if (i - start == 1) {
+                program[instruction++] = steps[start];
+            }
+            if (i < length) program[instruction++] = steps[i];
+            start = i + 1;
+        }
+
+        chain.program = program;
+        return program;
+    }
+
+    private static final class Frame {
+        private final Object[] program;
+        private final int index;
+        private final Object value;
+        private final boolean restore;
+        private final Frame parent;
+
+        private Frame(Object[] program, int index, Object value, boolean restore, Frame parent) {
+            this.program = program;
+            this.index = index;
+            this.value = value;
+            this.restore = restore;
+            this.parent = parent;
+        }
+    }
+}
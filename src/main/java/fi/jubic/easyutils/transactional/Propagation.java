@@ -0,0 +1,30 @@
+package fi.jubic.easyutils.transactional;
+
+/**
+ * How a {@link ThreadContextTransactionProvider} performs a transaction requested while another
+ * transaction of the same provider is active on the thread, for example when a procedure calls
+ * {@link Transactional#get()} on another {@code Transactional}.
+ */
+public enum Propagation {
+    /**
+     * Join the active transaction, or begin a new one if there is none. A joined procedure does
+     * not begin or commit. If it throws, the active transaction is marked rollback-only and is
+     * rolled back instead of committed even if the exception is caught. The {@code onCommit} and
+     * {@code onRollback} callbacks of a joined procedure run when the joined transaction
+     * completes. This is the default.
+     */
+    REQUIRED,
+
+    /**
+     * Always begin a new transaction. The active transaction is suspended with
+     * {@link ThreadContextTransactionProvider#suspend()} and resumed after the new transaction
+     * has been committed or rolled back.
+     */
+    REQUIRES_NEW,
+
+    /**
+     * Join the active transaction, or perform the procedure without a transaction if there is
+     * none.
+     */
+    SUPPORTS
+}
@@ -0,0 +1,327 @@
+package fi.jubic.easyutils.transactional;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * A cache of the results of the {@link Transactional}s created with
+ * {@link Transactional#cached(ResultCache, Object, Object...)}. The results are bounded and
+ * expired according to a {@link CachePolicy} and evicted in least recently used order. Large
+ * caches are divided into independently locked segments, each bounded by an equal share of the
+ * maximum weight.
+ *
+ * <p>
+ *     The results can be invalidated by key or by a tag given when the result was stored. Write
+ *     transactions should invalidate the results they change with
+ *     {@link Transactional#evictOnCommit(ResultCache, Object)} or
+ *     {@link Transactional#evictTagOnCommit(ResultCache, Object)}, which invalidate only after the
+ *     transaction has been committed. A rolled back transaction therefore never evicts a valid
+ *     result.
+ * </p>
+ *
+ * <p>
+ *     A result is only stored after its read transaction has been committed, and not at all if
+ *     any invalidation happened while the result was being read. A read racing with a write thus
+ *     never stores a result from before the write once the write has invalidated it. Results
+ *     that are {@code null} are not cached.
+ * </p>
+ */
+public final class ResultCache {
+    private static final int SEGMENTS = 16;
+    private static final long SEGMENTED_WEIGHT = 1024;
+
+    private final Segment[] segments;
+    private final ToLongFunction<Object> weigher;
+    private final long timeToLiveNanos;
+
+    private final Map<Object, Set<Object>> tagged = new ConcurrentHashMap<>();
+    private final ReadWriteLock invalidationLock = new ReentrantReadWriteLock();
+    private final AtomicLong epoch = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Create an empty {@code ResultCache}.
+     *
+     * @param policy the bounds of the cache
+     */
+    public ResultCache(CachePolicy policy) {
+        int count = policy.maximumWeight() >= SEGMENTED_WEIGHT ? SEGMENTS : 1;
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment((policy.maximumWeight() + count - 1) / count);
+        }
+        this.weigher = policy.weigher();
+        this.timeToLiveNanos = policy.timeToLiveNanos();
+    }
+
+    /**
+     * Removes the result stored with the given key.
+     *
+     * @param key the key of the result
+     */
+    public void invalidate(Object key) {
+        Objects.requireNonNull(key);
+        invalidationLock.writeLock().lock();
+        try {
+            epoch.incrementAndGet();
+            remove(key);
+        }
+        finally {
+            invalidationLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the results stored with the given tag.
+     *
+     * @param tag the tag of the results
+     */
+    public void invalidateTag(Object tag) {
+        Objects.requireNonNull(tag);
+        invalidationLock.writeLock().lock();
+        try {
+            epoch.incrementAndGet();
+            Set<Object> keys = tagged.remove(tag);
+            if (keys == null) return;
+
+            for (Object key : keys) {
+                remove(key);
+            }
+        }
+        finally {
+            invalidationLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all of the results.
+     */
+    public void invalidateAll() {
+        invalidationLock.writeLock().lock();
+        try {
+            epoch.incrementAndGet();
+            for (Segment segment : segments) {
+                synchronized (segment) {
+                    segment.entries.clear();
+                    segment.weight = 0L;
+                }
+            }
+            tagged.clear();
+        }
+        finally {
+            invalidationLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of results stored, including the expired results not yet evicted.
+     *
+     * @return the number of results
+     */
+    public long size() {
+        long size = 0L;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of lookups that found a result.
+     *
+     * @return the number of hits
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that had to perform the transaction.
+     *
+     * @return the number of misses
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of results evicted to stay within the maximum weight.
+     *
+     * @return the number of evictions
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T get(Object key, Object[] tags, Supplier<T> loader) {
+        Segment segment = segment(key);
+        Object cached;
+        synchronized (segment) {
+            Entry entry = segment.entries.get(key);
+            // An expired entry is left for the next store to replace or for eviction to remove.
+            cached = entry == null || isExpired(entry) ? null : entry.value;
+        }
+        if (cached != null) {
+            hits.increment();
+            return (T) cached;
+        }
+
+        misses.increment();
+        long readEpoch = epoch.get();
+        T result = loader.get();
+        if (result != null) store(segment, key, tags, result, readEpoch);
+        return result;
+    }
+
+    private void store(Segment segment, Object key, Object[] tags, Object value, long readEpoch) {
+        long weight = weigher.applyAsLong(value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must not be negative");
+        }
+        if (weight > segment.maximumWeight) return;
+
+        long expiresAt = System.nanoTime() + timeToLiveNanos;
+        invalidationLock.readLock().lock();
+        try {
+            if (epoch.get() != readEpoch) return;
+
+            synchronized (segment) {
+                Entry previous = segment.entries.put(
+                        key,
+                        new Entry(value, tags, weight, expiresAt)
+                );
+                segment.weight += weight;
+                if (previous != null) {
+                    segment.weight -= previous.weight;
+                    for (Object tag : previous.tags) {
+                        if (!contains(tags, tag)) untag(tag, key);
+                    }
+                }
+                for (Object tag : tags) {
+                    tag(tag, key);
+                }
+                evict(segment);
+            }
+        }
+        finally {
+            invalidationLock.readLock().unlock();
+        }
+    }
+
+    private void evict(Segment segment) {
+        Iterator<Map.Entry<Object, Entry>> iterator = segment.entries.entrySet().iterator();
+        while (segment.weight > segment.maximumWeight && iterator.hasNext()) {
+            Map.Entry<Object, Entry> eldest = iterator.next();
+            iterator.remove();
+            segment.weight -= eldest.getValue().weight;
+            for (Object tag : eldest.getValue().tags) {
+                untag(tag, eldest.getKey());
+            }
+            evictions.increment();
+        }
+    }
+
+    private void remove(Object key) {
+        Segment segment = segment(key);
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.entries.remove(key);
+            if (entry == null) return;
+            segment.weight -= entry.weight;
+        }
+        for (Object tag : entry.tags) {
+            untag(tag, key);
+        }
+    }
+
+    private void tag(Object tag, Object key) {
+        // Atomic per tag so that a concurrent untag cannot remove the set being added to.
+        tagged.compute(tag, (ignored, keys) -> {
+            Set<Object> tagKeys = keys != null ? keys : ConcurrentHashMap.newKeySet();
+            tagKeys.add(key);
+            return tagKeys;
+        });
+    }
+
+    private void untag(Object tag, Object key) {
+        tagged.computeIfPresent(tag, (ignored, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private boolean isExpired(Entry entry) {
+        return timeToLiveNanos != 0L && System.nanoTime() - entry.expiresAt >= 0;
+    }
+
+    private Segment segment(Object key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+    }
+
+    private static boolean contains(Object[] tags, Object tag) {
+        for (Object candidate : tags) {
+            if (candidate.equals(tag)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * The cached lookup of a {@link Transactional}.
+     */
+    static final class Binding {
+        private final ResultCache cache;
+        private final Object key;
+        private final Object[] tags;
+
+        Binding(ResultCache cache, Object key, Object[] tags) {
+            this.cache = cache;
+            this.key = key;
+            this.tags = tags;
+        }
+
+        <T> T get(Supplier<T> loader) {
+            return cache.get(key, tags, loader);
+        }
+    }
+
+    private static final class Segment {
+        private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final long maximumWeight;
+        private long weight;
+
+        private Segment(long maximumWeight) {
+            this.maximumWeight = maximumWeight;
+        }
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final Object[] tags;
+        private final long weight;
+        private final long expiresAt;
+
+        private Entry(Object value, Object[] tags, long weight, long expiresAt) {
+            this.value = value;
+            this.tags = tags;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package fi.jubic.easyutils.transactional;
+
+import java.time.Duration;
+
+/**
+ * A listener notified of the attempts made by a {@link RetryPolicy}. Useful for monitoring
+ * contention such as serialization failures and deadlocks.
+ */
+public interface RetryListener {
+    /**
+     * Called when an attempt has failed with a retryable exception and the next attempt will be
+     * made after the backoff.
+     *
+     * @param attempt the number of the failed attempt, starting from 1
+     * @param failure the exception thrown by the failed attempt
+     * @param backoff the time waited before the next attempt
+     */
+    void onRetry(int attempt, RuntimeException failure, Duration backoff);
+
+    /**
+     * Called when no more attempts will be made and the last failure is rethrown. The default
+     * implementation does nothing.
+     *
+     * @param attempts the number of attempts made
+     * @param failure the exception thrown by the last attempt
+     */
+    default void onGiveUp(int attempts, RuntimeException failure) {
+
+    }
+}
@@ -0,0 +1,259 @@
+package fi.jubic.easyutils.transactional;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * A policy for retrying transactions failing with transient errors such as serialization
+ * failures and deadlocks. Each attempt performs the whole procedure again in a new transaction
+ * scope. The attempts are separated with an exponentially growing backoff randomized with
+ * jitter.
+ *
+ * <pre>{@code
+ * RetryPolicy policy = RetryPolicy.of(e -> e.getCause() instanceof SQLTransactionRollbackException)
+ *         .withMaxAttempts(5)
+ *         .withBackoff(Duration.ofMillis(10), Duration.ofMillis(500))
+ *         .withDeadline(Duration.ofSeconds(2));
+ *
+ * transferFunds(from, to, amount).retry(policy).get();
+ * }</pre>
+ *
+ * <p>
+ *     {@code RetryPolicy} instances are immutable. The {@code with} methods return modified
+ *     copies.
+ * </p>
+ */
+public final class RetryPolicy {
+    private static final RetryListener NO_LISTENER = (attempt, failure, backoff) -> { };
+
+    private final Predicate<RuntimeException> retryable;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final double multiplier;
+    private final double jitter;
+    private final Duration deadline;
+    private final RetryListener listener;
+
+    private RetryPolicy(
+            Predicate<RuntimeException> retryable,
+            int maxAttempts,
+            Duration initialBackoff,
+            Duration maxBackoff,
+            double multiplier,
+            double jitter,
+            Duration deadline,
+            RetryListener listener
+    ) {
+        this.retryable = retryable;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+        this.deadline = deadline;
+        this.listener = listener;
+    }
+
+    /**
+     * Create a {@code RetryPolicy} retrying the exceptions accepted by the given classifier. By
+     * default at most 3 attempts are made, the backoff starts from 10 milliseconds, doubles after
+     * each attempt up to 1 second and is randomized by 50 percent. No overall deadline is set.
+     *
+     * @param retryable the classifier accepting the exceptions that can be retried
+     * @return the created policy
+     */
+    public static RetryPolicy of(Predicate<RuntimeException> retryable) {
+        return new RetryPolicy(
+                Objects.requireNonNull(retryable),
+                3,
+                Duration.ofMillis(10),
+                Duration.ofSeconds(1),
+                2.0,
+                0.5,
+                null,
+                NO_LISTENER
+        );
+    }
+
+    /**
+     * Returns a copy of this policy with the given maximum number of attempts including the
+     * first one.
+     *
+     * @param maxAttempts the maximum number of attempts
+     * @return the modified policy
+     */
+    public RetryPolicy withMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be positive");
+        }
+        return new RetryPolicy(
+                retryable,
+                maxAttempts,
+                initialBackoff,
+                maxBackoff,
+                multiplier,
+                jitter,
+                deadline,
+                listener
+        );
+    }
+
+    /**
+     * Returns a copy of this policy with the given bounds for the backoff. The backoff after the
+     * first attempt is {@code initial}, grows by the multiplier after each attempt and never
+     * exceeds {@code max}.
+     *
+     * @param initial the backoff after the first attempt
+     * @param max the maximum backoff
+     * @return the modified policy
+     */
+    public RetryPolicy withBackoff(Duration initial, Duration max) {
+        if (initial.isNegative() || max.compareTo(initial) < 0) {
+            throw new IllegalArgumentException("Backoff must satisfy 0 <= initial <= max");
+        }
+        return new RetryPolicy(
+                retryable,
+                maxAttempts,
+                initial,
+                max,
+                multiplier,
+                jitter,
+                deadline,
+                listener
+        );
+    }
+
+    /**
+     * Returns a copy of this policy with the given growth factor for the backoff.
+     *
+     * @param multiplier the factor the backoff is multiplied with after each attempt
+     * @return the modified policy
+     */
+    public RetryPolicy withMultiplier(double multiplier) {
+        if (!(multiplier >= 1.0)) {
+            throw new IllegalArgumentException("multiplier must be at least 1");
+        }
+        return new RetryPolicy(
+                retryable,
+                maxAttempts,
+                initialBackoff,
+                maxBackoff,
+                multiplier,
+                jitter,
+                deadline,
+                listener
+        );
+    }
+
+    /**
+     * Returns a copy of this policy with the given jitter. Each backoff is reduced by a random
+     * fraction between 0 and {@code jitter} so that the competing transactions do not retry in
+     * lockstep.
+     *
+     * @param jitter the maximum fraction between 0 and 1 the backoff is reduced by
+     * @return the modified policy
+     */
+    public RetryPolicy withJitter(double jitter) {
+        if (!(jitter >= 0.0 && jitter <= 1.0)) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1");
+        }
+        return new RetryPolicy(
+                retryable,
+                maxAttempts,
+                initialBackoff,
+                maxBackoff,
+                multiplier,
+                jitter,
+                deadline,
+                listener
+        );
+    }
+
+    /**
+     * Returns a copy of this policy with an overall deadline. No attempt is started if its
+     * backoff would end after the deadline measured from the start of the first attempt.
+     *
+     * @param deadline the overall time budget for all of the attempts
+     * @return the modified policy
+     */
+    public RetryPolicy withDeadline(Duration deadline) {
+        if (deadline.isNegative()) {
+            throw new IllegalArgumentException("deadline must not be negative");
+        }
+        return new RetryPolicy(
+                retryable,
+                maxAttempts,
+                initialBackoff,
+                maxBackoff,
+                multiplier,
+                jitter,
+                deadline,
+                listener
+        );
+    }
+
+    /**
+     * Returns a copy of this policy reporting the retries to the given listener.
+     *
+     * @param listener the listener
+     * @return the modified policy
+     */
+    public RetryPolicy withListener(RetryListener listener) {
+        return new RetryPolicy(
+                retryable,
+                maxAttempts,
+                initialBackoff,
+                maxBackoff,
+                multiplier,
+                jitter,
+                deadline,
+                Objects.requireNonNull(listener)
+        );
+    }
+
+    <T> T run(Supplier<T> attempt) {
+        long start = System.nanoTime();
+        for (int attempts = 1; ; attempts++) {
+            try {
+                return attempt.get();
+            }
+            catch (RuntimeException failure) {
+                if (!retryable.test(failure)) throw failure;
+
+                long backoff = backoffNanos(attempts);
+                if (
+                        attempts >= maxAttempts
+                                || deadline != null
+                                && System.nanoTime() - start + backoff > deadline.toNanos()
+                ) {
+                    listener.onGiveUp(attempts, failure);
+                    throw failure;
+                }
+
+                listener.onRetry(attempts, failure, Duration.ofNanos(backoff));
+                try {
+                    TimeUnit.NANOSECONDS.sleep(backoff);
+                }
+                catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    failure.addSuppressed(exception);
+                    listener.onGiveUp(attempts, failure);
+                    throw failure;
+                }
+            }
+        }
+    }
+
+    private long backoffNanos(int attempt) {
+        double backoff = Math.min(
+                initialBackoff.toNanos() * Math.pow(multiplier, attempt - 1),
+                maxBackoff.toNanos()
+        );
+        return (long) (backoff * (1.0 - jitter * ThreadLocalRandom.current().nextDouble()));
+    }
+}
@@ -0,0 +1,78 @@
+package fi.jubic.easyutils.transactional;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free queue with many producers and a single consumer. Each slot carries a
+ * sequence number telling whether it is free for the producer claiming the position or
+ * published for the consumer, so producers only contend on claiming the tail and the consumer
+ * never writes to a shared counter.
+ *
+ * @param <E> the type of the elements
+ */
+final class RingBuffer<E> {
+    private final int mask;
+    private final Object[] elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+
+        this.mask = size - 1;
+        this.elements = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds the element unless the buffer is full. Safe to call from any thread.
+     *
+     * @return whether the element was added
+     */
+    boolean offer(E element) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference < 0L) return false;
+            if (difference == 0L && tail.compareAndSet(position, position + 1)) {
+                elements[index] = element;
+                sequences.set(index, position + 1);
+                return true;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Removes the oldest published element. Must only be called from the consumer thread.
+     *
+     * @return the element, or {@code null} if none is published
+     */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        long position = head;
+        int index = (int) position & mask;
+        if (sequences.get(index) != position + 1) return null;
+
+        E element = (E) elements[index];
+        elements[index] = null;
+        sequences.set(index, position + mask + 1);
+        head = position + 1;
+        return element;
+    }
+
+    /**
+     * Returns the number of elements claimed but not yet removed. The result is a snapshot that
+     * may already be stale.
+     */
+    int size() {
+        return (int) Math.max(0L, tail.get() - head);
+    }
+}
@@ -0,0 +1,79 @@
+package fi.jubic.easyutils.transactional;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * A {@link TransactionProvider} routing the procedures marked with
+ * {@link Transactional#readOnly()} to a separate provider, for example one connected to a
+ * replica pool. The other procedures are performed by the primary provider.
+ *
+ * <pre>{@code
+ * TransactionProvider<DSLContext> provider = new RoutingTransactionProvider<>(
+ *         new JooqTransactionProvider(primaryDataSource),
+ *         new JooqTransactionProvider(replicaDataSource)
+ * );
+ * }</pre>
+ *
+ * <p>
+ *     The procedures chained with {@code flatMap} are performed in the context of the surrounding
+ *     transaction. Only the outermost {@code Transactional} decides the route.
+ * </p>
+ *
+ * @param <C> the type of the transaction context
+ */
+public class RoutingTransactionProvider<C> implements TransactionProvider<C> {
+    private final TransactionProvider<C> primary;
+    private final TransactionProvider<C> readOnly;
+
+    /**
+     * Create a {@code RoutingTransactionProvider}.
+     *
+     * @param primary the provider performing the procedures that may write
+     * @param readOnly the provider performing the read-only procedures
+     */
+    public RoutingTransactionProvider(
+            TransactionProvider<C> primary,
+            TransactionProvider<C> readOnly
+    ) {
+        this.primary = Objects.requireNonNull(primary);
+        this.readOnly = Objects.requireNonNull(readOnly);
+    }
+
+    @Override
+    public <T> T runWithTransaction(Function<C, T> procedure) {
+        return primary.runWithTransaction(procedure);
+    }
+
+    @Override
+    public <T> T runWithoutTransaction(Function<C, T> procedure) {
+        return primary.runWithoutTransaction(procedure);
+    }
+
+    @Override
+    public <T> T runWithTransaction(Function<C, T> procedure, TransactionHints hints) {
+        return route(hints).runWithTransaction(procedure, hints);
+    }
+
+    @Override
+    public <T> T runWithoutTransaction(Function<C, T> procedure, TransactionHints hints) {
+        return route(hints).runWithoutTransaction(procedure, hints);
+    }
+
+    /**
+     * Returns the listener of the primary provider, or the listener of the read-only provider if
+     * the primary one has none. The listener is looked up before the route of a procedure is
+     * known, so a single listener reports the transactions of both routes.
+     */
+    @Override
+    public TransactionListener transactionListener() {
+        TransactionListener listener = primary.transactionListener();
+        if (listener != null) return listener;
+
+        return readOnly.transactionListener();
+    }
+
+    private TransactionProvider<C> route(TransactionHints hints) {
+        return hints.isReadOnly() ? readOnly : primary;
+    }
+}
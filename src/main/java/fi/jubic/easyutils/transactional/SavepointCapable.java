@@ -0,0 +1,41 @@
+package fi.jubic.easyutils.transactional;
+
+/**
+ * A {@link TransactionProvider} supporting savepoints within a running transaction. Savepoints
+ * allow {@link Transactional#recover(java.util.function.Function)} to roll back a part of the
+ * procedure chain without losing the work performed before it.
+ *
+ * <p>
+ *     The methods are called with the context of the running transaction on the thread
+ *     performing the procedure. With JDBC the methods map to
+ *     {@code Connection::setSavepoint}, {@code Connection::rollback(Savepoint)} and
+ *     {@code Connection::releaseSavepoint}.
+ * </p>
+ *
+ * @param <C> the type of the transaction context
+ */
+public interface SavepointCapable<C> extends TransactionProvider<C> {
+    /**
+     * Set a savepoint in the running transaction.
+     *
+     * @param context the context of the running transaction
+     * @return a handle to the savepoint passed back to the other methods
+     */
+    Object savepoint(C context);
+
+    /**
+     * Roll back the changes made after the given savepoint. The rest of the transaction is kept.
+     *
+     * @param context the context of the running transaction
+     * @param savepoint the handle returned from {@link SavepointCapable#savepoint(Object)}
+     */
+    void rollbackToSavepoint(C context, Object savepoint);
+
+    /**
+     * Release the given savepoint after the procedure it protects has succeeded.
+     *
+     * @param context the context of the running transaction
+     * @param savepoint the handle returned from {@link SavepointCapable#savepoint(Object)}
+     */
+    void releaseSavepoint(C context, Object savepoint);
+}
@@ -0,0 +1,123 @@
+package fi.jubic.easyutils.transactional;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The policy of a {@link SchedulingTransactionProvider}, setting the number of transactions run
+ * at once and the share of them each scheduling class receives.
+ *
+ * <pre>{@code
+ * SchedulingPolicy policy = SchedulingPolicy.of(16)
+ *         .withWeight("interactive", 8)
+ *         .withWeight("batch", 1)
+ *         .withMaxWait(Duration.ofSeconds(1));
+ * }</pre>
+ *
+ * <p>
+ *     While transactions of several classes are queued, each class receives slots in proportion
+ *     to its weight. A class without a weight of its own, including the default class of the
+ *     {@code Transactional}s without {@link Transactional#scheduledAs(Object)}, has the default
+ *     weight of 1. A transaction that has been queued for longer than the maximum wait is
+ *     admitted before the others regardless of the weights, which bounds the wait of the classes
+ *     with a small weight.
+ * </p>
+ *
+ * <p>
+ *     {@code SchedulingPolicy} instances are immutable. The {@code with} methods return modified
+ *     copies.
+ * </p>
+ */
+public final class SchedulingPolicy {
+    private final int slots;
+    private final Map<Object, Integer> weights;
+    private final int defaultWeight;
+    private final long maxWaitNanos;
+
+    private SchedulingPolicy(
+            int slots,
+            Map<Object, Integer> weights,
+            int defaultWeight,
+            long maxWaitNanos
+    ) {
+        this.slots = slots;
+        this.weights = weights;
+        this.defaultWeight = defaultWeight;
+        this.maxWaitNanos = maxWaitNanos;
+    }
+
+    /**
+     * Create a {@code SchedulingPolicy} running at most the given number of transactions at once.
+     * All classes have the same weight and the wait is not bounded by default.
+     *
+     * @param slots the number of transactions run at once
+     * @return the created policy
+     */
+    public static SchedulingPolicy of(int slots) {
+        if (slots < 1) {
+            throw new IllegalArgumentException("slots must be positive");
+        }
+        return new SchedulingPolicy(slots, Map.of(), 1, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns a copy of this policy giving the given weight to a scheduling class.
+     *
+     * @param schedulingClass the scheduling class
+     * @param weight the weight of the class, must be positive
+     * @return the modified policy
+     */
+    public SchedulingPolicy withWeight(Object schedulingClass, int weight) {
+        Objects.requireNonNull(schedulingClass);
+        Map<Object, Integer> modified = new HashMap<>(weights);
+        modified.put(schedulingClass, positive(weight));
+        return new SchedulingPolicy(slots, Map.copyOf(modified), defaultWeight, maxWaitNanos);
+    }
+
+    /**
+     * Returns a copy of this policy giving the given weight to the classes without a weight of
+     * their own.
+     *
+     * @param weight the default weight, must be positive
+     * @return the modified policy
+     */
+    public SchedulingPolicy withDefaultWeight(int weight) {
+        return new SchedulingPolicy(slots, weights, positive(weight), maxWaitNanos);
+    }
+
+    /**
+     * Returns a copy of this policy admitting a transaction queued for longer than the given time
+     * before the others.
+     *
+     * @param maxWait the time after which a queued transaction is admitted first
+     * @return the modified policy
+     */
+    public SchedulingPolicy withMaxWait(Duration maxWait) {
+        if (maxWait.isNegative()) {
+            throw new IllegalArgumentException("maxWait must not be negative");
+        }
+        return new SchedulingPolicy(slots, weights, defaultWeight, maxWait.toNanos());
+    }
+
+    int slots() {
+        return slots;
+    }
+
+    int weight(Object schedulingClass) {
+        Integer weight = schedulingClass != null ? weights.get(schedulingClass) : null;
+        return weight != null ? weight : defaultWeight;
+    }
+
+    long maxWaitNanos() {
+        return maxWaitNanos;
+    }
+
+    private static int positive(int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("weight must be positive");
+        }
+        return weight;
+    }
+}
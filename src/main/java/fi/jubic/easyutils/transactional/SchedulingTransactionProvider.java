@@ -0,0 +1,322 @@
+package fi.jubic.easyutils.transactional;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A {@link TransactionProvider} decorator sharing a fixed number of transaction slots between
+ * scheduling classes with weighted fair queuing. Latency-critical and batch workloads using the
+ * same provider can then be given their own classes, so that a batch job queueing many
+ * transactions does not starve the interactive ones.
+ *
+ * <pre>{@code
+ * TransactionProvider<DSLContext> scheduling = new SchedulingTransactionProvider<>(
+ *         provider,
+ *         SchedulingPolicy.of(16).withWeight("interactive", 8).withWeight("batch", 1)
+ * );
+ *
+ * Transactional.of(ctx -> ..., scheduling).scheduledAs("batch").get();
+ * }</pre>
+ *
+ * <p>
+ *     A transaction is scheduled in the class set with {@link Transactional#scheduledAs(Object)}
+ *     or in the default class. When all slots are taken, the transaction waits in the queue of
+ *     its class. A freed slot goes to the queued transaction with the earliest virtual finish
+ *     time, which advances by the inverse of the weight of the class with each transaction, so
+ *     that the classes with queued transactions receive slots in proportion to their weights and
+ *     the transactions of a class are admitted in arrival order. A transaction queued for longer
+ *     than the maximum wait of the {@link SchedulingPolicy} is admitted first. A transaction
+ *     created with {@link Transactional#withTimeout(java.time.Duration)} leaves the queue and
+ *     fails with a {@link TransactionTimeoutException} once its deadline passes.
+ * </p>
+ *
+ * <p>
+ *     The time each transaction spent queued is recorded in the {@link LatencyHistogram} of its
+ *     class. A transaction requested while the thread is already performing a transaction of
+ *     this provider is passed to the underlying provider directly. Procedures performed without
+ *     a transaction are not scheduled.
+ * </p>
+ *
+ * @param <C> the type of the transaction context
+ */
+public class SchedulingTransactionProvider<C> implements TransactionProvider<C> {
+    private static final Object DEFAULT_CLASS = new Object();
+
+    private final TransactionProvider<C> provider;
+    private final SchedulingPolicy policy;
+
+    private final Object lock = new Object();
+    private final Map<Object, Flow> flows = new HashMap<>();
+    private final List<Flow> backlogged = new ArrayList<>();
+    private final ThreadLocal<Boolean> active = new ThreadLocal<>();
+    private double virtualTime;
+    private long sequence;
+    private int inFlight;
+    private int queued;
+
+    /**
+     * Create a {@code SchedulingTransactionProvider} for the given provider.
+     *
+     * @param provider the provider performing the admitted transactions
+     * @param policy the number of slots and the weights of the classes
+     */
+    public SchedulingTransactionProvider(
+            TransactionProvider<C> provider,
+            SchedulingPolicy policy
+    ) {
+        this.provider = Objects.requireNonNull(provider);
+        this.policy = Objects.requireNonNull(policy);
+    }
+
+    @Override
+    public <T> T runWithTransaction(Function<C, T> procedure) {
+        return schedule(null, null, () -> provider.runWithTransaction(procedure));
+    }
+
+    @Override
+    public <T> T runWithTransaction(Function<C, T> procedure, TransactionHints hints) {
+        return schedule(
+                hints.schedulingClass().orElse(null),
+                hints.deadline(),
+                () -> provider.runWithTransaction(procedure, hints)
+        );
+    }
+
+    @Override
+    public <T> T runWithoutTransaction(Function<C, T> procedure) {
+        return provider.runWithoutTransaction(procedure);
+    }
+
+    @Override
+    public <T> T runWithoutTransaction(Function<C, T> procedure, TransactionHints hints) {
+        return provider.runWithoutTransaction(procedure, hints);
+    }
+
+    @Override
+    public TransactionListener transactionListener() {
+        return provider.transactionListener();
+    }
+
+    /**
+     * Returns the histogram of the time the transactions of the given class spent queued. The
+     * transactions admitted without queueing are recorded with a zero wait.
+     *
+     * @param schedulingClass the scheduling class
+     * @return the histogram of queue wait times in nanoseconds
+     */
+    public LatencyHistogram queueWait(Object schedulingClass) {
+        synchronized (lock) {
+            return flow(Objects.requireNonNull(schedulingClass)).queueWait;
+        }
+    }
+
+    /**
+     * Returns the histogram of the time the transactions of the default class spent queued.
+     *
+     * @return the histogram of queue wait times in nanoseconds
+     */
+    public LatencyHistogram queueWait() {
+        synchronized (lock) {
+            return flow(DEFAULT_CLASS).queueWait;
+        }
+    }
+
+    /**
+     * Returns the number of transactions of the given class currently queued.
+     *
+     * @param schedulingClass the scheduling class
+     * @return the queue depth of the class
+     */
+    public int queueDepth(Object schedulingClass) {
+        synchronized (lock) {
+            Flow flow = flows.get(Objects.requireNonNull(schedulingClass));
+            return flow != null ? flow.queue.size() : 0;
+        }
+    }
+
+    /**
+     * Returns the number of transactions currently running.
+     *
+     * @return the number of transactions holding a slot
+     */
+    public int inFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    private <T> T schedule(Object schedulingClass, Deadline deadline, Supplier<T> transaction) {
+        if (active.get() != null) return transaction.get();
+
+        acquire(schedulingClass != null ? schedulingClass : DEFAULT_CLASS, deadline);
+        active.set(Boolean.TRUE);
+        try {
+            return transaction.get();
+        }
+        finally {
+            active.remove();
+            release();
+        }
+    }
+
+    /**
+     * Takes a slot, waiting in the queue of the class if all slots are taken. A transaction with
+     * a deadline waits until the deadline at most.
+     *
+     * @throws TransactionTimeoutException if the deadline passes while queued
+     * @throws CancellationException if the thread is interrupted while queued
+     */
+    private void acquire(Object schedulingClass, Deadline deadline) {
+        synchronized (lock) {
+            Flow flow = flow(schedulingClass);
+            double start = Math.max(virtualTime, flow.lastFinish);
+            flow.lastFinish = start + 1.0 / flow.weight;
+            if (inFlight < policy.slots() && queued == 0) {
+                inFlight++;
+                virtualTime = start;
+                flow.queueWait.record(0L);
+                return;
+            }
+
+            Waiter waiter = new Waiter(flow, start, flow.lastFinish, sequence++, System.nanoTime());
+            if (flow.queue.isEmpty()) backlogged.add(flow);
+            flow.queue.add(waiter);
+            queued++;
+            try {
+                while (!waiter.admitted) {
+                    if (deadline == null) {
+                        lock.wait();
+                        continue;
+                    }
+                    long remaining = deadline.nanoTime - System.nanoTime();
+                    if (remaining <= 0L) {
+                        withdraw(waiter);
+                        throw new TransactionTimeoutException(
+                                "Transaction deadline passed while waiting for a slot"
+                        );
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                }
+            }
+            catch (InterruptedException exception) {
+                if (waiter.admitted) {
+                    inFlight--;
+                    admitWaiting();
+                }
+                else {
+                    withdraw(waiter);
+                }
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for a slot");
+            }
+        }
+    }
+
+    /**
+     * Removes a waiter that has not been admitted from the queue of its class. The virtual
+     * finish time of the class is rewound if the waiter was the last one queued.
+     */
+    private void withdraw(Waiter waiter) {
+        Flow flow = waiter.flow;
+        if (flow.queue.peekLast() == waiter) flow.lastFinish = waiter.start;
+        flow.queue.remove(waiter);
+        if (flow.queue.isEmpty()) backlogged.remove(flow);
+        queued--;
+    }
+
+    private void release() {
+        synchronized (lock) {
+            inFlight--;
+            admitWaiting();
+        }
+    }
+
+    /**
+     * Admits queued transactions while there are free slots and wakes up their threads.
+     */
+    private void admitWaiting() {
+        boolean wake = false;
+        while (inFlight < policy.slots() && queued > 0) {
+            Waiter waiter = next(System.nanoTime()).queue.poll();
+            if (waiter.flow.queue.isEmpty()) backlogged.remove(waiter.flow);
+            queued--;
+            inFlight++;
+            virtualTime = Math.max(virtualTime, waiter.start);
+            waiter.admitted = true;
+            waiter.flow.queueWait.record(System.nanoTime() - waiter.enqueuedNanos);
+            wake = true;
+        }
+        if (wake) lock.notifyAll();
+    }
+
+    /**
+     * Returns the class whose next transaction is admitted: the one queued longest if it has
+     * waited for longer than the maximum wait, otherwise the one with the earliest virtual finish
+     * time.
+     */
+    private Flow next(long now) {
+        Flow oldest = null;
+        Flow earliest = null;
+        for (Flow flow : backlogged) {
+            Waiter head = flow.queue.peek();
+            if (oldest == null || head.sequence < oldest.queue.peek().sequence) {
+                oldest = flow;
+            }
+            Waiter earliestHead = earliest != null ? earliest.queue.peek() : null;
+            if (earliestHead == null
+                    || head.finish < earliestHead.finish
+                    || head.finish == earliestHead.finish && head.sequence < earliestHead.sequence
+            ) {
+                earliest = flow;
+            }
+        }
+        if (now - oldest.queue.peek().enqueuedNanos > policy.maxWaitNanos()) return oldest;
+        return earliest;
+    }
+
+    private Flow flow(Object schedulingClass) {
+        Flow flow = flows.get(schedulingClass);
+        if (flow == null) {
+            int weight = policy.weight(schedulingClass == DEFAULT_CLASS ? null : schedulingClass);
+            flow = new Flow(weight);
+            flows.put(schedulingClass, flow);
+        }
+        return flow;
+    }
+
+    private static final class Flow {
+        private final int weight;
+        private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+        private double lastFinish;
+
+        private Flow(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    private static final class Waiter {
+        private final Flow flow;
+        private final double start;
+        private final double finish;
+        private final long sequence;
+        private final long enqueuedNanos;
+        private boolean admitted;
+
+        private Waiter(Flow flow, double start, double finish, long sequence, long enqueuedNanos) {
+            this.flow = flow;
+            this.start = start;
+            this.finish = finish;
+            this.sequence = sequence;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package fi.jubic.easyutils.transactional;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A table of the transactions in flight for {@link Transactional#coalesced(Object)}. Concurrent
+ * calls with an equal key share a single execution: the first caller performs the transaction
+ * and the callers arriving while it is in flight wait for it and receive the same result or the
+ * same exception. A call arriving after the execution has completed starts a new one, so results
+ * are never cached.
+ *
+ * <p>
+ *     The table is divided into stripes locked independently, so that calls with different keys
+ *     rarely contend. The counters can be read at any time while calls are in flight.
+ * </p>
+ */
+public final class SingleFlight {
+    private static final SingleFlight GLOBAL = new SingleFlight(64);
+
+    private final Stripe[] stripes;
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Create a {@code SingleFlight} with its own table and counters.
+     *
+     * @param stripes the number of independently locked stripes of the table, rounded up to a
+     *                power of two
+     */
+    public SingleFlight(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("stripes must be positive");
+        }
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) size <<= 1;
+
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Returns the {@code SingleFlight} used by {@link Transactional#coalesced(Object)}.
+     *
+     * @return the global table
+     */
+    public static SingleFlight global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Returns the number of executions performed on behalf of the calls.
+     *
+     * @return the number of executions
+     */
+    public long executions() {
+        return executions.sum();
+    }
+
+    /**
+     * Returns the number of calls that received the result of an execution started by another
+     * call instead of performing their own, i.e. the number of executions avoided.
+     *
+     * @return the number of coalesced calls
+     */
+    public long coalesced() {
+        return coalesced.sum();
+    }
+
+    <T> T run(Object key, Supplier<T> execution) {
+        Stripe stripe = stripes[spread(key.hashCode()) & (stripes.length - 1)];
+
+        Call call;
+        boolean leader = false;
+        synchronized (stripe) {
+            call = stripe.calls.get(key);
+            if (call == null) {
+                call = new Call();
+                stripe.calls.put(key, call);
+                leader = true;
+            }
+        }
+
+        if (!leader) {
+            coalesced.increment();
+            return call.result();
+        }
+
+        executions.increment();
+        try {
+            call.result = execution.get();
+        }
+        catch (RuntimeException | Error exception) {
+            call.failure = exception;
+        }
+        finally {
+            // Later calls must start a new execution once the result has been published.
+            synchronized (stripe) {
+                stripe.calls.remove(key);
+            }
+            call.done.countDown();
+        }
+        return call.result();
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * The key of a coalesced transaction. Equal keys of different providers are not coalesced.
+     */
+    static final class Key {
+        private final TransactionProvider<?> provider;
+        private final Object key;
+
+        Key(TransactionProvider<?> provider, Object key) {
+            this.provider = provider;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof Key)) return false;
+
+            Key that = (Key) other;
+            return provider == that.provider && key.equals(that.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(provider) + key.hashCode();
+        }
+    }
+
+    private static final class Stripe {
+        private final Map<Object, Call> calls = new HashMap<>();
+    }
+
+    private static final class Call {
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private Object result;
+        private Throwable failure;
+
+        @SuppressWarnings("unchecked")
+        private <T> T result() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                }
+                catch (InterruptedException exception) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+
+            if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+            if (failure instanceof Error) throw (Error) failure;
+            return (T) result;
+        }
+    }
+}
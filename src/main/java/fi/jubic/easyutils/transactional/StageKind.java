@@ -0,0 +1,36 @@
+package fi.jubic.easyutils.transactional;
+
+/**
+ * The kind of a stage of a {@link Transactional} chain reported to a {@link TransactionListener}.
+ */
+public enum StageKind {
+    /**
+     * The procedure the chain was created from, including the procedures combined with
+     * {@code all}.
+     */
+    SOURCE,
+
+    /**
+     * A {@link Transactional#map(java.util.function.Function)} stage.
+     */
+    MAP,
+
+    /**
+     * A {@link Transactional#peek(java.util.function.Consumer)} stage.
+     */
+    PEEK,
+
+    /**
+     * A {@link Transactional#flatMap(java.util.function.Function)} stage. Only the mapping
+     * function is included. The stages of the returned {@code Transactional} are reported
+     * separately.
+     */
+    FLAT_MAP,
+
+    /**
+     * A {@link Transactional#peekMap(java.util.function.Function)} stage. Only the mapping
+     * function is included. The stages of the returned {@code Transactional} are reported
+     * separately.
+     */
+    PEEK_MAP
+}
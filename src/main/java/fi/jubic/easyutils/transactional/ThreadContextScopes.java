@@ -0,0 +1,202 @@
+package fi.jubic.easyutils.transactional;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * The transactions of {@link ThreadContextTransactionProvider}s active on each thread. A
+ * transaction is tracked per provider instance, so that the transactions of separate providers,
+ * for example of separate databases, are never joined.
+ */
+@SuppressFBWarnings("THROWS_METHOD_THROWS_RUNTIMEEXCEPTION")
+final class ThreadContextScopes {
+    private static final ThreadLocal<Map<ThreadContextTransactionProvider, Scope>> ACTIVE =
+            ThreadLocal.withInitial(IdentityHashMap::new);
+
+    private ThreadContextScopes() {
+
+    }
+
+    /**
+     * Returns the active transactions of the current thread. The returned map is modified as
+     * transactions begin and end.
+     */
+    static Map<ThreadContextTransactionProvider, Scope> active() {
+        return ACTIVE.get();
+    }
+
+    /**
+     * Returns whether a transaction of the given provider requested on the current thread would
+     * join an active transaction.
+     */
+    static boolean joins(TransactionProvider<?> provider) {
+        if (!(provider instanceof ThreadContextTransactionProvider)) return false;
+
+        ThreadContextTransactionProvider scoped = (ThreadContextTransactionProvider) provider;
+        if (scoped.propagation() == Propagation.REQUIRES_NEW) return false;
+        if (scoped instanceof Propagating) scoped = ((Propagating) scoped).provider;
+        return ACTIVE.get().containsKey(scoped);
+    }
+
+    static <T> T run(
+            ThreadContextTransactionProvider provider,
+            Propagation propagation,
+            Function<Void, T> procedure
+    ) {
+        Map<ThreadContextTransactionProvider, Scope> scopes = ACTIVE.get();
+        Scope active = scopes.get(provider);
+        if (active == null) {
+            if (propagation == Propagation.SUPPORTS) {
+                return provider.runWithoutTransaction(procedure);
+            }
+            return begin(provider, scopes, procedure);
+        }
+        if (propagation != Propagation.REQUIRES_NEW) {
+            return join(active, procedure);
+        }
+
+        Object suspended = provider.suspend();
+        try {
+            return begin(provider, scopes, procedure);
+        }
+        finally {
+            provider.resume(suspended);
+        }
+    }
+
+    private static <T> T begin(
+            ThreadContextTransactionProvider provider,
+            Map<ThreadContextTransactionProvider, Scope> scopes,
+            Function<Void, T> procedure
+    ) {
+        provider.begin();
+        Scope scope = new Scope();
+        Scope suspended = scopes.put(provider, scope);
+        T result;
+        try {
+            result = procedure.apply(null);
+            if (scope.rollbackOnly) {
+                throw new IllegalStateException(
+                        "Transaction was marked rollback-only by a joined procedure"
+                );
+            }
+            provider.commit();
+        }
+        catch (RuntimeException exception) {
+            provider.rollback();
+            if (scope.callbacks != null) scope.callbacks.rolledBack(exception);
+            throw exception;
+        }
+        finally {
+            // The empty map is kept for the thread so that the outermost transactions do not
+            // allocate.
+            if (suspended != null) {
+                scopes.put(provider, suspended);
+            }
+            else {
+                scopes.remove(provider);
+            }
+        }
+        if (scope.callbacks != null) scope.callbacks.committed();
+        return result;
+    }
+
+    private static <T> T join(Scope scope, Function<Void, T> procedure) {
+        // The callbacks of a joined procedure must wait for the joined transaction to complete.
+        if (procedure instanceof Procedure) {
+            Callbacks callbacks = ((Procedure<?, ?>) procedure).callbacks();
+            if (callbacks != null) callbacks.join(scope.callbacks());
+        }
+        try {
+            return procedure.apply(null);
+        }
+        catch (RuntimeException exception) {
+            scope.rollbackOnly = true;
+            throw exception;
+        }
+    }
+
+    static final class Scope {
+        // Joined procedures may run on other threads, see TransactionContext.
+        private volatile boolean rollbackOnly;
+        private volatile Callbacks callbacks;
+
+        private synchronized Callbacks callbacks() {
+            if (callbacks == null) callbacks = new Callbacks();
+            return callbacks;
+        }
+    }
+
+    /**
+     * A view of a provider performing its transactions with another {@link Propagation}. The
+     * view shares the active transactions of the provider.
+     */
+    static final class Propagating implements ThreadContextTransactionProvider {
+        private final ThreadContextTransactionProvider provider;
+        private final Propagation propagation;
+
+        Propagating(ThreadContextTransactionProvider provider, Propagation propagation) {
+            this.provider = provider;
+            this.propagation = Objects.requireNonNull(propagation);
+        }
+
+        @Override
+        public void begin() {
+            provider.begin();
+        }
+
+        @Override
+        public void commit() {
+            provider.commit();
+        }
+
+        @Override
+        public void rollback() {
+            provider.rollback();
+        }
+
+        @Override
+        public Object suspend() {
+            return provider.suspend();
+        }
+
+        @Override
+        public void resume(Object suspended) {
+            provider.resume(suspended);
+        }
+
+        @Override
+        public boolean skipsSingleStatementReads() {
+            return provider.skipsSingleStatementReads();
+        }
+
+        @Override
+        public TransactionListener transactionListener() {
+            return provider.transactionListener();
+        }
+
+        @Override
+        public Propagation propagation() {
+            return propagation;
+        }
+
+        @Override
+        public ThreadContextTransactionProvider withPropagation(Propagation propagation) {
+            return provider.withPropagation(propagation);
+        }
+
+        @Override
+        public <T> T runWithTransaction(Function<Void, T> procedure) {
+            return run(provider, propagation, procedure);
+        }
+
+        @Override
+        public <T> T runWithoutTransaction(Function<Void, T> procedure) {
+            return provider.runWithoutTransaction(procedure);
+        }
+    }
+}
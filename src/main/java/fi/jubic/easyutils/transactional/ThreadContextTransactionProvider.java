@@ -12,6 +12,13 @@ import java.util.function.Function;
  * {@link ThreadContextTransactionProvider#commit()} and
  * {@link ThreadContextTransactionProvider#rollback()} methods are called to manage the transaction
  * scope.
+ *
+ * <p>
+ *     The transactions are tracked per thread. A transaction requested while another transaction
+ *     of the same provider is active on the thread, such as when a procedure calls
+ *     {@link Transactional#get()}, is performed according to the {@link Propagation} of the
+ *     provider. By default it joins the active transaction without beginning or committing.
+ * </p>
  */
 @SuppressFBWarnings("THROWS_METHOD_THROWS_RUNTIMEEXCEPTION")
 public interface ThreadContextTransactionProvider extends TransactionProvider<Void> {
@@ -30,18 +37,72 @@ public interface ThreadContextTransactionProvider extends TransactionProvider<Vo
      */
     void rollback();
 
+    /**
+     * Returns whether read-only procedures consisting of a single statement are performed without
+     * beginning and committing a transaction. If enabled, such procedures are performed with
+     * {@link TransactionProvider#runWithoutTransaction(Function)}, which must then be supported.
+     * See {@link TransactionHints#isSingleStatement()}. Disabled by default.
+     *
+     * @return whether single statement reads skip the transaction
+     */
+    default boolean skipsSingleStatementReads() {
+        return false;
+    }
+
+    /**
+     * Detach the transaction bound to the current thread so that another transaction can be begun.
+     * Required by {@link Propagation#REQUIRES_NEW}. Not supported by default.
+     *
+     * @return the detached transaction, passed to {@link ThreadContextTransactionProvider#resume}
+     */
+    default Object suspend() {
+        throw new UnsupportedOperationException("Suspending a transaction is not supported");
+    }
+
+    /**
+     * Bind a transaction detached with {@link ThreadContextTransactionProvider#suspend()} back to
+     * the current thread.
+     *
+     * @param suspended the detached transaction
+     */
+    default void resume(Object suspended) {
+        throw new UnsupportedOperationException("Resuming a transaction is not supported");
+    }
+
+    /**
+     * Returns how a transaction requested while another transaction of this provider is active
+     * on the thread is performed. {@link Propagation#REQUIRED} by default.
+     *
+     * @return the propagation of the transactions
+     */
+    default Propagation propagation() {
+        return Propagation.REQUIRED;
+    }
+
+    /**
+     * Returns a view of this provider performing its transactions with the given
+     * {@link Propagation}. The view shares the active transactions of this provider, so that for
+     * example a {@code Transactional} created with a {@link Propagation#REQUIRES_NEW} view
+     * suspends the active transaction of this provider.
+     *
+     * @param propagation the propagation of the transactions
+     * @return the view of this provider
+     */
+    default ThreadContextTransactionProvider withPropagation(Propagation propagation) {
+        return new ThreadContextScopes.Propagating(this, propagation);
+    }
+
     @Override
     default <T> T runWithTransaction(Function<Void, T> procedure) {
-        begin();
-        try {
-            T result = procedure.apply(null);
-            commit();
-            return result;
-        }
-        catch (RuntimeException exception) {
-            rollback();
-            throw exception;
+        return ThreadContextScopes.run(this, propagation(), procedure);
+    }
+
+    @Override
+    default <T> T runWithTransaction(Function<Void, T> procedure, TransactionHints hints) {
+        if (hints.isSingleStatement() && skipsSingleStatementReads()) {
+            return runWithoutTransaction(procedure);
         }
+        return runWithTransaction(procedure);
     }
 
     @Override
@@ -0,0 +1,238 @@
+package fi.jubic.easyutils.transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The transactions of {@link ThreadContextTransactionProvider}s active on a thread, captured so
+ * that work handed to other threads runs within them. Without it, a task submitted to an
+ * executor, a {@code CompletableFuture} stage or a parallel stream runs outside of the
+ * transaction of the thread that created it.
+ *
+ * <pre>{@code
+ * Transactional.of(
+ *         () -> {
+ *             TransactionContext context = TransactionContext.capture();
+ *             return orders.parallelStream()
+ *                     .map(context.wrap(this::price))
+ *                     .collect(Collectors.toList());
+ *         },
+ *         provider
+ * );
+ * }</pre>
+ *
+ * <p>
+ *     A wrapped task attaches the captured transactions to the thread running it with
+ *     {@link ThreadContextTransactionProvider#resume(Object)} and detaches them afterwards with
+ *     {@link ThreadContextTransactionProvider#suspend()}, so the providers must support
+ *     suspending. Transactionals performed by the task join the captured transactions according
+ *     to their {@link Propagation}. The {@code onCommit} and {@code onRollback} callbacks and the
+ *     deadline of the capturing procedure are carried along as well. A task running on the
+ *     capturing thread itself, as parallel streams partly do, uses the transactions as they are.
+ * </p>
+ *
+ * <p>
+ *     The tasks share the transactions with the capturing thread. The resources of the
+ *     transactions must therefore tolerate concurrent use, and the capturing procedure must wait
+ *     for the tasks to complete before it returns and the transactions are committed.
+ * </p>
+ */
+public final class TransactionContext {
+    private final List<Captured> transactions;
+    private final Callbacks callbacks;
+    private final Deadline deadline;
+
+    private TransactionContext(
+            List<Captured> transactions,
+            Callbacks callbacks,
+            Deadline deadline
+    ) {
+        this.transactions = transactions;
+        this.callbacks = callbacks;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Capture the transactions active on the current thread. The handle of each transaction is
+     * obtained by suspending and immediately resuming it.
+     *
+     * @return the captured transactions, empty if none are active
+     */
+    public static TransactionContext capture() {
+        List<Captured> transactions = new ArrayList<>();
+        for (Map.Entry<ThreadContextTransactionProvider, ThreadContextScopes.Scope> entry
+                : ThreadContextScopes.active().entrySet()) {
+            ThreadContextTransactionProvider provider = entry.getKey();
+            Object handle = provider.suspend();
+            provider.resume(handle);
+            transactions.add(new Captured(provider, entry.getValue(), handle));
+        }
+        return new TransactionContext(transactions, Callbacks.bound(), Deadline.bound());
+    }
+
+    /**
+     * Returns an {@link Executor} running each task within the transactions active on the thread
+     * submitting it.
+     *
+     * @param executor the executor running the tasks
+     * @return the propagating executor
+     */
+    public static Executor propagating(Executor executor) {
+        Objects.requireNonNull(executor);
+        return command -> executor.execute(capture().wrap(command));
+    }
+
+    /**
+     * Returns a {@link Runnable} running the given task within the captured transactions.
+     *
+     * @param task the task
+     * @return the wrapped task
+     */
+    public Runnable wrap(Runnable task) {
+        Objects.requireNonNull(task);
+        return () -> call(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Returns a {@link Callable} calling the given task within the captured transactions.
+     *
+     * @param task the task
+     * @param <V> the type of the result
+     * @return the wrapped task
+     */
+    public <V> Callable<V> wrap(Callable<V> task) {
+        Objects.requireNonNull(task);
+        return () -> {
+            Attachment attachment = attach();
+            try {
+                return task.call();
+            }
+            finally {
+                attachment.detach();
+            }
+        };
+    }
+
+    /**
+     * Returns a {@link Function} applying the given function within the captured transactions,
+     * for example in a stage of a parallel stream.
+     *
+     * @param function the function
+     * @param <A> the type of the argument
+     * @param <R> the type of the result
+     * @return the wrapped function
+     */
+    public <A, R> Function<A, R> wrap(Function<A, R> function) {
+        Objects.requireNonNull(function);
+        return argument -> call(() -> function.apply(argument));
+    }
+
+    private <V> V call(Supplier<V> task) {
+        Attachment attachment = attach();
+        try {
+            return task.get();
+        }
+        finally {
+            attachment.detach();
+        }
+    }
+
+    private Attachment attach() {
+        Map<ThreadContextTransactionProvider, ThreadContextScopes.Scope> scopes =
+                ThreadContextScopes.active();
+        Attachment attachment = new Attachment(scopes);
+        try {
+            for (Captured captured : transactions) {
+                ThreadContextScopes.Scope previous = scopes.get(captured.provider);
+                if (previous == captured.scope) continue;
+
+                // The transaction of the thread, if any, is set aside for the duration of the task.
+                Object suspended = previous != null ? captured.provider.suspend() : null;
+                captured.provider.resume(captured.handle);
+                scopes.put(captured.provider, captured.scope);
+                attachment.attached.add(new Detach(captured.provider, previous, suspended));
+            }
+        }
+        catch (RuntimeException exception) {
+            attachment.detachTransactions();
+            throw exception;
+        }
+        attachment.previousCallbacks = callbacks != null ? callbacks.enter() : null;
+        attachment.previousDeadline = deadline != null ? deadline.enter() : null;
+        return attachment;
+    }
+
+    private final class Attachment {
+        private final Map<ThreadContextTransactionProvider, ThreadContextScopes.Scope> scopes;
+        private final List<Detach> attached = new ArrayList<>();
+        private Callbacks previousCallbacks;
+        private Deadline previousDeadline;
+
+        private Attachment(
+                Map<ThreadContextTransactionProvider, ThreadContextScopes.Scope> scopes
+        ) {
+            this.scopes = scopes;
+        }
+
+        private void detach() {
+            if (deadline != null) Deadline.exit(previousDeadline);
+            if (callbacks != null) Callbacks.exit(previousCallbacks);
+            detachTransactions();
+        }
+
+        private void detachTransactions() {
+            for (int i = attached.size() - 1; i >= 0; i--) {
+                Detach detach = attached.get(i);
+                detach.provider.suspend();
+                if (detach.previous != null) {
+                    scopes.put(detach.provider, detach.previous);
+                    detach.provider.resume(detach.suspended);
+                }
+                else {
+                    scopes.remove(detach.provider);
+                }
+            }
+        }
+    }
+
+    private static final class Captured {
+        private final ThreadContextTransactionProvider provider;
+        private final ThreadContextScopes.Scope scope;
+        private final Object handle;
+
+        private Captured(
+                ThreadContextTransactionProvider provider,
+                ThreadContextScopes.Scope scope,
+                Object handle
+        ) {
+            this.provider = provider;
+            this.scope = scope;
+            this.handle = handle;
+        }
+    }
+
+    private static final class Detach {
+        private final ThreadContextTransactionProvider provider;
+        private final ThreadContextScopes.Scope previous;
+        private final Object suspended;
+
+        private Detach(
+                ThreadContextTransactionProvider provider,
+                ThreadContextScopes.Scope previous,
+                Object suspended
+        ) {
+            this.provider = provider;
+            this.previous = previous;
+            this.suspended = suspended;
+        }
+    }
+}
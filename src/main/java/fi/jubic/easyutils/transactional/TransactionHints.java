@@ -0,0 +1,95 @@
+package fi.jubic.easyutils.transactional;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Hints passed to a {@link TransactionProvider} describing the procedure it is about to perform.
+ * Providers are free to ignore the hints.
+ */
+public final class TransactionHints {
+    static final TransactionHints DEFAULTS = new TransactionHints(false, false);
+    static final TransactionHints READ_ONLY = new TransactionHints(true, false);
+    static final TransactionHints READ_ONLY_SINGLE_STATEMENT = new TransactionHints(true, true);
+
+    private final boolean readOnly;
+    private final boolean singleStatement;
+    private final Deadline deadline;
+    private final Object schedulingClass;
+
+    private TransactionHints(boolean readOnly, boolean singleStatement) {
+        this(readOnly, singleStatement, null, null);
+    }
+
+    private TransactionHints(
+            boolean readOnly,
+            boolean singleStatement,
+            Deadline deadline,
+            Object schedulingClass
+    ) {
+        this.readOnly = readOnly;
+        this.singleStatement = singleStatement;
+        this.deadline = deadline;
+        this.schedulingClass = schedulingClass;
+    }
+
+    TransactionHints withDeadline(Deadline deadline) {
+        return new TransactionHints(readOnly, singleStatement, deadline, schedulingClass);
+    }
+
+    TransactionHints withSchedulingClass(Object schedulingClass) {
+        return new TransactionHints(readOnly, singleStatement, deadline, schedulingClass);
+    }
+
+    Deadline deadline() {
+        return deadline;
+    }
+
+    /**
+     * Returns whether the procedure has been marked with {@link Transactional#readOnly()}. A
+     * read-only procedure can be performed in a read-only transaction or on a replica.
+     *
+     * @return whether the procedure only reads
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Returns whether the procedure is read-only and consists of a single procedure created with
+     * {@link Transactional#of(java.util.function.Function, TransactionProvider)}, followed only by
+     * {@code map} and {@code peek} stages. Such a procedure is expected to perform a single
+     * statement that is consistent even without a transaction.
+     *
+     * @return whether the procedure is a single read-only statement
+     */
+    public boolean isSingleStatement() {
+        return singleStatement;
+    }
+
+    /**
+     * Returns the time remaining until the deadline of a procedure created with
+     * {@link Transactional#withTimeout(Duration)}. Providers can use the remaining time as the
+     * statement or lock wait timeout of the transaction, so that a slow statement is cancelled
+     * and its resources released at the deadline. The remaining time is calculated when this
+     * method is called and it is negative once the deadline has passed.
+     *
+     * @return the time remaining, or an empty {@code Optional} if the procedure has no deadline
+     */
+    public Optional<Duration> timeRemaining() {
+        if (deadline == null) return Optional.empty();
+
+        return Optional.of(Duration.ofNanos(deadline.nanoTime - System.nanoTime()));
+    }
+
+    /**
+     * Returns the class of a procedure created with {@link Transactional#scheduledAs(Object)},
+     * such as a priority or a tenant. A {@link SchedulingTransactionProvider} shares the
+     * transactions it runs at once between the classes.
+     *
+     * @return the scheduling class, or an empty {@code Optional} if the procedure has none
+     */
+    public Optional<Object> schedulingClass() {
+        return Optional.ofNullable(schedulingClass);
+    }
+}
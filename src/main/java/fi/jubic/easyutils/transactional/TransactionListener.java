@@ -0,0 +1,88 @@
+package fi.jubic.easyutils.transactional;
+
+/**
+ * A listener notified of the phases of the transactions performed with
+ * {@link Transactional#get()}. The timestamps are values of {@link System#nanoTime()}. A
+ * listener can be registered for a single chain with
+ * {@link Transactional#listen(TransactionListener)} or for all of the chains of a provider by
+ * overriding {@link TransactionProvider#transactionListener()}.
+ *
+ * <p>
+ *     The events of a transaction are delivered on the thread performing it, but a listener may
+ *     be notified of multiple transactions concurrently. The procedures combined with
+ *     {@code all} are reported as a single source stage. All of the methods do nothing by
+ *     default.
+ * </p>
+ */
+public interface TransactionListener {
+    /**
+     * Called before the {@link TransactionProvider} is asked to begin a transaction.
+     *
+     * @param nanoTime the current time
+     */
+    default void onBegin(long nanoTime) {
+
+    }
+
+    /**
+     * Called before a stage of the chain is performed.
+     *
+     * @param kind the kind of the stage
+     * @param index the position of the stage in its chain, the source being 0
+     * @param nanoTime the current time
+     */
+    default void onStageStart(StageKind kind, int index, long nanoTime) {
+
+    }
+
+    /**
+     * Called after a stage of the chain has completed normally. A stage throwing an exception is
+     * followed by {@link TransactionListener#onRollback}.
+     *
+     * @param kind the kind of the stage
+     * @param index the position of the stage in its chain, the source being 0
+     * @param startNanoTime the time passed to {@link TransactionListener#onStageStart}
+     * @param nanoTime the current time
+     */
+    default void onStageEnd(StageKind kind, int index, long startNanoTime, long nanoTime) {
+
+    }
+
+    /**
+     * Called after the transaction has been committed.
+     *
+     * @param beginNanoTime the time passed to {@link TransactionListener#onBegin(long)}
+     * @param procedureStartNanoTime the time the provider started the procedure
+     * @param procedureEndNanoTime the time the procedure returned to the provider
+     * @param nanoTime the current time
+     */
+    default void onCommit(
+            long beginNanoTime,
+            long procedureStartNanoTime,
+            long procedureEndNanoTime,
+            long nanoTime
+    ) {
+
+    }
+
+    /**
+     * Called after the transaction has been rolled back, or after beginning or committing it has
+     * failed. If the procedure was never started, both of the procedure timestamps are equal to
+     * {@code nanoTime}.
+     *
+     * @param failure the exception rethrown from {@link Transactional#get()}
+     * @param beginNanoTime the time passed to {@link TransactionListener#onBegin(long)}
+     * @param procedureStartNanoTime the time the provider started the procedure
+     * @param procedureEndNanoTime the time the procedure returned or threw
+     * @param nanoTime the current time
+     */
+    default void onRollback(
+            RuntimeException failure,
+            long beginNanoTime,
+            long procedureStartNanoTime,
+            long procedureEndNanoTime,
+            long nanoTime
+    ) {
+
+    }
+}
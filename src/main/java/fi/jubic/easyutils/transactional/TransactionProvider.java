@@ -36,4 +36,45 @@ public interface TransactionProvider<C> {
      * @return the result of the procedure
      */
     <T> T runWithoutTransaction(Function<C, T> procedure);
+
+    /**
+     * Returns the {@link TransactionListener} notified of the transactions performed by this
+     * provider, or {@code null} if there is none. A listener registered for a chain with
+     * {@link Transactional#listen(TransactionListener)} is used instead of the one returned by the
+     * provider. The default implementation returns {@code null}.
+     *
+     * @return the listener or {@code null}
+     */
+    default TransactionListener transactionListener() {
+        return null;
+    }
+
+    /**
+     * Begin a transaction like {@link TransactionProvider#runWithTransaction(Function)} with
+     * {@link TransactionHints} describing the procedure. Providers can use the hints, for example,
+     * to perform read-only procedures in read-only transactions or on a replica. The default
+     * implementation ignores the hints.
+     *
+     * @param procedure the procedure to run within a transaction returning a result
+     * @param hints the hints describing the procedure
+     * @param <T> the type of the returned result
+     * @return the result of the procedure
+     */
+    default <T> T runWithTransaction(Function<C, T> procedure, TransactionHints hints) {
+        return runWithTransaction(procedure);
+    }
+
+    /**
+     * Acquire the result without wrapping the operation in a transaction like
+     * {@link TransactionProvider#runWithoutTransaction(Function)} with {@link TransactionHints}
+     * describing the procedure. The default implementation ignores the hints.
+     *
+     * @param procedure the procedure to run with a non-transactional context
+     * @param hints the hints describing the procedure
+     * @param <T> the type of the returned result
+     * @return the result of the procedure
+     */
+    default <T> T runWithoutTransaction(Function<C, T> procedure, TransactionHints hints) {
+        return runWithoutTransaction(procedure);
+    }
 }
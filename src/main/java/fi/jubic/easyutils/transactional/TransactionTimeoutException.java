@@ -0,0 +1,14 @@
+package fi.jubic.easyutils.transactional;
+
+/**
+ * Thrown when a {@link Transactional} created with
+ * {@link Transactional#withTimeout(java.time.Duration)} is still being performed after its
+ * deadline. The transaction is rolled back.
+ */
+public class TransactionTimeoutException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public TransactionTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -2,7 +2,11 @@ package fi.jubic.easyutils.transactional;
 
 import fi.jubic.easyutils.tuple.Tuple;
 
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -16,15 +20,48 @@ import java.util.function.Supplier;
  * @param <C> the type of transaction context.
  */
 public class Transactional<T, C> {
-    final Function<C, T> procedure;
+    final Transactional<?, C> previous;
+    final int kind;
+    final int index;
+    final Object function;
     final TransactionProvider<C> provider;
+    final Options options;
+
+    volatile Object[] program;
+    private Procedure<C, T> procedure;
 
     protected Transactional(
             Function<C, T> procedure,
             TransactionProvider<C> provider
     ) {
-        this.procedure = procedure;
+        this(null, Procedure.SOURCE, procedure, provider, Options.DEFAULTS);
+    }
+
+    Transactional(Transactional<?, C> previous, int kind, Object function) {
+        this(previous, kind, function, previous.provider, chained(previous.options, kind));
+    }
+
+    Transactional(Function<C, T> procedure, TransactionProvider<C> provider, Options options) {
+        this(null, Procedure.SOURCE, procedure, provider, options);
+    }
+
+    private Transactional(Transactional<T, C> step, Options options) {
+        this(step.previous, step.kind, step.function, step.provider, options);
+    }
+
+    private Transactional(
+            Transactional<?, C> previous,
+            int kind,
+            Object function,
+            TransactionProvider<C> provider,
+            Options options
+    ) {
+        this.previous = previous;
+        this.kind = kind;
+        this.index = previous == null ? 0 : previous.index + 1;
+        this.function = Objects.requireNonNull(function);
         this.provider = provider;
+        this.options = options;
     }
 
     /**
@@ -35,7 +72,40 @@ public class Transactional<T, C> {
      * @return the acquired result
      */
     public T get() {
-        return provider.runWithTransaction(procedure);
+        if (options.cached == null && options.singleFlight == null) return perform();
+        // A result read in a joined transaction is rolled back with it, so it is not shared.
+        if (ThreadContextScopes.joins(provider)) return perform();
+        if (options.cached == null) return coalesce();
+
+        return options.cached.get(this::coalesce);
+    }
+
+    private T coalesce() {
+        if (options.singleFlight == null) return perform();
+
+        return options.singleFlight.run(
+                new SingleFlight.Key(provider, options.coalescingKey),
+                this::perform
+        );
+    }
+
+    private T perform() {
+        Deadline deadline = deadline();
+        TransactionHints hints = hints(deadline);
+        TransactionListener listener = options.listener != null
+                ? options.listener
+                : provider.transactionListener();
+        Procedure<C, T> procedure = listener == null && !options.callbacks && deadline == null
+                ? null
+                : new Procedure<>(this, listener, options.callbacks, deadline);
+        RetryPolicy retryPolicy = options.retryPolicy;
+        T result = retryPolicy == null
+                ? attempt(hints, listener, procedure, deadline)
+                : retryPolicy.run(() -> attempt(hints, listener, procedure, deadline));
+        // Outside of the retries, a failing callback must not perform the transaction again.
+        Callbacks callbacks = procedure != null ? procedure.collected() : null;
+        if (callbacks != null) callbacks.committed();
+        return result;
     }
 
     /**
@@ -46,7 +116,94 @@ public class Transactional<T, C> {
      * @return the acquired result.
      */
     public T bypass() {
-        return provider.runWithoutTransaction(procedure);
+        Deadline deadline = deadline();
+        TransactionHints hints = hints(deadline);
+        if (!options.callbacks && deadline == null) {
+            return provider.runWithoutTransaction(procedure(), hints);
+        }
+
+        Procedure<C, T> procedure = new Procedure<>(this, null, options.callbacks, deadline);
+        T result;
+        try {
+            result = provider.runWithoutTransaction(procedure, hints);
+        }
+        catch (RuntimeException exception) {
+            Callbacks callbacks = procedure.collected();
+            if (callbacks != null) callbacks.rolledBack(exception);
+            throw exception;
+        }
+        Callbacks callbacks = procedure.collected();
+        if (callbacks != null) callbacks.committed();
+        return result;
+    }
+
+    /**
+     * Returns a {@link CompletableFuture} completed with the result acquired by performing the
+     * contained procedure in a transactional scope on the given {@link Executor}. The whole
+     * transaction, including the commit or the rollback, is performed by a single task of the
+     * executor. Thread context bound transactions are therefore begun, committed and rolled back
+     * on the same worker thread.
+     *
+     * <p>
+     *     If the procedure, the commit or the rollback throws, the returned future is completed
+     *     exceptionally.
+     * </p>
+     *
+     * @param executor the executor performing the transaction
+     * @return the future result
+     */
+    public CompletableFuture<T> getAsync(Executor executor) {
+        Objects.requireNonNull(executor);
+        return CompletableFuture.supplyAsync(this::get, executor);
+    }
+
+    /**
+     * Returns a {@link CompletableFuture} completed with the result acquired by performing the
+     * contained procedure without the transactional scope on the given {@link Executor}. See
+     * {@link Transactional#bypass()}.
+     *
+     * @param executor the executor performing the procedure
+     * @return the future result
+     */
+    public CompletableFuture<T> bypassAsync(Executor executor) {
+        Objects.requireNonNull(executor);
+        return CompletableFuture.supplyAsync(this::bypass, executor);
+    }
+
+    /**
+     * Returns a {@link CompletableFuture} completed with the result acquired by performing the
+     * contained procedure in a transactional scope on the lane of the given key. The lane is one
+     * of the single-threaded lanes of {@link Lanes#global()} chosen by the hash code of the key,
+     * so the transactions of the same key, such as the id of an aggregate, are performed one at a
+     * time in submission order without waiting for each other's row locks, while the
+     * transactions of different keys are performed in parallel.
+     *
+     * <p>
+     *     The transaction is performed as with {@link Transactional#get()} on the thread of the
+     *     lane. It does not join a transaction active on the calling thread. If the procedure, the
+     *     commit or the rollback throws, the returned future is completed exceptionally.
+     * </p>
+     *
+     * @param key the key choosing the lane
+     * @return the future result
+     */
+    public CompletableFuture<T> onLane(Object key) {
+        return onLane(key, Lanes.global());
+    }
+
+    /**
+     * Returns a {@link CompletableFuture} completed with the result acquired by performing the
+     * contained procedure in a transactional scope on the lane of the given key of the given
+     * {@link Lanes}. See {@link Transactional#onLane(Object)}.
+     *
+     * @param key the key choosing the lane
+     * @param lanes the lanes performing the transaction
+     * @return the future result
+     */
+    public CompletableFuture<T> onLane(Object key, Lanes lanes) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(lanes);
+        return lanes.submit(key, this::get);
     }
 
     /**
@@ -60,10 +217,7 @@ public class Transactional<T, C> {
      */
     public <U> Transactional<U, C> map(Function<T, U> mapper) {
         Objects.requireNonNull(mapper);
-        return new Transactional<>(
-                mapper.compose(procedure),
-                provider
-        );
+        return new Transactional<>(this, Procedure.MAP, mapper);
     }
 
     /**
@@ -79,10 +233,7 @@ public class Transactional<T, C> {
      */
     public <U> Transactional<U, C> flatMap(Function<T, Transactional<U, C>> mapper) {
         Objects.requireNonNull(mapper);
-        return new Transactional<>(
-                context -> mapper.apply(procedure.apply(context)).procedure.apply(context),
-                provider
-        );
+        return new Transactional<>(this, Procedure.FLAT_MAP, mapper);
     }
 
     /**
@@ -94,14 +245,7 @@ public class Transactional<T, C> {
      */
     public Transactional<T, C> peek(Consumer<T> action) {
         Objects.requireNonNull(action);
-        return new Transactional<>(
-                context -> {
-                    T value = procedure.apply(context);
-                    action.accept(value);
-                    return value;
-                },
-                provider
-        );
+        return new Transactional<>(this, Procedure.PEEK, action);
     }
 
     /**
@@ -114,16 +258,347 @@ public class Transactional<T, C> {
      */
     public Transactional<T, C> peekMap(Function<T, Transactional<Void, C>> procedure) {
         Objects.requireNonNull(procedure);
+        return new Transactional<>(this, Procedure.PEEK_MAP, procedure);
+    }
+
+    /**
+     * Returns a {@code Transactional} describing the result of the contained procedure performed
+     * within a savepoint of the surrounding transaction. If the procedure throws, the changes
+     * made by it are rolled back to the savepoint and the {@code Transactional} returned from the
+     * recovery function is performed instead. The work performed before the savepoint is kept,
+     * for example when the returned {@code Transactional} is returned to
+     * {@link Transactional#flatMap(Function)}. The recovery function may rethrow the exception
+     * to fail the whole transaction. The {@code onCommit} callbacks registered by the failed
+     * procedure are discarded with its changes, and its {@code onRollback} callbacks are
+     * performed before the recovery function is applied.
+     *
+     * <p>
+     *     The {@link TransactionProvider} must be {@link SavepointCapable}.
+     * </p>
+     *
+     * @param recovery the function returning the procedure performed in place of a failed one
+     * @return the new {@code Transactional}
+     * @throws UnsupportedOperationException if the provider does not support savepoints
+     */
+    public Transactional<T, C> recover(Function<RuntimeException, Transactional<T, C>> recovery) {
+        Objects.requireNonNull(recovery);
+        if (!(provider instanceof SavepointCapable)) {
+            throw new UnsupportedOperationException(
+                    "Recovering requires a SavepointCapable TransactionProvider"
+            );
+        }
+
+        SavepointCapable<C> savepoints = (SavepointCapable<C>) provider;
+        Function<C, T> recovering = context -> {
+            Object savepoint = savepoints.savepoint(context);
+            Callbacks callbacks = Callbacks.bound();
+            Callbacks.Savepoint callbackSavepoint = callbacks != null
+                    ? callbacks.savepoint()
+                    : null;
+            T result;
+            try {
+                result = run(context);
+            }
+            catch (RuntimeException exception) {
+                savepoints.rollbackToSavepoint(context, savepoint);
+                if (callbacks != null) callbacks.rollbackToSavepoint(callbackSavepoint, exception);
+                return recovery.apply(exception).run(context);
+            }
+            savepoints.releaseSavepoint(context, savepoint);
+            return result;
+        };
         return new Transactional<>(
-                context -> {
-                    T value = this.procedure.apply(context);
-                    procedure.apply(value).procedure.apply(context);
-                    return value;
-                },
-                provider
+                recovering,
+                provider,
+                options.withComposite().withCallbacks()
+        );
+    }
+
+    /**
+     * Returns a new {@code Transactional} describing the result of this transaction, additionally
+     * performing the provided action on the result after the transaction has been committed.
+     * The action is registered when the stage is reached and it is performed by the thread
+     * calling {@link Transactional#get()} once the {@link TransactionProvider} has returned. The
+     * action is not performed if the transaction is rolled back.
+     *
+     * <p>
+     *     The actions are performed in the order their stages were reached. If an action throws,
+     *     the remaining actions are still performed and the exception is then rethrown from
+     *     {@code get()} even though the transaction has already been committed.
+     * </p>
+     *
+     * @param action the action to be performed on the result after the commit
+     * @return the new {@code Transactional}
+     */
+    public Transactional<T, C> onCommit(Consumer<T> action) {
+        Objects.requireNonNull(action);
+        return onCommit(action, null);
+    }
+
+    /**
+     * Returns a new {@code Transactional} describing the result of this transaction, additionally
+     * submitting the provided action to the given {@link Executor} after the transaction has been
+     * committed. The latency of {@link Transactional#get()} does not include performing the
+     * action. See {@link Transactional#onCommit(Consumer)}.
+     *
+     * @param action the action to be performed on the result after the commit
+     * @param executor the executor performing the action
+     * @return the new {@code Transactional}
+     */
+    public Transactional<T, C> onCommit(Consumer<T> action, Executor executor) {
+        Objects.requireNonNull(action);
+        Consumer<T> registering = value -> Callbacks.current().onCommit(action, value, executor);
+        return new Transactional<>(
+                this,
+                Procedure.PEEK,
+                registering,
+                provider,
+                chained(options, Procedure.PEEK).withCallbacks()
         );
     }
 
+    /**
+     * Returns a new {@code Transactional} describing the result of this transaction, additionally
+     * performing the provided action with the failure after the transaction has been rolled
+     * back. The action is registered when the stage is reached, so it is only performed if the
+     * procedure fails after this stage, or if the commit fails. It is performed by the thread
+     * calling {@link Transactional#get()} before the failure is rethrown. Exceptions thrown by the
+     * action are added as suppressed to the failure.
+     *
+     * @param action the action to be performed with the failure after the rollback
+     * @return the new {@code Transactional}
+     */
+    public Transactional<T, C> onRollback(Consumer<Throwable> action) {
+        Objects.requireNonNull(action);
+        return onRollback(action, null);
+    }
+
+    /**
+     * Returns a new {@code Transactional} describing the result of this transaction, additionally
+     * submitting the provided action to the given {@link Executor} after the transaction has been
+     * rolled back. See {@link Transactional#onRollback(Consumer)}.
+     *
+     * @param action the action to be performed with the failure after the rollback
+     * @param executor the executor performing the action
+     * @return the new {@code Transactional}
+     */
+    public Transactional<T, C> onRollback(Consumer<Throwable> action, Executor executor) {
+        Objects.requireNonNull(action);
+        Consumer<T> registering = value -> Callbacks.current().onRollback(action, executor);
+        return new Transactional<>(
+                this,
+                Procedure.PEEK,
+                registering,
+                provider,
+                chained(options, Procedure.PEEK).withCallbacks()
+        );
+    }
+
+    /**
+     * Returns a {@code Transactional} describing the same result, marked as only reading data.
+     * The mark is passed to the {@link TransactionProvider} as a {@link TransactionHints} when
+     * the procedure is performed. It is carried to the {@code Transactional}s chained to the
+     * returned one, and to the ones combined with {@code all} if all of the combined ones are
+     * read-only.
+     *
+     * <p>
+     *     A read-only {@code Transactional} that is not chained with {@code flatMap} or
+     *     {@code peekMap} is hinted as a single statement. Providers may perform such procedures
+     *     without a transaction, so they should not perform more than one statement.
+     * </p>
+     *
+     * @return the new {@code Transactional}
+     */
+    public Transactional<T, C> readOnly() {
+        return new Transactional<>(this, options.withReadOnly());
+    }
+
+    /**
+     * Returns a {@code Transactional} describing the same result, notifying the given
+     * {@link TransactionListener} of the phases of the transaction when performed with
+     * {@link Transactional#get()}. The listener is carried to the {@code Transactional}s chained
+     * to the returned one and replaces the listener of the {@link TransactionProvider}.
+     *
+     * @param listener the listener
+     * @return the new {@code Transactional}
+     */
+    public Transactional<T, C> listen(TransactionListener listener) {
+        Objects.requireNonNull(listener);
+        return new Transactional<>(this, options.withListener(listener));
+    }
+
+    /**
+     * Returns a {@code Transactional} describing the same result, performed with the given
+     * timeout when performed with {@link Transactional#get()} or {@link Transactional#bypass()}.
+     * The deadline is set when the call starts and covers all of the attempts made by a
+     * {@link RetryPolicy}. It is checked before the transaction is begun, between the stages of
+     * the procedure chain and after the last stage. Once the deadline has passed, a
+     * {@link TransactionTimeoutException} is thrown and the transaction is rolled back.
+     *
+     * <p>
+     *     A stage that is already running is not interrupted. The deadline is therefore passed to
+     *     the {@link TransactionProvider} in {@link TransactionHints#timeRemaining()}, so that the
+     *     provider can cancel slow statements at the deadline with a statement or lock wait
+     *     timeout.
+     * </p>
+     *
+     * <p>
+     *     The timeout is carried to the {@code Transactional}s chained to the returned one. It
+     *     has no effect on a {@code Transactional} returned to
+     *     {@link Transactional#flatMap(Function)}, which is bound by the deadline of the
+     *     surrounding transaction instead.
+     * </p>
+     *
+     * @param timeout the timeout, must be positive
+     * @return the new {@code Transactional}
+     */
+    public Transactional<T, C> withTimeout(Duration timeout) {
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("timeout must be positive");
+        }
+        return new Transactional<>(this, options.withTimeout(timeout.toNanos()));
+    }
+
+    /**
+     * Returns a {@code Transactional} describing the same result, scheduled in the given class
+     * by a {@link SchedulingTransactionProvider}. The class, such as a priority or a tenant, is
+     * passed to the {@link TransactionProvider} in {@link TransactionHints#schedulingClass()}
+     * and carried to the {@code Transactional}s chained to the returned one. A
+     * {@code Transactional} combined with {@code all} is scheduled in the default class.
+     *
+     * @param schedulingClass the scheduling class compared with {@code equals}
+     * @return the new {@code Transactional}
+     */
+    public Transactional<T, C> scheduledAs(Object schedulingClass) {
+        Objects.requireNonNull(schedulingClass);
+        return new Transactional<>(this, options.withSchedulingClass(schedulingClass));
+    }
+
+    /**
+     * Returns a {@code Transactional} describing the same result, sharing a single transaction
+     * between the concurrent calls of {@link Transactional#get()} with an equal key. The first
+     * call performs the transaction, and the calls made while it is in flight wait for it and
+     * receive the same result or rethrow the same exception instead of performing their own. The
+     * stages of the chain, including the {@code onCommit} callbacks, are therefore performed only
+     * by the first call. The key is not carried to the {@code Transactional}s chained to the
+     * returned one, so it should be set on the last stage of the chain.
+     *
+     * <p>
+     *     Coalescing is meant for idempotent reads, such as looking up configuration, built by
+     *     many threads at once. The key must identify the result: the {@code Transactional}s
+     *     with equal keys of the same {@link TransactionProvider} are assumed to be equivalent.
+     *     The number of calls coalesced is counted by {@link SingleFlight#global()}.
+     * </p>
+     *
+     * <p>
+     *     A call joining a transaction active on the thread, see {@link Propagation#REQUIRED},
+     *     is performed in the joined transaction without coalescing, since its result may still
+     *     be rolled back.
+     * </p>
+     *
+     * @param key the key identifying the result
+     * @return the new {@code Transactional}
+     */
+    public Transactional<T, C> coalesced(Object key) {
+        return coalesced(key, SingleFlight.global());
+    }
+
+    /**
+     * Returns a {@code Transactional} describing the same result, sharing a single transaction
+     * between the concurrent calls with an equal key made through the given
+     * {@link SingleFlight}. See {@link Transactional#coalesced(Object)}.
+     *
+     * @param key the key identifying the result
+     * @param singleFlight the table of the transactions in flight
+     * @return the new {@code Transactional}
+     */
+    public Transactional<T, C> coalesced(Object key, SingleFlight singleFlight) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(singleFlight);
+        return new Transactional<>(this, options.withCoalescing(singleFlight, key));
+    }
+
+    /**
+     * Returns a {@code Transactional} describing the same result, looked up from the given
+     * {@link ResultCache} before performing the transaction when performed with
+     * {@link Transactional#get()}. If the cache holds a result stored with an equal key, it is
+     * returned without beginning a transaction. Otherwise the transaction is performed and its
+     * result is stored once committed. The key is not carried to the {@code Transactional}s
+     * chained to the returned one, so it should be set on the last stage of the chain.
+     *
+     * <p>
+     *     The writes changing the result should invalidate it with
+     *     {@link Transactional#evictOnCommit(ResultCache, Object)} or with
+     *     {@link Transactional#evictTagOnCommit(ResultCache, Object)} using one of the given tags.
+     *     A call joining a transaction active on the thread, see {@link Propagation#REQUIRED},
+     *     bypasses the cache and is performed in the joined transaction, since the result read
+     *     in it may still be rolled back.
+     * </p>
+     *
+     * @param cache the cache
+     * @param key the key identifying the result
+     * @param tags the tags of the result for invalidating a group of results at once
+     * @return the new {@code Transactional}
+     */
+    public Transactional<T, C> cached(ResultCache cache, Object key, Object... tags) {
+        Objects.requireNonNull(cache);
+        Objects.requireNonNull(key);
+        for (Object tag : tags) {
+            Objects.requireNonNull(tag);
+        }
+        return new Transactional<>(
+                this,
+                options.withCached(new ResultCache.Binding(cache, key, tags.clone()))
+        );
+    }
+
+    /**
+     * Returns a new {@code Transactional} describing the result of this transaction, additionally
+     * invalidating the result stored with the given key in the {@link ResultCache} after the
+     * transaction has been committed. See {@link Transactional#onCommit(Consumer)}.
+     *
+     * @param cache the cache
+     * @param key the key of the result to invalidate
+     * @return the new {@code Transactional}
+     */
+    public Transactional<T, C> evictOnCommit(ResultCache cache, Object key) {
+        Objects.requireNonNull(cache);
+        Objects.requireNonNull(key);
+        return onCommit(value -> cache.invalidate(key));
+    }
+
+    /**
+     * Returns a new {@code Transactional} describing the result of this transaction, additionally
+     * invalidating the results stored with the given tag in the {@link ResultCache} after the
+     * transaction has been committed. See {@link Transactional#onCommit(Consumer)}.
+     *
+     * @param cache the cache
+     * @param tag the tag of the results to invalidate
+     * @return the new {@code Transactional}
+     */
+    public Transactional<T, C> evictTagOnCommit(ResultCache cache, Object tag) {
+        Objects.requireNonNull(cache);
+        Objects.requireNonNull(tag);
+        return onCommit(value -> cache.invalidateTag(tag));
+    }
+
+    /**
+     * Returns a {@code Transactional} describing the same result, retrying the transaction
+     * according to the given {@link RetryPolicy} when performed with {@link Transactional#get()}.
+     * Each attempt performs the whole procedure chain again in a new transaction scope. The
+     * policy is carried to the {@code Transactional}s chained to the returned one. It has no
+     * effect on a {@code Transactional} returned to {@link Transactional#flatMap(Function)} or
+     * combined with {@code all} or {@code allParallel}, as the surrounding transaction cannot be
+     * retried partially.
+     *
+     * @param policy the retry policy
+     * @return the new {@code Transactional}
+     */
+    public Transactional<T, C> retry(RetryPolicy policy) {
+        Objects.requireNonNull(policy);
+        return new Transactional<>(this, options.withRetryPolicy(policy));
+    }
+
     /**
      * Returns a {@code Transactional} describing the result of the given procedure performed in a
      * transactional scope provided by the {@link TransactionProvider}.
@@ -168,7 +643,8 @@ public class Transactional<T, C> {
     /**
      * A utility method for combining multiple {@code Transactional} results. The procedures are
      * executed sequentially. If any of the procedures throws, the transaction will be rolled
-     * back.
+     * back. A {@link RetryPolicy} set on the combined procedures has no effect, since they share
+     * the transaction; set it on the returned {@code Transactional} instead.
      */
     public static <T1, T2, C> Transactional2<T1, T2, C> all(
             Transactional<T1, C> t1,
@@ -177,17 +653,19 @@ public class Transactional<T, C> {
         validateProviders(t1.provider, t2.provider);
         return new Transactional2<>(
                 context -> Tuple.of(
-                        t1.procedure.apply(context),
-                        t2.procedure.apply(context)
+                        t1.run(context),
+                        t2.run(context)
                 ),
-                t1.provider
+                t1.provider,
+                Options.composite(t1.options, t2.options)
         );
     }
 
     /**
      * A utility method for combining multiple {@code Transactional} results. The procedures are
      * executed sequentially. If any of the procedures throws, the transaction will be rolled
-     * back.
+     * back. A {@link RetryPolicy} set on the combined procedures has no effect, since they share
+     * the transaction; set it on the returned {@code Transactional} instead.
      */
     public static <T1, T2, T3, C> Transactional3<T1, T2, T3, C> all(
             Transactional<T1, C> t1,
@@ -197,18 +675,20 @@ public class Transactional<T, C> {
         validateProviders(t1.provider, t2.provider, t3.provider);
         return new Transactional3<>(
                 context -> Tuple.of(
-                        t1.procedure.apply(context),
-                        t2.procedure.apply(context),
-                        t3.procedure.apply(context)
+                        t1.run(context),
+                        t2.run(context),
+                        t3.run(context)
                 ),
-                t1.provider
+                t1.provider,
+                Options.composite(t1.options, t2.options, t3.options)
         );
     }
 
     /**
      * A utility method for combining multiple {@code Transactional} results. The procedures are
      * executed sequentially. If any of the procedures throws, the transaction will be rolled
-     * back.
+     * back. A {@link RetryPolicy} set on the combined procedures has no effect, since they share
+     * the transaction; set it on the returned {@code Transactional} instead.
      */
     public static <T1, T2, T3, T4, C> Transactional4<T1, T2, T3, T4, C> all(
             Transactional<T1, C> t1,
@@ -219,19 +699,21 @@ public class Transactional<T, C> {
         validateProviders(t1.provider, t2.provider, t3.provider, t4.provider);
         return new Transactional4<>(
                 context -> Tuple.of(
-                        t1.procedure.apply(context),
-                        t2.procedure.apply(context),
-                        t3.procedure.apply(context),
-                        t4.procedure.apply(context)
+                        t1.run(context),
+                        t2.run(context),
+                        t3.run(context),
+                        t4.run(context)
                 ),
-                t1.provider
+                t1.provider,
+                Options.composite(t1.options, t2.options, t3.options, t4.options)
         );
     }
 
     /**
      * A utility method for combining multiple {@code Transactional} results. The procedures are
      * executed sequentially. If any of the procedures throws, the transaction will be rolled
-     * back.
+     * back. A {@link RetryPolicy} set on the combined procedures has no effect, since they share
+     * the transaction; set it on the returned {@code Transactional} instead.
      */
     public static <T1, T2, T3, T4, T5, C> Transactional5<T1, T2, T3, T4, T5, C> all(
             Transactional<T1, C> t1,
@@ -243,20 +725,22 @@ public class Transactional<T, C> {
         validateProviders(t1.provider, t2.provider, t3.provider, t4.provider, t5.provider);
         return new Transactional5<>(
                 context -> Tuple.of(
-                        t1.procedure.apply(context),
-                        t2.procedure.apply(context),
-                        t3.procedure.apply(context),
-                        t4.procedure.apply(context),
-                        t5.procedure.apply(context)
+                        t1.run(context),
+                        t2.run(context),
+                        t3.run(context),
+                        t4.run(context),
+                        t5.run(context)
                 ),
-                t1.provider
+                t1.provider,
+                Options.composite(t1.options, t2.options, t3.options, t4.options, t5.options)
         );
     }
 
     /**
      * A utility method for combining multiple {@code Transactional} results. The procedures are
      * executed sequentially. If any of the procedures throws, the transaction will be rolled
-     * back.
+     * back. A {@link RetryPolicy} set on the combined procedures has no effect, since they share
+     * the transaction; set it on the returned {@code Transactional} instead.
      */
     public static <T1, T2, T3, T4, T5, T6, C> Transactional6<T1, T2, T3, T4, T5, T6, C> all(
             Transactional<T1, C> t1,
@@ -276,21 +760,30 @@ public class Transactional<T, C> {
         );
         return new Transactional6<>(
                 context -> Tuple.of(
-                        t1.procedure.apply(context),
-                        t2.procedure.apply(context),
-                        t3.procedure.apply(context),
-                        t4.procedure.apply(context),
-                        t5.procedure.apply(context),
-                        t6.procedure.apply(context)
+                        t1.run(context),
+                        t2.run(context),
+                        t3.run(context),
+                        t4.run(context),
+                        t5.run(context),
+                        t6.run(context)
                 ),
-                t1.provider
+                t1.provider,
+                Options.composite(
+                        t1.options,
+                        t2.options,
+                        t3.options,
+                        t4.options,
+                        t5.options,
+                        t6.options
+                )
         );
     }
 
     /**
      * A utility method for combining multiple {@code Transactional} results. The procedures are
      * executed sequentially. If any of the procedures throws, the transaction will be rolled
-     * back.
+     * back. A {@link RetryPolicy} set on the combined procedures has no effect, since they share
+     * the transaction; set it on the returned {@code Transactional} instead.
      */
     public static <T1, T2, T3, T4, T5, T6, T7, C>
                     Transactional7<T1, T2, T3, T4, T5, T6, T7, C> all(
@@ -313,22 +806,32 @@ public class Transactional<T, C> {
         );
         return new Transactional7<>(
                 context -> Tuple.of(
-                        t1.procedure.apply(context),
-                        t2.procedure.apply(context),
-                        t3.procedure.apply(context),
-                        t4.procedure.apply(context),
-                        t5.procedure.apply(context),
-                        t6.procedure.apply(context),
-                        t7.procedure.apply(context)
+                        t1.run(context),
+                        t2.run(context),
+                        t3.run(context),
+                        t4.run(context),
+                        t5.run(context),
+                        t6.run(context),
+                        t7.run(context)
                 ),
-                t1.provider
+                t1.provider,
+                Options.composite(
+                        t1.options,
+                        t2.options,
+                        t3.options,
+                        t4.options,
+                        t5.options,
+                        t6.options,
+                        t7.options
+                )
         );
     }
 
     /**
      * A utility method for combining multiple {@code Transactional} results. The procedures are
      * executed sequentially. If any of the procedures throws, the transaction will be rolled
-     * back.
+     * back. A {@link RetryPolicy} set on the combined procedures has no effect, since they share
+     * the transaction; set it on the returned {@code Transactional} instead.
      */
     public static <T1, T2, T3, T4, T5, T6, T7, T8, C>
                     Transactional8<T1, T2, T3, T4, T5, T6, T7, T8, C> all(
@@ -353,23 +856,34 @@ public class Transactional<T, C> {
         );
         return new Transactional8<>(
                 context -> Tuple.of(
-                        t1.procedure.apply(context),
-                        t2.procedure.apply(context),
-                        t3.procedure.apply(context),
-                        t4.procedure.apply(context),
-                        t5.procedure.apply(context),
-                        t6.procedure.apply(context),
-                        t7.procedure.apply(context),
-                        t8.procedure.apply(context)
+                        t1.run(context),
+                        t2.run(context),
+                        t3.run(context),
+                        t4.run(context),
+                        t5.run(context),
+                        t6.run(context),
+                        t7.run(context),
+                        t8.run(context)
                 ),
-                t1.provider
+                t1.provider,
+                Options.composite(
+                        t1.options,
+                        t2.options,
+                        t3.options,
+                        t4.options,
+                        t5.options,
+                        t6.options,
+                        t7.options,
+                        t8.options
+                )
         );
     }
 
     /**
      * A utility method for combining multiple {@code Transactional} results. The procedures are
      * executed sequentially. If any of the procedures throws, the transaction will be rolled
-     * back.
+     * back. A {@link RetryPolicy} set on the combined procedures has no effect, since they share
+     * the transaction; set it on the returned {@code Transactional} instead.
      */
     public static <T0, T1, T2, T3, T4, T5, T6, T7, T8, C>
                     Transactional9<T0, T1, T2, T3, T4, T5, T6, T7, T8, C> all(
@@ -396,24 +910,36 @@ public class Transactional<T, C> {
         );
         return new Transactional9<>(
                 context -> Tuple.of(
-                        t0.procedure.apply(context),
-                        t1.procedure.apply(context),
-                        t2.procedure.apply(context),
-                        t3.procedure.apply(context),
-                        t4.procedure.apply(context),
-                        t5.procedure.apply(context),
-                        t6.procedure.apply(context),
-                        t7.procedure.apply(context),
-                        t8.procedure.apply(context)
+                        t0.run(context),
+                        t1.run(context),
+                        t2.run(context),
+                        t3.run(context),
+                        t4.run(context),
+                        t5.run(context),
+                        t6.run(context),
+                        t7.run(context),
+                        t8.run(context)
                 ),
-                t0.provider
+                t0.provider,
+                Options.composite(
+                        t0.options,
+                        t1.options,
+                        t2.options,
+                        t3.options,
+                        t4.options,
+                        t5.options,
+                        t6.options,
+                        t7.options,
+                        t8.options
+                )
         );
     }
 
     /**
      * A utility method for combining multiple {@code Transactional} results. The procedures are
      * executed sequentially. If any of the procedures throws, the transaction will be rolled
-     * back.
+     * back. A {@link RetryPolicy} set on the combined procedures has no effect, since they share
+     * the transaction; set it on the returned {@code Transactional} instead.
      */
     public static <T0, T1, T2, T3, T4, T5, T6, T7, T8, T9, C>
                     Transactional10<T0, T1, T2, T3, T4, T5, T6, T7, T8, T9, C> all(
@@ -442,21 +968,562 @@ public class Transactional<T, C> {
         );
         return new Transactional10<>(
                 context -> Tuple.of(
-                        t0.procedure.apply(context),
-                        t1.procedure.apply(context),
-                        t2.procedure.apply(context),
-                        t3.procedure.apply(context),
-                        t4.procedure.apply(context),
-                        t5.procedure.apply(context),
-                        t6.procedure.apply(context),
-                        t7.procedure.apply(context),
-                        t8.procedure.apply(context),
-                        t9.procedure.apply(context)
+                        t0.run(context),
+                        t1.run(context),
+                        t2.run(context),
+                        t3.run(context),
+                        t4.run(context),
+                        t5.run(context),
+                        t6.run(context),
+                        t7.run(context),
+                        t8.run(context),
+                        t9.run(context)
                 ),
-                t0.provider
+                t0.provider,
+                Options.composite(
+                        t0.options,
+                        t1.options,
+                        t2.options,
+                        t3.options,
+                        t4.options,
+                        t5.options,
+                        t6.options,
+                        t7.options,
+                        t8.options,
+                        t9.options
+                )
         );
     }
 
+    /**
+     * A utility method for combining multiple {@code Transactional} results. If the provider is a
+     * {@link ParallelTransactionProvider}, the procedures are performed concurrently, each in its
+     * own context forked from the running transaction. Otherwise the procedures are executed
+     * sequentially. If any of the procedures throws, the remaining procedures are cancelled, the
+     * forked contexts are rolled back and the transaction will be rolled back. A
+     * {@link RetryPolicy} set on the combined procedures has no effect, since they share the
+     * transaction; set it on the returned {@code Transactional} instead.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T1, T2, C> Transactional2<T1, T2, C> allParallel(
+            Transactional<T1, C> t1,
+            Transactional<T2, C> t2
+    ) {
+        validateProviders(t1.provider, t2.provider);
+        return new Transactional2<>(
+                context -> {
+                    Object[] results = Branches.run(t1.provider, context, Arrays.asList(t1, t2));
+                    return Tuple.of((T1) results[0], (T2) results[1]);
+                },
+                t1.provider,
+                Options.composite(t1.options, t2.options)
+        );
+    }
+
+    /**
+     * A utility method for combining multiple {@code Transactional} results. If the provider is a
+     * {@link ParallelTransactionProvider}, the procedures are performed concurrently, each in its
+     * own context forked from the running transaction. Otherwise the procedures are executed
+     * sequentially. If any of the procedures throws, the remaining procedures are cancelled, the
+     * forked contexts are rolled back and the transaction will be rolled back. A
+     * {@link RetryPolicy} set on the combined procedures has no effect, since they share the
+     * transaction; set it on the returned {@code Transactional} instead.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T1, T2, T3, C> Transactional3<T1, T2, T3, C> allParallel(
+            Transactional<T1, C> t1,
+            Transactional<T2, C> t2,
+            Transactional<T3, C> t3
+    ) {
+        validateProviders(t1.provider, t2.provider, t3.provider);
+        return new Transactional3<>(
+                context -> {
+                    Object[] results = Branches.run(
+                            t1.provider,
+                            context,
+                            Arrays.asList(t1, t2, t3)
+                    );
+                    return Tuple.of((T1) results[0], (T2) results[1], (T3) results[2]);
+                },
+                t1.provider,
+                Options.composite(t1.options, t2.options, t3.options)
+        );
+    }
+
+    /**
+     * A utility method for combining multiple {@code Transactional} results. If the provider is a
+     * {@link ParallelTransactionProvider}, the procedures are performed concurrently, each in its
+     * own context forked from the running transaction. Otherwise the procedures are executed
+     * sequentially. If any of the procedures throws, the remaining procedures are cancelled, the
+     * forked contexts are rolled back and the transaction will be rolled back. A
+     * {@link RetryPolicy} set on the combined procedures has no effect, since they share the
+     * transaction; set it on the returned {@code Transactional} instead.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T1, T2, T3, T4, C> Transactional4<T1, T2, T3, T4, C> allParallel(
+            Transactional<T1, C> t1,
+            Transactional<T2, C> t2,
+            Transactional<T3, C> t3,
+            Transactional<T4, C> t4
+    ) {
+        validateProviders(t1.provider, t2.provider, t3.provider, t4.provider);
+        return new Transactional4<>(
+                context -> {
+                    Object[] results = Branches.run(
+                            t1.provider,
+                            context,
+                            Arrays.asList(t1, t2, t3, t4)
+                    );
+                    return Tuple.of(
+                            (T1) results[0],
+                            (T2) results[1],
+                            (T3) results[2],
+                            (T4) results[3]
+                    );
+                },
+                t1.provider,
+                Options.composite(t1.options, t2.options, t3.options, t4.options)
+        );
+    }
+
+    /**
+     * A utility method for combining multiple {@code Transactional} results. If the provider is a
+     * {@link ParallelTransactionProvider}, the procedures are performed concurrently, each in its
+     * own context forked from the running transaction. Otherwise the procedures are executed
+     * sequentially. If any of the procedures throws, the remaining procedures are cancelled, the
+     * forked contexts are rolled back and the transaction will be rolled back. A
+     * {@link RetryPolicy} set on the combined procedures has no effect, since they share the
+     * transaction; set it on the returned {@code Transactional} instead.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T1, T2, T3, T4, T5, C> Transactional5<T1, T2, T3, T4, T5, C> allParallel(
+            Transactional<T1, C> t1,
+            Transactional<T2, C> t2,
+            Transactional<T3, C> t3,
+            Transactional<T4, C> t4,
+            Transactional<T5, C> t5
+    ) {
+        validateProviders(t1.provider, t2.provider, t3.provider, t4.provider, t5.provider);
+        return new Transactional5<>(
+                context -> {
+                    Object[] results = Branches.run(
+                            t1.provider,
+                            context,
+                            Arrays.asList(t1, t2, t3, t4, t5)
+                    );
+                    return Tuple.of(
+                            (T1) results[0],
+                            (T2) results[1],
+                            (T3) results[2],
+                            (T4) results[3],
+                            (T5) results[4]
+                    );
+                },
+                t1.provider,
+                Options.composite(t1.options, t2.options, t3.options, t4.options, t5.options)
+        );
+    }
+
+    /**
+     * A utility method for combining multiple {@code Transactional} results. If the provider is a
+     * {@link ParallelTransactionProvider}, the procedures are performed concurrently, each in its
+     * own context forked from the running transaction. Otherwise the procedures are executed
+     * sequentially. If any of the procedures throws, the remaining procedures are cancelled, the
+     * forked contexts are rolled back and the transaction will be rolled back. A
+     * {@link RetryPolicy} set on the combined procedures has no effect, since they share the
+     * transaction; set it on the returned {@code Transactional} instead.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T1, T2, T3, T4, T5, T6, C> Transactional6<T1, T2, T3, T4, T5, T6, C> allParallel(
+            Transactional<T1, C> t1,
+            Transactional<T2, C> t2,
+            Transactional<T3, C> t3,
+            Transactional<T4, C> t4,
+            Transactional<T5, C> t5,
+            Transactional<T6, C> t6
+    ) {
+        validateProviders(
+                t1.provider,
+                t2.provider,
+                t3.provider,
+                t4.provider,
+                t5.provider,
+                t6.provider
+        );
+        return new Transactional6<>(
+                context -> {
+                    Object[] results = Branches.run(
+                            t1.provider,
+                            context,
+                            Arrays.asList(t1, t2, t3, t4, t5, t6)
+                    );
+                    return Tuple.of(
+                            (T1) results[0],
+                            (T2) results[1],
+                            (T3) results[2],
+                            (T4) results[3],
+                            (T5) results[4],
+                            (T6) results[5]
+                    );
+                },
+                t1.provider,
+                Options.composite(
+                        t1.options,
+                        t2.options,
+                        t3.options,
+                        t4.options,
+                        t5.options,
+                        t6.options
+                )
+        );
+    }
+
+    /**
+     * A utility method for combining multiple {@code Transactional} results. If the provider is a
+     * {@link ParallelTransactionProvider}, the procedures are performed concurrently, each in its
+     * own context forked from the running transaction. Otherwise the procedures are executed
+     * sequentially. If any of the procedures throws, the remaining procedures are cancelled, the
+     * forked contexts are rolled back and the transaction will be rolled back. A
+     * {@link RetryPolicy} set on the combined procedures has no effect, since they share the
+     * transaction; set it on the returned {@code Transactional} instead.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T1, T2, T3, T4, T5, T6, T7, C>
+                    Transactional7<T1, T2, T3, T4, T5, T6, T7, C> allParallel(
+            Transactional<T1, C> t1,
+            Transactional<T2, C> t2,
+            Transactional<T3, C> t3,
+            Transactional<T4, C> t4,
+            Transactional<T5, C> t5,
+            Transactional<T6, C> t6,
+            Transactional<T7, C> t7
+    ) {
+        validateProviders(
+                t1.provider,
+                t2.provider,
+                t3.provider,
+                t4.provider,
+                t5.provider,
+                t6.provider,
+                t7.provider
+        );
+        return new Transactional7<>(
+                context -> {
+                    Object[] results = Branches.run(
+                            t1.provider,
+                            context,
+                            Arrays.asList(t1, t2, t3, t4, t5, t6, t7)
+                    );
+                    return Tuple.of(
+                            (T1) results[0],
+                            (T2) results[1],
+                            (T3) results[2],
+                            (T4) results[3],
+                            (T5) results[4],
+                            (T6) results[5],
+                            (T7) results[6]
+                    );
+                },
+                t1.provider,
+                Options.composite(
+                        t1.options,
+                        t2.options,
+                        t3.options,
+                        t4.options,
+                        t5.options,
+                        t6.options,
+                        t7.options
+                )
+        );
+    }
+
+    /**
+     * A utility method for combining multiple {@code Transactional} results. If the provider is a
+     * {@link ParallelTransactionProvider}, the procedures are performed concurrently, each in its
+     * own context forked from the running transaction. Otherwise the procedures are executed
+     * sequentially. If any of the procedures throws, the remaining procedures are cancelled, the
+     * forked contexts are rolled back and the transaction will be rolled back. A
+     * {@link RetryPolicy} set on the combined procedures has no effect, since they share the
+     * transaction; set it on the returned {@code Transactional} instead.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T1, T2, T3, T4, T5, T6, T7, T8, C>
+                    Transactional8<T1, T2, T3, T4, T5, T6, T7, T8, C> allParallel(
+            Transactional<T1, C> t1,
+            Transactional<T2, C> t2,
+            Transactional<T3, C> t3,
+            Transactional<T4, C> t4,
+            Transactional<T5, C> t5,
+            Transactional<T6, C> t6,
+            Transactional<T7, C> t7,
+            Transactional<T8, C> t8
+    ) {
+        validateProviders(
+                t1.provider,
+                t2.provider,
+                t3.provider,
+                t4.provider,
+                t5.provider,
+                t6.provider,
+                t7.provider,
+                t8.provider
+        );
+        return new Transactional8<>(
+                context -> {
+                    Object[] results = Branches.run(
+                            t1.provider,
+                            context,
+                            Arrays.asList(t1, t2, t3, t4, t5, t6, t7, t8)
+                    );
+                    return Tuple.of(
+                            (T1) results[0],
+                            (T2) results[1],
+                            (T3) results[2],
+                            (T4) results[3],
+                            (T5) results[4],
+                            (T6) results[5],
+                            (T7) results[6],
+                            (T8) results[7]
+                    );
+                },
+                t1.provider,
+                Options.composite(
+                        t1.options,
+                        t2.options,
+                        t3.options,
+                        t4.options,
+                        t5.options,
+                        t6.options,
+                        t7.options,
+                        t8.options
+                )
+        );
+    }
+
+    /**
+     * A utility method for combining multiple {@code Transactional} results. If the provider is a
+     * {@link ParallelTransactionProvider}, the procedures are performed concurrently, each in its
+     * own context forked from the running transaction. Otherwise the procedures are executed
+     * sequentially. If any of the procedures throws, the remaining procedures are cancelled, the
+     * forked contexts are rolled back and the transaction will be rolled back. A
+     * {@link RetryPolicy} set on the combined procedures has no effect, since they share the
+     * transaction; set it on the returned {@code Transactional} instead.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T0, T1, T2, T3, T4, T5, T6, T7, T8, C>
+                    Transactional9<T0, T1, T2, T3, T4, T5, T6, T7, T8, C> allParallel(
+            Transactional<T0, C> t0,
+            Transactional<T1, C> t1,
+            Transactional<T2, C> t2,
+            Transactional<T3, C> t3,
+            Transactional<T4, C> t4,
+            Transactional<T5, C> t5,
+            Transactional<T6, C> t6,
+            Transactional<T7, C> t7,
+            Transactional<T8, C> t8
+    ) {
+        validateProviders(
+                t0.provider,
+                t1.provider,
+                t2.provider,
+                t3.provider,
+                t4.provider,
+                t5.provider,
+                t6.provider,
+                t7.provider,
+                t8.provider
+        );
+        return new Transactional9<>(
+                context -> {
+                    Object[] results = Branches.run(
+                            t0.provider,
+                            context,
+                            Arrays.asList(t0, t1, t2, t3, t4, t5, t6, t7, t8)
+                    );
+                    return Tuple.of(
+                            (T0) results[0],
+                            (T1) results[1],
+                            (T2) results[2],
+                            (T3) results[3],
+                            (T4) results[4],
+                            (T5) results[5],
+                            (T6) results[6],
+                            (T7) results[7],
+                            (T8) results[8]
+                    );
+                },
+                t0.provider,
+                Options.composite(
+                        t0.options,
+                        t1.options,
+                        t2.options,
+                        t3.options,
+                        t4.options,
+                        t5.options,
+                        t6.options,
+                        t7.options,
+                        t8.options
+                )
+        );
+    }
+
+    /**
+     * A utility method for combining multiple {@code Transactional} results. If the provider is a
+     * {@link ParallelTransactionProvider}, the procedures are performed concurrently, each in its
+     * own context forked from the running transaction. Otherwise the procedures are executed
+     * sequentially. If any of the procedures throws, the remaining procedures are cancelled, the
+     * forked contexts are rolled back and the transaction will be rolled back. A
+     * {@link RetryPolicy} set on the combined procedures has no effect, since they share the
+     * transaction; set it on the returned {@code Transactional} instead.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T0, T1, T2, T3, T4, T5, T6, T7, T8, T9, C>
+                    Transactional10<T0, T1, T2, T3, T4, T5, T6, T7, T8, T9, C> allParallel(
+            Transactional<T0, C> t0,
+            Transactional<T1, C> t1,
+            Transactional<T2, C> t2,
+            Transactional<T3, C> t3,
+            Transactional<T4, C> t4,
+            Transactional<T5, C> t5,
+            Transactional<T6, C> t6,
+            Transactional<T7, C> t7,
+            Transactional<T8, C> t8,
+            Transactional<T9, C> t9
+    ) {
+        validateProviders(
+                t0.provider,
+                t1.provider,
+                t2.provider,
+                t3.provider,
+                t4.provider,
+                t5.provider,
+                t6.provider,
+                t7.provider,
+                t8.provider,
+                t9.provider
+        );
+        return new Transactional10<>(
+                context -> {
+                    Object[] results = Branches.run(
+                            t0.provider,
+                            context,
+                            Arrays.asList(t0, t1, t2, t3, t4, t5, t6, t7, t8, t9)
+                    );
+                    return Tuple.of(
+                            (T0) results[0],
+                            (T1) results[1],
+                            (T2) results[2],
+                            (T3) results[3],
+                            (T4) results[4],
+                            (T5) results[5],
+                            (T6) results[6],
+                            (T7) results[7],
+                            (T8) results[8],
+                            (T9) results[9]
+                    );
+                },
+                t0.provider,
+                Options.composite(
+                        t0.options,
+                        t1.options,
+                        t2.options,
+                        t3.options,
+                        t4.options,
+                        t5.options,
+                        t6.options,
+                        t7.options,
+                        t8.options,
+                        t9.options
+                )
+        );
+    }
+
+    @SuppressWarnings("unchecked")
+    T run(C context) {
+        return (T) Procedure.run(this, context);
+    }
+
+    private Function<C, T> procedure() {
+        Procedure<C, T> procedure = this.procedure;
+        if (procedure == null) {
+            procedure = new Procedure<>(this);
+            this.procedure = procedure;
+        }
+        return procedure;
+    }
+
+    private T attempt(
+            TransactionHints hints,
+            TransactionListener listener,
+            Procedure<C, T> procedure,
+            Deadline deadline
+    ) {
+        if (procedure == null) return provider.runWithTransaction(procedure(), hints);
+
+        // Do not begin a transaction that has already timed out, e.g. after a retry backoff.
+        if (deadline != null) deadline.check();
+        procedure.started = false;
+        long begin = listener == null ? 0L : System.nanoTime();
+        if (listener != null) listener.onBegin(begin);
+        T result;
+        try {
+            result = provider.runWithTransaction(procedure, hints);
+        }
+        catch (RuntimeException exception) {
+            if (listener != null) {
+                long now = System.nanoTime();
+                if (!procedure.started) {
+                    procedure.start = now;
+                    procedure.end = now;
+                }
+                listener.onRollback(exception, begin, procedure.start, procedure.end, now);
+            }
+            Callbacks callbacks = procedure.collected();
+            if (callbacks != null) callbacks.rolledBack(exception);
+            throw exception;
+        }
+        if (listener != null) {
+            listener.onCommit(begin, procedure.start, procedure.end, System.nanoTime());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the options of a step chained to a step with the given options. The keys of
+     * coalesced and cached transactions identify their results, so they are not carried to the
+     * chained steps.
+     */
+    private static Options chained(Options options, int kind) {
+        if (options.singleFlight != null) options = options.withCoalescing(null, null);
+        if (options.cached != null) options = options.withCached(null);
+        if (kind == Procedure.FLAT_MAP || kind == Procedure.PEEK_MAP) {
+            return options.withCallbacks();
+        }
+        return options;
+    }
+
+    private Deadline deadline() {
+        if (options.timeoutNanos == 0L) return null;
+
+        return new Deadline(System.nanoTime() + options.timeoutNanos);
+    }
+
+    private TransactionHints hints(Deadline deadline) {
+        TransactionHints hints = hints();
+        if (options.schedulingClass != null) {
+            hints = hints.withSchedulingClass(options.schedulingClass);
+        }
+        return deadline == null ? hints : hints.withDeadline(deadline);
+    }
+
+    private TransactionHints hints() {
+        if (!options.readOnly) return TransactionHints.DEFAULTS;
+        if (options.composite || !Procedure.isSingleStatement(this)) {
+            return TransactionHints.READ_ONLY;
+        }
+        return TransactionHints.READ_ONLY_SINGLE_STATEMENT;
+    }
+
     private static void validateProviders(Object... providers) {
         if (providers.length == 1) return;
 
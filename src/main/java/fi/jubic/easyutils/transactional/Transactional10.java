@@ -5,15 +5,25 @@ import fi.jubic.easyutils.function.Function10;
 import fi.jubic.easyutils.tuple.Tuple10;
 
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 public class Transactional10<T0, T1, T2, T3, T4, T5, T6, T7, T8, T9, C>
         extends Transactional<Tuple10<T0, T1, T2, T3, T4, T5, T6, T7, T8, T9>, C> {
     Transactional10(
             Function<C, Tuple10<T0, T1, T2, T3, T4, T5, T6, T7, T8, T9>> procedure,
-            TransactionProvider<C> provider
+            TransactionProvider<C> provider,
+            Options options
     ) {
-        super(procedure, provider);
+        super(procedure, provider, options);
+    }
+
+    Transactional10(
+            Transactional<Tuple10<T0, T1, T2, T3, T4, T5, T6, T7, T8, T9>, C> previous,
+            int kind,
+            Object function
+    ) {
+        super(previous, kind, function);
     }
 
 
@@ -59,54 +69,39 @@ public class Transactional10<T0, T1, T2, T3, T4, T5, T6, T7, T8, T9, C>
             Consumer10<T0, T1, T2, T3, T4, T5, T6, T7, T8, T9> action
     ) {
         Objects.requireNonNull(action);
-        return new Transactional10<>(
-                context -> {
-                    Tuple10<T0, T1, T2, T3, T4, T5, T6, T7, T8, T9> tuple
-                            = procedure.apply(context);
-                    action.accept(
-                            tuple.get0(),
-                            tuple.get1(),
-                            tuple.get2(),
-                            tuple.get3(),
-                            tuple.get4(),
-                            tuple.get5(),
-                            tuple.get6(),
-                            tuple.get7(),
-                            tuple.get8(),
-                            tuple.get9()
-                    );
-                    return tuple;
-                },
-                provider
-        );
+        Consumer<Tuple10<T0, T1, T2, T3, T4, T5, T6, T7, T8, T9>> peek
+                = tuple -> action.accept(
+                        tuple.get0(),
+                        tuple.get1(),
+                        tuple.get2(),
+                        tuple.get3(),
+                        tuple.get4(),
+                        tuple.get5(),
+                        tuple.get6(),
+                        tuple.get7(),
+                        tuple.get8(),
+                        tuple.get9()
+                );
+        return new Transactional10<>(this, Procedure.PEEK, peek);
     }
 
     public Transactional10<T0, T1, T2, T3, T4, T5, T6, T7, T8, T9, C> peekMap(
             Function10<T0, T1, T2, T3, T4, T5, T6, T7, T8, T9, Transactional<Void, C>> procedure
     ) {
         Objects.requireNonNull(procedure);
-        return new Transactional10<>(
-                context -> {
-                    Tuple10<T0, T1, T2, T3, T4, T5, T6, T7, T8, T9> tuple
-                            = this.procedure.apply(context);
-                    procedure
-                            .apply(
-                                    tuple.get0(),
-                                    tuple.get1(),
-                                    tuple.get2(),
-                                    tuple.get3(),
-                                    tuple.get4(),
-                                    tuple.get5(),
-                                    tuple.get6(),
-                                    tuple.get7(),
-                                    tuple.get8(),
-                                    tuple.get9()
-                            )
-                            .procedure
-                            .apply(context);
-                    return tuple;
-                },
-                provider
-        );
+        Function<Tuple10<T0, T1, T2, T3, T4, T5, T6, T7, T8, T9>, Transactional<Void, C>> peekMap
+                = tuple -> procedure.apply(
+                        tuple.get0(),
+                        tuple.get1(),
+                        tuple.get2(),
+                        tuple.get3(),
+                        tuple.get4(),
+                        tuple.get5(),
+                        tuple.get6(),
+                        tuple.get7(),
+                        tuple.get8(),
+                        tuple.get9()
+                );
+        return new Transactional10<>(this, Procedure.PEEK_MAP, peekMap);
     }
 }
@@ -5,14 +5,20 @@ import fi.jubic.easyutils.tuple.Tuple2;
 import java.util.Objects;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 public class Transactional2<T0, T1, C> extends Transactional<Tuple2<T0, T1>, C> {
     Transactional2(
             Function<C, Tuple2<T0, T1>> procedure,
-            TransactionProvider<C> provider
+            TransactionProvider<C> provider,
+            Options options
     ) {
-        super(procedure, provider);
+        super(procedure, provider, options);
+    }
+
+    Transactional2(Transactional<Tuple2<T0, T1>, C> previous, int kind, Object function) {
+        super(previous, kind, function);
     }
 
 
@@ -26,29 +32,16 @@ public class Transactional2<T0, T1, C> extends Transactional<Tuple2<T0, T1>, C>
 
     public Transactional2<T0, T1, C> peek(BiConsumer<T0, T1> action) {
         Objects.requireNonNull(action);
-        return new Transactional2<>(
-                context -> {
-                    Tuple2<T0, T1> tuple = procedure.apply(context);
-                    action.accept(tuple.get0(), tuple.get1());
-                    return tuple;
-                },
-                provider
-        );
+        Consumer<Tuple2<T0, T1>> peek = tuple -> action.accept(tuple.get0(), tuple.get1());
+        return new Transactional2<>(this, Procedure.PEEK, peek);
     }
 
     public Transactional<Tuple2<T0, T1>, C> peekMap(
             BiFunction<T0, T1, Transactional<Void, C>> procedure
     ) {
         Objects.requireNonNull(procedure);
-        return new Transactional2<>(
-                context -> {
-                    Tuple2<T0, T1> tuple = this.procedure.apply(context);
-                    procedure.apply(tuple.get0(), tuple.get1())
-                            .procedure
-                            .apply(context);
-                    return tuple;
-                },
-                provider
-        );
+        Function<Tuple2<T0, T1>, Transactional<Void, C>> peekMap
+                = tuple -> procedure.apply(tuple.get0(), tuple.get1());
+        return new Transactional2<>(this, Procedure.PEEK_MAP, peekMap);
     }
 }
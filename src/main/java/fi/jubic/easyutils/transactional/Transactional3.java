@@ -5,14 +5,20 @@ import fi.jubic.easyutils.function.Function3;
 import fi.jubic.easyutils.tuple.Tuple3;
 
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 public class Transactional3<T0, T1, T2, C> extends Transactional<Tuple3<T0, T1, T2>, C> {
     Transactional3(
             Function<C, Tuple3<T0, T1, T2>> procedure,
-            TransactionProvider<C> provider
+            TransactionProvider<C> provider,
+            Options options
     ) {
-        super(procedure, provider);
+        super(procedure, provider, options);
+    }
+
+    Transactional3(Transactional<Tuple3<T0, T1, T2>, C> previous, int kind, Object function) {
+        super(previous, kind, function);
     }
 
 
@@ -26,29 +32,17 @@ public class Transactional3<T0, T1, T2, C> extends Transactional<Tuple3<T0, T1,
 
     public Transactional3<T0, T1, T2, C> peek(Consumer3<T0, T1, T2> action) {
         Objects.requireNonNull(action);
-        return new Transactional3<>(
-                context -> {
-                    Tuple3<T0, T1, T2> value = procedure.apply(context);
-                    action.accept(value.get0(), value.get1(), value.get2());
-                    return value;
-                },
-                provider
-        );
+        Consumer<Tuple3<T0, T1, T2>> peek
+                = tuple -> action.accept(tuple.get0(), tuple.get1(), tuple.get2());
+        return new Transactional3<>(this, Procedure.PEEK, peek);
     }
 
     public Transactional3<T0, T1, T2, C> peekMap(
             Function3<T0, T1, T2, Transactional<Void, C>> procedure
     ) {
         Objects.requireNonNull(procedure);
-        return new Transactional3<>(
-                context -> {
-                    Tuple3<T0, T1, T2> value = this.procedure.apply(context);
-                    procedure.apply(value.get0(), value.get1(), value.get2())
-                            .procedure
-                            .apply(context);
-                    return value;
-                },
-                provider
-        );
+        Function<Tuple3<T0, T1, T2>, Transactional<Void, C>> peekMap
+                = tuple -> procedure.apply(tuple.get0(), tuple.get1(), tuple.get2());
+        return new Transactional3<>(this, Procedure.PEEK_MAP, peekMap);
     }
 }
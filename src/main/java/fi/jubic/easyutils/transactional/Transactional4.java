@@ -5,14 +5,20 @@ import fi.jubic.easyutils.function.Function4;
 import fi.jubic.easyutils.tuple.Tuple4;
 
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 public class Transactional4<T0, T1, T2, T3, C> extends Transactional<Tuple4<T0, T1, T2, T3>, C> {
     Transactional4(
             Function<C, Tuple4<T0, T1, T2, T3>> procedure,
-            TransactionProvider<C> provider
+            TransactionProvider<C> provider,
+            Options options
     ) {
-        super(procedure, provider);
+        super(procedure, provider, options);
+    }
+
+    Transactional4(Transactional<Tuple4<T0, T1, T2, T3>, C> previous, int kind, Object function) {
+        super(previous, kind, function);
     }
 
 
@@ -30,29 +36,17 @@ public class Transactional4<T0, T1, T2, T3, C> extends Transactional<Tuple4<T0,
 
     public Transactional4<T0, T1, T2, T3, C> peek(Consumer4<T0, T1, T2, T3> action) {
         Objects.requireNonNull(action);
-        return new Transactional4<>(
-                context -> {
-                    Tuple4<T0, T1, T2, T3> tuple = procedure.apply(context);
-                    action.accept(tuple.get0(), tuple.get1(), tuple.get2(), tuple.get3());
-                    return tuple;
-                },
-                provider
-        );
+        Consumer<Tuple4<T0, T1, T2, T3>> peek
+                = tuple -> action.accept(tuple.get0(), tuple.get1(), tuple.get2(), tuple.get3());
+        return new Transactional4<>(this, Procedure.PEEK, peek);
     }
 
     public Transactional4<T0, T1, T2, T3, C> peekMap(
             Function4<T0, T1, T2, T3, Transactional<Void, C>> procedure
     ) {
         Objects.requireNonNull(procedure);
-        return new Transactional4<>(
-                context -> {
-                    Tuple4<T0, T1, T2, T3> tuple = this.procedure.apply(context);
-                    procedure.apply(tuple.get0(), tuple.get1(), tuple.get2(), tuple.get3())
-                            .procedure
-                            .apply(context);
-                    return tuple;
-                },
-                provider
-        );
+        Function<Tuple4<T0, T1, T2, T3>, Transactional<Void, C>> peekMap
+                = tuple -> procedure.apply(tuple.get0(), tuple.get1(), tuple.get2(), tuple.get3());
+        return new Transactional4<>(this, Procedure.PEEK_MAP, peekMap);
     }
 }
@@ -5,15 +5,25 @@ import fi.jubic.easyutils.function.Function5;
 import fi.jubic.easyutils.tuple.Tuple5;
 
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 public class Transactional5<T0, T1, T2, T3, T4, C>
         extends Transactional<Tuple5<T0, T1, T2, T3, T4>, C> {
     Transactional5(
             Function<C, Tuple5<T0, T1, T2, T3, T4>> procedure,
-            TransactionProvider<C> provider
+            TransactionProvider<C> provider,
+            Options options
     ) {
-        super(procedure, provider);
+        super(procedure, provider, options);
+    }
+
+    Transactional5(
+            Transactional<Tuple5<T0, T1, T2, T3, T4>, C> previous,
+            int kind,
+            Object function
+    ) {
+        super(previous, kind, function);
     }
 
 
@@ -45,42 +55,29 @@ public class Transactional5<T0, T1, T2, T3, T4, C>
 
     public Transactional5<T0, T1, T2, T3, T4, C> peek(Consumer5<T0, T1, T2, T3, T4> action) {
         Objects.requireNonNull(action);
-        return new Transactional5<>(
-                context -> {
-                    Tuple5<T0, T1, T2, T3, T4> tuple = procedure.apply(context);
-                    action.accept(
-                            tuple.get0(),
-                            tuple.get1(),
-                            tuple.get2(),
-                            tuple.get3(),
-                            tuple.get4()
-                    );
-                    return tuple;
-                },
-                provider
-        );
+        Consumer<Tuple5<T0, T1, T2, T3, T4>> peek
+                = tuple -> action.accept(
+                        tuple.get0(),
+                        tuple.get1(),
+                        tuple.get2(),
+                        tuple.get3(),
+                        tuple.get4()
+                );
+        return new Transactional5<>(this, Procedure.PEEK, peek);
     }
 
     public Transactional5<T0, T1, T2, T3, T4, C> peekMap(
             Function5<T0, T1, T2, T3, T4, Transactional<Void, C>> procedure
     ) {
         Objects.requireNonNull(procedure);
-        return new Transactional5<>(
-                context -> {
-                    Tuple5<T0, T1, T2, T3, T4> tuple = this.procedure.apply(context);
-                    procedure
-                            .apply(
-                                    tuple.get0(),
-                                    tuple.get1(),
-                                    tuple.get2(),
-                                    tuple.get3(),
-                                    tuple.get4()
-                            )
-                            .procedure
-                            .apply(context);
-                    return tuple;
-                },
-                provider
-        );
+        Function<Tuple5<T0, T1, T2, T3, T4>, Transactional<Void, C>> peekMap
+                = tuple -> procedure.apply(
+                        tuple.get0(),
+                        tuple.get1(),
+                        tuple.get2(),
+                        tuple.get3(),
+                        tuple.get4()
+                );
+        return new Transactional5<>(this, Procedure.PEEK_MAP, peekMap);
     }
 }
@@ -5,15 +5,25 @@ import fi.jubic.easyutils.function.Function6;
 import fi.jubic.easyutils.tuple.Tuple6;
 
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 public class Transactional6<T0, T1, T2, T3, T4, T5, C>
         extends Transactional<Tuple6<T0, T1, T2, T3, T4, T5>, C> {
     Transactional6(
             Function<C, Tuple6<T0, T1, T2, T3, T4, T5>> procedure,
-            TransactionProvider<C> provider
+            TransactionProvider<C> provider,
+            Options options
     ) {
-        super(procedure, provider);
+        super(procedure, provider, options);
+    }
+
+    Transactional6(
+            Transactional<Tuple6<T0, T1, T2, T3, T4, T5>, C> previous,
+            int kind,
+            Object function
+    ) {
+        super(previous, kind, function);
     }
 
 
@@ -49,44 +59,31 @@ public class Transactional6<T0, T1, T2, T3, T4, T5, C>
             Consumer6<T0, T1, T2, T3, T4, T5> action
     ) {
         Objects.requireNonNull(action);
-        return new Transactional6<>(
-                context -> {
-                    Tuple6<T0, T1, T2, T3, T4, T5> tuple = procedure.apply(context);
-                    action.accept(
-                            tuple.get0(),
-                            tuple.get1(),
-                            tuple.get2(),
-                            tuple.get3(),
-                            tuple.get4(),
-                            tuple.get5()
-                    );
-                    return tuple;
-                },
-                provider
-        );
+        Consumer<Tuple6<T0, T1, T2, T3, T4, T5>> peek
+                = tuple -> action.accept(
+                        tuple.get0(),
+                        tuple.get1(),
+                        tuple.get2(),
+                        tuple.get3(),
+                        tuple.get4(),
+                        tuple.get5()
+                );
+        return new Transactional6<>(this, Procedure.PEEK, peek);
     }
 
     public Transactional6<T0, T1, T2, T3, T4, T5, C> peekMap(
             Function6<T0, T1, T2, T3, T4, T5, Transactional<Void, C>> procedure
     ) {
         Objects.requireNonNull(procedure);
-        return new Transactional6<>(
-                context -> {
-                    Tuple6<T0, T1, T2, T3, T4, T5> tuple = this.procedure.apply(context);
-                    procedure
-                            .apply(
-                                    tuple.get0(),
-                                    tuple.get1(),
-                                    tuple.get2(),
-                                    tuple.get3(),
-                                    tuple.get4(),
-                                    tuple.get5()
-                            )
-                            .procedure
-                            .apply(context);
-                    return tuple;
-                },
-                provider
-        );
+        Function<Tuple6<T0, T1, T2, T3, T4, T5>, Transactional<Void, C>> peekMap
+                = tuple -> procedure.apply(
+                        tuple.get0(),
+                        tuple.get1(),
+                        tuple.get2(),
+                        tuple.get3(),
+                        tuple.get4(),
+                        tuple.get5()
+                );
+        return new Transactional6<>(this, Procedure.PEEK_MAP, peekMap);
     }
 }
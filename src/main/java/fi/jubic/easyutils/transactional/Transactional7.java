@@ -5,15 +5,25 @@ import fi.jubic.easyutils.function.Function7;
 import fi.jubic.easyutils.tuple.Tuple7;
 
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 public class Transactional7<T0, T1, T2, T3, T4, T5, T6, C>
         extends Transactional<Tuple7<T0, T1, T2, T3, T4, T5, T6>, C> {
     Transactional7(
             Function<C, Tuple7<T0, T1, T2, T3, T4, T5, T6>> procedure,
-            TransactionProvider<C> provider
+            TransactionProvider<C> provider,
+            Options options
     ) {
-        super(procedure, provider);
+        super(procedure, provider, options);
+    }
+
+    Transactional7(
+            Transactional<Tuple7<T0, T1, T2, T3, T4, T5, T6>, C> previous,
+            int kind,
+            Object function
+    ) {
+        super(previous, kind, function);
     }
 
 
@@ -51,46 +61,33 @@ public class Transactional7<T0, T1, T2, T3, T4, T5, T6, C>
             Consumer7<T0, T1, T2, T3, T4, T5, T6> action
     ) {
         Objects.requireNonNull(action);
-        return new Transactional7<>(
-                context -> {
-                    Tuple7<T0, T1, T2, T3, T4, T5, T6> tuple = procedure.apply(context);
-                    action.accept(
-                            tuple.get0(),
-                            tuple.get1(),
-                            tuple.get2(),
-                            tuple.get3(),
-                            tuple.get4(),
-                            tuple.get5(),
-                            tuple.get6()
-                    );
-                    return tuple;
-                },
-                provider
-        );
+        Consumer<Tuple7<T0, T1, T2, T3, T4, T5, T6>> peek
+                = tuple -> action.accept(
+                        tuple.get0(),
+                        tuple.get1(),
+                        tuple.get2(),
+                        tuple.get3(),
+                        tuple.get4(),
+                        tuple.get5(),
+                        tuple.get6()
+                );
+        return new Transactional7<>(this, Procedure.PEEK, peek);
     }
 
     public Transactional7<T0, T1, T2, T3, T4, T5, T6, C> peekMap(
             Function7<T0, T1, T2, T3, T4, T5, T6, Transactional<Void, C>> procedure
     ) {
         Objects.requireNonNull(procedure);
-        return new Transactional7<>(
-                context -> {
-                    Tuple7<T0, T1, T2, T3, T4, T5, T6> tuple = this.procedure.apply(context);
-                    procedure
-                            .apply(
-                                    tuple.get0(),
-                                    tuple.get1(),
-                                    tuple.get2(),
-                                    tuple.get3(),
-                                    tuple.get4(),
-                                    tuple.get5(),
-                                    tuple.get6()
-                            )
-                            .procedure
-                            .apply(context);
-                    return tuple;
-                },
-                provider
-        );
+        Function<Tuple7<T0, T1, T2, T3, T4, T5, T6>, Transactional<Void, C>> peekMap
+                = tuple -> procedure.apply(
+                        tuple.get0(),
+                        tuple.get1(),
+                        tuple.get2(),
+                        tuple.get3(),
+                        tuple.get4(),
+                        tuple.get5(),
+                        tuple.get6()
+                );
+        return new Transactional7<>(this, Procedure.PEEK_MAP, peekMap);
     }
 }
@@ -0,0 +1,379 @@
+package fi.jubic.easyutils.transactional;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A sink writing a stream of elements in chunks, each chunk in a transaction of its own. Instead
+ * of performing a single huge transaction or a transaction per element, the elements written to
+ * the sink are collected into chunks that are committed when they reach the chunk size or when
+ * the oldest element has waited for the maximum delay.
+ *
+ * <pre>{@code
+ * TransactionalSink<Row, DSLContext> sink = TransactionalSink
+ *         .of((List<Row> rows) -> insertAll(rows))
+ *         .withChunkSize(1000)
+ *         .withMaxDelay(Duration.ofMillis(200));
+ *
+ * try (ChunkWriter<Row> writer = sink.open(executor)) {
+ *     rows.forEach(writer);
+ * }
+ * }</pre>
+ *
+ * <p>
+ *     The chunks are performed sequentially by a task of the given {@link Executor}. The elements
+ *     are buffered in between and producers writing to a full buffer block until a chunk has
+ *     been taken from it. If a chunk fails, it is rolled back, the elements still buffered are
+ *     discarded and the failure is rethrown to the producers.
+ * </p>
+ *
+ * <p>
+ *     With a target latency the chunk size is adapted after each chunk toward the number of
+ *     elements that can be committed within the target, never exceeding the configured chunk
+ *     size. {@code TransactionalSink} instances are immutable. The {@code with} methods return
+ *     modified copies.
+ * </p>
+ *
+ * @param <E> the type of the elements
+ * @param <C> the type of the transaction context
+ */
+public final class TransactionalSink<E, C> {
+    private static final ChunkListener NO_LISTENER = new ChunkListener() { };
+
+    private final Function<List<E>, Transactional<?, C>> chunkProcedure;
+    private final int chunkSize;
+    private final long maxDelayNanos;
+
+    /**
+     * The maximum number of buffered elements, or zero if the buffer holds two chunks.
+     */
+    private final int bufferSize;
+    private final long targetLatencyNanos;
+    private final ChunkListener listener;
+
+    private TransactionalSink(
+            Function<List<E>, Transactional<?, C>> chunkProcedure,
+            int chunkSize,
+            long maxDelayNanos,
+            int bufferSize,
+            long targetLatencyNanos,
+            ChunkListener listener
+    ) {
+        this.chunkProcedure = chunkProcedure;
+        this.chunkSize = chunkSize;
+        this.maxDelayNanos = maxDelayNanos;
+        this.bufferSize = bufferSize;
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.listener = listener;
+    }
+
+    /**
+     * Create a {@code TransactionalSink} writing each chunk with the {@link Transactional}
+     * returned from the given function. By default a chunk holds at most 100 elements and is
+     * committed only when full or when the writer is closed. The buffer holds two chunks.
+     *
+     * @param chunkProcedure the function returning the procedure writing a chunk
+     * @param <E> the type of the elements
+     * @param <C> the type of the transaction context
+     * @return the created sink
+     */
+    public static <E, C> TransactionalSink<E, C> of(
+            Function<List<E>, Transactional<?, C>> chunkProcedure
+    ) {
+        return new TransactionalSink<>(
+                Objects.requireNonNull(chunkProcedure),
+                100,
+                0L,
+                0,
+                0L,
+                NO_LISTENER
+        );
+    }
+
+    /**
+     * Returns a copy of this sink committing a chunk once it holds the given number of elements.
+     * A buffer size set with {@link TransactionalSink#withBufferSize(int)} is kept if it still
+     * holds a chunk, otherwise the buffer holds two chunks.
+     *
+     * @param chunkSize the maximum number of elements in a chunk
+     * @return the modified sink
+     */
+    public TransactionalSink<E, C> withChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        return new TransactionalSink<>(
+                chunkProcedure,
+                chunkSize,
+                maxDelayNanos,
+                bufferSize >= chunkSize ? bufferSize : 0,
+                targetLatencyNanos,
+                listener
+        );
+    }
+
+    /**
+     * Returns a copy of this sink committing a chunk once its oldest element has waited for the
+     * given time, even if the chunk is not full.
+     *
+     * @param maxDelay the maximum time an element waits for its chunk to fill
+     * @return the modified sink
+     */
+    public TransactionalSink<E, C> withMaxDelay(Duration maxDelay) {
+        if (maxDelay.isNegative() || maxDelay.isZero()) {
+            throw new IllegalArgumentException("maxDelay must be positive");
+        }
+        return new TransactionalSink<>(
+                chunkProcedure,
+                chunkSize,
+                maxDelay.toNanos(),
+                bufferSize,
+                targetLatencyNanos,
+                listener
+        );
+    }
+
+    /**
+     * Returns a copy of this sink buffering at most the given number of elements. Producers
+     * block while the buffer is full.
+     *
+     * @param bufferSize the maximum number of buffered elements, at least the chunk size
+     * @return the modified sink
+     */
+    public TransactionalSink<E, C> withBufferSize(int bufferSize) {
+        if (bufferSize < chunkSize) {
+            throw new IllegalArgumentException("bufferSize must be at least the chunk size");
+        }
+        return new TransactionalSink<>(
+                chunkProcedure,
+                chunkSize,
+                maxDelayNanos,
+                bufferSize,
+                targetLatencyNanos,
+                listener
+        );
+    }
+
+    /**
+     * Returns a copy of this sink adapting the size of the chunks toward the given commit
+     * latency. The chunk size configured with {@link TransactionalSink#withChunkSize(int)} is
+     * the upper bound.
+     *
+     * @param targetLatency the target time taken by the transaction of a chunk
+     * @return the modified sink
+     */
+    public TransactionalSink<E, C> withTargetLatency(Duration targetLatency) {
+        if (targetLatency.isNegative() || targetLatency.isZero()) {
+            throw new IllegalArgumentException("targetLatency must be positive");
+        }
+        return new TransactionalSink<>(
+                chunkProcedure,
+                chunkSize,
+                maxDelayNanos,
+                bufferSize,
+                targetLatency.toNanos(),
+                listener
+        );
+    }
+
+    /**
+     * Returns a copy of this sink notifying the given {@link ChunkListener} of each chunk.
+     *
+     * @param listener the listener
+     * @return the modified sink
+     */
+    public TransactionalSink<E, C> withListener(ChunkListener listener) {
+        return new TransactionalSink<>(
+                chunkProcedure,
+                chunkSize,
+                maxDelayNanos,
+                bufferSize,
+                targetLatencyNanos,
+                Objects.requireNonNull(listener)
+        );
+    }
+
+    /**
+     * Starts writing chunks on the given {@link Executor} and returns the writer accepting the
+     * elements. The writer must be closed to write the last chunk.
+     *
+     * @param executor the executor performing the chunks
+     * @return the writer
+     */
+    public ChunkWriter<E> open(Executor executor) {
+        Writer writer = new Writer();
+        executor.execute(writer);
+        return writer;
+    }
+
+    private final class Writer implements ChunkWriter<E>, Runnable {
+        private final Object lock = new Object();
+        private final ArrayDeque<E> buffer = new ArrayDeque<>();
+        private final int capacity = bufferSize > 0 ? bufferSize : 2 * chunkSize;
+
+        /**
+         * The arrival times of the buffered elements in a ring, the oldest at {@code first}.
+         */
+        private final long[] arrivals = new long[capacity];
+        private int first;
+        private boolean closed;
+        private boolean done;
+        private Throwable failure;
+
+        private volatile int currentChunkSize = chunkSize;
+        private volatile long committedElements;
+        private volatile long committedChunks;
+
+        @Override
+        public void accept(E element) {
+            synchronized (lock) {
+                while (buffer.size() >= capacity && failure == null && !closed) {
+                    try {
+                        lock.wait();
+                    }
+                    catch (InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                        throw new CancellationException("Interrupted while waiting for space");
+                    }
+                }
+                if (failure != null) throw rethrow(failure);
+                if (closed) throw new IllegalStateException("The writer has been closed");
+
+                arrivals[(first + buffer.size()) % capacity] = System.nanoTime();
+                buffer.add(element);
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public void close() {
+            boolean interrupted = false;
+            synchronized (lock) {
+                closed = true;
+                lock.notifyAll();
+                while (!done) {
+                    try {
+                        lock.wait();
+                    }
+                    catch (InterruptedException exception) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+            if (failure != null) throw rethrow(failure);
+        }
+
+        @Override
+        public long committedElements() {
+            return committedElements;
+        }
+
+        @Override
+        public long committedChunks() {
+            return committedChunks;
+        }
+
+        @Override
+        public int chunkSize() {
+            return currentChunkSize;
+        }
+
+        @Override
+        public void run() {
+            try {
+                List<E> chunk;
+                while ((chunk = take()) != null) {
+                    write(chunk);
+                }
+            }
+            catch (RuntimeException | Error exception) {
+                synchronized (lock) {
+                    failure = exception;
+                    buffer.clear();
+                }
+            }
+            finally {
+                synchronized (lock) {
+                    done = true;
+                    lock.notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Waits until a chunk is full, its oldest element has waited for the maximum delay or
+         * the writer is closed, and takes the chunk from the buffer.
+         *
+         * @return the chunk, or {@code null} if the writer has been closed and the buffer is empty
+         */
+        private List<E> take() {
+            synchronized (lock) {
+                int size = currentChunkSize;
+                while (buffer.size() < size && !closed) {
+                    try {
+                        if (buffer.isEmpty() || maxDelayNanos == 0L) {
+                            lock.wait();
+                            continue;
+                        }
+                        long remaining = arrivals[first] + maxDelayNanos - System.nanoTime();
+                        if (remaining <= 0) break;
+                        TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                    }
+                    catch (InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                        throw new CancellationException("Interrupted while collecting a chunk");
+                    }
+                }
+                if (buffer.isEmpty()) return null;
+
+                List<E> chunk = new ArrayList<>(Math.min(size, buffer.size()));
+                while (chunk.size() < size && !buffer.isEmpty()) {
+                    chunk.add(buffer.poll());
+                }
+                first = (first + chunk.size()) % capacity;
+                lock.notifyAll();
+                return chunk;
+            }
+        }
+
+        private void write(List<E> chunk) {
+            long start = System.nanoTime();
+            try {
+                chunkProcedure.apply(chunk).get();
+            }
+            catch (RuntimeException exception) {
+                listener.onRollback(chunk.size(), System.nanoTime() - start, exception);
+                throw exception;
+            }
+            long latency = System.nanoTime() - start;
+            committedElements += chunk.size();
+            committedChunks++;
+            listener.onCommit(chunk.size(), latency);
+
+            if (targetLatencyNanos > 0L) adapt(chunk.size(), latency);
+        }
+
+        /**
+         * Moves the chunk size halfway toward the size estimated to be committed within the
+         * target latency, assuming the latency grows linearly with the size.
+         */
+        private void adapt(int size, long latency) {
+            double nanosPerElement = Math.max(latency, 1L) / (double) size;
+            double estimate = Math.min(targetLatencyNanos / nanosPerElement, chunkSize);
+            currentChunkSize = (int) Math.max(1L, Math.round((currentChunkSize + estimate) / 2));
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable throwable) {
+        if (throwable instanceof Error) throw (Error) throwable;
+        return (RuntimeException) throwable;
+    }
+}
@@ -0,0 +1,386 @@
+package fi.jubic.easyutils.transactional;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A stream of elements read from a cursor kept open within a transaction. Unlike a
+ * {@link Transactional}, which produces a single materialized result, the elements are handed to
+ * the caller one at a time while the transaction is in progress, so that memory use stays flat
+ * regardless of the number of elements.
+ *
+ * <pre>{@code
+ * TransactionalStream<Row, DSLContext> rows = TransactionalStream.of(
+ *         ctx -> ctx.selectFrom(ROW).fetchLazy().stream(),
+ *         provider
+ * );
+ *
+ * try (Stream<Row> stream = rows.stream(executor)) {
+ *     stream.forEach(exporter::write);
+ * }
+ * }</pre>
+ *
+ * <p>
+ *     The {@link TransactionProvider} scopes a transaction to a single procedure, so the
+ *     transaction is performed by a task of the given {@link Executor}. The task opens the source
+ *     stream and hands its elements over a bounded buffer. When the buffer is full the task waits
+ *     for the caller to consume, which keeps the cursor from reading ahead of the caller. Thread
+ *     context based providers bind the transaction to the thread of the task.
+ * </p>
+ *
+ * <p>
+ *     The transaction is committed once the source has been fully consumed, or when the stream is
+ *     closed or the subscription cancelled before that. If the source throws, the transaction is
+ *     rolled back and the exception is rethrown to the caller. If the thread consuming the stream
+ *     is interrupted while waiting for an element, the transaction is rolled back.
+ * </p>
+ *
+ * @param <T> the type of the elements
+ * @param <C> the type of the transaction context
+ */
+public final class TransactionalStream<T, C> {
+    private static final int DEFAULT_BUFFER_SIZE = 256;
+
+    private final Function<C, ? extends Stream<T>> source;
+    private final TransactionProvider<C> provider;
+    private final int bufferSize;
+
+    private TransactionalStream(
+            Function<C, ? extends Stream<T>> source,
+            TransactionProvider<C> provider,
+            int bufferSize
+    ) {
+        this.source = source;
+        this.provider = provider;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Returns a {@code TransactionalStream} of the elements of the stream opened by the given
+     * procedure within a transaction of the {@link TransactionProvider}. The opened stream is
+     * closed before the transaction is committed or rolled back.
+     *
+     * @param source the procedure opening the stream of elements
+     * @param provider the provider for the transaction context
+     * @param <T> the type of the elements
+     * @param <C> the type of the transaction context
+     * @return the new {@code TransactionalStream}
+     */
+    public static <T, C> TransactionalStream<T, C> of(
+            Function<C, ? extends Stream<T>> source,
+            TransactionProvider<C> provider
+    ) {
+        return new TransactionalStream<>(
+                Objects.requireNonNull(source),
+                Objects.requireNonNull(provider),
+                DEFAULT_BUFFER_SIZE
+        );
+    }
+
+    /**
+     * Returns a {@code TransactionalStream} handing the elements over a buffer of the given size.
+     * The default size is 256 elements.
+     *
+     * @param bufferSize the maximum number of elements read ahead of the caller
+     * @return the new {@code TransactionalStream}
+     */
+    public TransactionalStream<T, C> withBufferSize(int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        return new TransactionalStream<>(source, provider, bufferSize);
+    }
+
+    /**
+     * Begins a transaction on the given {@link Executor} and returns a sequential
+     * {@link Stream} of the elements read within it. The stream must be closed, for example with
+     * a try-with-resources statement, unless it is fully consumed. Closing the stream waits for
+     * the transaction to complete and rethrows the exception if it could not be committed.
+     *
+     * @param executor the executor performing the transaction
+     * @return the stream of elements
+     */
+    public Stream<T> stream(Executor executor) {
+        Cursor cursor = new Cursor();
+        cursor.start(executor);
+        return StreamSupport
+                .stream(
+                        Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED),
+                        false
+                )
+                .onClose(cursor::close);
+    }
+
+    /**
+     * Returns a {@link Flow.Publisher} performing a transaction on the given {@link Executor} for
+     * each subscriber. The elements are published within the transaction as requested by the
+     * subscriber. The subscriber is completed after the transaction has been committed, or
+     * receives the exception after the transaction has been rolled back.
+     *
+     * @param executor the executor performing the transactions
+     * @return the publisher of elements
+     */
+    public Flow.Publisher<T> publisher(Executor executor) {
+        Objects.requireNonNull(executor);
+        return subscriber -> {
+            Objects.requireNonNull(subscriber);
+            Publication publication = new Publication(subscriber);
+            subscriber.onSubscribe(publication);
+            try {
+                executor.execute(publication);
+            }
+            catch (RuntimeException exception) {
+                publication.fail(exception);
+            }
+        };
+    }
+
+    /**
+     * The iterator of a stream, filled by the task performing the transaction.
+     */
+    private final class Cursor implements Iterator<T>, Runnable {
+        private final Object lock = new Object();
+        private final ArrayDeque<Object> buffer = new ArrayDeque<>();
+
+        private boolean closed;
+        private boolean aborted;
+        private boolean done;
+        private Throwable failure;
+        private Object next;
+
+        private void start(Executor executor) {
+            try {
+                executor.execute(this);
+            }
+            catch (RuntimeException exception) {
+                complete(exception);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                provider.runWithTransaction(context -> {
+                    try (Stream<T> elements = source.apply(context)) {
+                        Iterator<T> iterator = elements.iterator();
+                        while (iterator.hasNext()) {
+                            if (!offer(iterator.next())) break;
+                        }
+                    }
+                    return null;
+                });
+            }
+            catch (RuntimeException | Error exception) {
+                complete(exception);
+                return;
+            }
+            complete(null);
+        }
+
+        /**
+         * Waits for space in the buffer and adds the element to it.
+         *
+         * @return whether more elements should be read
+         */
+        private boolean offer(T element) {
+            synchronized (lock) {
+                while (buffer.size() >= bufferSize && !closed) {
+                    waitFor();
+                }
+                if (aborted) {
+                    throw new CancellationException("The consumer of the stream was interrupted");
+                }
+                if (closed) return false;
+
+                buffer.add(element == null ? Null.NULL : element);
+                lock.notifyAll();
+                return true;
+            }
+        }
+
+        private void complete(Throwable failure) {
+            synchronized (lock) {
+                this.failure = failure;
+                this.done = true;
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) return true;
+
+            synchronized (lock) {
+                while (buffer.isEmpty() && !done) {
+                    try {
+                        lock.wait();
+                    }
+                    catch (InterruptedException exception) {
+                        aborted = true;
+                        closed = true;
+                        lock.notifyAll();
+                        Thread.currentThread().interrupt();
+                        throw new CancellationException("Interrupted while waiting for elements");
+                    }
+                }
+                if (!buffer.isEmpty()) {
+                    next = buffer.poll();
+                    lock.notifyAll();
+                    return true;
+                }
+                if (failure != null) throw rethrow(failure);
+                return false;
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext()) throw new NoSuchElementException();
+
+            Object element = next;
+            next = null;
+            return element == Null.NULL ? null : (T) element;
+        }
+
+        private void close() {
+            boolean interrupted = false;
+            synchronized (lock) {
+                closed = true;
+                buffer.clear();
+                lock.notifyAll();
+                while (!done) {
+                    try {
+                        lock.wait();
+                    }
+                    catch (InterruptedException exception) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+            if (failure != null && !aborted) throw rethrow(failure);
+        }
+
+        private void waitFor() {
+            try {
+                lock.wait();
+            }
+            catch (InterruptedException exception) {
+                // The task is cancelled by rolling back the transaction.
+                aborted = true;
+                closed = true;
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * The subscription of a subscriber, published to by the task performing the transaction.
+     */
+    private final class Publication implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final Object lock = new Object();
+
+        private long demand;
+        private boolean cancelled;
+        private IllegalArgumentException invalidRequest;
+
+        private Publication(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (lock) {
+                if (n <= 0) {
+                    invalidRequest = new IllegalArgumentException(
+                            "Requested a non-positive number of elements"
+                    );
+                    cancelled = true;
+                }
+                else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (lock) {
+                cancelled = true;
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                provider.runWithTransaction(context -> {
+                    try (Stream<T> elements = source.apply(context)) {
+                        Iterator<T> iterator = elements.iterator();
+                        while (awaitDemand() && iterator.hasNext()) {
+                            subscriber.onNext(iterator.next());
+                        }
+                    }
+                    if (invalidRequest != null) throw invalidRequest;
+                    return null;
+                });
+            }
+            catch (RuntimeException | Error exception) {
+                fail(exception);
+                if (exception instanceof Error) throw (Error) exception;
+                return;
+            }
+            if (!isCancelled()) subscriber.onComplete();
+        }
+
+        private boolean awaitDemand() {
+            synchronized (lock) {
+                while (demand == 0 && !cancelled) {
+                    try {
+                        lock.wait();
+                    }
+                    catch (InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                        throw new CancellationException("Interrupted while waiting for demand");
+                    }
+                }
+                if (cancelled) return false;
+
+                demand--;
+                return true;
+            }
+        }
+
+        private boolean isCancelled() {
+            synchronized (lock) {
+                return cancelled && invalidRequest == null;
+            }
+        }
+
+        private void fail(Throwable exception) {
+            if (!isCancelled() || exception == invalidRequest) subscriber.onError(exception);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable throwable) {
+        if (throwable instanceof Error) throw (Error) throwable;
+        return (RuntimeException) throwable;
+    }
+
+    private enum Null {
+        NULL
+    }
+}
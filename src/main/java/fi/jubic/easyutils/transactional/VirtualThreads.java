@@ -0,0 +1,79 @@
+package fi.jubic.easyutils.transactional;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.Executor;
+
+/**
+ * An execution mode for running each {@link Transactional} on its own virtual thread with
+ * {@link Transactional#getAsync(Executor)}. Virtual threads are available on Java 21 and newer.
+ * The library itself is compiled against an older release, so the virtual thread support is
+ * looked up when this class is initialized.
+ *
+ * <pre>{@code
+ * CompletableFuture<Account> account = findAccount(accountId)
+ *         .getAsync(VirtualThreads.executor());
+ * }</pre>
+ *
+ * <p>
+ *     The default {@code runWithTransaction} of {@link ThreadContextTransactionProvider} does not
+ *     hold any monitors while the transaction is open, so a blocked virtual thread releases its
+ *     carrier thread unless the {@code begin}, {@code commit} or {@code rollback} implementations
+ *     themselves synchronize.
+ * </p>
+ */
+public final class VirtualThreads {
+    private static final MethodHandle START_VIRTUAL_THREAD = findStartVirtualThread();
+
+    private VirtualThreads() {
+
+    }
+
+    /**
+     * Check whether the running JVM supports virtual threads.
+     *
+     * @return {@code true} if virtual threads are supported
+     */
+    public static boolean isSupported() {
+        return START_VIRTUAL_THREAD != null;
+    }
+
+    /**
+     * Returns an {@link Executor} that starts a new virtual thread for each submitted task.
+     *
+     * @return the virtual thread per task executor
+     * @throws UnsupportedOperationException if the JVM does not support virtual threads
+     */
+    public static Executor executor() {
+        if (START_VIRTUAL_THREAD == null) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer");
+        }
+        return VirtualThreads::start;
+    }
+
+    private static void start(Runnable task) {
+        try {
+            START_VIRTUAL_THREAD.invoke(task);
+        }
+        catch (RuntimeException | Error exception) {
+            throw exception;
+        }
+        catch (Throwable throwable) {
+            throw new IllegalStateException(throwable);
+        }
+    }
+
+    private static MethodHandle findStartVirtualThread() {
+        try {
+            return MethodHandles.publicLookup().findStatic(
+                    Thread.class,
+                    "startVirtualThread",
+                    MethodType.methodType(Thread.class, Runnable.class)
+            );
+        }
+        catch (NoSuchMethodException | IllegalAccessException ignore) {
+            return null;
+        }
+    }
+}
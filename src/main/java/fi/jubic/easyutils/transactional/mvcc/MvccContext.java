@@ -0,0 +1,93 @@
+package fi.jubic.easyutils.transactional.mvcc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The transaction context of a {@link MvccTransactionProvider}, reading and writing the entries of
+ * the store. Every call is a statement, delayed by the statement latency of the provider.
+ *
+ * <p>
+ *     Within a transaction the entries are read as they were when the transaction began, apart
+ *     from the writes of the transaction itself, which are buffered until it commits. The
+ *     context passed to {@link MvccTransactionProvider#runWithoutTransaction} reads the latest
+ *     committed values and commits each write immediately.
+ * </p>
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public final class MvccContext<K, V> {
+    private final MvccTransactionProvider<K, V> provider;
+    private final MvccTransaction transaction;
+    private final Map<K, Object> writes;
+
+    MvccContext(MvccTransactionProvider<K, V> provider, MvccTransaction transaction) {
+        this.provider = provider;
+        this.transaction = transaction;
+        this.writes = transaction != null ? new LinkedHashMap<>() : null;
+    }
+
+    /**
+     * Returns the value of the key, or {@code null} if there is none.
+     *
+     * @param key the key
+     * @return the value or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        provider.statement();
+        Object value = transaction != null && writes.containsKey(key)
+                ? writes.get(key)
+                : provider.read(key, transaction);
+        return value != VersionChain.TOMBSTONE ? (V) value : null;
+    }
+
+    /**
+     * Returns whether the key has a value.
+     *
+     * @param key the key
+     * @return whether the key has a value
+     */
+    public boolean contains(K key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Sets the value of the key.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public void put(K key, V value) {
+        write(key, Objects.requireNonNull(value));
+    }
+
+    /**
+     * Removes the value of the key, if any.
+     *
+     * @param key the key
+     */
+    public void delete(K key) {
+        write(key, VersionChain.TOMBSTONE);
+    }
+
+    MvccTransaction transaction() {
+        return transaction;
+    }
+
+    Map<K, Object> writes() {
+        return writes;
+    }
+
+    private void write(K key, Object value) {
+        Objects.requireNonNull(key);
+        provider.statement();
+        if (transaction == null) {
+            provider.writeWithoutTransaction(key, value);
+            return;
+        }
+        writes.put(key, value);
+    }
+}
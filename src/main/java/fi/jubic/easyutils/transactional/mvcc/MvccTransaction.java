@@ -0,0 +1,65 @@
+package fi.jubic.easyutils.transactional.mvcc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A transaction of a {@link MvccTransactionProvider}, reading the versions committed at or before
+ * its snapshot timestamp.
+ *
+ * <p>
+ *     A committing transaction first installs its versions at the heads of the version chains,
+ *     and only then takes its commit timestamp from the clock. A reader meeting a version whose
+ *     transaction has installed everything but has not yet taken its timestamp takes one on its
+ *     behalf, so no thread ever waits for another.
+ * </p>
+ */
+final class MvccTransaction implements Comparable<MvccTransaction> {
+    /** The resolved timestamp of a version of an aborted transaction. */
+    static final long ABORTED = -1L;
+    /** The resolved timestamp of a version of a transaction still installing its versions. */
+    static final long PENDING = Long.MAX_VALUE;
+
+    private static final AtomicLong IDS = new AtomicLong();
+
+    final long snapshot;
+    private final long id = IDS.incrementAndGet();
+    private final AtomicLong commitTimestamp = new AtomicLong();
+    private volatile boolean installed;
+    private volatile boolean aborted;
+
+    MvccTransaction(long snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Returns the commit timestamp of the transaction, taking one from the clock if all of its
+     * versions are installed, or {@link #ABORTED} or {@link #PENDING}.
+     */
+    long resolve(AtomicLong clock) {
+        long timestamp = commitTimestamp.get();
+        if (timestamp != 0L) return timestamp;
+        if (aborted) return ABORTED;
+        if (!installed) return PENDING;
+
+        commitTimestamp.compareAndSet(0L, clock.incrementAndGet());
+        return commitTimestamp.get();
+    }
+
+    /**
+     * Marks the versions installed and returns the commit timestamp.
+     */
+    long commit(AtomicLong clock) {
+        installed = true;
+        return resolve(clock);
+    }
+
+    void abort() {
+        aborted = true;
+    }
+
+    @Override
+    public int compareTo(MvccTransaction other) {
+        int bySnapshot = Long.compare(snapshot, other.snapshot);
+        return bySnapshot != 0 ? bySnapshot : Long.compare(id, other.id);
+    }
+}
@@ -0,0 +1,296 @@
+package fi.jubic.easyutils.transactional.mvcc;
+
+import fi.jubic.easyutils.transactional.TransactionProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * A {@link TransactionProvider} of an in-memory, multi-version key-value store with snapshot
+ * isolation. It behaves like a database under concurrency without running one, which makes it a
+ * stand-in for integration tests and a target for benchmarks of {@code Transactional} chains.
+ *
+ * <pre>{@code
+ * MvccTransactionProvider<String, Long> store = new MvccTransactionProvider<String, Long>()
+ *         .withStatementLatency(Duration.ofMillis(1))
+ *         .withCommitLatency(Duration.ofMillis(2));
+ *
+ * Transactional
+ *         .of(ctx -> {
+ *             ctx.put("counter", ctx.get("counter") + 1);
+ *             return null;
+ *         }, store)
+ *         .retry(RetryPolicy.of(e -> e instanceof WriteConflictException))
+ *         .get();
+ * }</pre>
+ *
+ * <p>
+ *     A transaction reads the entries as they were committed when it began. Its writes are
+ *     installed when it commits, and the first of two concurrent transactions writing the same
+ *     key to commit wins: the other one fails with a {@link WriteConflictException} and is rolled
+ *     back. Transactions only reading never conflict. As with snapshot isolation in databases,
+ *     two transactions each writing a key the other one read can both commit.
+ * </p>
+ *
+ * <p>
+ *     The versions of each key are kept in a chain updated with compare-and-set only, so readers
+ *     and writers never block each other. Versions no active transaction can see are dropped as
+ *     keys are written.
+ * </p>
+ *
+ * <p>
+ *     The begin, statement and commit latencies simulate the round trips to a database by parking
+ *     the calling thread. The {@code with} methods return views of the same entries with modified
+ *     latencies. A transaction requested while another transaction of the store is active on the
+ *     thread joins the active transaction.
+ * </p>
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public final class MvccTransactionProvider<K, V>
+        implements TransactionProvider<MvccContext<K, V>> {
+    private final Store store;
+    private final long beginNanos;
+    private final long statementNanos;
+    private final long commitNanos;
+
+    /**
+     * Create an empty store without latencies.
+     */
+    public MvccTransactionProvider() {
+        this(new Store(), 0L, 0L, 0L);
+    }
+
+    private MvccTransactionProvider(
+            Store store,
+            long beginNanos,
+            long statementNanos,
+            long commitNanos
+    ) {
+        this.store = store;
+        this.beginNanos = beginNanos;
+        this.statementNanos = statementNanos;
+        this.commitNanos = commitNanos;
+    }
+
+    /**
+     * Returns a view of the store delaying the beginning of each transaction by the given time.
+     *
+     * @param latency the latency of beginning a transaction
+     * @return the view with the latency
+     */
+    public MvccTransactionProvider<K, V> withBeginLatency(Duration latency) {
+        return new MvccTransactionProvider<>(store, nanos(latency), statementNanos, commitNanos);
+    }
+
+    /**
+     * Returns a view of the store delaying each read and write of a {@link MvccContext} by the
+     * given time.
+     *
+     * @param latency the latency of a statement
+     * @return the view with the latency
+     */
+    public MvccTransactionProvider<K, V> withStatementLatency(Duration latency) {
+        return new MvccTransactionProvider<>(store, beginNanos, nanos(latency), commitNanos);
+    }
+
+    /**
+     * Returns a view of the store delaying the commit of each transaction by the given time.
+     *
+     * @param latency the latency of committing a transaction
+     * @return the view with the latency
+     */
+    public MvccTransactionProvider<K, V> withCommitLatency(Duration latency) {
+        return new MvccTransactionProvider<>(store, beginNanos, statementNanos, nanos(latency));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T runWithTransaction(Function<MvccContext<K, V>, T> procedure) {
+        MvccContext<K, V> active = (MvccContext<K, V>) store.active.get();
+        if (active != null) return procedure.apply(active);
+
+        park(beginNanos);
+        MvccTransaction transaction = store.begin();
+        MvccContext<K, V> context = new MvccContext<>(this, transaction);
+        store.active.set(context);
+        try {
+            T result = procedure.apply(context);
+            park(commitNanos);
+            commit(transaction, context.writes());
+            return result;
+        }
+        finally {
+            store.active.remove();
+            store.transactions.remove(transaction);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T runWithoutTransaction(Function<MvccContext<K, V>, T> procedure) {
+        MvccContext<K, V> active = (MvccContext<K, V>) store.active.get();
+        return procedure.apply(active != null ? active : new MvccContext<>(this, null));
+    }
+
+    /**
+     * Returns the number of transactions committed.
+     *
+     * @return the number of commits
+     */
+    public long commits() {
+        return store.commits.sum();
+    }
+
+    /**
+     * Returns the number of transactions that failed with a {@link WriteConflictException}.
+     *
+     * @return the number of conflicts
+     */
+    public long conflicts() {
+        return store.conflicts.sum();
+    }
+
+    void statement() {
+        park(statementNanos);
+    }
+
+    /**
+     * Returns the value of the key visible to the transaction, or the latest committed value
+     * without a transaction.
+     */
+    Object read(K key, MvccTransaction transaction) {
+        VersionChain chain = store.chains.get(key);
+        if (chain == null) return null;
+
+        VersionChain.Version version = transaction != null
+                ? chain.read(transaction.snapshot, store.clock)
+                : chain.latest(store.clock);
+        return version != null ? version.value : null;
+    }
+
+    /**
+     * Commits a single write in a transaction of its own, retrying until no concurrent
+     * transaction is committing the same key.
+     */
+    void writeWithoutTransaction(K key, Object value) {
+        while (true) {
+            MvccTransaction transaction = store.begin();
+            try {
+                commit(transaction, Map.of(key, value));
+                return;
+            }
+            catch (WriteConflictException exception) {
+                Thread.onSpinWait();
+            }
+            finally {
+                store.transactions.remove(transaction);
+            }
+        }
+    }
+
+    private void commit(MvccTransaction transaction, Map<K, Object> writes) {
+        if (writes.isEmpty()) {
+            store.commits.increment();
+            return;
+        }
+
+        List<VersionChain> chains = new ArrayList<>(writes.size());
+        List<VersionChain.Version> versions = new ArrayList<>(writes.size());
+        for (Map.Entry<K, Object> write : writes.entrySet()) {
+            VersionChain chain = store.chain(write.getKey());
+            VersionChain.Version version = new VersionChain.Version(write.getValue(), transaction);
+            if (!chain.install(version, transaction.snapshot, store.clock)) {
+                transaction.abort();
+                for (int i = 0; i < chains.size(); i++) {
+                    chains.get(i).remove(versions.get(i));
+                }
+                store.conflicts.increment();
+                throw new WriteConflictException(write.getKey());
+            }
+            chains.add(chain);
+            versions.add(version);
+        }
+        transaction.commit(store.clock);
+        store.commits.increment();
+
+        long horizon = store.horizon();
+        for (VersionChain chain : chains) {
+            chain.trim(horizon, store.clock);
+        }
+    }
+
+    private static long nanos(Duration latency) {
+        if (latency.isNegative()) {
+            throw new IllegalArgumentException("latency must not be negative");
+        }
+        return latency.toNanos();
+    }
+
+    private static void park(long nanos) {
+        if (nanos > 0L) LockSupport.parkNanos(nanos);
+    }
+
+    /**
+     * The entries and the transactions shared by the views of the store.
+     */
+    private static final class Store {
+        private final Map<Object, VersionChain> chains = new ConcurrentHashMap<>();
+        private final AtomicLong clock = new AtomicLong();
+        private final ConcurrentSkipListSet<MvccTransaction> transactions =
+                new ConcurrentSkipListSet<>();
+        private final AtomicLong horizon = new AtomicLong();
+        private final ThreadLocal<MvccContext<?, ?>> active = new ThreadLocal<>();
+        private final LongAdder commits = new LongAdder();
+        private final LongAdder conflicts = new LongAdder();
+
+        private VersionChain chain(Object key) {
+            VersionChain chain = chains.get(key);
+            if (chain != null) return chain;
+
+            VersionChain created = new VersionChain();
+            chain = chains.putIfAbsent(key, created);
+            return chain != null ? chain : created;
+        }
+
+        /**
+         * Registers a transaction reading the latest committed versions. The snapshot is taken
+         * again if versions it could see were dropped before the transaction was registered.
+         */
+        private MvccTransaction begin() {
+            while (true) {
+                MvccTransaction transaction = new MvccTransaction(clock.get());
+                transactions.add(transaction);
+                if (horizon.get() <= transaction.snapshot) return transaction;
+                transactions.remove(transaction);
+            }
+        }
+
+        /**
+         * Returns the timestamp of the oldest snapshot that can still be read. It is published
+         * before being checked again so that a transaction registered concurrently either sees
+         * it and takes a new snapshot or is seen by the second check.
+         */
+        private long horizon() {
+            long oldest = oldest();
+            horizon.accumulateAndGet(oldest, Math::max);
+            return Math.min(oldest, oldest());
+        }
+
+        private long oldest() {
+            long now = clock.get();
+            Iterator<MvccTransaction> iterator = transactions.iterator();
+            return iterator.hasNext() ? iterator.next().snapshot : now;
+        }
+    }
+}
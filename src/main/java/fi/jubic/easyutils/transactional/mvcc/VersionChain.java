@@ -0,0 +1,100 @@
+package fi.jubic.easyutils.transactional.mvcc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * The versions of the value of a key, newest first. The head is replaced with compare-and-set
+ * only, so readers and writers never block each other.
+ */
+final class VersionChain {
+    /** The value of a version deleting the key. */
+    static final Object TOMBSTONE = new Object();
+
+    private static final AtomicReferenceFieldUpdater<VersionChain, Version> HEAD =
+            AtomicReferenceFieldUpdater.newUpdater(VersionChain.class, Version.class, "head");
+
+    private volatile Version head;
+
+    /**
+     * Returns the newest version visible to the snapshot, or {@code null} if there is none.
+     */
+    Version read(long snapshot, AtomicLong clock) {
+        for (Version version = head; version != null; version = version.previous) {
+            long timestamp = version.resolve(clock);
+            if (timestamp != MvccTransaction.ABORTED && timestamp <= snapshot) return version;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the newest committed version, or {@code null} if there is none.
+     */
+    Version latest(AtomicLong clock) {
+        return read(MvccTransaction.PENDING - 1, clock);
+    }
+
+    /**
+     * Installs the version at the head unless the key has been written by a transaction that
+     * committed after the snapshot or is committing concurrently. The version of an aborted
+     * transaction at the head is replaced.
+     *
+     * @return whether the version was installed
+     */
+    boolean install(Version version, long snapshot, AtomicLong clock) {
+        while (true) {
+            Version current = head;
+            Version previous = current;
+            while (previous != null && previous.resolve(clock) == MvccTransaction.ABORTED) {
+                previous = previous.previous;
+            }
+            if (previous != null && previous.resolve(clock) > snapshot) return false;
+
+            version.previous = previous;
+            if (HEAD.compareAndSet(this, current, version)) return true;
+        }
+    }
+
+    /**
+     * Removes the version of an aborted transaction from the head unless another transaction
+     * has already replaced it.
+     */
+    void remove(Version version) {
+        HEAD.compareAndSet(this, version, version.previous);
+    }
+
+    /**
+     * Drops the versions older than the newest version committed at or before the given
+     * timestamp, which no active snapshot can see any more.
+     */
+    void trim(long horizon, AtomicLong clock) {
+        for (Version version = head; version != null; version = version.previous) {
+            long timestamp = version.resolve(clock);
+            if (timestamp != MvccTransaction.ABORTED && timestamp <= horizon) {
+                version.previous = null;
+                return;
+            }
+        }
+    }
+
+    static final class Version {
+        final Object value;
+        private final MvccTransaction writer;
+        private volatile long timestamp;
+        private volatile Version previous;
+
+        Version(Object value, MvccTransaction writer) {
+            this.value = value;
+            this.writer = writer;
+        }
+
+        private long resolve(AtomicLong clock) {
+            long resolved = timestamp;
+            if (resolved != 0L) return resolved;
+
+            resolved = writer.resolve(clock);
+            if (resolved != MvccTransaction.PENDING) timestamp = resolved;
+            return resolved;
+        }
+    }
+}
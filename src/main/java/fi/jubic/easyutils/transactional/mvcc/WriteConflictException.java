@@ -0,0 +1,16 @@
+package fi.jubic.easyutils.transactional.mvcc;
+
+/**
+ * Thrown when a transaction of a {@link MvccTransactionProvider} commits a write to a key that
+ * another transaction has written since the snapshot of the transaction was taken. The first
+ * transaction to commit wins, and the transaction failing with this exception is rolled back. It
+ * can be performed again with a {@link fi.jubic.easyutils.transactional.RetryPolicy} accepting
+ * the exception, like a serialization failure of a database.
+ */
+public final class WriteConflictException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    WriteConflictException(Object key) {
+        super("Concurrent transaction has written key " + key, null, false, false);
+    }
+}
@@ -0,0 +1,31 @@
+package fi.jubic.easyutils.transactional.stm;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The backoff of the {@link StmTransactionProvider} between performing a conflicted transaction and
+ * performing it again, so that the conflicting transactions do not keep colliding.
+ */
+final class ConflictBackoff {
+    private ConflictBackoff() {
+
+    }
+
+    /**
+     * Waits before the given attempt. Spins first and parks for a randomized, exponentially
+     * growing time of up to about a millisecond after repeated conflicts.
+     *
+     * @param attempt the number of attempts that have conflicted so far, starting from zero
+     */
+    static void pause(int attempt) {
+        if (attempt < 4) {
+            for (int i = 0; i < 1 << attempt; i++) {
+                Thread.onSpinWait();
+            }
+            return;
+        }
+        long maxNanos = 1_000L << Math.min(attempt - 4, 10);
+        LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(maxNanos));
+    }
+}
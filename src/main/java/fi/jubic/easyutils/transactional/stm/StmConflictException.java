@@ -0,0 +1,17 @@
+package fi.jubic.easyutils.transactional.stm;
+
+/**
+ * Thrown when a transaction of a {@link StmTransactionProvider} conflicts with a concurrently
+ * committed transaction. The provider performs the transaction again, so the exception only
+ * escapes a procedure performed outside of the provider. It carries no stack trace, as conflicts
+ * are expected under contention.
+ */
+final class StmConflictException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    static final StmConflictException INSTANCE = new StmConflictException();
+
+    private StmConflictException() {
+        super("Transaction conflicted with a concurrent commit", null, false, false);
+    }
+}
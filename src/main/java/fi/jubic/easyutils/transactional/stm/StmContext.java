@@ -0,0 +1,164 @@
+package fi.jubic.easyutils.transactional.stm;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * The transaction context of a {@link StmTransactionProvider}, reading and writing
+ * {@link TRef}s.
+ *
+ * <p>
+ *     Within a transaction the references are read as they were when the transaction began, and
+ *     the writes are buffered until the transaction commits. Committing validates that none of the
+ *     references read have been committed to since, so the transactions are serializable. A
+ *     transaction that only reads always sees a consistent snapshot and needs no validation.
+ * </p>
+ *
+ * <p>
+ *     The context passed to {@link StmTransactionProvider#runWithoutTransaction} reads the latest
+ *     committed values and commits each write immediately. Only
+ *     {@link StmContext#update(TRef, UnaryOperator)} is atomic in such a context.
+ * </p>
+ */
+public final class StmContext {
+    /**
+     * The version clock shared by all of the references. It is incremented by each committed
+     * transaction that writes.
+     */
+    static final AtomicLong CLOCK = new AtomicLong();
+
+    private final long readVersion;
+    private final boolean autoCommit;
+    private final List<TRef<?>> reads;
+    private final Map<TRef<?>, Object> writes;
+
+    private StmContext(long readVersion, boolean autoCommit) {
+        this.readVersion = readVersion;
+        this.autoCommit = autoCommit;
+        this.reads = autoCommit ? null : new ArrayList<>();
+        this.writes = autoCommit ? null : new IdentityHashMap<>();
+    }
+
+    static StmContext begin() {
+        return new StmContext(CLOCK.get(), false);
+    }
+
+    static StmContext autoCommit() {
+        return new StmContext(Long.MAX_VALUE, true);
+    }
+
+    /**
+     * Returns the value of the reference.
+     *
+     * @param ref the reference
+     * @param <T> the type of the value
+     * @return the value
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(TRef<T> ref) {
+        if (!autoCommit && writes.containsKey(ref)) return (T) writes.get(ref);
+
+        T value = ref.read(readVersion);
+        if (!autoCommit) reads.add(ref);
+        return value;
+    }
+
+    /**
+     * Sets the value of the reference.
+     *
+     * @param ref the reference
+     * @param value the new value
+     * @param <T> the type of the value
+     */
+    public <T> void set(TRef<T> ref, T value) {
+        if (autoCommit) {
+            lock(ref);
+            try {
+                ref.publish(CLOCK.incrementAndGet(), value);
+            }
+            finally {
+                ref.unlock();
+            }
+            return;
+        }
+        writes.put(ref, value);
+    }
+
+    /**
+     * Sets the value of the reference to the result of the given function applied to its current
+     * value.
+     *
+     * @param ref the reference
+     * @param function the function computing the new value
+     * @param <T> the type of the value
+     * @return the new value
+     */
+    public <T> T update(TRef<T> ref, UnaryOperator<T> function) {
+        if (autoCommit) {
+            lock(ref);
+            try {
+                T value = function.apply(ref.latest());
+                ref.publish(CLOCK.incrementAndGet(), value);
+                return value;
+            }
+            finally {
+                ref.unlock();
+            }
+        }
+        T value = function.apply(get(ref));
+        set(ref, value);
+        return value;
+    }
+
+    /**
+     * Commits the buffered writes. The written references are locked, the clock is advanced and
+     * the references read are validated before the writes are published with the new version.
+     *
+     * @throws StmConflictException if a reference could not be locked or a reference read has
+     *                              been committed to since the transaction began
+     */
+    void commit() {
+        if (writes.isEmpty()) return;
+
+        List<TRef<?>> locked = new ArrayList<>(writes.size());
+        try {
+            for (TRef<?> ref : writes.keySet()) {
+                if (!ref.tryLock(this)) throw StmConflictException.INSTANCE;
+                locked.add(ref);
+            }
+            long writeVersion = CLOCK.incrementAndGet();
+            // No other transaction has committed since this one began if the clock only moved
+            // by this increment.
+            if (writeVersion != readVersion + 1) {
+                for (TRef<?> ref : reads) {
+                    if (!ref.isUnchangedSince(readVersion, this)) {
+                        throw StmConflictException.INSTANCE;
+                    }
+                }
+            }
+            for (Map.Entry<TRef<?>, Object> write : writes.entrySet()) {
+                write.getKey().publish(writeVersion, write.getValue());
+            }
+        }
+        finally {
+            for (TRef<?> ref : locked) {
+                ref.unlock();
+            }
+        }
+    }
+
+    private void lock(TRef<?> ref) {
+        for (int i = 0; !ref.tryLock(this); i++) {
+            if (i < 64) {
+                Thread.onSpinWait();
+            }
+            else {
+                Thread.yield();
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package fi.jubic.easyutils.transactional.stm;
+
+import fi.jubic.easyutils.transactional.TransactionProvider;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A {@link TransactionProvider} of software transactional memory, updating in-process state held
+ * in {@link TRef}s atomically with the same {@code Transactional} chains used for databases.
+ *
+ * <pre>{@code
+ * TRef<Long> balance = new TRef<>(0L);
+ * StmTransactionProvider stm = new StmTransactionProvider();
+ *
+ * Transactional.of(ctx -> ctx.update(balance, value -> value + 10), stm).get();
+ * }</pre>
+ *
+ * <p>
+ *     The transactions are optimistic. Reads take no locks and see the references as they were
+ *     when the transaction began. The written references are locked one by one only while the
+ *     transaction commits, so transactions touching different references never wait for each
+ *     other. If a reference read has been committed to by another transaction in the meantime,
+ *     the transaction conflicts and the procedure is performed again in a new transaction after a
+ *     short randomized backoff. Procedures must therefore not have side effects outside of the
+ *     references. An exception thrown by the procedure discards the writes.
+ * </p>
+ *
+ * <p>
+ *     A transaction requested while another transaction is active on the thread, for example by
+ *     calling {@code get()} inside a procedure, joins the active transaction.
+ * </p>
+ */
+public class StmTransactionProvider implements TransactionProvider<StmContext> {
+    private static final ThreadLocal<StmContext> ACTIVE = new ThreadLocal<>();
+
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+
+    @Override
+    public <T> T runWithTransaction(Function<StmContext, T> procedure) {
+        StmContext active = ACTIVE.get();
+        if (active != null) return procedure.apply(active);
+
+        for (int attempt = 0; ; attempt++) {
+            StmContext context = StmContext.begin();
+            ACTIVE.set(context);
+            try {
+                T result = procedure.apply(context);
+                context.commit();
+                commits.increment();
+                return result;
+            }
+            catch (StmConflictException exception) {
+                conflicts.increment();
+            }
+            finally {
+                ACTIVE.remove();
+            }
+            ConflictBackoff.pause(attempt);
+        }
+    }
+
+    @Override
+    public <T> T runWithoutTransaction(Function<StmContext, T> procedure) {
+        StmContext active = ACTIVE.get();
+        return procedure.apply(active != null ? active : StmContext.autoCommit());
+    }
+
+    /**
+     * Returns the number of transactions committed.
+     *
+     * @return the number of commits
+     */
+    public long commits() {
+        return commits.sum();
+    }
+
+    /**
+     * Returns the number of times a transaction conflicted and was performed again.
+     *
+     * @return the number of conflicts
+     */
+    public long conflicts() {
+        return conflicts.sum();
+    }
+}
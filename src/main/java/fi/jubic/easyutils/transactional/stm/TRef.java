@@ -0,0 +1,109 @@
+package fi.jubic.easyutils.transactional.stm;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A transactional reference to a value, read and written with a {@link StmContext} within a
+ * transaction of a {@link StmTransactionProvider}. The referenced value should be immutable, as
+ * modifying it in place is not tracked.
+ *
+ * <p>
+ *     A reference keeps the most recent committed versions of its value so that a transaction can
+ *     read the version that was current when it began even if the reference has been written
+ *     since. Each reference is locked separately and only for the duration of committing a
+ *     transaction writing to it.
+ * </p>
+ *
+ * @param <T> the type of the value
+ */
+public final class TRef<T> {
+    static final int MAX_VERSIONS = 8;
+    private static final int LOCKED_SPINS = 64;
+
+    private final AtomicReference<StmContext> owner = new AtomicReference<>();
+    private volatile Version<T> head;
+
+    /**
+     * Create a {@code TRef} with the given initial value.
+     *
+     * @param initial the initial value
+     */
+    public TRef(T initial) {
+        this.head = new Version<>(0L, initial, null);
+    }
+
+    /**
+     * Returns the latest version of the value committed at or before the given version of the
+     * clock.
+     *
+     * @throws StmConflictException if the reference is being committed or the version is no
+     *                              longer kept
+     */
+    T read(long readVersion) {
+        awaitUnlocked();
+        Version<T> version = head;
+        while (version != null && version.version > readVersion) {
+            version = version.previous;
+        }
+        if (version == null) throw StmConflictException.INSTANCE;
+        return version.value;
+    }
+
+    /**
+     * Returns the latest committed value. Only consistent while the reference is locked.
+     */
+    T latest() {
+        return head.value;
+    }
+
+    /**
+     * Returns whether the reference has not been committed to after the given version of the
+     * clock and is not being committed by another transaction.
+     */
+    boolean isUnchangedSince(long readVersion, StmContext context) {
+        StmContext locker = owner.get();
+        return (locker == null || locker == context) && head.version <= readVersion;
+    }
+
+    boolean tryLock(StmContext context) {
+        return owner.compareAndSet(null, context);
+    }
+
+    void unlock() {
+        owner.set(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    void publish(long writeVersion, Object value) {
+        Version<T> next = new Version<>(writeVersion, (T) value, head);
+        Version<T> oldest = next;
+        for (int i = 1; i < MAX_VERSIONS && oldest.previous != null; i++) {
+            oldest = oldest.previous;
+        }
+        oldest.previous = null;
+        head = next;
+    }
+
+    /**
+     * Waits briefly for a committing transaction to publish its version. A transaction that
+     * began after the committer took its version from the clock must not read past it.
+     */
+    private void awaitUnlocked() {
+        for (int i = 0; owner.get() != null; i++) {
+            if (i == LOCKED_SPINS) throw StmConflictException.INSTANCE;
+            Thread.onSpinWait();
+        }
+    }
+
+    private static final class Version<T> {
+        private final long version;
+        private final T value;
+        private volatile Version<T> previous;
+
+        private Version(long version, T value, Version<T> previous) {
+            this.version = version;
+            this.value = value;
+            this.previous = previous;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package fi.jubic.easyutils.transactional.wal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The snapshots of the entries of a {@link WalTransactionProvider}, named after the sequence
+ * number of the first record of the log that is not included in them for certain.
+ *
+ * <pre>
+ * int magic | long lsn | (int keyLength, key, int valueLength, value)* | int -1 | long crc32
+ * </pre>
+ *
+ * <p>
+ *     A snapshot is written while transactions keep committing, so it may include some of the
+ *     writes of the records from its sequence number onwards. Replaying those records on top of
+ *     the snapshot sets the same keys again, so the recovered entries are the same either way,
+ *     as long as those records are flushed before the snapshot is renamed in place.
+ * </p>
+ */
+final class Snapshot {
+    private static final String SUFFIX = ".snapshot";
+    private static final int MAGIC = 0x57414c53;
+
+    private Snapshot() {
+
+    }
+
+    /**
+     * Writes a snapshot of the entries to a temporary file, flushes it and returns its path.
+     */
+    static Path write(Path directory, long lsn, Map<String, byte[]> entries) throws IOException {
+        Path temporary = directory.resolve(WalLog.fileName(lsn, SUFFIX + ".tmp"));
+        try (FileChannel channel = FileChannel.open(
+                temporary,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+        )) {
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16),
+                    crc
+            ));
+            out.writeInt(MAGIC);
+            out.writeLong(lsn);
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(key.length);
+                out.write(key);
+                out.writeInt(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+            out.writeInt(-1);
+            out.writeLong(crc.getValue());
+            out.flush();
+            channel.force(true);
+        }
+        return temporary;
+    }
+
+    /**
+     * Renames a snapshot written to a temporary file in place. The records whose writes the
+     * snapshot may include must be flushed first, as recovery does not replay the segments
+     * replaced by the snapshot and skips the torn records after it.
+     */
+    static void publish(Path directory, Path temporary, long lsn) throws IOException {
+        Files.move(
+                temporary,
+                directory.resolve(WalLog.fileName(lsn, SUFFIX)),
+                StandardCopyOption.ATOMIC_MOVE
+        );
+        WalLog.syncDirectory(directory);
+    }
+
+    /**
+     * Loads the latest intact snapshot into the entries and returns its sequence number, or
+     * {@code 0} if there is none.
+     */
+    static long load(Path directory, Map<String, byte[]> entries) throws IOException {
+        List<Path> paths = WalLog.list(directory, SUFFIX);
+        for (int i = paths.size() - 1; i >= 0; i--) {
+            entries.clear();
+            if (read(paths.get(i), entries)) return WalLog.firstLsn(paths.get(i));
+        }
+        entries.clear();
+        return 0L;
+    }
+
+    /**
+     * Deletes the snapshots older than the given sequence number and any left unfinished.
+     */
+    static void deleteBefore(Path directory, long lsn) throws IOException {
+        for (Path path : WalLog.list(directory, SUFFIX)) {
+            if (WalLog.firstLsn(path) < lsn) Files.deleteIfExists(path);
+        }
+        for (Path path : WalLog.list(directory, SUFFIX + ".tmp")) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static boolean read(Path path, Map<String, byte[]> entries) throws IOException {
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(path), 1 << 16),
+                crc
+        ))) {
+            if (in.readInt() != MAGIC || in.readLong() != WalLog.firstLsn(path)) return false;
+            for (int keyLength; (keyLength = in.readInt()) >= 0; ) {
+                byte[] key = new byte[keyLength];
+                in.readFully(key);
+                byte[] value = new byte[in.readInt()];
+                in.readFully(value);
+                entries.put(new String(key, StandardCharsets.UTF_8), value);
+            }
+            long expected = crc.getValue();
+            return in.readLong() == expected;
+        }
+        catch (EOFException | NegativeArraySizeException exception) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package fi.jubic.easyutils.transactional.wal;
+
+/**
+ * Thrown when a transaction of a {@link WalTransactionProvider} read an entry that a concurrently
+ * committed transaction has written since. The provider performs the transaction again, so the
+ * exception never escapes the provider. It carries no stack trace, as conflicts are expected under
+ * contention.
+ */
+final class WalConflictException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    static final WalConflictException INSTANCE = new WalConflictException();
+
+    private WalConflictException() {
+        super("Transaction read an entry overwritten by a concurrent commit", null, false, false);
+    }
+}
@@ -0,0 +1,104 @@
+package fi.jubic.easyutils.transactional.wal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The transaction context of a {@link WalTransactionProvider}, reading and writing the entries of
+ * the store. The values are copied in and out, so the arrays passed and returned may be modified
+ * freely.
+ *
+ * <p>
+ *     Within a transaction an entry read once is read the same way again, and the writes are
+ *     buffered until the transaction commits. Committing validates that none of the entries read
+ *     have been written by another transaction since, so the transactions are serializable.
+ * </p>
+ *
+ * <p>
+ *     The context passed to {@link WalTransactionProvider#runWithoutTransaction} reads the latest
+ *     committed values and commits each write immediately.
+ * </p>
+ */
+public final class WalContext {
+    private final WalTransactionProvider store;
+    private final boolean autoCommit;
+    private final Map<String, byte[]> reads;
+    private final Map<String, byte[]> writes;
+
+    WalContext(WalTransactionProvider store, boolean autoCommit) {
+        this.store = store;
+        this.autoCommit = autoCommit;
+        this.reads = autoCommit ? null : new HashMap<>();
+        this.writes = autoCommit ? null : new LinkedHashMap<>();
+    }
+
+    /**
+     * Returns the value of the key, or {@code null} if there is none.
+     *
+     * @param key the key
+     * @return a copy of the value or {@code null}
+     */
+    public byte[] get(String key) {
+        byte[] value = read(key);
+        return value != null ? value.clone() : null;
+    }
+
+    /**
+     * Returns whether the key has a value.
+     *
+     * @param key the key
+     * @return whether the key has a value
+     */
+    public boolean contains(String key) {
+        return read(key) != null;
+    }
+
+    /**
+     * Sets the value of the key.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public void put(String key, byte[] value) {
+        write(key, value.clone());
+    }
+
+    /**
+     * Removes the value of the key, if any.
+     *
+     * @param key the key
+     */
+    public void delete(String key) {
+        write(key, null);
+    }
+
+    Map<String, byte[]> reads() {
+        return reads;
+    }
+
+    Map<String, byte[]> writes() {
+        return writes;
+    }
+
+    private byte[] read(String key) {
+        if (autoCommit) return store.current(key);
+        if (writes.containsKey(key)) return writes.get(key);
+        if (reads.containsKey(key)) return reads.get(key);
+
+        byte[] value = store.current(key);
+        reads.put(key, value);
+        return value;
+    }
+
+    private void write(String key, byte[] value) {
+        Objects.requireNonNull(key);
+        if (autoCommit) {
+            store.commit(Collections.emptyMap(), Collections.singletonMap(key, value));
+            return;
+        }
+        writes.put(key, value);
+    }
+}
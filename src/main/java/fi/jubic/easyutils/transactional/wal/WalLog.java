@@ -0,0 +1,429 @@
+package fi.jubic.easyutils.transactional.wal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * The append-only write-ahead log of a {@link WalTransactionProvider}, written to memory-mapped
+ * segment files named after the sequence number of their first record.
+ *
+ * <p>
+ *     Each record holds the writes of one transaction:
+ * </p>
+ *
+ * <pre>
+ * int length | int crc32 | long lsn | int count | (int keyLength, key, int valueLength, value)*
+ * </pre>
+ *
+ * <p>
+ *     The length and the checksum cover everything after them, and a value length of {@code -1}
+ *     marks a deletion. A zero length ends the records of a segment. Records are appended while
+ *     holding the monitor of the log, and {@link #awaitDurable(long)} flushes them with group
+ *     commit: one waiting thread flushes the segment on behalf of all of the records appended so
+ *     far while the others wait for it to finish.
+ * </p>
+ */
+final class WalLog {
+    private static final String SUFFIX = ".wal";
+    private static final int HEADER = 8;
+    private static final int FIXED = 12;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final List<Segment> full = new ArrayList<>();
+    private final LongAdder flushes = new LongAdder();
+    private Segment active;
+    private long nextLsn;
+    private long appendedLsn;
+
+    private final Object flushLock = new Object();
+    private long durableLsn;
+    private boolean flushing;
+    private RuntimeException failure;
+
+    private WalLog(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Opens the log in the directory, replaying the records from the given sequence number
+     * onwards. Segments holding only older records are deleted. A torn or corrupt record ends the
+     * log if it is in the last segment.
+     *
+     * @throws IllegalStateException if the records of the segments are not contiguous
+     */
+    static WalLog open(
+            Path directory,
+            int segmentSize,
+            long startLsn,
+            BiConsumer<String, byte[]> replay
+    ) throws IOException {
+        WalLog log = new WalLog(directory, segmentSize);
+        List<Path> paths = list(directory, SUFFIX);
+
+        int first = 0;
+        while (first + 1 < paths.size() && firstLsn(paths.get(first + 1)) <= startLsn) {
+            Files.delete(paths.get(first++));
+        }
+
+        long lsn = Math.max(startLsn, 1L);
+        for (int i = first; i < paths.size(); i++) {
+            Path path = paths.get(i);
+            long segmentLsn = firstLsn(path);
+            if (segmentLsn > lsn || i > first && segmentLsn != lsn) {
+                throw new IllegalStateException(
+                        "Write-ahead log is missing records before " + path.getFileName()
+                );
+            }
+            lsn = segmentLsn;
+
+            Segment segment = Segment.map(path, segmentLsn);
+            ByteBuffer reader = segment.buffer.duplicate();
+            int position = 0;
+            for (int end; (end = read(reader, position, lsn, startLsn, replay)) >= 0; lsn++) {
+                position = end;
+            }
+            segment.position = position;
+            if (i < paths.size() - 1) {
+                log.full.add(segment);
+            }
+            else {
+                segment.clearFrom(position);
+                log.active = segment;
+            }
+        }
+
+        if (log.active == null || lsn < startLsn) {
+            if (log.active != null) log.full.add(log.active);
+            lsn = Math.max(lsn, startLsn);
+            log.active = Segment.create(directory, lsn, segmentSize);
+        }
+        log.nextLsn = lsn;
+        log.appendedLsn = lsn - 1;
+        log.durableLsn = lsn - 1;
+        return log;
+    }
+
+    /**
+     * Appends a record of the writes, a {@code null} value deleting the key, and returns its
+     * sequence number. A full segment is flushed and a new segment started first if the record
+     * does not fit.
+     */
+    synchronized long append(Map<String, byte[]> writes) {
+        byte[][] keys = new byte[writes.size()][];
+        int size = HEADER + FIXED;
+        int index = 0;
+        for (Map.Entry<String, byte[]> write : writes.entrySet()) {
+            keys[index] = write.getKey().getBytes(StandardCharsets.UTF_8);
+            size += 8 + keys[index++].length;
+            if (write.getValue() != null) size += write.getValue().length;
+        }
+        if (size > segmentSize - 4) {
+            throw new IllegalArgumentException(
+                    "The writes of a transaction do not fit in a segment of the log"
+            );
+        }
+        if (active.position + size > active.buffer.capacity() - 4) {
+            startSegment();
+        }
+
+        long lsn = nextLsn++;
+        ByteBuffer out = active.writer;
+        int start = active.position;
+        out.position(start + HEADER);
+        out.putLong(lsn).putInt(writes.size());
+        index = 0;
+        for (byte[] value : writes.values()) {
+            out.putInt(keys[index].length).put(keys[index++]);
+            if (value == null) {
+                out.putInt(-1);
+            }
+            else {
+                out.putInt(value.length).put(value);
+            }
+        }
+        int length = out.position() - start - HEADER;
+        out.putInt(start + 4, crc(out, start + HEADER, length));
+        out.putInt(start, length);
+        active.position = start + HEADER + length;
+        appendedLsn = lsn;
+        return lsn;
+    }
+
+    /**
+     * Waits until the record with the given sequence number has been flushed to storage. If no
+     * other thread is flushing, the calling thread flushes all of the records appended so far.
+     * Interrupts are deferred until the record is durable.
+     *
+     * @throws IllegalStateException if flushing the log has failed
+     */
+    void awaitDurable(long lsn) {
+        boolean interrupted = false;
+        try {
+            synchronized (flushLock) {
+                while (true) {
+                    if (failure != null) {
+                        throw new IllegalStateException("Flushing the log failed", failure);
+                    }
+                    if (durableLsn >= lsn) return;
+                    if (!flushing) break;
+                    try {
+                        flushLock.wait();
+                    }
+                    catch (InterruptedException exception) {
+                        interrupted = true;
+                    }
+                }
+                flushing = true;
+            }
+            flush();
+        }
+        finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Starts a new segment unless the active one is empty and returns the sequence number from
+     * which the records are in the active segment.
+     */
+    synchronized long rollover() {
+        if (active.position > 0) startSegment();
+        return active.firstLsn;
+    }
+
+    synchronized int fullSegments() {
+        return full.size();
+    }
+
+    /**
+     * Deletes the full segments holding only records older than the given sequence number.
+     */
+    void deleteSegmentsBefore(long lsn) throws IOException {
+        List<Segment> deleted = new ArrayList<>();
+        synchronized (this) {
+            full.removeIf(segment -> segment.firstLsn < lsn && deleted.add(segment));
+        }
+        for (Segment segment : deleted) {
+            Files.deleteIfExists(segment.path);
+        }
+    }
+
+    long flushes() {
+        return flushes.sum();
+    }
+
+    boolean failed() {
+        synchronized (flushLock) {
+            return failure != null;
+        }
+    }
+
+    /**
+     * Flushes the records appended so far after waiting for an ongoing flush to finish.
+     */
+    void close() {
+        awaitDurable(appendedLsn());
+    }
+
+    synchronized long appendedLsn() {
+        return appendedLsn;
+    }
+
+    boolean isDurable(long lsn) {
+        synchronized (flushLock) {
+            return durableLsn >= lsn;
+        }
+    }
+
+    private void flush() {
+        long target;
+        MappedByteBuffer buffer;
+        synchronized (this) {
+            target = appendedLsn;
+            buffer = active.buffer;
+        }
+        RuntimeException error = null;
+        try {
+            buffer.force();
+            flushes.increment();
+        }
+        catch (RuntimeException exception) {
+            error = exception;
+        }
+        synchronized (flushLock) {
+            flushing = false;
+            if (error != null) {
+                failure = error;
+            }
+            else {
+                durableLsn = Math.max(durableLsn, target);
+            }
+            flushLock.notifyAll();
+        }
+        if (error != null) throw new IllegalStateException("Flushing the log failed", error);
+    }
+
+    private void startSegment() {
+        active.buffer.force();
+        flushes.increment();
+        full.add(active);
+        try {
+            active = Segment.create(directory, nextLsn, segmentSize);
+        }
+        catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /**
+     * Replays the record at the position if it is intact and has the expected sequence number,
+     * and returns the position after it, or {@code -1} if there is no such record.
+     */
+    private static int read(
+            ByteBuffer reader,
+            int position,
+            long lsn,
+            long startLsn,
+            BiConsumer<String, byte[]> replay
+    ) {
+        if (position + HEADER + FIXED > reader.limit()) return -1;
+        int length = reader.getInt(position);
+        if (length < FIXED || length > reader.limit() - position - HEADER) return -1;
+        if (reader.getLong(position + HEADER) != lsn) return -1;
+        if (reader.getInt(position + 4) != crc(reader, position + HEADER, length)) return -1;
+
+        if (lsn >= startLsn) {
+            reader.position(position + HEADER + 8);
+            for (int count = reader.getInt(); count > 0; count--) {
+                byte[] key = new byte[reader.getInt()];
+                reader.get(key);
+                int valueLength = reader.getInt();
+                byte[] value = null;
+                if (valueLength >= 0) {
+                    value = new byte[valueLength];
+                    reader.get(value);
+                }
+                replay.accept(new String(key, StandardCharsets.UTF_8), value);
+            }
+        }
+        return position + HEADER + length;
+    }
+
+    private static int crc(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + length).position(offset);
+        CRC32 crc = new CRC32();
+        crc.update(slice);
+        return (int) crc.getValue();
+    }
+
+    static List<Path> list(Path directory, String suffix) throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths
+                    .filter(path -> path.getFileName().toString().endsWith(suffix))
+                    .sorted(Comparator.comparing(path -> path.getFileName().toString()))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    static String fileName(long lsn, String suffix) {
+        return String.format("%020d%s", lsn, suffix);
+    }
+
+    static long firstLsn(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.indexOf('.')));
+    }
+
+    /**
+     * Flushes the entries of the directory so that created, renamed and deleted files survive a
+     * crash. Not supported on every platform, where it is skipped.
+     */
+    static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+        catch (IOException exception) {
+            // Directories cannot be opened for flushing on some platforms.
+        }
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final long firstLsn;
+        private final MappedByteBuffer buffer;
+        private final ByteBuffer writer;
+        private int position;
+
+        private Segment(Path path, long firstLsn, MappedByteBuffer buffer) {
+            this.path = path;
+            this.firstLsn = firstLsn;
+            this.buffer = buffer;
+            this.writer = buffer.duplicate();
+        }
+
+        private static Segment create(Path directory, long firstLsn, int size) throws IOException {
+            Path path = directory.resolve(fileName(firstLsn, SUFFIX));
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(
+                    path,
+                    StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE
+            )) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                channel.force(true);
+            }
+            syncDirectory(directory);
+            return new Segment(path, firstLsn, buffer);
+        }
+
+        private static Segment map(Path path, long firstLsn) throws IOException {
+            try (FileChannel channel = FileChannel.open(
+                    path,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE
+            )) {
+                return new Segment(
+                        path,
+                        firstLsn,
+                        channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size())
+                );
+            }
+        }
+
+        /**
+         * Zeroes the remains of a torn record so that they cannot be mistaken for records
+         * appended later.
+         */
+        private void clearFrom(int offset) {
+            boolean dirty = false;
+            for (int i = offset; i < buffer.capacity() && !dirty; i++) {
+                dirty = buffer.get(i) != 0;
+            }
+            if (!dirty) return;
+            for (int i = offset; i < buffer.capacity(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.force();
+        }
+    }
+}
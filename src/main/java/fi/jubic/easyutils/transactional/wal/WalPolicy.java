@@ -0,0 +1,76 @@
+package fi.jubic.easyutils.transactional.wal;
+
+/**
+ * The layout of the write-ahead log of a {@link WalTransactionProvider}. The log is written to
+ * memory-mapped segment files of a fixed size, and the committed state is compacted into a
+ * snapshot once the given number of full segments have accumulated.
+ *
+ * <pre>{@code
+ * WalTransactionProvider store = WalTransactionProvider.open(
+ *         directory,
+ *         WalPolicy.defaults().withSegmentSize(16 << 20).withCompactionThreshold(8)
+ * );
+ * }</pre>
+ *
+ * <p>
+ *     {@code WalPolicy} instances are immutable. The {@code with} methods return modified copies.
+ * </p>
+ */
+public final class WalPolicy {
+    static final int MIN_SEGMENT_SIZE = 4096;
+
+    private static final WalPolicy DEFAULTS = new WalPolicy(64 << 20, 4);
+
+    private final int segmentSize;
+    private final int compactionThreshold;
+
+    private WalPolicy(int segmentSize, int compactionThreshold) {
+        this.segmentSize = segmentSize;
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * Returns the default policy of 64 MiB segments compacted after four full segments.
+     *
+     * @return the default policy
+     */
+    public static WalPolicy defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Returns a copy of this policy writing segments of the given size. The writes of a single
+     * transaction must fit in one segment.
+     *
+     * @param segmentSize the size of a segment file in bytes, at least 4096
+     * @return the modified policy
+     */
+    public WalPolicy withSegmentSize(int segmentSize) {
+        if (segmentSize < MIN_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("segmentSize must be at least " + MIN_SEGMENT_SIZE);
+        }
+        return new WalPolicy(segmentSize, compactionThreshold);
+    }
+
+    /**
+     * Returns a copy of this policy compacting the log once the given number of full segments
+     * have accumulated since the latest snapshot.
+     *
+     * @param compactionThreshold the number of full segments
+     * @return the modified policy
+     */
+    public WalPolicy withCompactionThreshold(int compactionThreshold) {
+        if (compactionThreshold < 1) {
+            throw new IllegalArgumentException("compactionThreshold must be positive");
+        }
+        return new WalPolicy(segmentSize, compactionThreshold);
+    }
+
+    int segmentSize() {
+        return segmentSize;
+    }
+
+    int compactionThreshold() {
+        return compactionThreshold;
+    }
+}
@@ -0,0 +1,417 @@
+package fi.jubic.easyutils.transactional.wal;
+
+import fi.jubic.easyutils.transactional.TransactionProvider;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A {@link TransactionProvider} of an embedded, durable key-value store backed by a write-ahead
+ * log in a directory. The entries are kept in memory and every committed transaction is appended
+ * to the log and flushed to storage before the chain continues.
+ *
+ * <pre>{@code
+ * try (WalTransactionProvider store = WalTransactionProvider.open(Paths.get("data"))) {
+ *     Transactional
+ *             .of(
+ *                     ctx -> {
+ *                         ctx.put("greeting", "hello".getBytes(StandardCharsets.UTF_8));
+ *                         return null;
+ *                     },
+ *                     store
+ *             )
+ *             .get();
+ * }
+ * }</pre>
+ *
+ * <p>
+ *     The log is written to memory-mapped segment files and flushed with group commit, so
+ *     transactions committing at the same time share a single flush. Once the number of full
+ *     segments set by the {@link WalPolicy} has accumulated, a background thread writes a
+ *     snapshot of the entries and deletes the segments it covers. Opening the store loads the
+ *     latest snapshot and replays the log after it, ignoring a torn record at its end.
+ * </p>
+ *
+ * <p>
+ *     The transactions are optimistic. Reads take no locks, and committing validates that the
+ *     entries read have not been written since. A transaction that conflicts with a concurrent
+ *     commit is performed again after a short randomized backoff, so procedures must not have
+ *     side effects outside of the store. A transaction requested while another transaction of
+ *     the store is active on the thread joins the active transaction.
+ * </p>
+ *
+ * <p>
+ *     The writes of a transaction are visible to other transactions once they are appended, which
+ *     may be shortly before they are flushed. If flushing fails, the store stops accepting
+ *     transactions, as its entries no longer match the log.
+ * </p>
+ */
+public final class WalTransactionProvider implements TransactionProvider<WalContext>,
+        AutoCloseable {
+    private static final String LOCK = "lock";
+
+    private final ThreadLocal<WalContext> activeContext = new ThreadLocal<>();
+    private final Path directory;
+    private final WalPolicy policy;
+    private final Map<String, byte[]> entries;
+    private final WalLog log;
+    private final FileChannel lockChannel;
+    private final Object commitLock = new Object();
+    private final Object compactionLock = new Object();
+    private final ExecutorService compactor;
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+    private volatile long applySequence;
+    private volatile boolean closed;
+
+    private WalTransactionProvider(
+            Path directory,
+            WalPolicy policy,
+            Map<String, byte[]> entries,
+            WalLog log,
+            FileChannel lockChannel
+    ) {
+        this.directory = directory;
+        this.policy = policy;
+        this.entries = entries;
+        this.log = log;
+        this.lockChannel = lockChannel;
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wal-compactor-" + directory.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Open the store in the directory with the default {@link WalPolicy}, creating the directory
+     * if it does not exist.
+     *
+     * @param directory the directory of the log and the snapshots
+     * @return the opened store
+     * @throws IllegalStateException if the store is already open
+     * @throws UncheckedIOException if the directory cannot be read or written
+     */
+    public static WalTransactionProvider open(Path directory) {
+        return open(directory, WalPolicy.defaults());
+    }
+
+    /**
+     * Open the store in the directory, creating the directory if it does not exist. The latest
+     * snapshot is loaded and the log after it is replayed.
+     *
+     * @param directory the directory of the log and the snapshots
+     * @param policy the layout of the log
+     * @return the opened store
+     * @throws IllegalStateException if the store is already open
+     * @throws UncheckedIOException if the directory cannot be read or written
+     */
+    public static WalTransactionProvider open(Path directory, WalPolicy policy) {
+        FileChannel lockChannel = null;
+        try {
+            Files.createDirectories(directory);
+            lockChannel = lock(directory);
+
+            Map<String, byte[]> entries = new ConcurrentHashMap<>();
+            long startLsn = Snapshot.load(directory, entries);
+            WalLog log = WalLog.open(
+                    directory,
+                    policy.segmentSize(),
+                    startLsn,
+                    (key, value) -> {
+                        if (value == null) {
+                            entries.remove(key);
+                        }
+                        else {
+                            entries.put(key, value);
+                        }
+                    }
+            );
+            return new WalTransactionProvider(directory, policy, entries, log, lockChannel);
+        }
+        catch (IOException exception) {
+            closeQuietly(lockChannel);
+            throw new UncheckedIOException(exception);
+        }
+        catch (RuntimeException exception) {
+            closeQuietly(lockChannel);
+            throw exception;
+        }
+    }
+
+    @Override
+    public <T> T runWithTransaction(Function<WalContext, T> procedure) {
+        WalContext active = activeContext.get();
+        if (active != null) return procedure.apply(active);
+
+        for (int attempt = 0; ; attempt++) {
+            checkOpen();
+            WalContext context = new WalContext(this, false);
+            activeContext.set(context);
+            try {
+                T result;
+                try {
+                    result = procedure.apply(context);
+                }
+                catch (RuntimeException exception) {
+                    // The procedure may have failed because it read entries of different commits.
+                    if (!isCurrent(context.reads())) throw WalConflictException.INSTANCE;
+                    throw exception;
+                }
+                commit(context.reads(), context.writes());
+                commits.increment();
+                return result;
+            }
+            catch (WalConflictException exception) {
+                conflicts.increment();
+            }
+            finally {
+                activeContext.remove();
+            }
+            ConflictBackoff.pause(attempt);
+        }
+    }
+
+    @Override
+    public <T> T runWithoutTransaction(Function<WalContext, T> procedure) {
+        WalContext active = activeContext.get();
+        if (active != null) return procedure.apply(active);
+
+        checkOpen();
+        return procedure.apply(new WalContext(this, true));
+    }
+
+    /**
+     * Writes a snapshot of the entries and deletes the segments of the log it covers. Compaction
+     * is performed in the background once enough full segments have accumulated, so calling this
+     * is only needed to compact on demand.
+     *
+     * <p>
+     *     The snapshot may include writes whose records have not been flushed yet, so the log is
+     *     flushed up to the last record appended before the snapshot replaces the segments.
+     * </p>
+     *
+     * @throws UncheckedIOException if the snapshot cannot be written
+     */
+    public void compact() {
+        synchronized (compactionLock) {
+            long startLsn;
+            synchronized (commitLock) {
+                checkOpen();
+                startLsn = log.rollover();
+            }
+            try {
+                Path snapshot = Snapshot.write(directory, startLsn, entries);
+                log.awaitDurable(log.appendedLsn());
+                Snapshot.publish(directory, snapshot, startLsn);
+                log.deleteSegmentsBefore(startLsn);
+                Snapshot.deleteBefore(directory, startLsn);
+            }
+            catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+            compactions.increment();
+        }
+    }
+
+    /**
+     * Returns the number of transactions committed.
+     *
+     * @return the number of commits
+     */
+    public long commits() {
+        return commits.sum();
+    }
+
+    /**
+     * Returns the number of times a transaction conflicted and was performed again.
+     *
+     * @return the number of conflicts
+     */
+    public long conflicts() {
+        return conflicts.sum();
+    }
+
+    /**
+     * Returns the number of times the log has been flushed to storage. With group commit, this is
+     * lower than the number of commits when transactions commit concurrently.
+     *
+     * @return the number of flushes
+     */
+    public long flushes() {
+        return log.flushes();
+    }
+
+    /**
+     * Returns the number of snapshots written.
+     *
+     * @return the number of compactions
+     */
+    public long compactions() {
+        return compactions.sum();
+    }
+
+    /**
+     * Flushes the log and closes the store. Transactions requested after closing fail with an
+     * {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        synchronized (commitLock) {
+            if (closed) return;
+            closed = true;
+        }
+        compactor.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (compactor.awaitTermination(1, TimeUnit.MINUTES)) break;
+            }
+            catch (InterruptedException exception) {
+                interrupted = true;
+            }
+        }
+        try {
+            log.close();
+        }
+        finally {
+            closeQuietly(lockChannel);
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    byte[] current(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Commits the writes if the entries read are still current and waits until they are durable.
+     * A transaction that only reads is validated without taking the commit lock.
+     *
+     * @throws WalConflictException if an entry read has been written since
+     */
+    void commit(Map<String, byte[]> reads, Map<String, byte[]> writes) {
+        if (writes.isEmpty()) {
+            if (!isCurrent(reads)) throw WalConflictException.INSTANCE;
+            return;
+        }
+
+        log.awaitDurable(apply(reads, writes));
+
+        if (log.fullSegments() >= policy.compactionThreshold()
+                && compactionScheduled.compareAndSet(false, true)) {
+            compactor.execute(this::compactInBackground);
+        }
+    }
+
+    /**
+     * Appends the writes to the log and applies them to the entries if the entries read are still
+     * current, and returns the sequence number of the record without waiting for it to be flushed.
+     */
+    long apply(Map<String, byte[]> reads, Map<String, byte[]> writes) {
+        synchronized (commitLock) {
+            checkOpen();
+            if (!isCurrentLocked(reads)) throw WalConflictException.INSTANCE;
+            long lsn = log.append(writes);
+            applySequence++;
+            for (Map.Entry<String, byte[]> write : writes.entrySet()) {
+                if (write.getValue() == null) {
+                    entries.remove(write.getKey());
+                }
+                else {
+                    entries.put(write.getKey(), write.getValue());
+                }
+            }
+            applySequence++;
+            return lsn;
+        }
+    }
+
+    boolean isDurable(long lsn) {
+        return log.isDurable(lsn);
+    }
+
+    /**
+     * Returns whether the entries read are still current at a moment when no commit is being
+     * applied. Spins while the entries are being written.
+     */
+    private boolean isCurrent(Map<String, byte[]> reads) {
+        if (reads.isEmpty()) return true;
+        while (true) {
+            long sequence = applySequence;
+            if ((sequence & 1L) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            boolean current = isCurrentLocked(reads);
+            if (applySequence == sequence) return current;
+        }
+    }
+
+    private boolean isCurrentLocked(Map<String, byte[]> reads) {
+        for (Map.Entry<String, byte[]> read : reads.entrySet()) {
+            if (entries.get(read.getKey()) != read.getValue()) return false;
+        }
+        return true;
+    }
+
+    private void compactInBackground() {
+        try {
+            if (!closed) compact();
+        }
+        catch (RuntimeException exception) {
+            // The segments are kept and compaction is attempted again after the next commit.
+        }
+        finally {
+            compactionScheduled.set(false);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) throw new IllegalStateException("The store has been closed");
+        if (log.failed()) throw new IllegalStateException("Flushing the log of the store failed");
+    }
+
+    private static FileChannel lock(Path directory) throws IOException {
+        FileChannel channel = FileChannel.open(
+                directory.resolve(LOCK),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE
+        );
+        try {
+            FileLock lock = channel.tryLock();
+            if (lock != null) return channel;
+        }
+        catch (OverlappingFileLockException exception) {
+            // Locked by this process.
+        }
+        channel.close();
+        throw new IllegalStateException("The store in " + directory + " is already open");
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) return;
+        try {
+            channel.close();
+        }
+        catch (IOException exception) {
+            // Closing releases the lock of the directory, which the process exiting does too.
+        }
+    }
+}
@@ -14,12 +14,20 @@ import org.junit.jupiter.api.Test;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
@@ -384,6 +392,106 @@ class AllTransactionalTest {
         verify(tcProvider, times(1)).rollback();
     }
 
+    @Test
+    void shouldRunAllParallelSequentiallyWithoutParallelProvider() {
+        Tuple3<Integer, String, Float> result = Transactional
+                .allParallel(
+                        Transactional.of(ctx -> 10, provider),
+                        Transactional.of(ctx -> "text", provider),
+                        Transactional.of(ctx -> 1.5f, provider)
+                )
+                .get();
+
+        assertEquals(Integer.valueOf(10), result.get0());
+        assertEquals("text", result.get1());
+        assertEquals(Float.valueOf(1.5f), result.get2());
+        verify(provider, times(1)).runWithTransaction(any());
+    }
+
+    @Test
+    void shouldRunAllParallelConcurrentlyInForkedContexts() {
+        ForkingProvider forkingProvider = new ForkingProvider();
+        CountDownLatch started = new CountDownLatch(3);
+        Function<Ctx, Ctx> awaitOthers = ctx -> {
+            started.countDown();
+            try {
+                assertTrue(started.await(5, TimeUnit.SECONDS));
+            }
+            catch (InterruptedException exception) {
+                throw new IllegalStateException(exception);
+            }
+            return ctx;
+        };
+
+        try {
+            Tuple3<Ctx, Ctx, Ctx> result = Transactional
+                    .allParallel(
+                            Transactional.of(awaitOthers, forkingProvider),
+                            Transactional.of(awaitOthers, forkingProvider),
+                            Transactional.of(awaitOthers, forkingProvider)
+                    )
+                    .get();
+
+            assertEquals(forkingProvider.forks, result.toList());
+            assertEquals(forkingProvider.forks, forkingProvider.committed);
+            assertEquals(0, forkingProvider.rolledBack.size());
+        }
+        finally {
+            forkingProvider.executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldCancelAndRollbackAllForksIfAnyThrows() {
+        ForkingProvider forkingProvider = new ForkingProvider();
+        CountDownLatch blocking = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+
+        try {
+            assertThrows(
+                    CustomException.class,
+                    () -> Transactional
+                            .allParallel(
+                                    Transactional.of(ctx -> 10, forkingProvider),
+                                    Transactional.of(
+                                            ctx -> {
+                                                try {
+                                                    blocking.countDown();
+                                                    return new CountDownLatch(1)
+                                                            .await(5, TimeUnit.SECONDS);
+                                                }
+                                                catch (InterruptedException exception) {
+                                                    interrupted.set(true);
+                                                    throw new IllegalStateException(exception);
+                                                }
+                                            },
+                                            forkingProvider
+                                    ),
+                                    Transactional.of(
+                                            ctx -> {
+                                                try {
+                                                    blocking.await(5, TimeUnit.SECONDS);
+                                                }
+                                                catch (InterruptedException exception) {
+                                                    throw new IllegalStateException(exception);
+                                                }
+                                                throw new CustomException();
+                                            },
+                                            forkingProvider
+                                    )
+                            )
+                            .get()
+            );
+
+            assertTrue(interrupted.get());
+            assertEquals(0, forkingProvider.committed.size());
+            assertEquals(forkingProvider.forks, forkingProvider.rolledBack);
+        }
+        finally {
+            forkingProvider.executor.shutdownNow();
+        }
+    }
+
     class Ctx {
 
     }
@@ -406,6 +514,39 @@ class AllTransactionalTest {
         }
     }
 
+    class ForkingProvider extends CpProvider implements ParallelTransactionProvider<Ctx> {
+        private final ExecutorService executor = Executors.newFixedThreadPool(3);
+        private final List<Object> forks = new CopyOnWriteArrayList<>();
+        private final List<Object> committed = new CopyOnWriteArrayList<>();
+        private final List<Object> rolledBack = new CopyOnWriteArrayList<>();
+
+        ForkingProvider() {
+            super(new Ctx());
+        }
+
+        @Override
+        public Ctx fork(Ctx context) {
+            Ctx fork = new Ctx();
+            forks.add(fork);
+            return fork;
+        }
+
+        @Override
+        public void commitFork(Ctx fork) {
+            committed.add(fork);
+        }
+
+        @Override
+        public void rollbackFork(Ctx fork) {
+            rolledBack.add(fork);
+        }
+
+        @Override
+        public Executor forkExecutor() {
+            return executor;
+        }
+    }
+
     class TcProvider implements ThreadContextTransactionProvider {
         @Override
         public void begin() {
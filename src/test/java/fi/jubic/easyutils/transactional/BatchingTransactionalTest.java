@@ -0,0 +1,274 @@
+package fi.jubic.easyutils.transactional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchingTransactionalTest {
+    private ExecutorService executor;
+    private LogProvider provider;
+
+    @BeforeEach
+    void beforeEach() {
+        this.executor = Executors.newFixedThreadPool(4);
+        this.provider = new LogProvider();
+    }
+
+    @AfterEach
+    void afterEach() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldCoalesceConcurrentTransactions() {
+        BatchingTransactionProvider<Log> batching = new BatchingTransactionProvider<>(
+                provider,
+                4,
+                Duration.ofSeconds(10)
+        );
+
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(write(batching, i).getAsync(executor));
+        }
+
+        assertEquals(
+                Arrays.asList(0, 1, 2, 3),
+                Arrays.asList(
+                        results.get(0).join(),
+                        results.get(1).join(),
+                        results.get(2).join(),
+                        results.get(3).join()
+                )
+        );
+        assertEquals(1, provider.transactions);
+        assertEquals(1, provider.committed.size());
+        assertEquals(
+                new HashSet<>(Arrays.asList(0, 1, 2, 3)),
+                new HashSet<>(provider.committed.get(0))
+        );
+    }
+
+    @Test
+    void shouldCommitPartialBatchAfterMaxWait() {
+        BatchingTransactionProvider<Log> batching = new BatchingTransactionProvider<>(
+                provider,
+                100,
+                Duration.ofMillis(10)
+        );
+
+        assertEquals(Integer.valueOf(7), write(batching, 7).get());
+        assertEquals(Arrays.asList(Arrays.asList(7)), provider.committed);
+    }
+
+    @Test
+    void shouldIsolateFailingMember() {
+        BatchingTransactionProvider<Log> batching = new BatchingTransactionProvider<>(
+                provider,
+                4,
+                Duration.ofSeconds(10)
+        );
+
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(write(batching, i).getAsync(executor));
+        }
+        CompletableFuture<Integer> failing = write(batching, 3)
+                .map(value -> {
+                    throw new CustomException();
+                })
+                .map(value -> (Integer) value)
+                .getAsync(executor);
+
+        CompletionException exception = assertThrows(CompletionException.class, failing::join);
+        assertTrue(exception.getCause() instanceof CustomException);
+        assertEquals(Integer.valueOf(0), results.get(0).join());
+        assertEquals(Integer.valueOf(1), results.get(1).join());
+        assertEquals(Integer.valueOf(2), results.get(2).join());
+
+        assertEquals(1, provider.committed.size());
+        assertEquals(
+                new HashSet<>(Arrays.asList(0, 1, 2)),
+                new HashSet<>(provider.committed.get(0))
+        );
+        assertTrue(provider.rolledBack.contains(Arrays.asList(3)));
+    }
+
+    @Test
+    void shouldFailAllMembersIfCommitFails() {
+        provider.failCommit = true;
+        BatchingTransactionProvider<Log> batching = new BatchingTransactionProvider<>(
+                provider,
+                2,
+                Duration.ofSeconds(10)
+        );
+
+        CompletableFuture<Integer> first = write(batching, 1).getAsync(executor);
+        CompletableFuture<Integer> second = write(batching, 2).getAsync(executor);
+
+        assertTrue(
+                assertThrows(CompletionException.class, first::join)
+                        .getCause() instanceof CommitException
+        );
+        assertTrue(
+                assertThrows(CompletionException.class, second::join)
+                        .getCause() instanceof CommitException
+        );
+        assertEquals(1, provider.transactions);
+    }
+
+    @Test
+    void shouldPassNestedTransactionsToProvider() {
+        BatchingTransactionProvider<Log> batching = new BatchingTransactionProvider<>(
+                provider,
+                100,
+                Duration.ZERO
+        );
+
+        assertEquals(
+                Integer.valueOf(2),
+                write(batching, 1)
+                        .map(value -> write(batching, value + 1).get())
+                        .get()
+        );
+        assertEquals(Arrays.asList(Arrays.asList(2), Arrays.asList(1)), provider.committed);
+    }
+
+    @Test
+    void shouldPassEarliestDeadlineAndCommonClassToSharedTransaction() {
+        BatchingTransactionProvider<Log> batching = new BatchingTransactionProvider<>(
+                provider,
+                2,
+                Duration.ofSeconds(10)
+        );
+
+        CompletableFuture<Integer> first = write(batching, 1)
+                .withTimeout(Duration.ofMinutes(1))
+                .scheduledAs("batch")
+                .getAsync(executor);
+        CompletableFuture<Integer> second = write(batching, 2)
+                .withTimeout(Duration.ofSeconds(30))
+                .scheduledAs("batch")
+                .getAsync(executor);
+        first.join();
+        second.join();
+
+        assertEquals(1, provider.hints.size());
+        Duration remaining = provider.hints.get(0).timeRemaining().orElseThrow();
+        assertTrue(remaining.compareTo(Duration.ofSeconds(30)) <= 0);
+        assertTrue(remaining.compareTo(Duration.ZERO) > 0);
+        assertEquals("batch", provider.hints.get(0).schedulingClass().orElse(null));
+    }
+
+    @Test
+    void shouldDropSchedulingClassOfMixedBatch() {
+        BatchingTransactionProvider<Log> batching = new BatchingTransactionProvider<>(
+                provider,
+                2,
+                Duration.ofSeconds(10)
+        );
+
+        CompletableFuture<Integer> first = write(batching, 1)
+                .scheduledAs("batch")
+                .getAsync(executor);
+        CompletableFuture<Integer> second = write(batching, 2)
+                .scheduledAs("interactive")
+                .getAsync(executor);
+        first.join();
+        second.join();
+
+        assertEquals(1, provider.hints.size());
+        assertFalse(provider.hints.get(0).schedulingClass().isPresent());
+        assertFalse(provider.hints.get(0).timeRemaining().isPresent());
+    }
+
+    @Test
+    void shouldRejectInvalidLimits() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> new BatchingTransactionProvider<>(provider, 0, Duration.ZERO)
+        );
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> new BatchingTransactionProvider<>(provider, 1, Duration.ofMillis(-1))
+        );
+    }
+
+    private static Transactional<Integer, Log> write(
+            TransactionProvider<Log> provider,
+            int value
+    ) {
+        return Transactional.of(
+                log -> {
+                    log.writes.add(value);
+                    return value;
+                },
+                provider
+        );
+    }
+
+    static class Log {
+        private final List<Integer> writes = new ArrayList<>();
+    }
+
+    static class LogProvider implements TransactionProvider<Log> {
+        private final List<List<Integer>> committed = new CopyOnWriteArrayList<>();
+        private final List<List<Integer>> rolledBack = new CopyOnWriteArrayList<>();
+        private volatile int transactions;
+        private final List<TransactionHints> hints = new CopyOnWriteArrayList<>();
+        private volatile boolean failCommit;
+
+        @Override
+        public synchronized <T> T runWithTransaction(Function<Log, T> procedure) {
+            transactions++;
+            Log log = new Log();
+            T result;
+            try {
+                result = procedure.apply(log);
+            }
+            catch (RuntimeException exception) {
+                rolledBack.add(log.writes);
+                throw exception;
+            }
+            if (failCommit) throw new CommitException();
+            committed.add(log.writes);
+            return result;
+        }
+
+        @Override
+        public <T> T runWithTransaction(Function<Log, T> procedure, TransactionHints hints) {
+            this.hints.add(hints);
+            return runWithTransaction(procedure);
+        }
+
+        @Override
+        public <T> T runWithoutTransaction(Function<Log, T> procedure) {
+            return procedure.apply(new Log());
+        }
+    }
+
+    static class CustomException extends RuntimeException {
+
+    }
+
+    static class CommitException extends RuntimeException {
+
+    }
+}
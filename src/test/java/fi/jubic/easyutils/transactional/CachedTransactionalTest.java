@@ -0,0 +1,181 @@
+package fi.jubic.easyutils.transactional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CachedTransactionalTest {
+    private CpProvider provider;
+    private ResultCache cache;
+
+    @BeforeEach
+    void beforeEach() {
+        this.provider = new CpProvider(new Ctx());
+        this.cache = new ResultCache(CachePolicy.maximumSize(100));
+    }
+
+    @Test
+    void shouldReturnCachedResultWithoutTransaction() {
+        AtomicInteger reads = new AtomicInteger();
+        Transactional<Integer, Ctx> read = Transactional
+                .of(ctx -> reads.incrementAndGet(), provider)
+                .cached(cache, "key");
+
+        assertEquals(Integer.valueOf(1), read.get());
+        assertEquals(Integer.valueOf(1), read.get());
+
+        assertEquals(1, provider.transactions.get());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void shouldExpireResults() throws InterruptedException {
+        ResultCache expiring = new ResultCache(
+                CachePolicy.maximumSize(100).withTimeToLive(Duration.ofMillis(10))
+        );
+        AtomicInteger reads = new AtomicInteger();
+        Transactional<Integer, Ctx> read = Transactional
+                .of(ctx -> reads.incrementAndGet(), provider)
+                .cached(expiring, "key");
+
+        assertEquals(Integer.valueOf(1), read.get());
+        Thread.sleep(50);
+        assertEquals(Integer.valueOf(2), read.get());
+        assertEquals(Integer.valueOf(2), read.get());
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedResults() {
+        ResultCache small = new ResultCache(CachePolicy.maximumSize(2));
+
+        Transactional.of(ctx -> "a", provider).cached(small, "a").get();
+        Transactional.of(ctx -> "b", provider).cached(small, "b").get();
+        Transactional.of(ctx -> "a", provider).cached(small, "a").get();
+        Transactional.of(ctx -> "c", provider).cached(small, "c").get();
+
+        assertEquals(2, small.size());
+        assertEquals(1, small.evictions());
+        Transactional.of(ctx -> "a", provider).cached(small, "a").get();
+        assertEquals(2, small.hits());
+        Transactional.of(ctx -> "b", provider).cached(small, "b").get();
+        assertEquals(4, small.misses());
+    }
+
+    @Test
+    void shouldNotStoreResultsHeavierThanMaximumWeight() {
+        ResultCache weighted = new ResultCache(
+                CachePolicy.maximumWeight(10, value -> ((String) value).length())
+        );
+
+        Transactional.of(ctx -> "short", provider).cached(weighted, "short").get();
+        Transactional.of(ctx -> "much too long", provider).cached(weighted, "long").get();
+
+        assertEquals(1, weighted.size());
+    }
+
+    @Test
+    void shouldInvalidateOnlyAfterCommit() {
+        Transactional<Integer, Ctx> read = Transactional.of(ctx -> 10, provider)
+                .cached(cache, "key");
+        read.get();
+
+        assertThrows(
+                CustomException.class,
+                () -> Transactional.of(ctx -> 1, provider)
+                        .evictOnCommit(cache, "key")
+                        .map(value -> {
+                            throw new CustomException();
+                        })
+                        .get()
+        );
+        assertEquals(1, cache.size());
+
+        Transactional.of(ctx -> 1, provider).evictOnCommit(cache, "key").get();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void shouldInvalidateTaggedResults() {
+        Transactional.of(ctx -> 1, provider).cached(cache, "user:1", "users").get();
+        Transactional.of(ctx -> 2, provider).cached(cache, "user:2", "users").get();
+        Transactional.of(ctx -> 3, provider).cached(cache, "config", "config").get();
+
+        Transactional.of(ctx -> 1, provider).evictTagOnCommit(cache, "users").get();
+
+        assertEquals(1, cache.size());
+        Transactional.of(ctx -> 3, provider).cached(cache, "config", "config").get();
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    void shouldNotStoreResultReadDuringInvalidation() {
+        Transactional<Integer, Ctx> read = Transactional
+                .of(
+                        ctx -> {
+                            // A write committed while the read was in flight.
+                            cache.invalidate("key");
+                            return 10;
+                        },
+                        provider
+                )
+                .cached(cache, "key");
+
+        read.get();
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void shouldNotCacheNullResults() {
+        assertNull(Transactional.of(ctx -> (Integer) null, provider).cached(cache, "key").get());
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void shouldNotCarryKeyToChainedTransactionals() {
+        Transactional<Integer, Ctx> read = Transactional.of(ctx -> 10, provider)
+                .cached(cache, "key");
+
+        assertEquals(Integer.valueOf(10), read.get());
+        assertEquals(Integer.valueOf(11), read.map(value -> value + 1).get());
+        assertEquals(1, cache.misses());
+    }
+
+    class Ctx {
+
+    }
+
+    class CpProvider implements TransactionProvider<Ctx> {
+        private final Ctx context;
+        private final AtomicInteger transactions = new AtomicInteger();
+
+        CpProvider(Ctx context) {
+            this.context = context;
+        }
+
+        @Override
+        public <T> T runWithTransaction(Function<Ctx, T> procedure) {
+            transactions.incrementAndGet();
+            return procedure.apply(context);
+        }
+
+        @Override
+        public <T> T runWithoutTransaction(Function<Ctx, T> procedure) {
+            return procedure.apply(context);
+        }
+    }
+
+    class CustomException extends RuntimeException {
+
+    }
+}
@@ -0,0 +1,298 @@
+package fi.jubic.easyutils.transactional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CallbackTransactionalTest {
+    private List<String> events;
+    private CpProvider provider;
+
+    @BeforeEach
+    void beforeEach() {
+        this.events = Collections.synchronizedList(new ArrayList<>());
+        this.provider = new CpProvider(new Ctx(), events);
+    }
+
+    @Test
+    void shouldRunCommitCallbacksAfterCommit() {
+        assertEquals(
+                Integer.valueOf(11),
+                Transactional.of(ctx -> 10, provider)
+                        .onCommit(value -> events.add("first " + value))
+                        .map(value -> value + 1)
+                        .onCommit(value -> events.add("second " + value))
+                        .onRollback(failure -> events.add("rollback"))
+                        .get()
+        );
+
+        assertEquals(Arrays.asList("begin", "commit", "first 10", "second 11"), events);
+    }
+
+    @Test
+    void shouldRunRollbackCallbacksOfReachedStages() {
+        CustomException exception = new CustomException();
+        assertSame(
+                exception,
+                assertThrows(
+                        CustomException.class,
+                        () -> Transactional.of(ctx -> 10, provider)
+                                .onCommit(value -> events.add("commit callback"))
+                                .onRollback(failure -> events.add(
+                                        "first " + failure.getClass().getSimpleName()
+                                ))
+                                .map(value -> {
+                                    throw exception;
+                                })
+                                .onRollback(failure -> events.add("second"))
+                                .get()
+                )
+        );
+
+        assertEquals(Arrays.asList("begin", "rollback", "first CustomException"), events);
+    }
+
+    @Test
+    void shouldRunRollbackCallbacksIfCommitFails() {
+        provider.failCommit = true;
+
+        assertThrows(
+                CustomException.class,
+                () -> Transactional.of(ctx -> 10, provider)
+                        .onCommit(value -> events.add("commit callback"))
+                        .onRollback(failure -> events.add("rollback callback"))
+                        .get()
+        );
+
+        assertEquals(Arrays.asList("begin", "rollback callback"), events);
+    }
+
+    @Test
+    void shouldCollectCallbacksOfChainedTransactionals() {
+        Transactional<Integer, Ctx> inner = Transactional.of(ctx -> 1, provider)
+                .onCommit(value -> events.add("inner " + value));
+
+        Transactional.all(
+                        Transactional.of(ctx -> 2, provider)
+                                .flatMap(value -> inner.map(innerValue -> innerValue + value)),
+                        Transactional.of(ctx -> 3, provider)
+                                .peekMap(value -> Transactional.of(ctx -> (Void) null, provider)
+                                        .onCommit(nothing -> events.add("peek " + value))
+                                )
+                )
+                .map((first, second) -> first + second)
+                .onCommit(value -> events.add("all " + value))
+                .get();
+
+        assertEquals(Arrays.asList("begin", "commit", "inner 1", "peek 3", "all 6"), events);
+    }
+
+    @Test
+    void shouldCreateCallbacksOnlyWhenRegistered() {
+        List<Function<Ctx, ?>> procedures = new ArrayList<>();
+        CpProvider capturing = new CpProvider(new Ctx(), events) {
+            @Override
+            public <T> T runWithTransaction(Function<Ctx, T> procedure) {
+                procedures.add(procedure);
+                return super.runWithTransaction(procedure);
+            }
+        };
+
+        Transactional.of(ctx -> 1, capturing)
+                .flatMap(value -> Transactional.of(ctx -> value + 1, capturing))
+                .get();
+        Transactional.of(ctx -> 1, capturing)
+                .flatMap(value -> Transactional.of(ctx -> value + 1, capturing)
+                        .onCommit(result -> events.add("inner " + result))
+                )
+                .get();
+
+        assertNull(((Procedure<?, ?>) procedures.get(0)).collected());
+        assertNotNull(((Procedure<?, ?>) procedures.get(1)).collected());
+        assertEquals(Arrays.asList("begin", "commit", "begin", "commit", "inner 2"), events);
+    }
+
+    @Test
+    void shouldRunCallbacksOnExecutor() {
+        List<Runnable> tasks = new ArrayList<>();
+        Executor executor = tasks::add;
+
+        Transactional.of(ctx -> 10, provider)
+                .onCommit(value -> events.add("async " + value), executor)
+                .onCommit(value -> events.add("sync " + value))
+                .get();
+
+        assertEquals(Arrays.asList("begin", "commit", "sync 10"), events);
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+        assertEquals("async 10", events.get(3));
+    }
+
+    @Test
+    void shouldRunRemainingCallbacksIfCallbackThrows() {
+        CustomException exception = new CustomException();
+
+        assertSame(
+                exception,
+                assertThrows(
+                        CustomException.class,
+                        () -> Transactional.of(ctx -> 10, provider)
+                                .onCommit(value -> {
+                                    throw exception;
+                                })
+                                .onCommit(value -> events.add("second"))
+                                .get()
+                )
+        );
+
+        assertEquals(Arrays.asList("begin", "commit", "second"), events);
+    }
+
+    @Test
+    void shouldNotRetryIfCommitCallbackThrows() {
+        assertThrows(
+                CustomException.class,
+                () -> Transactional.of(ctx -> 10, provider)
+                        .onCommit(value -> {
+                            throw new CustomException();
+                        })
+                        .retry(RetryPolicy.of(exception -> true)
+                                .withMaxAttempts(3)
+                                .withBackoff(Duration.ZERO, Duration.ZERO))
+                        .get()
+        );
+
+        assertEquals(Arrays.asList("begin", "commit"), events);
+    }
+
+    @Test
+    void shouldRunCallbacksOfRetriedTransactionOnce() {
+        int[] attempts = { 0 };
+
+        Transactional.of(ctx -> ++attempts[0], provider)
+                .onCommit(value -> events.add("commit " + value))
+                .onRollback(failure -> events.add("rollback callback"))
+                .map(value -> {
+                    if (value < 2) throw new CustomException();
+                    return value;
+                })
+                .retry(RetryPolicy.of(exception -> true)
+                        .withMaxAttempts(2)
+                        .withBackoff(Duration.ZERO, Duration.ZERO))
+                .get();
+
+        assertEquals(
+                Arrays.asList(
+                        "begin",
+                        "rollback",
+                        "rollback callback",
+                        "begin",
+                        "commit",
+                        "commit 2"
+                ),
+                events
+        );
+    }
+
+    @Test
+    void shouldDiscardCallbacksOfRepeatedProcedure() {
+        // Providers such as the BatchingTransactionProvider may perform a procedure again.
+        CpProvider repeating = new CpProvider(new Ctx(), events) {
+            @Override
+            public <T> T runWithTransaction(Function<Ctx, T> procedure) {
+                procedure.apply(new Ctx());
+                return super.runWithTransaction(procedure);
+            }
+        };
+
+        Transactional.of(ctx -> 10, repeating)
+                .onCommit(value -> events.add("commit " + value))
+                .get();
+
+        assertEquals(Arrays.asList("begin", "commit", "commit 10"), events);
+    }
+
+    @Test
+    void shouldRunCallbacksAfterBypass() {
+        Transactional.of(ctx -> 10, provider)
+                .onCommit(value -> events.add("commit " + value))
+                .bypass();
+
+        assertEquals(Arrays.asList("without", "commit 10"), events);
+    }
+
+    @Test
+    void shouldAddCallbackFailuresAsSuppressed() {
+        CustomException exception = new CustomException();
+        CustomException callbackException = new CustomException();
+
+        assertThrows(
+                CustomException.class,
+                () -> Transactional.of(ctx -> 10, provider)
+                        .onRollback(failure -> {
+                            throw callbackException;
+                        })
+                        .map(value -> {
+                            throw exception;
+                        })
+                        .get()
+        );
+
+        assertEquals(1, exception.getSuppressed().length);
+        assertSame(callbackException, exception.getSuppressed()[0]);
+    }
+
+    class Ctx {
+
+    }
+
+    class CpProvider implements TransactionProvider<Ctx> {
+        private final Ctx context;
+        private final List<String> events;
+        private boolean failCommit;
+
+        CpProvider(Ctx context, List<String> events) {
+            this.context = context;
+            this.events = events;
+        }
+
+        @Override
+        public <T> T runWithTransaction(Function<Ctx, T> procedure) {
+            events.add("begin");
+            T result;
+            try {
+                result = procedure.apply(context);
+            }
+            catch (RuntimeException exception) {
+                events.add("rollback");
+                throw exception;
+            }
+            if (failCommit) throw new CustomException();
+            events.add("commit");
+            return result;
+        }
+
+        @Override
+        public <T> T runWithoutTransaction(Function<Ctx, T> procedure) {
+            events.add("without");
+            return procedure.apply(context);
+        }
+    }
+
+    class CustomException extends RuntimeException {
+
+    }
+}
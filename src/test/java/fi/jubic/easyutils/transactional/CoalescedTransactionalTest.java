@@ -0,0 +1,209 @@
+package fi.jubic.easyutils.transactional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoalescedTransactionalTest {
+    private static final int THREADS = 8;
+
+    private ExecutorService executor;
+    private SingleFlight singleFlight;
+    private CpProvider provider;
+
+    @BeforeEach
+    void beforeEach() {
+        this.executor = Executors.newFixedThreadPool(THREADS);
+        this.singleFlight = new SingleFlight(4);
+        this.provider = new CpProvider(new Ctx());
+    }
+
+    @AfterEach
+    void afterEach() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldShareSingleExecutionBetweenConcurrentCalls() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger procedures = new AtomicInteger();
+        Transactional<Integer, Ctx> transactional = Transactional
+                .of(
+                        ctx -> {
+                            procedures.incrementAndGet();
+                            await(release);
+                            return 10;
+                        },
+                        provider
+                )
+                .coalesced("config", singleFlight);
+
+        List<Future<Integer>> results = submit(transactional);
+        awaitCoalesced(THREADS - 1);
+        release.countDown();
+
+        for (Future<Integer> result : results) {
+            assertEquals(Integer.valueOf(10), result.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, procedures.get());
+        assertEquals(1, provider.transactions.get());
+        assertEquals(1, singleFlight.executions());
+        assertEquals(THREADS - 1, singleFlight.coalesced());
+    }
+
+    @Test
+    void shouldShareExceptionBetweenConcurrentCalls() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CustomException exception = new CustomException();
+        Transactional<Integer, Ctx> transactional = Transactional
+                .<Integer, Ctx>of(
+                        ctx -> {
+                            await(release);
+                            throw exception;
+                        },
+                        provider
+                )
+                .coalesced("config", singleFlight);
+
+        List<Future<Integer>> results = submit(transactional);
+        awaitCoalesced(THREADS - 1);
+        release.countDown();
+
+        for (Future<Integer> result : results) {
+            ExecutionException failure = assertThrows(
+                    ExecutionException.class,
+                    () -> result.get(10, TimeUnit.SECONDS)
+            );
+            assertSame(exception, failure.getCause());
+        }
+        assertEquals(1, provider.transactions.get());
+    }
+
+    @Test
+    void shouldNotCoalesceSequentialCalls() {
+        Transactional<Integer, Ctx> transactional = Transactional.of(ctx -> 10, provider)
+                .coalesced("config", singleFlight);
+
+        transactional.get();
+        transactional.get();
+
+        assertEquals(2, provider.transactions.get());
+        assertEquals(2, singleFlight.executions());
+        assertEquals(0, singleFlight.coalesced());
+    }
+
+    @Test
+    void shouldNotCoalesceDifferentKeysOrProviders() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Integer> blocked = executor.submit(
+                () -> Transactional
+                        .of(
+                                ctx -> {
+                                    entered.countDown();
+                                    await(release);
+                                    return 1;
+                                },
+                                provider
+                        )
+                        .coalesced("first", singleFlight)
+                        .get()
+        );
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+        assertEquals(
+                Integer.valueOf(2),
+                Transactional.of(ctx -> 2, provider).coalesced("second", singleFlight).get()
+        );
+        assertEquals(
+                Integer.valueOf(3),
+                Transactional.of(ctx -> 3, new CpProvider(new Ctx()))
+                        .coalesced("first", singleFlight)
+                        .get()
+        );
+
+        release.countDown();
+        assertEquals(Integer.valueOf(1), blocked.get(10, TimeUnit.SECONDS));
+        assertEquals(3, singleFlight.executions());
+        assertEquals(0, singleFlight.coalesced());
+    }
+
+    @Test
+    void shouldNotCarryKeyToChainedTransactionals() {
+        Transactional.of(ctx -> 10, provider)
+                .coalesced("config", singleFlight)
+                .map(value -> value + 1)
+                .get();
+
+        assertEquals(0, singleFlight.executions());
+    }
+
+    private List<Future<Integer>> submit(Transactional<Integer, Ctx> transactional) {
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(transactional::get));
+        }
+        return results;
+    }
+
+    private void awaitCoalesced(long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (singleFlight.coalesced() < count) {
+            assertTrue(System.nanoTime() < deadline, "Calls were not coalesced");
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        }
+        catch (InterruptedException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    class Ctx {
+
+    }
+
+    class CpProvider implements TransactionProvider<Ctx> {
+        private final Ctx context;
+        private final AtomicInteger transactions = new AtomicInteger();
+
+        CpProvider(Ctx context) {
+            this.context = context;
+        }
+
+        @Override
+        public <T> T runWithTransaction(Function<Ctx, T> procedure) {
+            transactions.incrementAndGet();
+            return procedure.apply(context);
+        }
+
+        @Override
+        public <T> T runWithoutTransaction(Function<Ctx, T> procedure) {
+            return procedure.apply(context);
+        }
+    }
+
+    class CustomException extends RuntimeException {
+
+    }
+}
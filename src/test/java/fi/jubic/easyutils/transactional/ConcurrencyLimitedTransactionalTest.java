@@ -0,0 +1,279 @@
+package fi.jubic.easyutils.transactional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrencyLimitedTransactionalTest {
+    private ExecutorService executor;
+    private BlockingProvider provider;
+
+    @BeforeEach
+    void beforeEach() {
+        this.executor = Executors.newFixedThreadPool(4);
+        this.provider = new BlockingProvider();
+    }
+
+    @AfterEach
+    void afterEach() {
+        provider.release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldRejectTransactionsOverLimitImmediately() {
+        ConcurrencyLimitingTransactionProvider<Ctx> limited = limited(
+                ConcurrencyLimit.aimd(2, Duration.ofSeconds(10)).withBounds(2, 2)
+        );
+        CompletableFuture<Integer> first = transactional(limited).getAsync(executor);
+        CompletableFuture<Integer> second = transactional(limited).getAsync(executor);
+        await(() -> limited.inFlight() == 2);
+
+        assertThrows(
+                ConcurrencyLimitExceededException.class,
+                () -> transactional(limited).get()
+        );
+        assertEquals(1, limited.rejected());
+
+        provider.release.countDown();
+        assertEquals(Integer.valueOf(1), first.join());
+        assertEquals(Integer.valueOf(1), second.join());
+        assertEquals(0, limited.inFlight());
+    }
+
+    @Test
+    void shouldQueueTransactionsUntilPermitIsReleased() {
+        ConcurrencyLimitingTransactionProvider<Ctx> limited = limited(
+                ConcurrencyLimit.aimd(1, Duration.ofSeconds(10))
+                        .withBounds(1, 1)
+                        .withQueueTimeout(Duration.ofSeconds(10))
+        );
+        CompletableFuture<Integer> first = transactional(limited).getAsync(executor);
+        await(() -> limited.inFlight() == 1);
+        CompletableFuture<Integer> second = transactional(limited).getAsync(executor);
+        await(() -> limited.queueDepth() == 1);
+
+        assertEquals(1, provider.started.get());
+
+        provider.release.countDown();
+        assertEquals(Integer.valueOf(1), first.join());
+        assertEquals(Integer.valueOf(1), second.join());
+        assertEquals(2, provider.started.get());
+        assertEquals(0, limited.rejected());
+    }
+
+    @Test
+    void shouldRejectQueuedTransactionAfterTimeout() {
+        ConcurrencyLimitingTransactionProvider<Ctx> limited = limited(
+                ConcurrencyLimit.gradient(1)
+                        .withBounds(1, 1)
+                        .withQueueTimeout(Duration.ofMillis(50))
+        );
+        transactional(limited).getAsync(executor);
+        await(() -> limited.inFlight() == 1);
+
+        long start = System.nanoTime();
+        assertThrows(
+                ConcurrencyLimitExceededException.class,
+                () -> transactional(limited).get()
+        );
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(0, limited.queueDepth());
+        assertEquals(1, limited.rejected());
+    }
+
+    @Test
+    void shouldRejectQueuedTransactionAtDeadline() {
+        ConcurrencyLimitingTransactionProvider<Ctx> limited = limited(
+                ConcurrencyLimit.gradient(1)
+                        .withBounds(1, 1)
+                        .withQueueTimeout(Duration.ofSeconds(10))
+        );
+        transactional(limited).getAsync(executor);
+        await(() -> limited.inFlight() == 1);
+
+        long start = System.nanoTime();
+        assertThrows(
+                ConcurrencyLimitExceededException.class,
+                () -> transactional(limited).withTimeout(Duration.ofMillis(50)).get()
+        );
+        long waited = System.nanoTime() - start;
+
+        assertTrue(waited >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(waited < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(0, limited.queueDepth());
+        assertEquals(1, limited.rejected());
+    }
+
+    @Test
+    void shouldQueueAsyncTasksWithoutOccupyingThreads() throws Exception {
+        ConcurrencyLimitingTransactionProvider<Ctx> limited = limited(
+                ConcurrencyLimit.aimd(1, Duration.ofSeconds(10))
+                        .withBounds(1, 1)
+                        .withQueueTimeout(Duration.ofSeconds(10))
+        );
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            CompletableFuture<Integer> first = transactional(limited)
+                    .getAsync(limited.executor(pool));
+            await(() -> limited.inFlight() == 1);
+            CompletableFuture<Integer> second = transactional(limited)
+                    .getAsync(limited.executor(pool));
+
+            assertEquals(1, limited.queueDepth());
+            assertEquals(
+                    "free",
+                    CompletableFuture.supplyAsync(() -> "free", pool)
+                            .get(10, TimeUnit.SECONDS)
+            );
+
+            provider.release.countDown();
+            assertEquals(Integer.valueOf(1), first.join());
+            assertEquals(Integer.valueOf(1), second.join());
+            assertEquals(0, limited.inFlight());
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void shouldFailQueuedAsyncTaskAfterTimeout() throws InterruptedException {
+        ConcurrencyLimitingTransactionProvider<Ctx> limited = limited(
+                ConcurrencyLimit.aimd(1, Duration.ofSeconds(10))
+                        .withBounds(1, 1)
+                        .withQueueTimeout(Duration.ofMillis(10))
+        );
+        CompletableFuture<Integer> first = transactional(limited)
+                .getAsync(limited.executor(executor));
+        await(() -> limited.inFlight() == 1);
+        CompletableFuture<Integer> second = transactional(limited)
+                .getAsync(limited.executor(executor));
+        Thread.sleep(20);
+
+        provider.release.countDown();
+        assertEquals(Integer.valueOf(1), first.join());
+        CompletionException exception = assertThrows(CompletionException.class, second::join);
+        assertInstanceOf(ConcurrencyLimitExceededException.class, exception.getCause());
+        assertEquals(1, provider.started.get());
+        assertEquals(1, limited.rejected());
+    }
+
+    @Test
+    void shouldPassNestedTransactionsThrough() {
+        provider.release.countDown();
+        ConcurrencyLimitingTransactionProvider<Ctx> limited = limited(
+                ConcurrencyLimit.aimd(1, Duration.ofSeconds(10)).withBounds(1, 1)
+        );
+
+        Integer result = Transactional
+                .of(ctx -> transactional(limited).get() + 1, limited)
+                .get();
+
+        assertEquals(Integer.valueOf(2), result);
+        assertEquals(0, limited.inFlight());
+    }
+
+    @Test
+    void shouldAdaptAimdLimitToLatencyThreshold() {
+        ConcurrencyLimit.Algorithm algorithm = ConcurrencyLimit
+                .aimd(10, Duration.ofMillis(10))
+                .withBounds(5, 12)
+                .newAlgorithm();
+
+        algorithm.update(TimeUnit.MILLISECONDS.toNanos(1), 10);
+        algorithm.update(TimeUnit.MILLISECONDS.toNanos(1), 10);
+        algorithm.update(TimeUnit.MILLISECONDS.toNanos(1), 10);
+        assertEquals(12, algorithm.limit);
+
+        algorithm.update(TimeUnit.MILLISECONDS.toNanos(1), 2);
+        assertEquals(12, algorithm.limit);
+
+        algorithm.update(TimeUnit.MILLISECONDS.toNanos(20), 12);
+        assertEquals(10, algorithm.limit);
+        for (int i = 0; i < 10; i++) {
+            algorithm.update(TimeUnit.MILLISECONDS.toNanos(20), 10);
+        }
+        assertEquals(5, algorithm.limit);
+    }
+
+    @Test
+    void shouldAdaptGradientLimitToLatencyIncrease() {
+        ConcurrencyLimit.Algorithm algorithm = ConcurrencyLimit
+                .gradient(20)
+                .withBounds(1, 100)
+                .newAlgorithm();
+
+        for (int i = 0; i < 20; i++) {
+            algorithm.update(TimeUnit.MILLISECONDS.toNanos(1), algorithm.limit);
+        }
+        int grown = algorithm.limit;
+        assertTrue(grown > 20);
+
+        for (int i = 0; i < 5; i++) {
+            algorithm.update(TimeUnit.MILLISECONDS.toNanos(10), algorithm.limit);
+        }
+        assertTrue(algorithm.limit < grown);
+    }
+
+    private ConcurrencyLimitingTransactionProvider<Ctx> limited(ConcurrencyLimit limit) {
+        return new ConcurrencyLimitingTransactionProvider<>(provider, limit);
+    }
+
+    private static Transactional<Integer, Ctx> transactional(TransactionProvider<Ctx> provider) {
+        return Transactional.of(ctx -> 1, provider);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) throw new IllegalStateException("Timed out");
+            Thread.onSpinWait();
+        }
+    }
+
+    static class Ctx {
+
+    }
+
+    static class BlockingProvider implements TransactionProvider<Ctx> {
+        private final Ctx ctx = new Ctx();
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger started = new AtomicInteger();
+
+        @Override
+        public <T> T runWithTransaction(Function<Ctx, T> procedure) {
+            started.incrementAndGet();
+            try {
+                if (!release.await(10, TimeUnit.SECONDS)) throw new IllegalStateException();
+            }
+            catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(exception);
+            }
+            return procedure.apply(ctx);
+        }
+
+        @Override
+        public <T> T runWithoutTransaction(Function<Ctx, T> procedure) {
+            return procedure.apply(ctx);
+        }
+    }
+}
@@ -3,6 +3,9 @@ package fi.jubic.easyutils.transactional;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -148,6 +151,17 @@ class ContextPassingTransactionalTest {
         verify(provider, never()).runWithTransaction(any());
     }
 
+    @Test
+    void shouldRunWithoutTransactionWhenBypassedAsync() throws Exception {
+        assertEquals(
+                Integer.valueOf(10),
+                Transactional.of(ctx -> 10, provider).bypassAsync(Runnable::run).get()
+        );
+
+        verify(provider, times(1)).runWithoutTransaction(any());
+        verify(provider, never()).runWithTransaction(any());
+    }
+
     @Test
     void shouldThrowIfMaterializeThrows() {
         assertThrows(
@@ -192,6 +206,78 @@ class ContextPassingTransactionalTest {
         verify(provider, times(1)).runWithTransaction(any());
     }
 
+    @Test
+    void shouldNotOverflowStackOnLongChains() {
+        Transactional<Integer, Ctx> transactional = Transactional.of(ctx -> 0, provider);
+        for (int i = 0; i < 100_000; i++) {
+            transactional = transactional
+                    .flatMap(value -> Transactional.of(ctx -> value, provider).map(v -> v + 1))
+                    .peekMap(value -> Transactional.of(ctx -> null, provider))
+                    .peek(value -> { })
+                    .map(value -> value + 1);
+        }
+
+        assertEquals(Integer.valueOf(200_000), transactional.get());
+        verify(provider, times(1)).runWithTransaction(any());
+    }
+
+    @Test
+    void shouldNotOverflowStackOnRecursiveFlatMaps() {
+        assertEquals(
+                Integer.valueOf(0),
+                countdown(100_000).get()
+        );
+        verify(provider, times(1)).runWithTransaction(any());
+    }
+
+    @Test
+    void shouldKeepValueAfterPeekMapChain() {
+        //noinspection unchecked
+        Consumer<Integer> peek = (Consumer<Integer>) mock(Consumer.class);
+
+        assertEquals(
+                Integer.valueOf(10),
+                Transactional.of(ctx -> 10, provider)
+                        .peekMap(
+                                value -> Transactional.of(ctx -> value * 2, provider)
+                                        .flatMap(v -> Transactional.of(ctx -> v + 1, provider))
+                                        .peek(peek)
+                                        .map(v -> null)
+                        )
+                        .get()
+        );
+
+        verify(peek).accept(eq(Integer.valueOf(21)));
+    }
+
+    @Test
+    void shouldRunFusedStagesInOrder() {
+        List<String> stages = new ArrayList<>();
+
+        assertEquals(
+                "3",
+                Transactional.of(ctx -> 1, provider)
+                        .peek(value -> stages.add("peek " + value))
+                        .map(value -> value + 1)
+                        .peek(value -> stages.add("peek " + value))
+                        .flatMap(value -> Transactional.of(ctx -> value + 1, provider))
+                        .peek(value -> stages.add("peek " + value))
+                        .map(String::valueOf)
+                        .get()
+        );
+
+        assertEquals(Arrays.asList("peek 1", "peek 2", "peek 3"), stages);
+    }
+
+    private Transactional<Integer, Ctx> countdown(int from) {
+        return Transactional.of(ctx -> from, provider)
+                .flatMap(
+                        value -> value == 0
+                                ? Transactional.of(ctx -> 0, provider)
+                                : countdown(value - 1)
+                );
+    }
+
     class Ctx {
 
     }
@@ -0,0 +1,222 @@
+package fi.jubic.easyutils.transactional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LaneTransactionalTest {
+    private final Provider provider = new Provider();
+    private Lanes lanes;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void beforeEach() {
+        this.lanes = new Lanes(2, 4);
+        this.executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    void afterEach() {
+        lanes.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldSerializeTransactionsOfSameKey() throws Exception {
+        int[] counter = new int[1];
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        Transactional<Integer, Ctx> increment = Transactional.of(
+                ctx -> {
+                    if (running.incrementAndGet() > 1) overlaps.incrementAndGet();
+                    int value = ++counter[0];
+                    running.decrementAndGet();
+                    return value;
+                },
+                provider
+        );
+
+        List<Future<?>> submitters = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            submitters.add(executor.submit(() -> {
+                List<CompletableFuture<Integer>> futures = new ArrayList<>();
+                for (int i = 0; i < 1000; i++) {
+                    futures.add(increment.onLane("aggregate", lanes));
+                }
+                futures.forEach(CompletableFuture::join);
+            }));
+        }
+        for (Future<?> submitter : submitters) {
+            submitter.get(30, TimeUnit.SECONDS);
+        }
+
+        Integer count = Transactional.of(ctx -> counter[0], provider)
+                .onLane("aggregate", lanes)
+                .join();
+
+        assertEquals(Integer.valueOf(8000), count);
+        assertEquals(0, overlaps.get());
+        assertEquals(8001, provider.transactions.get());
+        assertEquals(8001L, lanes.submitted());
+    }
+
+    @Test
+    void shouldPerformTransactionsOfKeyInSubmissionOrder() {
+        List<Integer> order = new ArrayList<>();
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int value = i;
+            futures.add(Transactional.of(ctx -> order.add(value), provider).onLane(7, lanes));
+        }
+        futures.forEach(CompletableFuture::join);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.valueOf(i), order.get(i));
+        }
+    }
+
+    @Test
+    void shouldPerformTransactionsOfDifferentLanesInParallel() {
+        CountDownLatch both = new CountDownLatch(2);
+        Transactional<Boolean, Ctx> rendezvous = Transactional.of(
+                ctx -> {
+                    both.countDown();
+                    return await(both);
+                },
+                provider
+        );
+
+        CompletableFuture<Boolean> first = rendezvous.onLane(0, lanes);
+        CompletableFuture<Boolean> second = rendezvous.onLane(1, lanes);
+
+        assertTrue(first.join());
+        assertTrue(second.join());
+    }
+
+    @Test
+    void shouldCompleteExceptionallyAndKeepLaneRunning() {
+        CompletableFuture<Object> failed = Transactional
+                .of(
+                        ctx -> {
+                            throw new CustomException();
+                        },
+                        provider
+                )
+                .onLane("aggregate", lanes);
+
+        CompletionException exception = assertThrows(CompletionException.class, failed::join);
+        assertInstanceOf(CustomException.class, exception.getCause());
+        assertEquals(
+                Integer.valueOf(1),
+                Transactional.of(ctx -> 1, provider).onLane("aggregate", lanes).join()
+        );
+    }
+
+    @Test
+    void shouldPerformTransactionSubmittedFromOwnLaneDirectly() {
+        Integer result = Transactional
+                .of(
+                        ctx -> Transactional.of(inner -> 1, provider)
+                                .onLane("aggregate", lanes)
+                                .join() + 1,
+                        provider
+                )
+                .onLane("aggregate", lanes)
+                .join();
+
+        assertEquals(Integer.valueOf(2), result);
+    }
+
+    @Test
+    void shouldWaitForSpaceWhenLaneIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> blocking = Transactional.of(ctx -> await(release), provider)
+                .onLane("aggregate", lanes);
+
+        Future<List<CompletableFuture<Integer>>> submitter = executor.submit(() -> {
+            List<CompletableFuture<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                int value = i;
+                futures.add(Transactional.of(ctx -> value, provider).onLane("aggregate", lanes));
+            }
+            return futures;
+        });
+        Thread.sleep(20);
+
+        assertTrue(lanes.backlog("aggregate") <= 4);
+        release.countDown();
+
+        assertTrue(blocking.join());
+        List<CompletableFuture<Integer>> futures = submitter.get(10, TimeUnit.SECONDS);
+        for (int i = 0; i < 16; i++) {
+            assertEquals(Integer.valueOf(i), futures.get(i).join());
+        }
+    }
+
+    @Test
+    void shouldRejectTransactionsAfterClose() {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> queued = Transactional.of(ctx -> await(release), provider)
+                .onLane("aggregate", lanes);
+
+        lanes.close();
+        CompletableFuture<Integer> rejected = Transactional.of(ctx -> 1, provider)
+                .onLane("aggregate", lanes);
+        release.countDown();
+
+        assertTrue(queued.join());
+        CompletionException exception = assertThrows(CompletionException.class, rejected::join);
+        assertInstanceOf(RejectedExecutionException.class, exception.getCause());
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    static class Ctx {
+
+    }
+
+    static class Provider implements TransactionProvider<Ctx> {
+        private final Ctx ctx = new Ctx();
+        private final AtomicInteger transactions = new AtomicInteger();
+
+        @Override
+        public <T> T runWithTransaction(Function<Ctx, T> procedure) {
+            transactions.incrementAndGet();
+            return procedure.apply(ctx);
+        }
+
+        @Override
+        public <T> T runWithoutTransaction(Function<Ctx, T> procedure) {
+            return procedure.apply(ctx);
+        }
+    }
+
+    class CustomException extends RuntimeException {
+
+    }
+}
@@ -0,0 +1,205 @@
+package fi.jubic.easyutils.transactional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class ReadOnlyTransactionalTest {
+    private HintsProvider provider;
+
+    @BeforeEach
+    void beforeEach() {
+        this.provider = new HintsProvider(new Ctx());
+    }
+
+    @Test
+    void shouldNotHintReadOnlyByDefault() {
+        Transactional.of(ctx -> 10, provider).map(value -> value + 1).get();
+
+        assertSame(TransactionHints.DEFAULTS, provider.hints.get(0));
+    }
+
+    @Test
+    void shouldHintReadOnlySingleStatement() {
+        assertEquals(
+                Integer.valueOf(11),
+                Transactional.of(ctx -> 10, provider)
+                        .readOnly()
+                        .map(value -> value + 1)
+                        .peek(value -> { })
+                        .get()
+        );
+
+        assertTrue(provider.hints.get(0).isReadOnly());
+        assertTrue(provider.hints.get(0).isSingleStatement());
+    }
+
+    @Test
+    void shouldCarryReadOnlyThroughFlatMap() {
+        Transactional.of(ctx -> 10, provider)
+                .readOnly()
+                .flatMap(value -> Transactional.of(ctx -> value + 1, provider))
+                .map(value -> value + 1)
+                .get();
+
+        assertTrue(provider.hints.get(0).isReadOnly());
+        assertFalse(provider.hints.get(0).isSingleStatement());
+    }
+
+    @Test
+    void shouldHintAllReadOnlyOnlyIfAllAreReadOnly() {
+        Transactional
+                .all(
+                        Transactional.of(ctx -> 1, provider).readOnly(),
+                        Transactional.of(ctx -> 2, provider).readOnly()
+                )
+                .map((first, second) -> first + second)
+                .get();
+        Transactional
+                .all(
+                        Transactional.of(ctx -> 1, provider).readOnly(),
+                        Transactional.of(ctx -> 2, provider)
+                )
+                .get();
+
+        assertTrue(provider.hints.get(0).isReadOnly());
+        assertFalse(provider.hints.get(0).isSingleStatement());
+        assertFalse(provider.hints.get(1).isReadOnly());
+    }
+
+    @Test
+    void shouldPassHintsToBypass() {
+        Transactional.of(ctx -> 10, provider).readOnly().bypass();
+
+        assertTrue(provider.hints.get(0).isReadOnly());
+    }
+
+    @Test
+    void shouldRouteReadOnlyProceduresToReadOnlyProvider() {
+        CpProvider primary = spy(new CpProvider(new Ctx()));
+        CpProvider replica = spy(new CpProvider(new Ctx()));
+        RoutingTransactionProvider<Ctx> routing = new RoutingTransactionProvider<>(
+                primary,
+                replica
+        );
+
+        Transactional.of(ctx -> 1, routing).get();
+        Transactional.of(ctx -> 2, routing).readOnly().get();
+        Transactional.of(ctx -> 3, routing).readOnly().bypass();
+
+        verify(primary, times(1)).runWithTransaction(any());
+        verify(replica, times(1)).runWithTransaction(any());
+        verify(replica, times(1)).runWithoutTransaction(any());
+        verify(primary, never()).runWithoutTransaction(any());
+    }
+
+    @Test
+    void shouldSkipTransactionForSingleStatementReadsIfEnabled() {
+        TcProvider tcProvider = spy(new TcProvider(true));
+
+        Transactional.of(() -> 10, tcProvider).readOnly().get();
+        verify(tcProvider, never()).begin();
+        verify(tcProvider, times(1)).runWithoutTransaction(any());
+
+        Transactional.of(() -> 10, tcProvider)
+                .readOnly()
+                .flatMap(value -> Transactional.of(() -> value, tcProvider))
+                .get();
+        verify(tcProvider, times(1)).begin();
+        verify(tcProvider, times(1)).commit();
+    }
+
+    @Test
+    void shouldNotSkipTransactionForSingleStatementReadsByDefault() {
+        TcProvider tcProvider = spy(new TcProvider(false));
+
+        Transactional.of(() -> 10, tcProvider).readOnly().get();
+
+        verify(tcProvider, times(1)).begin();
+        verify(tcProvider, times(1)).commit();
+        verify(tcProvider, never()).runWithoutTransaction(any());
+    }
+
+    class Ctx {
+
+    }
+
+    class CpProvider implements TransactionProvider<Ctx> {
+        private final Ctx context;
+
+        CpProvider(Ctx context) {
+            this.context = context;
+        }
+
+        @Override
+        public <T> T runWithTransaction(Function<Ctx, T> procedure) {
+            return procedure.apply(context);
+        }
+
+        @Override
+        public <T> T runWithoutTransaction(Function<Ctx, T> procedure) {
+            return procedure.apply(context);
+        }
+    }
+
+    class HintsProvider extends CpProvider {
+        private final List<TransactionHints> hints = new ArrayList<>();
+
+        HintsProvider(Ctx context) {
+            super(context);
+        }
+
+        @Override
+        public <T> T runWithTransaction(Function<Ctx, T> procedure, TransactionHints hints) {
+            this.hints.add(hints);
+            return runWithTransaction(procedure);
+        }
+
+        @Override
+        public <T> T runWithoutTransaction(Function<Ctx, T> procedure, TransactionHints hints) {
+            this.hints.add(hints);
+            return runWithoutTransaction(procedure);
+        }
+    }
+
+    class TcProvider implements ThreadContextTransactionProvider {
+        private final boolean skipsSingleStatementReads;
+
+        TcProvider(boolean skipsSingleStatementReads) {
+            this.skipsSingleStatementReads = skipsSingleStatementReads;
+        }
+
+        @Override
+        public void begin() {
+
+        }
+
+        @Override
+        public void commit() {
+
+        }
+
+        @Override
+        public void rollback() {
+
+        }
+
+        @Override
+        public boolean skipsSingleStatementReads() {
+            return skipsSingleStatementReads;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package fi.jubic.easyutils.transactional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class RetryTransactionalTest {
+    private TcProvider provider;
+    private RetryListener listener;
+    private RetryPolicy policy;
+
+    @BeforeEach
+    void beforeEach() {
+        this.provider = spy(new TcProvider());
+        this.listener = mock(RetryListener.class);
+        this.policy = RetryPolicy.of(exception -> exception instanceof TransientException)
+                .withMaxAttempts(3)
+                .withBackoff(Duration.ZERO, Duration.ZERO)
+                .withListener(listener);
+    }
+
+    @Test
+    void shouldRetryInNewTransactionUntilSuccess() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertEquals(
+                Integer.valueOf(15),
+                Transactional
+                        .of(
+                                () -> {
+                                    if (attempts.incrementAndGet() < 3) {
+                                        throw new TransientException();
+                                    }
+                                    return 10;
+                                },
+                                provider
+                        )
+                        .retry(policy)
+                        .map(value -> value + 5)
+                        .get()
+        );
+
+        verify(provider, times(3)).begin();
+        verify(provider, times(2)).rollback();
+        verify(provider, times(1)).commit();
+        verify(listener, times(2)).onRetry(any(Integer.class), any(), eq(Duration.ZERO));
+        verify(listener, never()).onGiveUp(any(Integer.class), any());
+    }
+
+    @Test
+    void shouldNotRetryNonRetryableExceptions() {
+        assertThrows(
+                CustomException.class,
+                () -> Transactional
+                        .of(
+                                () -> {
+                                    throw new CustomException();
+                                },
+                                provider
+                        )
+                        .retry(policy)
+                        .get()
+        );
+
+        verify(provider, times(1)).begin();
+        verify(provider, times(1)).rollback();
+        verify(listener, never()).onRetry(any(Integer.class), any(), any());
+    }
+
+    @Test
+    void shouldRethrowLastFailureWhenAttemptsAreExhausted() {
+        TransientException last = new TransientException();
+        AtomicInteger attempts = new AtomicInteger();
+
+        TransientException thrown = assertThrows(
+                TransientException.class,
+                () -> Transactional
+                        .of(
+                                () -> {
+                                    if (attempts.incrementAndGet() < 3) {
+                                        throw new TransientException();
+                                    }
+                                    throw last;
+                                },
+                                provider
+                        )
+                        .retry(policy)
+                        .get()
+        );
+
+        assertSame(last, thrown);
+        verify(provider, times(3)).begin();
+        verify(provider, times(3)).rollback();
+        verify(listener, times(1)).onGiveUp(3, last);
+    }
+
+    @Test
+    void shouldStopRetryingAtDeadline() {
+        RetryPolicy slowPolicy = policy
+                .withMaxAttempts(100)
+                .withBackoff(Duration.ofSeconds(10), Duration.ofSeconds(10))
+                .withJitter(0.0)
+                .withDeadline(Duration.ofSeconds(5));
+
+        assertThrows(
+                TransientException.class,
+                () -> Transactional
+                        .of(
+                                () -> {
+                                    throw new TransientException();
+                                },
+                                provider
+                        )
+                        .retry(slowPolicy)
+                        .get()
+        );
+
+        verify(provider, times(1)).begin();
+        verify(listener, never()).onRetry(any(Integer.class), any(), any());
+        verify(listener, times(1)).onGiveUp(eq(1), any());
+    }
+
+    @Test
+    void shouldNotRetryBypass() {
+        assertThrows(
+                TransientException.class,
+                () -> Transactional
+                        .of(
+                                () -> {
+                                    throw new TransientException();
+                                },
+                                provider
+                        )
+                        .retry(policy)
+                        .bypass()
+        );
+
+        verify(provider, times(1)).runWithoutTransaction(any());
+        verify(listener, never()).onRetry(any(Integer.class), any(), any());
+    }
+
+    @Test
+    void shouldRejectInvalidPolicies() {
+        assertThrows(IllegalArgumentException.class, () -> policy.withMaxAttempts(0));
+        assertThrows(IllegalArgumentException.class, () -> policy.withJitter(1.5));
+        assertThrows(IllegalArgumentException.class, () -> policy.withMultiplier(0.5));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> policy.withBackoff(Duration.ofSeconds(2), Duration.ofSeconds(1))
+        );
+    }
+
+    class TcProvider implements ThreadContextTransactionProvider {
+        @Override
+        public void begin() {
+
+        }
+
+        @Override
+        public void commit() {
+
+        }
+
+        @Override
+        public void rollback() {
+
+        }
+    }
+
+    class TransientException extends RuntimeException {
+
+    }
+
+    class CustomException extends RuntimeException {
+
+    }
+}
@@ -0,0 +1,182 @@
+package fi.jubic.easyutils.transactional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class SavepointTransactionalTest {
+    private Ctx context;
+    private SpProvider provider;
+
+    @BeforeEach
+    void beforeEach() {
+        this.context = new Ctx();
+        this.provider = spy(new SpProvider(context));
+    }
+
+    @Test
+    void shouldRollbackToSavepointAndKeepOuterWork() {
+        assertEquals(
+                "fallback",
+                write("expensive")
+                        .flatMap(ignored -> write("risky")
+                                .map(value -> {
+                                    throw new CustomException();
+                                })
+                                .map(String::valueOf)
+                                .recover(exception -> write("fallback"))
+                        )
+                        .get()
+        );
+
+        assertEquals(Arrays.asList("expensive", "fallback"), context.writes);
+        verify(provider, times(1)).runWithTransaction(any());
+        verify(provider, times(1)).savepoint(context);
+        verify(provider, times(1)).rollbackToSavepoint(context, 1);
+        verify(provider, never()).releaseSavepoint(any(), any());
+    }
+
+    @Test
+    void shouldUndoCallbacksRegisteredAfterSavepoint() {
+        List<String> events = new ArrayList<>();
+
+        assertEquals(
+                "fallback",
+                write("outer")
+                        .onCommit(value -> events.add("outer committed"))
+                        .flatMap(ignored -> write("risky")
+                                .onCommit(value -> events.add("risky committed"))
+                                .onRollback(failure -> events.add("risky rolled back"))
+                                .map(value -> {
+                                    throw new CustomException();
+                                })
+                                .map(String::valueOf)
+                                .recover(exception -> write("fallback")
+                                        .onCommit(value -> events.add("fallback committed"))
+                                )
+                        )
+                        .get()
+        );
+
+        assertEquals(
+                Arrays.asList("risky rolled back", "outer committed", "fallback committed"),
+                events
+        );
+    }
+
+    @Test
+    void shouldReleaseSavepointOnSuccess() {
+        assertEquals(
+                "inner",
+                write("outer")
+                        .flatMap(ignored -> write("inner").recover(exception -> write("fallback")))
+                        .get()
+        );
+
+        assertEquals(Arrays.asList("outer", "inner"), context.writes);
+        verify(provider, times(1)).releaseSavepoint(context, 1);
+        verify(provider, never()).rollbackToSavepoint(any(), any());
+    }
+
+    @Test
+    void shouldFailTransactionIfRecoveryRethrows() {
+        assertThrows(
+                CustomException.class,
+                () -> write("outer")
+                        .flatMap(ignored -> Transactional
+                                .<String, Ctx>of(
+                                        ctx -> {
+                                            throw new IllegalStateException();
+                                        },
+                                        provider
+                                )
+                                .recover(exception -> {
+                                    throw new CustomException();
+                                })
+                        )
+                        .get()
+        );
+
+        verify(provider, times(1)).rollbackToSavepoint(eq(context), any());
+    }
+
+    @Test
+    void shouldRequireSavepointCapableProvider() {
+        assertThrows(
+                UnsupportedOperationException.class,
+                () -> Transactional
+                        .of(ctx -> 10, new CpProvider(context))
+                        .recover(exception -> Transactional.of(ctx -> 0, new CpProvider(context)))
+        );
+    }
+
+    private Transactional<String, Ctx> write(String value) {
+        return Transactional.of(
+                ctx -> {
+                    ctx.writes.add(value);
+                    return value;
+                },
+                provider
+        );
+    }
+
+    class Ctx {
+        private final List<String> writes = new ArrayList<>();
+    }
+
+    class CpProvider implements TransactionProvider<Ctx> {
+        private final Ctx context;
+
+        CpProvider(Ctx context) {
+            this.context = context;
+        }
+
+        @Override
+        public <T> T runWithTransaction(Function<Ctx, T> procedure) {
+            return procedure.apply(context);
+        }
+
+        @Override
+        public <T> T runWithoutTransaction(Function<Ctx, T> procedure) {
+            return procedure.apply(context);
+        }
+    }
+
+    class SpProvider extends CpProvider implements SavepointCapable<Ctx> {
+        SpProvider(Ctx context) {
+            super(context);
+        }
+
+        @Override
+        public Object savepoint(Ctx context) {
+            return context.writes.size();
+        }
+
+        @Override
+        public void rollbackToSavepoint(Ctx context, Object savepoint) {
+            context.writes.subList((Integer) savepoint, context.writes.size()).clear();
+        }
+
+        @Override
+        public void releaseSavepoint(Ctx context, Object savepoint) {
+
+        }
+    }
+
+    class CustomException extends RuntimeException {
+
+    }
+}
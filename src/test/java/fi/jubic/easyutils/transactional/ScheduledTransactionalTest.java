@@ -0,0 +1,285 @@
+package fi.jubic.easyutils.transactional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScheduledTransactionalTest {
+    private ExecutorService executor;
+    private RecordingProvider provider;
+
+    @BeforeEach
+    void beforeEach() {
+        this.executor = Executors.newFixedThreadPool(10);
+        this.provider = new RecordingProvider();
+    }
+
+    @AfterEach
+    void afterEach() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldPassSchedulingClassInHints() {
+        Transactional.of(ctx -> 1, provider)
+                .scheduledAs("batch")
+                .map(value -> value + 1)
+                .get();
+        Transactional.of(ctx -> 1, provider).get();
+
+        assertEquals("batch", provider.hints.get(0).schedulingClass().orElse(null));
+        assertFalse(provider.hints.get(1).schedulingClass().isPresent());
+    }
+
+    @Test
+    void shouldAdmitClassesInProportionToWeights() {
+        SchedulingTransactionProvider<Ctx> scheduling = scheduling(
+                SchedulingPolicy.of(1).withWeight("interactive", 4)
+        );
+        CountDownLatch release = blockSlot(scheduling);
+
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        enqueue(scheduling, "batch", 4, futures);
+        enqueue(scheduling, "interactive", 4, futures);
+        release.countDown();
+        futures.forEach(CompletableFuture::join);
+
+        assertEquals(
+                List.of(
+                        "default",
+                        "interactive",
+                        "interactive",
+                        "interactive",
+                        "batch",
+                        "interactive",
+                        "batch",
+                        "batch",
+                        "batch"
+                ),
+                provider.order
+        );
+    }
+
+    @Test
+    void shouldAdmitTransactionsQueuedPastMaxWaitFirst() {
+        SchedulingTransactionProvider<Ctx> scheduling = scheduling(
+                SchedulingPolicy.of(1)
+                        .withWeight("interactive", 1000)
+                        .withMaxWait(Duration.ZERO)
+        );
+        CountDownLatch release = blockSlot(scheduling);
+
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        enqueue(scheduling, "batch", 2, futures);
+        enqueue(scheduling, "interactive", 2, futures);
+        release.countDown();
+        futures.forEach(CompletableFuture::join);
+
+        assertEquals(
+                List.of("default", "batch", "batch", "interactive", "interactive"),
+                provider.order
+        );
+    }
+
+    @Test
+    void shouldRecordQueueWaitPerClass() {
+        SchedulingTransactionProvider<Ctx> scheduling = scheduling(SchedulingPolicy.of(1));
+        CountDownLatch release = blockSlot(scheduling);
+
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        enqueue(scheduling, "batch", 3, futures);
+        sleep(20);
+        release.countDown();
+        futures.forEach(CompletableFuture::join);
+
+        assertEquals(1L, scheduling.queueWait().count());
+        assertEquals(0L, scheduling.queueWait().max());
+        assertEquals(3L, scheduling.queueWait("batch").count());
+        assertTrue(scheduling.queueWait("batch").max() >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(0L, scheduling.queueWait("interactive").count());
+        assertEquals(0, scheduling.inFlight());
+    }
+
+    @Test
+    void shouldPassNestedTransactionsThrough() {
+        SchedulingTransactionProvider<Ctx> scheduling = scheduling(SchedulingPolicy.of(1));
+
+        String result = Transactional
+                .of(
+                        ctx -> Transactional.of(inner -> "nested", scheduling)
+                                .scheduledAs("batch")
+                                .get(),
+                        scheduling
+                )
+                .get();
+
+        assertEquals("nested", result);
+        assertEquals(0, scheduling.inFlight());
+    }
+
+    @Test
+    void shouldCancelQueuedTransactionOnInterrupt() throws InterruptedException {
+        SchedulingTransactionProvider<Ctx> scheduling = scheduling(SchedulingPolicy.of(1));
+        CountDownLatch release = blockSlot(scheduling);
+
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                transactional(scheduling, "batch").get();
+            }
+            catch (Throwable throwable) {
+                thrown.set(throwable);
+            }
+        });
+        thread.start();
+        await(() -> scheduling.queueDepth("batch") == 1);
+        thread.interrupt();
+        thread.join(10_000L);
+        release.countDown();
+
+        assertInstanceOf(CancellationException.class, thrown.get());
+        assertEquals(0, scheduling.queueDepth("batch"));
+        await(() -> scheduling.inFlight() == 0);
+    }
+
+    @Test
+    void shouldFailQueuedTransactionAtDeadline() {
+        SchedulingTransactionProvider<Ctx> scheduling = scheduling(SchedulingPolicy.of(1));
+        CountDownLatch release = blockSlot(scheduling);
+
+        long start = System.nanoTime();
+        assertThrows(
+                TransactionTimeoutException.class,
+                () -> transactional(scheduling, "batch").withTimeout(Duration.ofMillis(50)).get()
+        );
+        long waited = System.nanoTime() - start;
+        release.countDown();
+
+        assertTrue(waited >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(waited < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(0, scheduling.queueDepth("batch"));
+        assertEquals("batch", transactional(scheduling, "batch").get());
+        assertEquals(List.of("default", "batch"), provider.order);
+    }
+
+    private SchedulingTransactionProvider<Ctx> scheduling(SchedulingPolicy policy) {
+        return new SchedulingTransactionProvider<>(provider, policy);
+    }
+
+    /**
+     * Occupies the slots of the provider with a transaction of the default class until the
+     * returned latch is released.
+     */
+    private CountDownLatch blockSlot(SchedulingTransactionProvider<Ctx> scheduling) {
+        CountDownLatch release = new CountDownLatch(1);
+        Transactional
+                .of(
+                        ctx -> {
+                            provider.order.add("default");
+                            try {
+                                return release.await(10, TimeUnit.SECONDS);
+                            }
+                            catch (InterruptedException exception) {
+                                throw new IllegalStateException(exception);
+                            }
+                        },
+                        scheduling
+                )
+                .getAsync(executor);
+        await(() -> scheduling.inFlight() == 1);
+        return release;
+    }
+
+    private void enqueue(
+            SchedulingTransactionProvider<Ctx> scheduling,
+            String schedulingClass,
+            int count,
+            List<CompletableFuture<String>> futures
+    ) {
+        for (int i = 0; i < count; i++) {
+            int depth = i + 1;
+            futures.add(transactional(scheduling, schedulingClass).getAsync(executor));
+            await(() -> scheduling.queueDepth(schedulingClass) == depth);
+        }
+    }
+
+    private Transactional<String, Ctx> transactional(
+            SchedulingTransactionProvider<Ctx> scheduling,
+            String schedulingClass
+    ) {
+        return Transactional
+                .of(
+                        ctx -> {
+                            provider.order.add(schedulingClass);
+                            return schedulingClass;
+                        },
+                        scheduling
+                )
+                .scheduledAs(schedulingClass);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) throw new IllegalStateException("Timed out");
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    static class Ctx {
+
+    }
+
+    static class RecordingProvider implements TransactionProvider<Ctx> {
+        private final Ctx ctx = new Ctx();
+        private final List<TransactionHints> hints = Collections.synchronizedList(
+                new ArrayList<>()
+        );
+        private final List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public <T> T runWithTransaction(Function<Ctx, T> procedure) {
+            return procedure.apply(ctx);
+        }
+
+        @Override
+        public <T> T runWithTransaction(Function<Ctx, T> procedure, TransactionHints hints) {
+            this.hints.add(hints);
+            return procedure.apply(ctx);
+        }
+
+        @Override
+        public <T> T runWithoutTransaction(Function<Ctx, T> procedure) {
+            return procedure.apply(ctx);
+        }
+    }
+}
@@ -3,13 +3,27 @@ package fi.jubic.easyutils.transactional;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -169,6 +183,346 @@ class ThreadContextTransactionalTest {
         verify(provider, times(1)).rollback();
     }
 
+    @Test
+    void shouldNotOverflowStackOnLongChains() {
+        Transactional<Integer, Void> transactional = Transactional.of(() -> 0, provider);
+        for (int i = 0; i < 100_000; i++) {
+            transactional = transactional
+                    .flatMap(value -> Transactional.of(() -> value + 1, provider));
+        }
+
+        assertEquals(Integer.valueOf(100_000), transactional.get());
+
+        verify(provider, times(1)).begin();
+        verify(provider, times(1)).commit();
+        verify(provider, never()).rollback();
+    }
+
+    @Test
+    void shouldRunAsyncTransactionOnSingleWorkerThread() throws Exception {
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        ThreadContextTransactionProvider recordingProvider = new ThreadContextTransactionProvider() {
+            @Override
+            public void begin() {
+                threads.add(Thread.currentThread());
+            }
+
+            @Override
+            public void commit() {
+                threads.add(Thread.currentThread());
+            }
+
+            @Override
+            public void rollback() {
+                threads.add(Thread.currentThread());
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertEquals(
+                    Integer.valueOf(15),
+                    Transactional.of(() -> 10, recordingProvider)
+                            .map(value -> value + 5)
+                            .getAsync(executor)
+                            .get()
+            );
+            assertThrows(
+                    ExecutionException.class,
+                    () -> Transactional
+                            .of(
+                                    () -> {
+                                        throw new CustomException();
+                                    },
+                                    recordingProvider
+                            )
+                            .getAsync(executor)
+                            .get()
+            );
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        assertEquals(4, threads.size());
+        assertSame(threads.get(0), threads.get(1));
+        assertSame(threads.get(2), threads.get(3));
+        assertNotSame(Thread.currentThread(), threads.get(0));
+        assertNotSame(Thread.currentThread(), threads.get(2));
+    }
+
+    @Test
+    void shouldCompleteExceptionallyIfRollbackThrows() {
+        doThrow(new IllegalStateException()).when(provider).rollback();
+
+        CompletableFuture<Integer> future = Transactional
+                .<Integer>of(
+                        () -> {
+                            throw new CustomException();
+                        },
+                        provider
+                )
+                .getAsync(Runnable::run);
+
+        ExecutionException exception = assertThrows(ExecutionException.class, future::get);
+        assertEquals(IllegalStateException.class, exception.getCause().getClass());
+        verify(provider, times(1)).begin();
+        verify(provider, never()).commit();
+        verify(provider, times(1)).rollback();
+    }
+
+    @Test
+    void shouldRunOnVirtualThreadWhenSupported() throws Exception {
+        assumeTrue(VirtualThreads.isSupported());
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+
+        assertEquals(
+                Integer.valueOf(10),
+                Transactional.of(() -> 10, provider)
+                        .peek(value -> threads.add(Thread.currentThread()))
+                        .getAsync(VirtualThreads.executor())
+                        .get()
+        );
+
+        assertEquals(1, threads.size());
+        assertEquals(true, Thread.class.getMethod("isVirtual").invoke(threads.get(0)));
+        verify(provider, times(1)).begin();
+        verify(provider, times(1)).commit();
+    }
+
+    @Test
+    void shouldRejectVirtualThreadsWhenNotSupported() {
+        assumeFalse(VirtualThreads.isSupported());
+
+        assertThrows(UnsupportedOperationException.class, VirtualThreads::executor);
+    }
+
+    @Test
+    void shouldJoinActiveTransactionByDefault() {
+        EventProvider events = new EventProvider();
+
+        assertEquals(
+                Integer.valueOf(15),
+                Transactional.of(() -> 10, events)
+                        .map(value -> value + Transactional.of(() -> 5, events).get())
+                        .get()
+        );
+
+        assertEquals(Arrays.asList("begin 1", "commit 1"), events.events);
+    }
+
+    @Test
+    void shouldRollbackJoinedTransactionIfJoinedProcedureThrows() {
+        EventProvider events = new EventProvider();
+
+        assertThrows(
+                IllegalStateException.class,
+                () -> Transactional
+                        .of(
+                                () -> {
+                                    try {
+                                        Transactional
+                                                .of(
+                                                        () -> {
+                                                            throw new CustomException();
+                                                        },
+                                                        events
+                                                )
+                                                .get();
+                                    }
+                                    catch (CustomException ignored) {
+                                        // Ignored so that the outer procedure completes.
+                                    }
+                                    return 10;
+                                },
+                                events
+                        )
+                        .get()
+        );
+
+        assertEquals(Arrays.asList("begin 1", "rollback 1"), events.events);
+    }
+
+    @Test
+    void shouldRunCallbacksOfJoinedProcedureAfterJoinedTransactionCommits() {
+        EventProvider events = new EventProvider();
+
+        Transactional
+                .of(
+                        () -> Transactional.of(() -> 5, events)
+                                .onCommit(value -> events.events.add("joined committed"))
+                                .get(),
+                        events
+                )
+                .get();
+
+        assertEquals(Arrays.asList("begin 1", "commit 1", "joined committed"), events.events);
+    }
+
+    @Test
+    void shouldNotCacheResultReadInJoinedTransaction() {
+        EventProvider events = new EventProvider();
+        ResultCache cache = new ResultCache(CachePolicy.maximumSize(10));
+        int[] balance = new int[1];
+        Transactional<Integer, Void> cachedBalance = Transactional.of(() -> balance[0], events)
+                .cached(cache, "balance");
+
+        assertThrows(
+                CustomException.class,
+                () -> Transactional
+                        .of(
+                                () -> {
+                                    balance[0] = 100;
+                                    assertEquals(Integer.valueOf(100), cachedBalance.get());
+                                    throw new CustomException();
+                                },
+                                events
+                        )
+                        .get()
+        );
+        // The rollback discards the uncommitted write.
+        balance[0] = 0;
+
+        assertEquals(Integer.valueOf(0), cachedBalance.get());
+        assertEquals(
+                Arrays.asList("begin 1", "rollback 1", "begin 2", "commit 2"),
+                events.events
+        );
+    }
+
+    @Test
+    void shouldUseListenerOfProviderWithPropagation() {
+        List<String> reported = new ArrayList<>();
+        EventProvider events = new EventProvider() {
+            @Override
+            public TransactionListener transactionListener() {
+                return new TransactionListener() {
+                    @Override
+                    public void onBegin(long nanoTime) {
+                        reported.add("begin");
+                    }
+                };
+            }
+        };
+        ThreadContextTransactionProvider requiresNew = events
+                .withPropagation(Propagation.REQUIRES_NEW);
+
+        Transactional.of(() -> 5, requiresNew).get();
+
+        assertEquals(Collections.singletonList("begin"), reported);
+        assertEquals(Arrays.asList("begin 1", "commit 1"), events.events);
+    }
+
+    @Test
+    void shouldSuspendActiveTransactionWhenNewIsRequired() {
+        EventProvider events = new EventProvider();
+        ThreadContextTransactionProvider requiresNew = events
+                .withPropagation(Propagation.REQUIRES_NEW);
+
+        Transactional
+                .of(
+                        () -> {
+                            Transactional.of(() -> 5, requiresNew).get();
+                            return Transactional.of(() -> 10, events).get();
+                        },
+                        events
+                )
+                .get();
+
+        assertEquals(
+                Arrays.asList(
+                        "begin 1",
+                        "suspend 1",
+                        "begin 2",
+                        "commit 2",
+                        "resume 1",
+                        "commit 1"
+                ),
+                events.events
+        );
+    }
+
+    @Test
+    void shouldResumeSuspendedTransactionIfNewTransactionThrows() {
+        EventProvider events = new EventProvider();
+        ThreadContextTransactionProvider requiresNew = events
+                .withPropagation(Propagation.REQUIRES_NEW);
+
+        Transactional
+                .of(
+                        () -> {
+                            assertThrows(
+                                    CustomException.class,
+                                    () -> Transactional
+                                            .of(
+                                                    () -> {
+                                                        throw new CustomException();
+                                                    },
+                                                    requiresNew
+                                            )
+                                            .get()
+                            );
+                            return 10;
+                        },
+                        events
+                )
+                .get();
+
+        assertEquals(
+                Arrays.asList(
+                        "begin 1",
+                        "suspend 1",
+                        "begin 2",
+                        "rollback 2",
+                        "resume 1",
+                        "commit 1"
+                ),
+                events.events
+        );
+    }
+
+    @Test
+    void shouldRunWithoutTransactionWhenSupportedAndNoneIsActive() {
+        EventProvider events = new EventProvider();
+        ThreadContextTransactionProvider supports = events.withPropagation(Propagation.SUPPORTS);
+
+        assertEquals(Integer.valueOf(10), Transactional.of(() -> 10, supports).get());
+        assertEquals(Collections.emptyList(), events.events);
+
+        Transactional
+                .of(() -> Transactional.of(() -> 10, supports).get(), events)
+                .get();
+        assertEquals(Arrays.asList("begin 1", "commit 1"), events.events);
+    }
+
+    @Test
+    void shouldNotJoinTransactionsOfOtherProviders() {
+        EventProvider first = new EventProvider();
+        EventProvider second = new EventProvider();
+
+        Transactional
+                .of(() -> Transactional.of(() -> 10, second).get(), first)
+                .get();
+
+        assertEquals(Arrays.asList("begin 1", "commit 1"), first.events);
+        assertEquals(Arrays.asList("begin 1", "commit 1"), second.events);
+    }
+
+    @Test
+    void shouldRejectRequiresNewWithoutSuspendSupport() {
+        ThreadContextTransactionProvider requiresNew = provider
+                .withPropagation(Propagation.REQUIRES_NEW);
+
+        assertThrows(
+                UnsupportedOperationException.class,
+                () -> Transactional
+                        .of(() -> Transactional.of(() -> 10, requiresNew).get(), provider)
+                        .get()
+        );
+
+        verify(provider, times(1)).begin();
+        verify(provider, times(1)).rollback();
+    }
+
     class TcProvider implements ThreadContextTransactionProvider {
         @Override
         public void begin() {
@@ -186,6 +540,40 @@ class ThreadContextTransactionalTest {
         }
     }
 
+    class EventProvider implements ThreadContextTransactionProvider {
+        private final List<String> events = new ArrayList<>();
+        private int transactions;
+        private int current;
+
+        @Override
+        public void begin() {
+            current = ++transactions;
+            events.add("begin " + current);
+        }
+
+        @Override
+        public void commit() {
+            events.add("commit " + current);
+        }
+
+        @Override
+        public void rollback() {
+            events.add("rollback " + current);
+        }
+
+        @Override
+        public Object suspend() {
+            events.add("suspend " + current);
+            return current;
+        }
+
+        @Override
+        public void resume(Object suspended) {
+            current = (Integer) suspended;
+            events.add("resume " + current);
+        }
+    }
+
     class CustomException extends RuntimeException {
 
     }
@@ -0,0 +1,230 @@
+package fi.jubic.easyutils.transactional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimeoutTransactionalTest {
+    private List<String> events;
+    private CpProvider provider;
+
+    @BeforeEach
+    void beforeEach() {
+        this.events = new ArrayList<>();
+        this.provider = new CpProvider(new Ctx(), events);
+    }
+
+    @Test
+    void shouldNotHaveDeadlineByDefault() {
+        Transactional.of(ctx -> 10, provider).get();
+
+        assertFalse(provider.hints.get(0).timeRemaining().isPresent());
+    }
+
+    @Test
+    void shouldPassRemainingTimeToProvider() {
+        assertEquals(
+                Integer.valueOf(11),
+                Transactional.of(ctx -> 10, provider)
+                        .withTimeout(Duration.ofSeconds(10))
+                        .map(value -> value + 1)
+                        .get()
+        );
+
+        Duration remaining = provider.hints.get(0).timeRemaining().orElseThrow(AssertionError::new);
+        assertTrue(remaining.compareTo(Duration.ofSeconds(10)) <= 0);
+        assertTrue(remaining.compareTo(Duration.ofSeconds(1)) > 0);
+    }
+
+    @Test
+    void shouldRollbackWhenDeadlineExpiresBetweenStages() {
+        assertThrows(
+                TransactionTimeoutException.class,
+                () -> Transactional.of(ctx -> 10, provider)
+                        .map(value -> {
+                            sleep(50);
+                            return value;
+                        })
+                        .map(value -> {
+                            events.add("map");
+                            return value;
+                        })
+                        .withTimeout(Duration.ofMillis(10))
+                        .get()
+        );
+
+        assertEquals(Arrays.asList("begin", "rollback"), events);
+    }
+
+    @Test
+    void shouldRollbackWhenLastStageEndsAfterDeadline() {
+        assertThrows(
+                TransactionTimeoutException.class,
+                () -> Transactional.of(
+                                ctx -> {
+                                    sleep(50);
+                                    return 10;
+                                },
+                                provider
+                        )
+                        .withTimeout(Duration.ofMillis(10))
+                        .get()
+        );
+
+        assertEquals(Arrays.asList("begin", "rollback"), events);
+    }
+
+    @Test
+    void shouldCheckDeadlineInCombinedTransactionals() {
+        Transactional<Integer, Ctx> slow = Transactional.of(
+                ctx -> {
+                    sleep(50);
+                    return 1;
+                },
+                provider
+        );
+        Transactional<Integer, Ctx> next = Transactional.of(ctx -> 2, provider)
+                .map(value -> value + 1)
+                .peek(value -> events.add("next"));
+
+        assertThrows(
+                TransactionTimeoutException.class,
+                () -> Transactional.all(slow, next)
+                        .withTimeout(Duration.ofMillis(10))
+                        .get()
+        );
+        assertThrows(
+                TransactionTimeoutException.class,
+                () -> Transactional.of(ctx -> 1, provider)
+                        .flatMap(value -> slow)
+                        .flatMap(value -> next)
+                        .withTimeout(Duration.ofMillis(10))
+                        .get()
+        );
+
+        assertEquals(Arrays.asList("begin", "rollback", "begin", "rollback"), events);
+    }
+
+    @Test
+    void shouldNotBeginAfterDeadline() {
+        assertThrows(
+                TransactionTimeoutException.class,
+                () -> Transactional
+                        .of(
+                                ctx -> {
+                                    throw new CustomException();
+                                },
+                                provider
+                        )
+                        .retry(RetryPolicy.of(exception -> exception instanceof CustomException)
+                                .withMaxAttempts(3)
+                                .withBackoff(Duration.ofMillis(50), Duration.ofMillis(50)))
+                        .withTimeout(Duration.ofMillis(10))
+                        .get()
+        );
+
+        assertEquals(Arrays.asList("begin", "rollback"), events);
+    }
+
+    @Test
+    void shouldApplyDeadlineToBypass() {
+        assertThrows(
+                TransactionTimeoutException.class,
+                () -> Transactional.of(
+                                ctx -> {
+                                    sleep(50);
+                                    return 10;
+                                },
+                                provider
+                        )
+                        .withTimeout(Duration.ofMillis(10))
+                        .bypass()
+        );
+
+        assertTrue(provider.hints.get(0).timeRemaining().isPresent());
+    }
+
+    @Test
+    void shouldRejectNonPositiveTimeout() {
+        Transactional<Integer, Ctx> transactional = Transactional.of(ctx -> 10, provider);
+
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> transactional.withTimeout(Duration.ZERO)
+        );
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> transactional.withTimeout(Duration.ofMillis(-1))
+        );
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    class Ctx {
+
+    }
+
+    class CpProvider implements TransactionProvider<Ctx> {
+        private final Ctx context;
+        private final List<String> events;
+        private final List<TransactionHints> hints = new ArrayList<>();
+
+        CpProvider(Ctx context, List<String> events) {
+            this.context = context;
+            this.events = events;
+        }
+
+        @Override
+        public <T> T runWithTransaction(Function<Ctx, T> procedure) {
+            events.add("begin");
+            T result;
+            try {
+                result = procedure.apply(context);
+            }
+            catch (RuntimeException exception) {
+                events.add("rollback");
+                throw exception;
+            }
+            events.add("commit");
+            return result;
+        }
+
+        @Override
+        public <T> T runWithoutTransaction(Function<Ctx, T> procedure) {
+            return procedure.apply(context);
+        }
+
+        @Override
+        public <T> T runWithTransaction(Function<Ctx, T> procedure, TransactionHints hints) {
+            this.hints.add(hints);
+            return runWithTransaction(procedure);
+        }
+
+        @Override
+        public <T> T runWithoutTransaction(Function<Ctx, T> procedure, TransactionHints hints) {
+            this.hints.add(hints);
+            return runWithoutTransaction(procedure);
+        }
+    }
+
+    class CustomException extends RuntimeException {
+
+    }
+}
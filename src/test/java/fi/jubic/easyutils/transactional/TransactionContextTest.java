@@ -0,0 +1,241 @@
+package fi.jubic.easyutils.transactional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class TransactionContextTest {
+    private ExecutorService executor;
+    private TlProvider provider;
+
+    @BeforeEach
+    void beforeEach() {
+        this.executor = Executors.newSingleThreadExecutor();
+        this.provider = new TlProvider();
+    }
+
+    @AfterEach
+    void afterEach() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldRunWrappedTaskWithinCapturedTransaction() {
+        Tx outer = Transactional
+                .of(
+                        () -> {
+                            Future<Tx> inWorker = executor.submit(
+                                    TransactionContext.capture().wrap(() -> provider.current())
+                            );
+                            Future<Tx> unwrapped = executor.submit(() -> provider.current());
+                            assertNull(join(unwrapped));
+                            assertSame(provider.current(), join(inWorker));
+                            return provider.current();
+                        },
+                        provider
+                )
+                .get();
+
+        assertEquals(1, provider.begins);
+        assertEquals(Collections.singletonList("commit"), outer.events);
+        assertNull(join(executor.submit(() -> provider.current())));
+    }
+
+    @Test
+    void shouldJoinCapturedTransactionFromWorkerThread() {
+        Tx outer = Transactional
+                .of(
+                        () -> {
+                            Executor propagating = TransactionContext.propagating(executor);
+                            Transactional<Boolean, Void> insert = Transactional.of(
+                                    () -> provider.current().add("insert"),
+                                    provider
+                            );
+                            CompletableFuture.supplyAsync(insert::get, propagating).join();
+                            return provider.current();
+                        },
+                        provider
+                )
+                .get();
+
+        assertEquals(1, provider.begins);
+        assertEquals(Arrays.asList("insert", "commit"), outer.events);
+    }
+
+    @Test
+    void shouldRollbackCapturedTransactionIfJoinedProcedureThrowsInWorker() {
+        List<Tx> transactions = new ArrayList<>();
+
+        try {
+            Transactional
+                    .of(
+                            () -> {
+                                transactions.add(provider.current());
+                                Runnable task = () -> Transactional
+                                        .of(
+                                                () -> {
+                                                    throw new CustomException();
+                                                },
+                                                provider
+                                        )
+                                        .get();
+                                try {
+                                    executor
+                                            .submit(TransactionContext.capture().wrap(task))
+                                            .get(10, TimeUnit.SECONDS);
+                                }
+                                catch (Exception ignored) {
+                                    // The outer procedure completes regardless.
+                                }
+                                return 10;
+                            },
+                            provider
+                    )
+                    .get();
+        }
+        catch (IllegalStateException ignored) {
+            // Thrown because the transaction was marked rollback-only.
+        }
+
+        assertEquals(Collections.singletonList("rollback"), transactions.get(0).events);
+    }
+
+    @Test
+    void shouldKeepTransactionWhenTaskRunsOnCapturingThread() {
+        Tx outer = Transactional
+                .of(
+                        () -> {
+                            TransactionContext.capture()
+                                    .wrap(() -> {
+                                        provider.current().add("inline");
+                                    })
+                                    .run();
+                            return provider.current();
+                        },
+                        provider
+                )
+                .get();
+
+        assertEquals(Arrays.asList("inline", "commit"), outer.events);
+    }
+
+    @Test
+    void shouldApplyWrappedFunctionInParallelStream() {
+        Tx outer = Transactional
+                .of(
+                        () -> {
+                            TransactionContext context = TransactionContext.capture();
+                            List<Tx> seen = IntStream.range(0, 64)
+                                    .parallel()
+                                    .boxed()
+                                    .map(context.wrap((Integer value) -> provider.current()))
+                                    .collect(Collectors.toList());
+                            seen.forEach(tx -> assertSame(provider.current(), tx));
+                            return provider.current();
+                        },
+                        provider
+                )
+                .get();
+
+        assertEquals(Collections.singletonList("commit"), outer.events);
+    }
+
+    @Test
+    void shouldRunCallbacksRegisteredInWorkerAfterCommit() {
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+        Transactional
+                .of(
+                        () -> {
+                            Runnable task = () -> Transactional.of(() -> 1, provider)
+                                    .onCommit(value -> events.add("committed"))
+                                    .get();
+                            join(executor.submit(TransactionContext.capture().wrap(task)));
+                            events.add("procedure");
+                            return 1;
+                        },
+                        provider
+                )
+                .onCommit(value -> events.add("outer committed"))
+                .get();
+
+        assertEquals(Arrays.asList("procedure", "committed", "outer committed"), events);
+    }
+
+    private static <T> T join(Future<T> future) {
+        try {
+            return future.get(10, TimeUnit.SECONDS);
+        }
+        catch (Exception exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    static class Tx {
+        private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+        boolean add(String event) {
+            return events.add(event);
+        }
+    }
+
+    class TlProvider implements ThreadContextTransactionProvider {
+        private final ThreadLocal<Tx> bound = new ThreadLocal<>();
+        private int begins;
+
+        Tx current() {
+            return bound.get();
+        }
+
+        @Override
+        public void begin() {
+            begins++;
+            bound.set(new Tx());
+        }
+
+        @Override
+        public void commit() {
+            bound.get().add("commit");
+            bound.remove();
+        }
+
+        @Override
+        public void rollback() {
+            bound.get().add("rollback");
+            bound.remove();
+        }
+
+        @Override
+        public Object suspend() {
+            Tx tx = bound.get();
+            bound.remove();
+            return tx;
+        }
+
+        @Override
+        public void resume(Object suspended) {
+            bound.set((Tx) suspended);
+        }
+    }
+
+    class CustomException extends RuntimeException {
+
+    }
+}
@@ -0,0 +1,272 @@
+package fi.jubic.easyutils.transactional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionListenerTest {
+    private RecordingListener listener;
+    private CpProvider provider;
+
+    @BeforeEach
+    void beforeEach() {
+        this.listener = new RecordingListener();
+        this.provider = new CpProvider(new Ctx(), null);
+    }
+
+    @Test
+    void shouldReportStagesInOrder() {
+        assertEquals(
+                Integer.valueOf(13),
+                Transactional.of(ctx -> 10, provider)
+                        .listen(listener)
+                        .map(value -> value + 1)
+                        .flatMap(value -> Transactional.of(ctx -> value, provider)
+                                .map(inner -> inner + 1)
+                        )
+                        .peek(value -> { })
+                        .map(value -> value + 1)
+                        .get()
+        );
+
+        assertEquals(
+                Arrays.asList(
+                        "begin",
+                        "start SOURCE 0", "end SOURCE 0",
+                        "start MAP 1", "end MAP 1",
+                        "start FLAT_MAP 2", "end FLAT_MAP 2",
+                        "start SOURCE 0", "end SOURCE 0",
+                        "start MAP 1", "end MAP 1",
+                        "start PEEK 3", "end PEEK 3",
+                        "start MAP 4", "end MAP 4",
+                        "commit"
+                ),
+                listener.events
+        );
+    }
+
+    @Test
+    void shouldReportRollback() {
+        assertThrows(
+                CustomException.class,
+                () -> Transactional.of(ctx -> 10, provider)
+                        .map(value -> {
+                            throw new CustomException();
+                        })
+                        .listen(listener)
+                        .get()
+        );
+
+        assertEquals(
+                Arrays.asList(
+                        "begin",
+                        "start SOURCE 0", "end SOURCE 0",
+                        "start MAP 1",
+                        "rollback CustomException"
+                ),
+                listener.events
+        );
+    }
+
+    @Test
+    void shouldUseListenerOfProvider() {
+        CpProvider listenedProvider = new CpProvider(new Ctx(), listener);
+
+        Transactional.of(ctx -> 10, listenedProvider).get();
+
+        assertEquals(
+                Arrays.asList("begin", "start SOURCE 0", "end SOURCE 0", "commit"),
+                listener.events
+        );
+    }
+
+    @Test
+    void shouldUseListenerOfBatchedProvider() {
+        BatchingTransactionProvider<Ctx> batching = new BatchingTransactionProvider<>(
+                new CpProvider(new Ctx(), listener),
+                1,
+                Duration.ZERO
+        );
+
+        Transactional.of(ctx -> 10, batching).get();
+
+        assertEquals(
+                Arrays.asList("begin", "start SOURCE 0", "end SOURCE 0", "commit"),
+                listener.events
+        );
+    }
+
+    @Test
+    void shouldUseListenerOfRoutedProvider() {
+        RecordingListener replicaListener = new RecordingListener();
+        RoutingTransactionProvider<Ctx> routing = new RoutingTransactionProvider<>(
+                new CpProvider(new Ctx(), listener),
+                new CpProvider(new Ctx(), replicaListener)
+        );
+
+        Transactional.of(ctx -> 10, routing).readOnly().get();
+
+        assertEquals(
+                Arrays.asList("begin", "start SOURCE 0", "end SOURCE 0", "commit"),
+                listener.events
+        );
+        assertEquals(0, replicaListener.events.size());
+        RoutingTransactionProvider<Ctx> unlistenedPrimary = new RoutingTransactionProvider<>(
+                provider,
+                new CpProvider(new Ctx(), replicaListener)
+        );
+        assertEquals(replicaListener, unlistenedPrimary.transactionListener());
+    }
+
+    @Test
+    void shouldNotReportBypass() {
+        Transactional.of(ctx -> 10, provider).listen(listener).bypass();
+
+        assertEquals(0, listener.events.size());
+    }
+
+    @Test
+    void shouldRecordHistograms() {
+        HistogramTransactionListener histograms = new HistogramTransactionListener();
+
+        Transactional.of(ctx -> 10, provider)
+                .map(value -> value + 1)
+                .map(value -> value + 1)
+                .listen(histograms)
+                .get();
+        assertThrows(
+                CustomException.class,
+                () -> Transactional.of(ctx -> 10, provider)
+                        .map(value -> {
+                            throw new CustomException();
+                        })
+                        .listen(histograms)
+                        .get()
+        );
+
+        assertEquals(2, histograms.begin().count());
+        assertEquals(2, histograms.stage(StageKind.SOURCE).count());
+        assertEquals(2, histograms.stage(StageKind.MAP).count());
+        assertEquals(1, histograms.commit().count());
+        assertEquals(1, histograms.rollback().count());
+        assertEquals(2, histograms.total().count());
+        assertTrue(histograms.total().max() >= histograms.total().percentile(50.0));
+    }
+
+    @Test
+    void shouldEstimatePercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(1000, histogram.count());
+        assertEquals(500500, histogram.sum());
+        assertEquals(1000, histogram.max());
+        assertEquals(1, histogram.percentile(0.0));
+        assertEquals(1000, histogram.percentile(100.0));
+
+        long median = histogram.percentile(50.0);
+        assertTrue(median >= 500 && median <= 500 * 1.125, "median " + median);
+        long p99 = histogram.percentile(99.0);
+        assertTrue(p99 >= 990 && p99 <= 1000, "p99 " + p99);
+        assertEquals(7, histogram.countAtOrBelow(7));
+        assertEquals(1000, histogram.countAtOrBelow(Long.MAX_VALUE));
+    }
+
+    @Test
+    void shouldMapValuesToBucketsContainingThem() {
+        long[] values = { 0, 1, 7, 8, 9, 15, 16, 17, 1000, 123_456_789, Long.MAX_VALUE };
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(LatencyHistogram.upperBound(bucket) >= value);
+            assertTrue(bucket == 0 || LatencyHistogram.upperBound(bucket - 1) < value);
+        }
+    }
+
+    class Ctx {
+
+    }
+
+    class CpProvider implements TransactionProvider<Ctx> {
+        private final Ctx context;
+        private final TransactionListener listener;
+
+        CpProvider(Ctx context, TransactionListener listener) {
+            this.context = context;
+            this.listener = listener;
+        }
+
+        @Override
+        public <T> T runWithTransaction(Function<Ctx, T> procedure) {
+            return procedure.apply(context);
+        }
+
+        @Override
+        public <T> T runWithoutTransaction(Function<Ctx, T> procedure) {
+            return procedure.apply(context);
+        }
+
+        @Override
+        public TransactionListener transactionListener() {
+            return listener;
+        }
+    }
+
+    class RecordingListener implements TransactionListener {
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onBegin(long nanoTime) {
+            events.add("begin");
+        }
+
+        @Override
+        public void onStageStart(StageKind kind, int index, long nanoTime) {
+            events.add("start " + kind + " " + index);
+        }
+
+        @Override
+        public void onStageEnd(StageKind kind, int index, long startNanoTime, long nanoTime) {
+            assertTrue(nanoTime >= startNanoTime);
+            events.add("end " + kind + " " + index);
+        }
+
+        @Override
+        public void onCommit(
+                long beginNanoTime,
+                long procedureStartNanoTime,
+                long procedureEndNanoTime,
+                long nanoTime
+        ) {
+            assertTrue(beginNanoTime <= procedureStartNanoTime);
+            assertTrue(procedureStartNanoTime <= procedureEndNanoTime);
+            assertTrue(procedureEndNanoTime <= nanoTime);
+            events.add("commit");
+        }
+
+        @Override
+        public void onRollback(
+                RuntimeException failure,
+                long beginNanoTime,
+                long procedureStartNanoTime,
+                long procedureEndNanoTime,
+                long nanoTime
+        ) {
+            events.add("rollback " + failure.getClass().getSimpleName());
+        }
+    }
+
+    class CustomException extends RuntimeException {
+
+    }
+}
@@ -0,0 +1,334 @@
+package fi.jubic.easyutils.transactional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionalSinkTest {
+    private ExecutorService executor;
+    private List<List<Integer>> committed;
+    private CpProvider provider;
+
+    @BeforeEach
+    void beforeEach() {
+        this.executor = Executors.newCachedThreadPool();
+        this.committed = Collections.synchronizedList(new ArrayList<>());
+        this.provider = new CpProvider(new Ctx());
+    }
+
+    @AfterEach
+    void afterEach() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldCommitFullChunksAndRemainderOnClose() {
+        TransactionalSink<Integer, Ctx> sink = TransactionalSink
+                .of(this::insert)
+                .withChunkSize(3);
+
+        ChunkWriter<Integer> writer = sink.open(executor);
+        for (int i = 0; i < 8; i++) {
+            writer.accept(i);
+        }
+        writer.close();
+
+        assertEquals(
+                Arrays.asList(
+                        Arrays.asList(0, 1, 2),
+                        Arrays.asList(3, 4, 5),
+                        Arrays.asList(6, 7)
+                ),
+                committed
+        );
+        assertEquals(8, writer.committedElements());
+        assertEquals(3, writer.committedChunks());
+        assertEquals(3, provider.transactions.get());
+    }
+
+    @Test
+    void shouldCommitPartialChunkAfterMaxDelay() throws InterruptedException {
+        TransactionalSink<Integer, Ctx> sink = TransactionalSink
+                .of(this::insert)
+                .withChunkSize(100)
+                .withMaxDelay(Duration.ofMillis(20));
+
+        try (ChunkWriter<Integer> writer = sink.open(executor)) {
+            writer.accept(1);
+            writer.accept(2);
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (committed.isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(Collections.singletonList(Arrays.asList(1, 2)), committed);
+        }
+    }
+
+    @Test
+    void shouldBlockProducersWhileBufferIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        TransactionalSink<Integer, Ctx> sink = TransactionalSink
+                .of((List<Integer> chunk) -> Transactional.of(
+                        ctx -> {
+                            awaitUninterruptibly(release);
+                            return committed.add(chunk);
+                        },
+                        provider
+                ))
+                .withChunkSize(2)
+                .withBufferSize(2);
+
+        ChunkWriter<Integer> writer = sink.open(executor);
+        AtomicInteger accepted = new AtomicInteger();
+        Future<?> producer = executor.submit(() -> {
+            for (int i = 0; i < 10; i++) {
+                writer.accept(i);
+                accepted.incrementAndGet();
+            }
+        });
+
+        Thread.sleep(50);
+        assertFalse(producer.isDone());
+        assertEquals(4, accepted.get());
+
+        release.countDown();
+        producer.get(10, TimeUnit.SECONDS);
+        writer.close();
+        assertEquals(10, writer.committedElements());
+    }
+
+    @Test
+    void shouldKeepBufferSizeWhenChunkSizeChanges() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        TransactionalSink<Integer, Ctx> sink = TransactionalSink
+                .of((List<Integer> chunk) -> Transactional.of(
+                        ctx -> {
+                            awaitUninterruptibly(release);
+                            return committed.add(chunk);
+                        },
+                        provider
+                ))
+                .withChunkSize(2)
+                .withBufferSize(6)
+                .withChunkSize(1);
+
+        ChunkWriter<Integer> writer = sink.open(executor);
+        AtomicInteger accepted = new AtomicInteger();
+        Future<?> producer = executor.submit(() -> {
+            for (int i = 0; i < 10; i++) {
+                writer.accept(i);
+                accepted.incrementAndGet();
+            }
+        });
+
+        Thread.sleep(50);
+        assertEquals(7, accepted.get());
+
+        release.countDown();
+        producer.get(10, TimeUnit.SECONDS);
+        writer.close();
+        assertEquals(10, writer.committedElements());
+    }
+
+    @Test
+    void shouldCommitElementsLeftInBufferAfterTheirOwnMaxDelay() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> commitTimes = Collections.synchronizedList(new ArrayList<>());
+        TransactionalSink<Integer, Ctx> sink = TransactionalSink
+                .of((List<Integer> chunk) -> Transactional.of(
+                        ctx -> {
+                            if (chunk.contains(0)) awaitUninterruptibly(release);
+                            commitTimes.add(System.nanoTime());
+                            return committed.add(chunk);
+                        },
+                        provider
+                ))
+                .withChunkSize(2)
+                .withBufferSize(4)
+                .withMaxDelay(Duration.ofMillis(150));
+
+        try (ChunkWriter<Integer> writer = sink.open(executor)) {
+            writer.accept(0);
+            writer.accept(1);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (provider.transactions.get() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            for (int i = 2; i < 5; i++) {
+                writer.accept(i);
+            }
+            Thread.sleep(200);
+            long released = System.nanoTime();
+            release.countDown();
+
+            while (committed.size() < 3 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(Collections.singletonList(4), committed.get(2));
+            assertTrue(commitTimes.get(2) - released < TimeUnit.MILLISECONDS.toNanos(100));
+        }
+    }
+
+    @Test
+    void shouldRollbackChunkAndRejectElementsAfterFailure() {
+        CustomException exception = new CustomException();
+        List<String> rollbacks = Collections.synchronizedList(new ArrayList<>());
+        TransactionalSink<Integer, Ctx> sink = TransactionalSink
+                .of((List<Integer> chunk) -> Transactional.of(
+                        ctx -> {
+                            if (chunk.contains(3)) throw exception;
+                            return committed.add(chunk);
+                        },
+                        provider
+                ))
+                .withChunkSize(2)
+                .withListener(new ChunkListener() {
+                    @Override
+                    public void onRollback(
+                            int elements,
+                            long latencyNanos,
+                            RuntimeException failure
+                    ) {
+                        rollbacks.add(elements + " " + failure.getClass().getSimpleName());
+                    }
+                });
+
+        ChunkWriter<Integer> writer = sink.open(executor);
+        for (int i = 0; i < 4; i++) {
+            writer.accept(i);
+        }
+
+        assertSame(exception, assertThrows(CustomException.class, writer::close));
+        assertSame(exception, assertThrows(CustomException.class, () -> writer.accept(4)));
+        assertEquals(Collections.singletonList(Arrays.asList(0, 1)), committed);
+        assertEquals(Collections.singletonList("2 CustomException"), rollbacks);
+        assertEquals(2, writer.committedElements());
+    }
+
+    @Test
+    void shouldRejectElementsAfterClose() {
+        ChunkWriter<Integer> writer = TransactionalSink.of(this::insert).open(executor);
+        writer.close();
+
+        assertThrows(IllegalStateException.class, () -> writer.accept(1));
+    }
+
+    @Test
+    void shouldReportChunksToListener() {
+        List<Integer> sizes = Collections.synchronizedList(new ArrayList<>());
+        TransactionalSink<Integer, Ctx> sink = TransactionalSink
+                .of(this::insert)
+                .withChunkSize(4)
+                .withListener(new ChunkListener() {
+                    @Override
+                    public void onCommit(int elements, long latencyNanos) {
+                        assertTrue(latencyNanos >= 0);
+                        sizes.add(elements);
+                    }
+                });
+
+        try (ChunkWriter<Integer> writer = sink.open(executor)) {
+            for (int i = 0; i < 10; i++) {
+                writer.accept(i);
+            }
+        }
+
+        assertEquals(Arrays.asList(4, 4, 2), sizes);
+    }
+
+    @Test
+    void shouldShrinkChunksTowardTargetLatency() {
+        TransactionalSink<Integer, Ctx> sink = TransactionalSink
+                .of((List<Integer> chunk) -> Transactional.of(
+                        ctx -> {
+                            sleepUninterruptibly(chunk.size());
+                            return committed.add(chunk);
+                        },
+                        provider
+                ))
+                .withChunkSize(64)
+                .withTargetLatency(Duration.ofMillis(8));
+
+        ChunkWriter<Integer> writer = sink.open(executor);
+        for (int i = 0; i < 200; i++) {
+            writer.accept(i);
+        }
+        int adapted = writer.chunkSize();
+        writer.close();
+
+        assertEquals(64, committed.get(0).size());
+        assertTrue(adapted < 64, "chunk size " + adapted);
+        assertTrue(writer.chunkSize() <= 16, "chunk size " + writer.chunkSize());
+        assertEquals(200, writer.committedElements());
+    }
+
+    private Transactional<Boolean, Ctx> insert(List<Integer> chunk) {
+        return Transactional.of(ctx -> committed.add(chunk), provider);
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleepUninterruptibly(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    class Ctx {
+
+    }
+
+    class CpProvider implements TransactionProvider<Ctx> {
+        private final Ctx context;
+        private final AtomicInteger transactions = new AtomicInteger();
+
+        CpProvider(Ctx context) {
+            this.context = context;
+        }
+
+        @Override
+        public <T> T runWithTransaction(Function<Ctx, T> procedure) {
+            transactions.incrementAndGet();
+            return procedure.apply(context);
+        }
+
+        @Override
+        public <T> T runWithoutTransaction(Function<Ctx, T> procedure) {
+            return procedure.apply(context);
+        }
+    }
+
+    class CustomException extends RuntimeException {
+
+    }
+}
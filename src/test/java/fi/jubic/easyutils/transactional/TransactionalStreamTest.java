@@ -0,0 +1,277 @@
+package fi.jubic.easyutils.transactional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionalStreamTest {
+    private ExecutorService executor;
+    private List<String> events;
+    private CpProvider provider;
+
+    @BeforeEach
+    void beforeEach() {
+        this.executor = Executors.newCachedThreadPool();
+        this.events = Collections.synchronizedList(new ArrayList<>());
+        this.provider = new CpProvider(new Ctx(), events);
+    }
+
+    @AfterEach
+    void afterEach() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldStreamElementsAndCommit() {
+        AtomicInteger produced = new AtomicInteger();
+        AtomicInteger maxAhead = new AtomicInteger();
+        AtomicInteger consumed = new AtomicInteger();
+        TransactionalStream<Integer, Ctx> rows = TransactionalStream
+                .of(
+                        ctx -> IntStream.range(0, 1000)
+                                .peek(value -> {
+                                    int ahead = produced.incrementAndGet() - consumed.get();
+                                    maxAhead.accumulateAndGet(ahead, Math::max);
+                                })
+                                .boxed()
+                                .onClose(() -> events.add("source closed")),
+                        provider
+                )
+                .withBufferSize(8);
+
+        List<Integer> elements;
+        try (Stream<Integer> stream = rows.stream(executor)) {
+            elements = stream
+                    .peek(value -> consumed.incrementAndGet())
+                    .collect(Collectors.toList());
+        }
+
+        assertEquals(1000, elements.size());
+        assertEquals(Integer.valueOf(999), elements.get(999));
+        assertEquals(Arrays.asList("begin", "source closed", "commit"), events);
+        assertTrue(maxAhead.get() <= 8 + 2, "read ahead " + maxAhead.get());
+    }
+
+    @Test
+    void shouldCommitWhenClosedEarly() {
+        TransactionalStream<Integer, Ctx> stream = TransactionalStream.of(
+                ctx -> IntStream.range(0, 1000).boxed(),
+                provider
+        );
+
+        try (Stream<Integer> elements = stream.withBufferSize(4).stream(executor)) {
+            Iterator<Integer> iterator = elements.iterator();
+            assertEquals(Integer.valueOf(0), iterator.next());
+            assertEquals(Integer.valueOf(1), iterator.next());
+        }
+
+        assertEquals(Arrays.asList("begin", "commit"), events);
+    }
+
+    @Test
+    void shouldRollbackAndRethrowWhenSourceFails() {
+        CustomException exception = new CustomException();
+        TransactionalStream<Integer, Ctx> stream = TransactionalStream.of(
+                ctx -> IntStream.range(0, 10)
+                        .boxed()
+                        .map(value -> {
+                            if (value == 5) throw exception;
+                            return value;
+                        }),
+                provider
+        );
+
+        List<Integer> consumed = new ArrayList<>();
+        try (Stream<Integer> elements = stream.stream(executor)) {
+            assertSame(
+                    exception,
+                    assertThrows(CustomException.class, () -> elements.forEach(consumed::add))
+            );
+        }
+        catch (CustomException closeException) {
+            assertSame(exception, closeException);
+        }
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), consumed);
+        assertEquals(Arrays.asList("begin", "rollback"), events);
+    }
+
+    @Test
+    void shouldPublishRequestedElements() throws InterruptedException {
+        TransactionalStream<Integer, Ctx> stream = TransactionalStream.of(
+                ctx -> IntStream.range(0, 5).boxed(),
+                provider
+        );
+        RecordingSubscriber subscriber = new RecordingSubscriber(2);
+
+        stream.publisher(executor).subscribe(subscriber);
+
+        assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("0", "1", "2", "3", "4", "complete"), subscriber.signals);
+        assertEquals(Arrays.asList("begin", "commit"), events);
+    }
+
+    @Test
+    void shouldCommitWhenSubscriptionIsCancelled() throws InterruptedException {
+        TransactionalStream<Integer, Ctx> stream = TransactionalStream.of(
+                ctx -> IntStream.range(0, 1000).boxed(),
+                provider
+        );
+        RecordingSubscriber subscriber = new RecordingSubscriber(1) {
+            @Override
+            public void onNext(Integer item) {
+                super.onNext(item);
+                if (item == 2) {
+                    subscription.cancel();
+                    done.countDown();
+                }
+            }
+        };
+
+        stream.publisher(executor).subscribe(subscriber);
+
+        assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (events.size() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(Arrays.asList("0", "1", "2"), subscriber.signals);
+        assertEquals(Arrays.asList("begin", "commit"), events);
+    }
+
+    @Test
+    void shouldPublishFailureAfterRollback() throws InterruptedException {
+        TransactionalStream<Integer, Ctx> stream = TransactionalStream.of(
+                ctx -> Stream.of(1).map(value -> {
+                    throw new CustomException();
+                }),
+                provider
+        );
+        RecordingSubscriber subscriber = new RecordingSubscriber(10);
+
+        stream.publisher(executor).subscribe(subscriber);
+
+        assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("error CustomException"), subscriber.signals);
+        assertEquals(Arrays.asList("begin", "rollback"), events);
+    }
+
+    @Test
+    void shouldPublishErrorThrownBySource() throws InterruptedException {
+        TransactionalStream<Integer, Ctx> stream = TransactionalStream.of(
+                ctx -> Stream.of(1).map(value -> {
+                    throw new CustomError();
+                }),
+                provider
+        );
+        RecordingSubscriber subscriber = new RecordingSubscriber(10);
+
+        stream.publisher(executor).subscribe(subscriber);
+
+        assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("error CustomError"), subscriber.signals);
+    }
+
+    class Ctx {
+
+    }
+
+    class CpProvider implements TransactionProvider<Ctx> {
+        private final Ctx context;
+        private final List<String> events;
+
+        CpProvider(Ctx context, List<String> events) {
+            this.context = context;
+            this.events = events;
+        }
+
+        @Override
+        public <T> T runWithTransaction(Function<Ctx, T> procedure) {
+            events.add("begin");
+            T result;
+            try {
+                result = procedure.apply(context);
+            }
+            catch (RuntimeException exception) {
+                events.add("rollback");
+                throw exception;
+            }
+            events.add("commit");
+            return result;
+        }
+
+        @Override
+        public <T> T runWithoutTransaction(Function<Ctx, T> procedure) {
+            return procedure.apply(context);
+        }
+    }
+
+    class RecordingSubscriber implements Flow.Subscriber<Integer> {
+        protected final List<String> signals = Collections.synchronizedList(new ArrayList<>());
+        protected final CountDownLatch done = new CountDownLatch(1);
+        private final int batch;
+        private int outstanding;
+        protected Flow.Subscription subscription;
+
+        RecordingSubscriber(int batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            this.outstanding = batch;
+            subscription.request(batch);
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            signals.add(String.valueOf(item));
+            if (--outstanding == 0) {
+                outstanding = batch;
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            signals.add("error " + throwable.getClass().getSimpleName());
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            signals.add("complete");
+            done.countDown();
+        }
+    }
+
+    class CustomException extends RuntimeException {
+
+    }
+
+    class CustomError extends Error {
+
+    }
+}
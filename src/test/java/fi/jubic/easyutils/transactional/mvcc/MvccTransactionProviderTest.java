@@ -0,0 +1,240 @@
+package fi.jubic.easyutils.transactional.mvcc;
+
+import fi.jubic.easyutils.transactional.RetryPolicy;
+import fi.jubic.easyutils.transactional.Transactional;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MvccTransactionProviderTest {
+    private MvccTransactionProvider<String, Integer> store;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void beforeEach() {
+        this.store = new MvccTransactionProvider<>();
+        this.executor = Executors.newSingleThreadExecutor();
+        put("first", 50);
+        put("second", 50);
+    }
+
+    @AfterEach
+    void afterEach() {
+        executor.shutdown();
+    }
+
+    @Test
+    void shouldReadSnapshotFromWhenTransactionBegan() {
+        int sum = Transactional
+                .of(
+                        ctx -> {
+                            int first = ctx.get("first");
+                            join(executor.submit(() -> store.runWithTransaction(other -> {
+                                other.put("first", 40);
+                                other.put("second", 60);
+                                return null;
+                            })));
+                            return first + ctx.get("second");
+                        },
+                        store
+                )
+                .get();
+
+        assertEquals(100, sum);
+
+        assertEquals(Integer.valueOf(60), get("second"));
+    }
+
+    @Test
+    void shouldFailLaterCommitterOfSameKey() {
+        assertThrows(
+                WriteConflictException.class,
+                () -> Transactional
+                        .of(
+                                ctx -> {
+                                    ctx.put("first", ctx.get("first") + 1);
+                                    join(executor.submit(() -> put("first", 100)));
+                                    return null;
+                                },
+                                store
+                        )
+                        .get()
+        );
+
+        assertEquals(Integer.valueOf(100), get("first"));
+        assertEquals(1, store.conflicts());
+    }
+
+    @Test
+    void shouldCommitTransactionsWritingDisjointKeysOfSameSnapshot() {
+        Transactional
+                .of(
+                        ctx -> {
+                            int first = ctx.get("first");
+                            join(executor.submit(() -> store.runWithTransaction(other -> {
+                                other.put("second", other.get("first") - 100);
+                                return null;
+                            })));
+                            ctx.put("first", ctx.get("second") - 100);
+                            return first;
+                        },
+                        store
+                )
+                .get();
+
+        assertEquals(Integer.valueOf(-50), get("first"));
+        assertEquals(Integer.valueOf(-50), get("second"));
+        assertEquals(0, store.conflicts());
+    }
+
+    @Test
+    void shouldDiscardWritesIfProcedureThrows() {
+        assertThrows(
+                CustomException.class,
+                () -> Transactional
+                        .of(
+                                ctx -> {
+                                    ctx.delete("first");
+                                    throw new CustomException();
+                                },
+                                store
+                        )
+                        .get()
+        );
+
+        assertEquals(Integer.valueOf(50), get("first"));
+    }
+
+    @Test
+    void shouldKeepVersionsVisibleToActiveSnapshot() {
+        Transactional
+                .of(
+                        ctx -> {
+                            assertEquals(Integer.valueOf(50), ctx.get("first"));
+                            join(executor.submit(() -> {
+                                for (int i = 0; i < 100; i++) {
+                                    put("first", i);
+                                }
+                            }));
+                            assertEquals(Integer.valueOf(50), ctx.get("first"));
+                            return null;
+                        },
+                        store
+                )
+                .get();
+
+        assertEquals(Integer.valueOf(99), get("first"));
+    }
+
+    @Test
+    void shouldCountConcurrentIncrementsWithRetries() throws Exception {
+        RetryPolicy retry = RetryPolicy.of(e -> e instanceof WriteConflictException)
+                .withMaxAttempts(10_000)
+                .withBackoff(Duration.ZERO, Duration.ofMillis(1));
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(threads.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        Transactional
+                                .of(
+                                        ctx -> {
+                                            ctx.put("first", ctx.get("first") + 1);
+                                            return null;
+                                        },
+                                        store
+                                )
+                                .retry(retry)
+                                .get();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        }
+        finally {
+            threads.shutdown();
+        }
+
+        assertEquals(Integer.valueOf(50 + 8 * 500), get("first"));
+        assertEquals(2 + 8 * 500, store.commits());
+    }
+
+    @Test
+    void shouldDelayStatementsByLatency() {
+        MvccTransactionProvider<String, Integer> slow = store
+                .withBeginLatency(Duration.ofMillis(10))
+                .withStatementLatency(Duration.ofMillis(10))
+                .withCommitLatency(Duration.ofMillis(10));
+
+        long start = System.nanoTime();
+        Integer value = Transactional
+                .of(
+                        ctx -> {
+                            ctx.put("third", 1);
+                            return ctx.get("third");
+                        },
+                        slow
+                )
+                .get();
+
+        assertEquals(Integer.valueOf(1), value);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+        assertEquals(Integer.valueOf(1), get("third"));
+    }
+
+    @Test
+    void shouldJoinActiveTransaction() {
+        boolean visible = Transactional
+                .of(
+                        ctx -> {
+                            ctx.delete("first");
+                            return Transactional.of(inner -> inner.contains("first"), store).get();
+                        },
+                        store
+                )
+                .get();
+
+        assertFalse(visible);
+        assertEquals(3, store.commits());
+    }
+
+    private void put(String key, Integer value) {
+        store.runWithoutTransaction(ctx -> {
+            ctx.put(key, value);
+            return null;
+        });
+    }
+
+    private Integer get(String key) {
+        return store.runWithoutTransaction(ctx -> ctx.get(key));
+    }
+
+    private static <T> T join(Future<T> future) {
+        try {
+            return future.get(10, TimeUnit.SECONDS);
+        }
+        catch (Exception exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    class CustomException extends RuntimeException {
+
+    }
+}
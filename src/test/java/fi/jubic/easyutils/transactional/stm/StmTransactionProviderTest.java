@@ -0,0 +1,237 @@
+package fi.jubic.easyutils.transactional.stm;
+
+import fi.jubic.easyutils.transactional.Transactional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StmTransactionProviderTest {
+    private StmTransactionProvider stm;
+
+    @BeforeEach
+    void beforeEach() {
+        this.stm = new StmTransactionProvider();
+    }
+
+    @Test
+    void shouldCommitWrites() {
+        TRef<Integer> ref = new TRef<>(1);
+
+        assertEquals(
+                Integer.valueOf(11),
+                Transactional.of(ctx -> ctx.update(ref, value -> value + 10), stm).get()
+        );
+
+        assertEquals(Integer.valueOf(11), Transactional.of(ctx -> ctx.get(ref), stm).get());
+        assertEquals(2, stm.commits());
+    }
+
+    @Test
+    void shouldReadOwnWrites() {
+        TRef<String> ref = new TRef<>("initial");
+
+        assertEquals(
+                "written",
+                Transactional
+                        .of(
+                                ctx -> {
+                                    ctx.set(ref, "written");
+                                    return ctx.get(ref);
+                                },
+                                stm
+                        )
+                        .get()
+        );
+    }
+
+    @Test
+    void shouldDiscardWritesIfProcedureThrows() {
+        TRef<Integer> ref = new TRef<>(1);
+
+        assertThrows(
+                CustomException.class,
+                () -> Transactional
+                        .of(
+                                ctx -> {
+                                    ctx.set(ref, 2);
+                                    throw new CustomException();
+                                },
+                                stm
+                        )
+                        .get()
+        );
+
+        assertEquals(Integer.valueOf(1), stm.runWithoutTransaction(ctx -> ctx.get(ref)));
+    }
+
+    @Test
+    void shouldRetryTransactionConflictingWithConcurrentCommit() throws Exception {
+        TRef<Integer> read = new TRef<>(1);
+        TRef<Integer> written = new TRef<>(0);
+        AtomicInteger attempts = new AtomicInteger();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Integer result = Transactional
+                    .of(
+                            ctx -> {
+                                int value = ctx.get(read);
+                                if (attempts.incrementAndGet() == 1) {
+                                    join(executor.submit(
+                                            () -> stm.runWithTransaction(
+                                                    other -> other.update(read, v -> v + 1)
+                                            )
+                                    ));
+                                }
+                                ctx.set(written, value);
+                                return value;
+                            },
+                            stm
+                    )
+                    .get();
+
+            assertEquals(Integer.valueOf(2), result);
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        assertEquals(2, attempts.get());
+        assertEquals(1, stm.conflicts());
+        assertEquals(Integer.valueOf(2), stm.runWithoutTransaction(ctx -> ctx.get(written)));
+    }
+
+    @Test
+    void shouldReadSnapshotFromWhenTransactionBegan() throws Exception {
+        TRef<Integer> first = new TRef<>(50);
+        TRef<Integer> second = new TRef<>(50);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            int sum = Transactional
+                    .of(
+                            ctx -> {
+                                int value = ctx.get(first);
+                                join(executor.submit(() -> stm.runWithTransaction(other -> {
+                                    other.update(first, v -> v - 10);
+                                    return other.update(second, v -> v + 10);
+                                })));
+                                return value + ctx.get(second);
+                            },
+                            stm
+                    )
+                    .get();
+
+            assertEquals(100, sum);
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        assertEquals(0, stm.conflicts());
+        assertEquals(Integer.valueOf(60), stm.runWithoutTransaction(ctx -> ctx.get(second)));
+    }
+
+    @Test
+    void shouldKeepInvariantUnderContention() throws Exception {
+        List<TRef<Integer>> accounts = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            accounts.add(new TRef<>(1000));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        TRef<Integer> from = accounts.get(ThreadLocalRandom.current().nextInt(4));
+                        TRef<Integer> to = accounts.get(ThreadLocalRandom.current().nextInt(4));
+                        Transactional
+                                .of(
+                                        ctx -> {
+                                            ctx.update(from, value -> value - 1);
+                                            return ctx.update(to, value -> value + 1);
+                                        },
+                                        stm
+                                )
+                                .get();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        int total = Transactional
+                .of(
+                        ctx -> accounts.stream().mapToInt(ctx::get).sum(),
+                        stm
+                )
+                .get();
+        assertEquals(4000, total);
+        assertEquals(8 * 2000 + 1, stm.commits());
+    }
+
+    @Test
+    void shouldJoinActiveTransaction() {
+        TRef<Integer> ref = new TRef<>(1);
+
+        Integer nested = Transactional
+                .of(
+                        ctx -> {
+                            ctx.set(ref, 2);
+                            return Transactional.of(inner -> inner.get(ref), stm).get();
+                        },
+                        stm
+                )
+                .get();
+
+        assertEquals(Integer.valueOf(2), nested);
+        assertEquals(1, stm.commits());
+    }
+
+    @Test
+    void shouldCommitEachWriteWithoutTransaction() throws Exception {
+        TRef<Integer> ref = new TRef<>(0);
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[4];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = CompletableFuture.runAsync(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    stm.runWithoutTransaction(ctx -> ctx.update(ref, value -> value + 1));
+                }
+            });
+        }
+        CompletableFuture.allOf(futures).get(30, TimeUnit.SECONDS);
+
+        assertEquals(Integer.valueOf(4000), stm.runWithoutTransaction(ctx -> ctx.get(ref)));
+        assertEquals(0, stm.commits());
+    }
+
+    private static <T> T join(Future<T> future) {
+        try {
+            return future.get(10, TimeUnit.SECONDS);
+        }
+        catch (Exception exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    class CustomException extends RuntimeException {
+
+    }
+}
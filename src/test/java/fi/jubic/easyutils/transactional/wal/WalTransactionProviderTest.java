@@ -0,0 +1,315 @@
+package fi.jubic.easyutils.transactional.wal;
+
+import fi.jubic.easyutils.transactional.Transactional;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WalTransactionProviderTest {
+    private static final WalPolicy SMALL_SEGMENTS = WalPolicy.defaults()
+            .withSegmentSize(WalPolicy.MIN_SEGMENT_SIZE)
+            .withCompactionThreshold(1_000);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldRecoverCommittedWritesAfterReopening() {
+        try (WalTransactionProvider store = WalTransactionProvider.open(directory)) {
+            Transactional
+                    .of(
+                            ctx -> {
+                                ctx.put("first", bytes("one"));
+                                ctx.put("second", bytes("two"));
+                                return null;
+                            },
+                            store
+                    )
+                    .get();
+            store.runWithoutTransaction(ctx -> {
+                ctx.delete("second");
+                return null;
+            });
+        }
+
+        try (WalTransactionProvider store = WalTransactionProvider.open(directory)) {
+            assertEquals("one", get(store, "first"));
+            assertNull(get(store, "second"));
+        }
+    }
+
+    @Test
+    void shouldDiscardWritesIfProcedureThrows() {
+        try (WalTransactionProvider store = WalTransactionProvider.open(directory)) {
+            assertThrows(
+                    CustomException.class,
+                    () -> Transactional
+                            .of(
+                                    ctx -> {
+                                        ctx.put("key", bytes("value"));
+                                        throw new CustomException();
+                                    },
+                                    store
+                            )
+                            .get()
+            );
+
+            assertFalse(Transactional.of(ctx -> ctx.contains("key"), store).get());
+            assertEquals(0, store.flushes());
+        }
+    }
+
+    @Test
+    void shouldRecoverWritesAcrossSegments() {
+        try (WalTransactionProvider store = open(SMALL_SEGMENTS)) {
+            for (int i = 0; i < 200; i++) {
+                put(store, "key-" + i, "value-" + i);
+            }
+        }
+        assertTrue(files(".wal").size() > 1);
+
+        try (WalTransactionProvider store = open(SMALL_SEGMENTS)) {
+            for (int i = 0; i < 200; i++) {
+                assertEquals("value-" + i, get(store, "key-" + i));
+            }
+            put(store, "after", "reopen");
+        }
+
+        try (WalTransactionProvider store = open(SMALL_SEGMENTS)) {
+            assertEquals("reopen", get(store, "after"));
+        }
+    }
+
+    @Test
+    void shouldCompactLogIntoSnapshot() {
+        try (WalTransactionProvider store = open(SMALL_SEGMENTS)) {
+            for (int i = 0; i < 200; i++) {
+                put(store, "key-" + (i % 10), "value-" + i);
+            }
+            store.compact();
+            put(store, "key-0", "latest");
+
+            assertEquals(1, store.compactions());
+        }
+        assertEquals(1, files(".snapshot").size());
+        assertEquals(1, files(".wal").size());
+
+        try (WalTransactionProvider store = open(SMALL_SEGMENTS)) {
+            assertEquals("latest", get(store, "key-0"));
+            assertEquals("value-199", get(store, "key-9"));
+        }
+    }
+
+    @Test
+    void shouldCompactInBackgroundAfterThreshold() throws Exception {
+        WalPolicy policy = SMALL_SEGMENTS.withCompactionThreshold(2);
+        try (WalTransactionProvider store = open(policy)) {
+            for (int i = 0; i < 200; i++) {
+                put(store, "key-" + (i % 10), "value-" + i);
+            }
+            for (int i = 0; i < 100 && store.compactions() == 0; i++) {
+                Thread.sleep(10);
+            }
+
+            assertTrue(store.compactions() > 0);
+        }
+
+        try (WalTransactionProvider store = open(policy)) {
+            assertEquals("value-199", get(store, "key-9"));
+        }
+    }
+
+    @Test
+    void shouldIgnoreTornRecordAtEndOfLog() throws IOException {
+        try (WalTransactionProvider store = WalTransactionProvider.open(directory)) {
+            put(store, "kept", "value");
+            put(store, "torn", "value");
+        }
+        Path segment = files(".wal").get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            // Corrupt the last byte of the value of the second record.
+            int firstRecord = 8 + 12 + 8 + "kept".length() + "value".length();
+            int secondRecord = 8 + 12 + 8 + "torn".length() + "value".length();
+            channel.write(ByteBuffer.wrap(new byte[] { 0 }), firstRecord + secondRecord - 1);
+        }
+
+        try (WalTransactionProvider store = WalTransactionProvider.open(directory)) {
+            assertEquals("value", get(store, "kept"));
+            assertNull(get(store, "torn"));
+            put(store, "appended", "value");
+        }
+
+        try (WalTransactionProvider store = WalTransactionProvider.open(directory)) {
+            assertEquals("value", get(store, "appended"));
+        }
+    }
+
+    @Test
+    void shouldFlushWritesIncludedInSnapshotBeforePublishingIt() throws IOException {
+        Path crashed = Files.createDirectory(directory.resolve("crashed"));
+        try (WalTransactionProvider store = open(SMALL_SEGMENTS)) {
+            put(store, "key", "committed");
+            long lsn = store.apply(
+                    Collections.emptyMap(),
+                    Collections.singletonMap("key", bytes("applied"))
+            );
+            assertFalse(store.isDurable(lsn));
+
+            store.compact();
+            assertTrue(store.isDurable(lsn));
+
+            // Crash before the store is closed and leave the files as they are.
+            for (Path file : files("")) {
+                if (Files.isRegularFile(file) && !file.endsWith("lock")) {
+                    Files.copy(file, crashed.resolve(file.getFileName()));
+                }
+            }
+        }
+
+        try (WalTransactionProvider store = WalTransactionProvider.open(crashed, SMALL_SEGMENTS)) {
+            assertEquals("applied", get(store, "key"));
+            put(store, "key", "recovered");
+        }
+
+        try (WalTransactionProvider store = WalTransactionProvider.open(crashed, SMALL_SEGMENTS)) {
+            assertEquals("recovered", get(store, "key"));
+        }
+    }
+
+    @Test
+    void shouldShareFlushesBetweenConcurrentCommits() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (WalTransactionProvider store = WalTransactionProvider.open(directory)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                int id = thread;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        put(store, "key-" + id + "-" + i, "value");
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+
+            assertEquals(8 * 200, store.commits());
+            assertTrue(store.flushes() < store.commits());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void shouldRetryTransactionConflictingWithConcurrentCommit() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (WalTransactionProvider store = WalTransactionProvider.open(directory)) {
+            put(store, "counter", "1");
+
+            String result = Transactional
+                    .of(
+                            ctx -> {
+                                String value = string(ctx.get("counter"));
+                                if (attempts.incrementAndGet() == 1) {
+                                    join(executor.submit(() -> put(store, "counter", "2")));
+                                }
+                                ctx.put("copy", bytes(value));
+                                return value;
+                            },
+                            store
+                    )
+                    .get();
+
+            assertEquals("2", result);
+            assertEquals(2, attempts.get());
+            assertEquals(1, store.conflicts());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void shouldRejectSecondStoreInSameDirectory() {
+        try (WalTransactionProvider ignored = WalTransactionProvider.open(directory)) {
+            assertThrows(IllegalStateException.class, () -> WalTransactionProvider.open(directory));
+        }
+    }
+
+    private WalTransactionProvider open(WalPolicy policy) {
+        return WalTransactionProvider.open(directory, policy);
+    }
+
+    private static String get(WalTransactionProvider store, String key) {
+        return string(store.runWithoutTransaction(ctx -> ctx.get(key)));
+    }
+
+    private static void put(WalTransactionProvider store, String key, String value) {
+        Transactional
+                .of(
+                        ctx -> {
+                            ctx.put(key, bytes(value));
+                            return null;
+                        },
+                        store
+                )
+                .get();
+    }
+
+    private static void join(Future<?> future) {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        catch (Exception exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private List<Path> files(String suffix) {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths
+                    .filter(path -> path.toString().endsWith(suffix))
+                    .collect(Collectors.toList());
+        }
+        catch (IOException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+    }
+
+    class CustomException extends RuntimeException {
+
+    }
+}